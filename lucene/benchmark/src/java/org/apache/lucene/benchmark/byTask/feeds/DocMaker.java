@@ -44,6 +44,7 @@ import org.apache.lucene.document.LegacyLongField;
 import org.apache.lucene.document.LegacyFloatField;
 import org.apache.lucene.document.StringField;
 import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.IndexOptions;
 
 /**
  * Creates {@link Document} objects. Uses a {@link ContentSource} to generate
@@ -71,6 +72,9 @@ import org.apache.lucene.document.TextField;
  * be stored with positions (default <b>false</b>).
  * <li><b>doc.term.vector.offsets</b> - specifies whether term vectors should be
  * stored with offsets (default <b>false</b>).
+ * <li><b>doc.body.offsets</b> - specifies whether the body field should be
+ * indexed with offsets in its postings, e.g. for the PostingsHighlighter
+ * (default <b>false</b>).
  * <li><b>doc.store.body.bytes</b> - specifies whether to store the raw bytes of
  * the document's content in the document (default <b>false</b>).
  * <li><b>doc.reuse.fields</b> - specifies whether Field and Document objects
@@ -433,6 +437,7 @@ public class DocMaker implements Closeable {
     boolean termVec = config.get("doc.term.vector", false);
     boolean termVecPositions = config.get("doc.term.vector.positions", false);
     boolean termVecOffsets = config.get("doc.term.vector.offsets", false);
+    boolean bodyOffsets = config.get("doc.body.offsets", false);
     
     valType = new FieldType(TextField.TYPE_NOT_STORED);
     valType.setStored(stored);
@@ -450,6 +455,9 @@ public class DocMaker implements Closeable {
     bodyValType.setStoreTermVectors(termVec);
     bodyValType.setStoreTermVectorPositions(termVecPositions);
     bodyValType.setStoreTermVectorOffsets(termVecOffsets);
+    if (bodyOffsets) {
+      bodyValType.setIndexOptions(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS_AND_OFFSETS);
+    }
     bodyValType.freeze();
 
     storeBytes = config.get("doc.store.body.bytes", false);
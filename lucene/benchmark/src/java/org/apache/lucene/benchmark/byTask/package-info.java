@@ -555,6 +555,7 @@
  *     </li><li>doc.term.vector
  *     </li><li>doc.term.vector.positions
  *     </li><li>doc.term.vector.offsets
+ *     </li><li>doc.body.offsets
  *     </li><li>doc.store.body.bytes
  *     </li><li>docs.dir
  *     </li><li>query.maker
@@ -18,7 +18,12 @@ package org.apache.lucene.benchmark.byTask.tasks;
  */
 
 import org.apache.lucene.benchmark.byTask.PerfRunData;
+import org.apache.lucene.benchmark.byTask.utils.Config;
 import org.apache.lucene.facet.taxonomy.directory.DirectoryTaxonomyWriter;
+import org.apache.lucene.facet.taxonomy.writercache.Cl2oTaxonomyWriterCache;
+import org.apache.lucene.facet.taxonomy.writercache.LruTaxonomyWriterCache;
+import org.apache.lucene.facet.taxonomy.writercache.TaxonomyWriterCache;
+import org.apache.lucene.facet.taxonomy.writercache.UTF8TaxonomyWriterCache;
 import org.apache.lucene.index.IndexWriterConfig.OpenMode;
 
 import java.io.IOException;
@@ -27,6 +32,15 @@ import java.io.IOException;
 /**
  * Create a taxonomy index.
  * <br>Other side effects: taxonomy writer object in perfRunData is set.
+ * <p>
+ * Relevant properties:
+ * <ul>
+ * <li><b>taxonomy.writer.cache</b>=&lt;the {@link TaxonomyWriterCache} of the
+ * taxonomy writer: <code>default</code>, <code>cl2o</code>, <code>lru</code> or
+ * <code>utf8</code>; default: default&gt;
+ * <li><b>taxonomy.writer.cache.lru.size</b>=&lt;number of categories of the
+ * <code>lru</code> cache; default: 4096&gt;
+ * </ul>
  */
 public class CreateTaxonomyIndexTask extends PerfTask {
 
@@ -37,8 +51,27 @@ public class CreateTaxonomyIndexTask extends PerfTask {
   @Override
   public int doLogic() throws IOException {
     PerfRunData runData = getRunData();
-    runData.setTaxonomyWriter(new DirectoryTaxonomyWriter(runData.getTaxonomyDir(), OpenMode.CREATE));
+    runData.setTaxonomyWriter(new DirectoryTaxonomyWriter(runData.getTaxonomyDir(), OpenMode.CREATE,
+                                                          createTaxonomyWriterCache(runData.getConfig())));
     return 1;
   }
 
+  /** Creates the {@link TaxonomyWriterCache} selected by the
+   *  <code>taxonomy.writer.cache</code> property. */
+  static TaxonomyWriterCache createTaxonomyWriterCache(Config config) {
+    String type = config.get("taxonomy.writer.cache", "default");
+    switch (type) {
+      case "default":
+        return DirectoryTaxonomyWriter.defaultTaxonomyWriterCache();
+      case "cl2o":
+        return new Cl2oTaxonomyWriterCache(1024, 0.15f, 3);
+      case "lru":
+        return new LruTaxonomyWriterCache(config.get("taxonomy.writer.cache.lru.size", 4096));
+      case "utf8":
+        return new UTF8TaxonomyWriterCache();
+      default:
+        throw new IllegalArgumentException("unknown taxonomy.writer.cache: " + type);
+    }
+  }
+
 }
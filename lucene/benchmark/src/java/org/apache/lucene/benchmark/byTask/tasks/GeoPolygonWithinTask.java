@@ -0,0 +1,92 @@
+package org.apache.lucene.benchmark.byTask.tasks;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.List;
+import java.util.Random;
+
+import org.apache.lucene.benchmark.byTask.PerfRunData;
+import org.apache.lucene.benchmark.byTask.utils.Config;
+import org.apache.lucene.geo3d.GeoPoint;
+import org.apache.lucene.geo3d.GeoPolygon;
+import org.apache.lucene.geo3d.GeoPolygonFactory;
+import org.apache.lucene.geo3d.PlanetModel;
+
+/**
+ * Checks random points against a polygon built like {@link MakeGeoPolygonTask}
+ * does, to measure the throughput of {@link GeoPolygon#isWithin}.  The polygon
+ * is built once per setting, outside of the timed logic.
+ * <p>
+ * The parameter is the number of vertices (default 1000).  Other settings, besides
+ * those of {@link MakeGeoPolygonTask}:
+ * <ul>
+ *  <li><code>geo.polygon.queries</code>: number of points checked by each run (default 10000);
+ *    they lie in the square around the polygon's circle, so about pi/4 of them are within a
+ *    convex polygon
+ * </ul>
+ */
+public class GeoPolygonWithinTask extends MakeGeoPolygonTask {
+
+  private List<GeoPoint> polygonPoints;
+  private GeoPolygon polygon;
+  private GeoPoint[] queries;
+  private int lastWithin;
+
+  public GeoPolygonWithinTask(PerfRunData runData) {
+    super(runData);
+  }
+
+  @Override
+  public void setup() throws Exception {
+    super.setup();
+    if (getPoints() != polygonPoints) {
+      polygonPoints = getPoints();
+      polygon = GeoPolygonFactory.makeGeoPolygon(PlanetModel.WGS84, polygonPoints, 0);
+    }
+    final Config config = getRunData().getConfig();
+    final int numQueries = config.get("geo.polygon.queries", 10000);
+    if (queries == null || queries.length != numQueries) {
+      final double radius = config.get("geo.polygon.radius", 0.1);
+      final Random random = new Random(config.get("rand.seed", 7));
+      queries = new GeoPoint[numQueries];
+      for (int i = 0; i < numQueries; i++) {
+        final double lat = radius * (2 * random.nextDouble() - 1);
+        final double lon = radius * (2 * random.nextDouble() - 1);
+        queries[i] = new GeoPoint(PlanetModel.WGS84, lat, lon);
+      }
+    }
+  }
+
+  /** Returns how many of the points were within the polygon on the last run. */
+  public int getLastWithin() {
+    return lastWithin;
+  }
+
+  @Override
+  public int doLogic() throws Exception {
+    int within = 0;
+    for (GeoPoint query : queries) {
+      if (polygon.isWithin(query)) {
+        within++;
+      }
+    }
+    // keep the result, so the checks can't be optimized away:
+    lastWithin = within;
+    return queries.length;
+  }
+}
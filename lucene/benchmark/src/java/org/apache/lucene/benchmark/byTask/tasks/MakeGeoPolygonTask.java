@@ -0,0 +1,97 @@
+package org.apache.lucene.benchmark.byTask.tasks;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.lucene.benchmark.byTask.PerfRunData;
+import org.apache.lucene.benchmark.byTask.utils.Config;
+import org.apache.lucene.geo3d.GeoPoint;
+import org.apache.lucene.geo3d.GeoPolygonFactory;
+import org.apache.lucene.geo3d.PlanetModel;
+
+/**
+ * Builds a polygon with {@link GeoPolygonFactory}, to measure the cost of
+ * decomposing polygons with many vertices.
+ * <p>
+ * The parameter is the number of vertices (default 1000).  The vertices lie on a
+ * circle, or, if <code>geo.polygon.concave</code> is true, every other vertex is
+ * pulled towards the center by a random amount, which makes a star shaped polygon
+ * that is decomposed into many convex parts.  Other settings:
+ * <ul>
+ *  <li><code>geo.polygon.radius</code>: radius of the circle, in radians (default 0.1)
+ *  <li><code>rand.seed</code>: seed for the positions of the concave vertices (default 7)
+ * </ul>
+ */
+public class MakeGeoPolygonTask extends PerfTask {
+
+  private int numVertices = 1000;
+  private List<GeoPoint> points;
+  private boolean concave;
+
+  public MakeGeoPolygonTask(PerfRunData runData) {
+    super(runData);
+  }
+
+  @Override
+  public void setup() throws Exception {
+    super.setup();
+    final Config config = getRunData().getConfig();
+    // the setting may change from round to round
+    final boolean concave = config.get("geo.polygon.concave", false);
+    if (points == null || concave != this.concave) {
+      this.concave = concave;
+      final double radius = config.get("geo.polygon.radius", 0.1);
+      final Random random = new Random(config.get("rand.seed", 7));
+      points = new ArrayList<>(numVertices);
+      for (int i = 0; i < numVertices; i++) {
+        // Even vertices stay on the circle, so vertex 0 is convex
+        final double r = concave && (i & 1) == 1 ? radius * (0.3 + 0.4 * random.nextDouble()) : radius;
+        final double angle = 2 * Math.PI * i / numVertices;
+        points.add(new GeoPoint(PlanetModel.WGS84, r * Math.sin(angle), r * Math.cos(angle)));
+      }
+    }
+  }
+
+  @Override
+  public int doLogic() throws Exception {
+    GeoPolygonFactory.makeGeoPolygon(PlanetModel.WGS84, points, 0);
+    return 1;
+  }
+
+  /** Returns the vertices of the polygon; only changes in {@link #setup}. */
+  protected List<GeoPoint> getPoints() {
+    return points;
+  }
+
+  @Override
+  public void setParams(String params) {
+    super.setParams(params);
+    numVertices = (int) Float.parseFloat(params);
+    if (numVertices < 3) {
+      throw new IllegalArgumentException("a polygon needs at least 3 vertices (got " + numVertices + ")");
+    }
+  }
+
+  @Override
+  public boolean supportsParams() {
+    return true;
+  }
+}
@@ -19,6 +19,7 @@ package org.apache.lucene.benchmark.byTask.tasks;
 
 import org.apache.lucene.benchmark.byTask.PerfRunData;
 import org.apache.lucene.facet.taxonomy.directory.DirectoryTaxonomyWriter;
+import org.apache.lucene.index.IndexWriterConfig.OpenMode;
 
 import java.io.IOException;
 
@@ -26,6 +27,7 @@ import java.io.IOException;
 /**
  * Open a taxonomy index.
  * <br>Other side effects: taxonomy writer object in perfRunData is set.
+ * <br>The taxonomy writer cache is selected as in {@link CreateTaxonomyIndexTask}.
  */
 public class OpenTaxonomyIndexTask extends PerfTask {
 
@@ -36,7 +38,8 @@ public class OpenTaxonomyIndexTask extends PerfTask {
   @Override
   public int doLogic() throws IOException {
     PerfRunData runData = getRunData();
-    runData.setTaxonomyWriter(new DirectoryTaxonomyWriter(runData.getTaxonomyDir()));
+    runData.setTaxonomyWriter(new DirectoryTaxonomyWriter(runData.getTaxonomyDir(), OpenMode.CREATE_OR_APPEND,
+                                                          CreateTaxonomyIndexTask.createTaxonomyWriterCache(runData.getConfig())));
     return 1;
   }
 
@@ -0,0 +1,158 @@
+package org.apache.lucene.benchmark.byTask.tasks;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.benchmark.byTask.PerfRunData;
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.StoredDocument;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.postingshighlight.PostingsHighlighter;
+import org.apache.lucene.search.postingshighlight.PostingsHighlighter.OffsetSource;
+import org.apache.lucene.search.postingshighlight.UnifiedHighlighter;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Search and Traverse and Retrieve docs task.  Highlight the fields in the retrieved documents by using UnifiedHighlighter.
+ *
+ * <p>Note: This task reuses the reader if it is already open.
+ * Otherwise a reader is opened at start and closed at the end.
+ * </p>
+ *
+ * <p>Takes optional multivalued, comma separated param string as: size[&lt;traversal size&gt;],highlight[&lt;int&gt;],maxFrags[&lt;int&gt;],offsetSource[&lt;source&gt;],fields[name1;name2;...]</p>
+ * <ul>
+ * <li>traversal size - The number of hits to traverse, otherwise all will be traversed</li>
+ * <li>highlight - The number of the hits to highlight.  Will always be less than or equal to traversal size.  Default is Integer.MAX_VALUE (i.e. hits.length())</li>
+ * <li>maxFrags - The maximum number of passages to return per field</li>
+ * <li>offsetSource - Where to read offsets from: postings, term_vectors or analysis.  If not specified, it is chosen per field from how the field was indexed</li>
+ * <li>fields - The fields to highlight.  If not specified all fields will be highlighted (or at least attempted)</li>
+ * </ul>
+ * Example:
+ * <pre>"SearchUniHlgtSameRdr" SearchTravRetUnifiedHighlight(size[10],highlight[10],maxFrags[3],offsetSource[analysis],fields[body]) &gt; : 1000
+ * </pre>
+ *
+ * Fields must be stored; forcing the postings or term_vectors offset source
+ * requires the body to be indexed with offsets (<code>doc.body.offsets</code>)
+ * or term vectors with offsets (<code>doc.term.vector.offsets</code>).
+ *
+ * <p>Other side effects: counts additional 1 (record) for each traversed hit,
+ * and 1 more for each retrieved (non null) document and 1 for each highlighted field.</p>
+ */
+public class SearchTravRetUnifiedHighlightTask extends SearchTravTask {
+
+  protected int numToHighlight = Integer.MAX_VALUE;
+  protected int maxFrags = 2;
+  protected OffsetSource offsetSource;
+  protected Set<String> paramFields = Collections.emptySet();
+  protected UnifiedHighlighter highlighter;
+  protected int maxDocCharsToAnalyze;
+
+  public SearchTravRetUnifiedHighlightTask(PerfRunData runData) {
+    super(runData);
+  }
+
+  @Override
+  public void setup() throws Exception {
+    super.setup();
+    //check to make sure either the doc is being stored
+    PerfRunData data = getRunData();
+    if (data.getConfig().get("doc.stored", false) == false){
+      throw new Exception("doc.stored must be set to true");
+    }
+    // the highlighter does not allow Integer.MAX_VALUE:
+    maxDocCharsToAnalyze = Math.min(Integer.MAX_VALUE - 1,
+        data.getConfig().get("highlighter.maxDocCharsToAnalyze", PostingsHighlighter.DEFAULT_MAX_LENGTH));
+  }
+
+  @Override
+  public boolean withRetrieve() {
+    return true;
+  }
+
+  @Override
+  public int numToHighlight() {
+    return numToHighlight;
+  }
+  
+  @Override
+  protected BenchmarkHighlighter getBenchmarkHighlighter(Query q){
+    highlighter = new UnifiedHighlighter(getRunData().getAnalyzer(), maxDocCharsToAnalyze, null) {
+      @Override
+      protected OffsetSource getOffsetSource(String field, FieldInfo fieldInfo) {
+        return offsetSource != null ? offsetSource : super.getOffsetSource(field, fieldInfo);
+      }
+    };
+    final Query myq = q;
+    return new BenchmarkHighlighter(){
+      @Override
+      public int doHighlight(IndexReader reader, int doc, String field,
+          StoredDocument document, Analyzer analyzer, String text) throws Exception {
+        Map<String,String[]> snippets = highlighter.highlightFields(new String[] {field}, myq, new IndexSearcher(reader),
+                                                                    new int[] {doc}, new int[] {maxFrags});
+        return snippets.get(field)[0] != null ? 1 : 0;
+      }
+    };
+  }
+
+  @Override
+  protected Collection<String> getFieldsToHighlight(StoredDocument document) {
+    Collection<String> result = super.getFieldsToHighlight(document);
+    //if stored is false, then result will be empty, in which case just get all the param fields
+    if (paramFields.isEmpty() == false && result.isEmpty() == false) {
+      result.retainAll(paramFields);
+    } else {
+      result = paramFields;
+    }
+    return result;
+  }
+
+  @Override
+  public void setParams(String params) {
+    // can't call super because super doesn't understand our
+    // params syntax
+    this.params = params;
+    final String [] splits = params.split(",");
+    for (int i = 0; i < splits.length; i++) {
+      if (splits[i].startsWith("size[") == true){
+        traversalSize = (int)Float.parseFloat(splits[i].substring("size[".length(),splits[i].length() - 1));
+      } else if (splits[i].startsWith("highlight[") == true){
+        numToHighlight = (int)Float.parseFloat(splits[i].substring("highlight[".length(),splits[i].length() - 1));
+      } else if (splits[i].startsWith("maxFrags[") == true){
+        maxFrags = (int)Float.parseFloat(splits[i].substring("maxFrags[".length(),splits[i].length() - 1));
+      } else if (splits[i].startsWith("offsetSource[") == true){
+        offsetSource = OffsetSource.valueOf(splits[i].substring("offsetSource[".length(),splits[i].length() - 1).toUpperCase(Locale.ROOT));
+      } else if (splits[i].startsWith("fields[") == true){
+        paramFields = new HashSet<>();
+        String fieldNames = splits[i].substring("fields[".length(), splits[i].length() - 1);
+        String [] fieldSplits = fieldNames.split(";");
+        for (int j = 0; j < fieldSplits.length; j++) {
+          paramFields.add(fieldSplits[j]);          
+        }
+
+      }
+    }
+  }
+}
@@ -37,18 +37,6 @@ class SimpleTextBKDReader extends BKDReader {
     super(datIn, numDims, maxPointsInLeafNode, bytesPerDim, leafBlockFPs, splitPackedValues);
   }
 
-  @Override
-  protected void visitDocIDs(IndexInput in, long blockFP, IntersectVisitor visitor) throws IOException {
-    BytesRefBuilder scratch = new BytesRefBuilder();
-    in.seek(blockFP);
-    readLine(in, scratch);
-    int count = parseInt(scratch, BLOCK_COUNT);
-    for(int i=0;i<count;i++) {
-      readLine(in, scratch);
-      visitor.visit(parseInt(scratch, BLOCK_DOC_ID));
-    }
-  }
-
   @Override
   protected int readDocIDs(IndexInput in, long blockFP, int[] docIDs) throws IOException {
     BytesRefBuilder scratch = new BytesRefBuilder();
@@ -18,6 +18,7 @@ package org.apache.lucene.codecs.lucene60;
  */
 
 import java.io.IOException;
+import java.util.concurrent.ExecutorService;
 
 import org.apache.lucene.codecs.CodecUtil;
 import org.apache.lucene.codecs.DimensionalFormat;
@@ -25,6 +26,7 @@ import org.apache.lucene.codecs.DimensionalReader;
 import org.apache.lucene.codecs.DimensionalWriter;
 import org.apache.lucene.index.SegmentReadState;
 import org.apache.lucene.index.SegmentWriteState;
+import org.apache.lucene.util.bkd.BKDWriter;
 
 /**
  * Lucene 6.0 dimensional format, which encodes dimensional values in a block KD-tree structure
@@ -91,13 +93,29 @@ public final class Lucene60DimensionalFormat extends DimensionalFormat {
   static final int INDEX_VERSION_START = 0;
   static final int INDEX_VERSION_CURRENT = INDEX_VERSION_START;
 
-  /** Sole constructor */
+  private final ExecutorService executor;
+  private final int maxConcurrentSubtrees;
+
+  /** Builds the trees on the indexing thread */
   public Lucene60DimensionalFormat() {
+    this(null, 1);
+  }
+
+  /** Expert: builds each tree with the provided {@link ExecutorService}, using up to
+   *  {@code maxConcurrentSubtrees} threads, see {@link BKDWriter#setExecutor}.  Pass null to
+   *  build on the indexing thread only.  The written index is the same either way. */
+  public Lucene60DimensionalFormat(ExecutorService executor, int maxConcurrentSubtrees) {
+    if (executor != null && maxConcurrentSubtrees < 1) {
+      throw new IllegalArgumentException("maxConcurrentSubtrees must be >= 1 (got: " + maxConcurrentSubtrees + ")");
+    }
+    this.executor = executor;
+    this.maxConcurrentSubtrees = maxConcurrentSubtrees;
   }
 
   @Override
   public DimensionalWriter fieldsWriter(SegmentWriteState state) throws IOException {
-    return new Lucene60DimensionalWriter(state);
+    return new Lucene60DimensionalWriter(state, BKDWriter.DEFAULT_MAX_POINTS_IN_LEAF_NODE, BKDWriter.DEFAULT_MAX_MB_SORT_IN_HEAP,
+                                         executor, maxConcurrentSubtrees);
   }
 
   @Override
@@ -104,6 +104,22 @@ public class Lucene60DimensionalReader extends DimensionalReader implements Clos
     reader.intersect(visitor);
   }
 
+  /** Returns the underlying {@link BKDReader} for this field, or null if no document in this
+   *  segment has dimensional values for it.
+   *
+   * @lucene.internal */
+  public BKDReader getBKDReader(String field) {
+    FieldInfo fieldInfo = readState.fieldInfos.fieldInfo(field);
+    if (fieldInfo == null) {
+      throw new IllegalArgumentException("field=\"" + field + "\" is unrecognized");
+    }
+    if (fieldInfo.getDimensionCount() == 0) {
+      throw new IllegalArgumentException("field=\"" + field + "\" did not index dimensional values");
+    }
+
+    return readers.get(fieldInfo.number);
+  }
+
   @Override
   public long ramBytesUsed() {
     long sizeInBytes = 0;
@@ -23,6 +23,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
 
 import org.apache.lucene.codecs.CodecUtil;
 import org.apache.lucene.codecs.DimensionalReader;
@@ -47,14 +48,25 @@ public class Lucene60DimensionalWriter extends DimensionalWriter implements Clos
   final SegmentWriteState writeState;
   final int maxPointsInLeafNode;
   final double maxMBSortInHeap;
+  final ExecutorService executor;
+  final int maxConcurrentSubtrees;
   private boolean closed;
 
-  /** Full constructor */
+  /** Builds each field's tree on the calling thread */
   public Lucene60DimensionalWriter(SegmentWriteState writeState, int maxPointsInLeafNode, double maxMBSortInHeap) throws IOException {
+    this(writeState, maxPointsInLeafNode, maxMBSortInHeap, null, 1);
+  }
+
+  /** Full constructor: if {@code executor} is not null, it is used to build each field's tree,
+   *  see {@link BKDWriter#setExecutor} */
+  public Lucene60DimensionalWriter(SegmentWriteState writeState, int maxPointsInLeafNode, double maxMBSortInHeap,
+                                   ExecutorService executor, int maxConcurrentSubtrees) throws IOException {
     assert writeState.fieldInfos.hasDimensionalValues();
     this.writeState = writeState;
     this.maxPointsInLeafNode = maxPointsInLeafNode;
     this.maxMBSortInHeap = maxMBSortInHeap;
+    this.executor = executor;
+    this.maxConcurrentSubtrees = maxConcurrentSubtrees;
     String dataFileName = IndexFileNames.segmentFileName(writeState.segmentInfo.name,
                                                          writeState.segmentSuffix,
                                                          Lucene60DimensionalFormat.DATA_EXTENSION);
@@ -88,6 +100,9 @@ public class Lucene60DimensionalWriter extends DimensionalWriter implements Clos
                                           fieldInfo.getDimensionNumBytes(),
                                           maxPointsInLeafNode,
                                           maxMBSortInHeap)) {
+      if (executor != null) {
+        writer.setExecutor(executor, maxConcurrentSubtrees);
+      }
 
       values.intersect(fieldInfo.name, new IntersectVisitor() {
           @Override
@@ -124,48 +139,53 @@ public class Lucene60DimensionalWriter extends DimensionalWriter implements Clos
 
     for (FieldInfo fieldInfo : mergeState.mergeFieldInfos) {
       if (fieldInfo.getDimensionCount() != 0) {
-        if (fieldInfo.getDimensionCount() == 1) {
-          //System.out.println("MERGE: field=" + fieldInfo.name);
-          // Optimize the 1D case to use BKDWriter.merge, which does a single merge sort of the
-          // already sorted incoming segments, instead of trying to sort all points again as if
-          // we were simply reindexing them:
-          try (BKDWriter writer = new BKDWriter(writeState.directory,
-                                                writeState.segmentInfo.name,
-                                                fieldInfo.getDimensionCount(),
-                                                fieldInfo.getDimensionNumBytes(),
-                                                maxPointsInLeafNode,
-                                                maxMBSortInHeap)) {
-            List<BKDReader> bkdReaders = new ArrayList<>();
-            List<MergeState.DocMap> docMaps = new ArrayList<>();
-            List<Integer> docIDBases = new ArrayList<>();
-            for(int i=0;i<mergeState.dimensionalReaders.length;i++) {
-              DimensionalReader reader = mergeState.dimensionalReaders[i];
-
-              Lucene60DimensionalReader reader60 = (Lucene60DimensionalReader) reader;
-              if (reader60 != null) {
-                // TODO: I could just use the merged fieldInfo.number instead of resolving to this
-                // reader's FieldInfo, right?  Field numbers are always consistent across segments,
-                // since when?
-                FieldInfos readerFieldInfos = mergeState.fieldInfos[i];
-                FieldInfo readerFieldInfo = readerFieldInfos.fieldInfo(fieldInfo.name);
-                if (readerFieldInfo != null) {
-                  BKDReader bkdReader = reader60.readers.get(readerFieldInfo.number);
-                  if (bkdReader != null) {
-                    docIDBases.add(mergeState.docBase[i]);
-                    bkdReaders.add(bkdReader);
-                    docMaps.add(mergeState.docMaps[i]);
-                  }
+        //System.out.println("MERGE: field=" + fieldInfo.name);
+        // Use BKDWriter.merge, which does a single merge sort of the already sorted incoming
+        // segments in the 1D case, and re-uses the incoming leaf blocks when possible in the
+        // multi-dimensional case, instead of trying to sort all points again as if we were
+        // simply reindexing them:
+        try (BKDWriter writer = new BKDWriter(writeState.directory,
+                                              writeState.segmentInfo.name,
+                                              fieldInfo.getDimensionCount(),
+                                              fieldInfo.getDimensionNumBytes(),
+                                              maxPointsInLeafNode,
+                                              maxMBSortInHeap)) {
+          if (executor != null) {
+            writer.setExecutor(executor, maxConcurrentSubtrees);
+          }
+          List<BKDReader> bkdReaders = new ArrayList<>();
+          List<MergeState.DocMap> docMaps = new ArrayList<>();
+          List<Integer> docIDBases = new ArrayList<>();
+          for(int i=0;i<mergeState.dimensionalReaders.length;i++) {
+            DimensionalReader reader = mergeState.dimensionalReaders[i];
+
+            Lucene60DimensionalReader reader60 = (Lucene60DimensionalReader) reader;
+            if (reader60 != null) {
+              // TODO: I could just use the merged fieldInfo.number instead of resolving to this
+              // reader's FieldInfo, right?  Field numbers are always consistent across segments,
+              // since when?
+              FieldInfos readerFieldInfos = mergeState.fieldInfos[i];
+              FieldInfo readerFieldInfo = readerFieldInfos.fieldInfo(fieldInfo.name);
+              if (readerFieldInfo != null) {
+                BKDReader bkdReader = reader60.readers.get(readerFieldInfo.number);
+                if (bkdReader != null) {
+                  docIDBases.add(mergeState.docBase[i]);
+                  bkdReaders.add(bkdReader);
+                  docMaps.add(mergeState.docMaps[i]);
                 }
               }
             }
+          }
 
-            long fp = writer.merge(dataOut, docMaps, bkdReaders, docIDBases);
-            if (fp != -1) {
-              indexFPs.put(fieldInfo.name, fp);
-            }
+          long fp = writer.merge(dataOut, docMaps, bkdReaders, docIDBases);
+          if (fp != -1) {
+            indexFPs.put(fieldInfo.name, fp);
+          }
+
+          if (mergeState.infoStream.isEnabled("BKD")) {
+            mergeState.infoStream.message("BKD", "merged field=" + fieldInfo.name + " dims=" + fieldInfo.getDimensionCount() + " segments=" + bkdReaders.size() +
+                                          " tempBytes=" + writer.getTempBytesWritten());
           }
-        } else {
-          mergeOneField(mergeState, fieldInfo);
         }
       }
     } 
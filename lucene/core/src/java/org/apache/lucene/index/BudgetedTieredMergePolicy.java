@@ -0,0 +1,283 @@
+package org.apache.lucene.index;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Calendar;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ *  A {@link TieredMergePolicy} that also takes into account
+ *  the cost of merging, in I/O, against the benefit of the
+ *  merge for searching.
+ *
+ *  <p>Candidate merges are first scored like {@link
+ *  TieredMergePolicy} does, and then additionally favored
+ *  by how many segments they remove from the index (see
+ *  {@link #setSegmentCountWeight}), since every segment adds
+ *  a fixed cost to each query.
+ *
+ *  <p>Natural merges (not forced ones) that were selected
+ *  are then checked against an hourly I/O budget (see {@link
+ *  #setMaxMergeMBPerHour}), counting the bytes read and
+ *  written by each merge, and large merges (see {@link
+ *  #setLargeMergeMB}) are deferred until an off-peak
+ *  window (see {@link #setOffPeakHours}).  During the
+ *  off-peak window the I/O budget is not enforced.  Deferred
+ *  merges are picked again on a later call to {@link
+ *  #findMerges}.
+ *
+ *  <p>All decisions are reported to the writer's {@link
+ *  org.apache.lucene.util.InfoStream} under the "BTMP"
+ *  component.
+ *
+ *  @lucene.experimental
+ */
+public class BudgetedTieredMergePolicy extends TieredMergePolicy {
+
+  private static final long HOUR_MS = 60 * 60 * 1000L;
+
+  private long maxMergeBytesPerHour = Long.MAX_VALUE;
+  private long largeMergeBytes = Long.MAX_VALUE;
+  private int offPeakStartHour = -1;
+  private int offPeakEndHour = -1;
+  private TimeZone timeZone = TimeZone.getTimeZone("UTC");
+  private double segmentCountWeight = 0.0;
+
+  /** Merges charged against the budget in the last hour; each entry is {timestamp, bytes}. */
+  private final ArrayDeque<long[]> recentMerges = new ArrayDeque<>();
+  private long recentMergeBytes;
+
+  /** Sole constructor, setting all settings to their
+   *  defaults, which behave exactly like {@link
+   *  TieredMergePolicy}. */
+  public BudgetedTieredMergePolicy() {
+  }
+
+  /** Maximum number of bytes, read plus written, that
+   *  natural merges may cost per hour outside of the
+   *  off-peak window.  A merge that would exceed the budget
+   *  is deferred, unless nothing was charged against the
+   *  budget in the last hour, so that a merge larger than the
+   *  whole budget still runs once per hour.  Default is
+   *  unlimited. */
+  public BudgetedTieredMergePolicy setMaxMergeMBPerHour(double v) {
+    if (v <= 0.0) {
+      throw new IllegalArgumentException("maxMergeMBPerHour must be > 0.0 (got " + v + ")");
+    }
+    v *= 1024 * 1024;
+    maxMergeBytesPerHour = v > Long.MAX_VALUE ? Long.MAX_VALUE : (long) v;
+    return this;
+  }
+
+  /** Returns the current maxMergeMBPerHour setting.
+   *
+   * @see #setMaxMergeMBPerHour */
+  public double getMaxMergeMBPerHour() {
+    return maxMergeBytesPerHour/1024/1024.;
+  }
+
+  /** Merges whose resulting segment is estimated to be at
+   *  least this large are only started during the off-peak
+   *  window.  This has no effect unless {@link
+   *  #setOffPeakHours} is also set.  Default is unlimited. */
+  public BudgetedTieredMergePolicy setLargeMergeMB(double v) {
+    if (v <= 0.0) {
+      throw new IllegalArgumentException("largeMergeMB must be > 0.0 (got " + v + ")");
+    }
+    v *= 1024 * 1024;
+    largeMergeBytes = v > Long.MAX_VALUE ? Long.MAX_VALUE : (long) v;
+    return this;
+  }
+
+  /** Returns the current largeMergeMB setting.
+   *
+   * @see #setLargeMergeMB */
+  public double getLargeMergeMB() {
+    return largeMergeBytes/1024/1024.;
+  }
+
+  /** Sets the off-peak window, from {@code startHour}
+   *  (inclusive) to {@code endHour} (exclusive), as hours of
+   *  the day in the provided time zone.  The window may wrap
+   *  around midnight, e.g. 22 to 6. */
+  public BudgetedTieredMergePolicy setOffPeakHours(int startHour, int endHour, TimeZone timeZone) {
+    if (startHour < 0 || startHour > 23) {
+      throw new IllegalArgumentException("startHour must be between 0 and 23 inclusive (got " + startHour + ")");
+    }
+    if (endHour < 0 || endHour > 24) {
+      throw new IllegalArgumentException("endHour must be between 0 and 24 inclusive (got " + endHour + ")");
+    }
+    if (startHour == endHour) {
+      throw new IllegalArgumentException("startHour and endHour must differ (got " + startHour + ")");
+    }
+    if (timeZone == null) {
+      throw new IllegalArgumentException("timeZone must not be null");
+    }
+    offPeakStartHour = startHour;
+    offPeakEndHour = endHour;
+    this.timeZone = timeZone;
+    return this;
+  }
+
+  /** Controls how strongly merges that remove more segments
+   *  from the index are favored, to reduce the per-segment
+   *  cost of queries.  A value of 0.0 (the default) means
+   *  the number of merged segments only matters through
+   *  skew, like {@link TieredMergePolicy}. */
+  public BudgetedTieredMergePolicy setSegmentCountWeight(double v) {
+    if (v < 0.0) {
+      throw new IllegalArgumentException("segmentCountWeight must be >= 0.0 (got " + v + ")");
+    }
+    segmentCountWeight = v;
+    return this;
+  }
+
+  /** See {@link #setSegmentCountWeight}. */
+  public double getSegmentCountWeight() {
+    return segmentCountWeight;
+  }
+
+  /** Returns the current time in milliseconds; tests may override. */
+  protected long currentTimeMillis() {
+    return System.currentTimeMillis();
+  }
+
+  /** Returns true if the current time is within the off-peak window. */
+  protected boolean isOffPeak() {
+    if (offPeakStartHour == -1) {
+      return false;
+    }
+    final Calendar calendar = Calendar.getInstance(timeZone, Locale.ROOT);
+    calendar.setTimeInMillis(currentTimeMillis());
+    final int hour = calendar.get(Calendar.HOUR_OF_DAY);
+    if (offPeakStartHour < offPeakEndHour) {
+      return hour >= offPeakStartHour && hour < offPeakEndHour;
+    } else {
+      // window wraps around midnight
+      return hour >= offPeakStartHour || hour < offPeakEndHour;
+    }
+  }
+
+  @Override
+  protected MergeScore score(List<SegmentCommitInfo> candidate, boolean hitTooLarge, long mergingBytes, IndexWriter writer) throws IOException {
+    final MergeScore tieredScore = super.score(candidate, hitTooLarge, mergingBytes, writer);
+    if (segmentCountWeight == 0.0) {
+      return tieredScore;
+    }
+
+    // Each segment removed saves a fixed cost (terms dict
+    // seeks, scorer setup, ...) for every query:
+    final double segmentCountFactor = Math.pow(1.0/candidate.size(), segmentCountWeight);
+    final double finalMergeScore = tieredScore.getScore() * segmentCountFactor;
+
+    return new MergeScore() {
+
+      @Override
+      public double getScore() {
+        return finalMergeScore;
+      }
+
+      @Override
+      public String getExplanation() {
+        return tieredScore.getExplanation() + " segmentCountFactor=" + String.format(Locale.ROOT, "%.3f", segmentCountFactor);
+      }
+    };
+  }
+
+  @Override
+  public synchronized MergeSpecification findMerges(MergeTrigger mergeTrigger, SegmentInfos infos, IndexWriter writer) throws IOException {
+    final MergeSpecification spec = super.findMerges(mergeTrigger, infos, writer);
+    if (spec == null) {
+      return null;
+    }
+
+    final long now = currentTimeMillis();
+    while (recentMerges.isEmpty() == false && recentMerges.peekFirst()[0] <= now - HOUR_MS) {
+      recentMergeBytes -= recentMerges.pollFirst()[1];
+    }
+
+    final boolean offPeak = isOffPeak();
+
+    MergeSpecification budgeted = null;
+    for(OneMerge merge : spec.merges) {
+      long mergedBytes = 0;
+      long ioBytes = 0;
+      for(SegmentCommitInfo info : merge.segments) {
+        final long segBytes = size(info, writer);
+        mergedBytes += segBytes;
+        // we read the whole segment, and write its live docs:
+        ioBytes += info.sizeInBytes() + segBytes;
+      }
+
+      final String reason;
+      if (offPeak == false && offPeakStartHour != -1 && mergedBytes >= largeMergeBytes) {
+        reason = "large merge outside off-peak hours";
+      } else if (offPeak == false && recentMergeBytes > 0 && recentMergeBytes + ioBytes > maxMergeBytesPerHour) {
+        // NOTE: when nothing used the budget this hour we let the merge through even if it alone exceeds
+        // the budget, else it would be deferred forever:
+        reason = "would exceed I/O budget; used " + String.format(Locale.ROOT, "%.3f MB", recentMergeBytes/1024./1024.) + " in the last hour";
+      } else {
+        reason = null;
+      }
+
+      if (reason != null) {
+        if (verbose(writer)) {
+          message("defer merge=" + writer.segString(merge.segments) + " size=" + String.format(Locale.ROOT, "%.3f MB", mergedBytes/1024./1024.) + " io=" + String.format(Locale.ROOT, "%.3f MB", ioBytes/1024./1024.) + ": " + reason, writer);
+        }
+        continue;
+      }
+
+      if (verbose(writer)) {
+        message("accept merge=" + writer.segString(merge.segments) + " size=" + String.format(Locale.ROOT, "%.3f MB", mergedBytes/1024./1024.) + " io=" + String.format(Locale.ROOT, "%.3f MB", ioBytes/1024./1024.) + " offPeak=" + offPeak, writer);
+      }
+
+      if (offPeak == false) {
+        recentMerges.addLast(new long[] {now, ioBytes});
+        recentMergeBytes += ioBytes;
+      }
+      if (budgeted == null) {
+        budgeted = new MergeSpecification();
+      }
+      budgeted.add(merge);
+    }
+
+    return budgeted;
+  }
+
+  private boolean verbose(IndexWriter writer) {
+    return writer != null && writer.infoStream.isEnabled("BTMP");
+  }
+
+  private void message(String message, IndexWriter writer) {
+    writer.infoStream.message("BTMP", message);
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder(super.toString());
+    sb.append(", maxMergeMBPerHour=").append(maxMergeBytesPerHour/1024/1024.).append(", ");
+    sb.append("largeMergeMB=").append(largeMergeBytes/1024/1024.).append(", ");
+    sb.append("offPeakHours=").append(offPeakStartHour).append('-').append(offPeakEndHour).append(", ");
+    sb.append("segmentCountWeight=").append(segmentCountWeight);
+    return sb.toString();
+  }
+}
@@ -371,8 +371,15 @@ class BufferedUpdatesStream implements Accountable {
     TermsEnum termsEnum;
     PostingsEnum postingsEnum;
     BytesRef term;
+    /** Largest term in the current field of this segment; delete terms after it are never sought. */
+    BytesRef maxTerm;
     boolean any;
 
+    // Stats for infoStream, only tracked when "BD" is enabled:
+    long termDeleteNS;
+    long termSeekCount;
+    long termSkipCount;
+
     public SegmentState(IndexWriter.ReaderPool pool, SegmentCommitInfo info) throws IOException {
       rld = pool.get(info, true);
       startDelCount = rld.getPendingDeleteCount();
@@ -476,6 +483,9 @@ class BufferedUpdatesStream implements Accountable {
 
     int numReaders = segStates.length;
 
+    // Per-segment timing is only gathered when someone is listening:
+    final boolean doStats = infoStream.isEnabled("BD");
+
     long delTermVisitedCount = 0;
     long segTermVisitedCount = 0;
 
@@ -494,18 +504,27 @@ class BufferedUpdatesStream implements Accountable {
 
         queue = new SegmentQueue(numReaders);
 
-        long segTermCount = 0;
         for(int i=0;i<numReaders;i++) {
           SegmentState state = segStates[i];
+          long startSegNS = doStats ? System.nanoTime() : 0;
           Terms terms = state.reader.fields().terms(field);
           if (terms != null) {
-            segTermCount += terms.size();
-            state.termsEnum = terms.iterator();
-            state.term = state.termsEnum.next();
-            if (state.term != null) {
-              queue.add(state);
+            // The terms index knows this segment's largest term, so we can skip the segment outright
+            // once the (sorted) delete terms pass it, without ever seeking its terms dictionary:
+            state.maxTerm = terms.getMax();
+            if (state.maxTerm != null && term.compareTo(state.maxTerm) <= 0) {
+              state.termsEnum = terms.iterator();
+              state.term = state.termsEnum.next();
+              if (state.term != null) {
+                queue.add(state);
+              }
+            } else {
+              state.termSkipCount++;
             }
           }
+          if (doStats) {
+            state.termDeleteNS += System.nanoTime() - startSegNS;
+          }
         }
 
         assert checkDeleteTerm(null);
@@ -527,9 +546,21 @@ class BufferedUpdatesStream implements Accountable {
 
         if (cmp < 0) {
           break;
-        } else if (cmp == 0) {
-          // fall through
-        } else {
+        }
+
+        long startSegNS = doStats ? System.nanoTime() : 0;
+
+        if (cmp > 0) {
+          if (term.compareTo(state.maxTerm) > 0) {
+            // This and all following delete terms are beyond this segment's last term
+            state.termSkipCount++;
+            queue.pop();
+            if (doStats) {
+              state.termDeleteNS += System.nanoTime() - startSegNS;
+            }
+            continue;
+          }
+          state.termSeekCount++;
           TermsEnum.SeekStatus status = state.termsEnum.seekCeil(term);
           if (status == TermsEnum.SeekStatus.FOUND) {
             // fallthrough
@@ -542,6 +573,9 @@ class BufferedUpdatesStream implements Accountable {
               queue.pop();
             }
 
+            if (doStats) {
+              state.termDeleteNS += System.nanoTime() - startSegNS;
+            }
             continue;
           }
         }
@@ -584,16 +618,28 @@ class BufferedUpdatesStream implements Accountable {
         } else {
           queue.updateTop();
         }
+        if (doStats) {
+          state.termDeleteNS += System.nanoTime() - startSegNS;
+        }
       }
     }
 
-    if (infoStream.isEnabled("BD")) {
+    if (doStats) {
       infoStream.message("BD",
                          String.format(Locale.ROOT, "applyTermDeletes took %.1f msec for %d segments and %d packets; %d del terms visited; %d seg terms visited",
                                        (System.nanoTime()-startNS)/1000000.,
                                        numReaders,
                                        updates.terms.size(),
                                        delTermVisitedCount, segTermVisitedCount));
+      for(int i=0;i<numReaders;i++) {
+        SegmentState state = segStates[i];
+        infoStream.message("BD",
+                           String.format(Locale.ROOT, "applyTermDeletes: seg=%s took %.1f msec; %d seeks; %d skipped by max term",
+                                         state.rld.info.info.name,
+                                         state.termDeleteNS/1000000.,
+                                         state.termSeekCount,
+                                         state.termSkipCount));
+      }
     }
 
     return delTermVisitedCount;
@@ -61,6 +61,17 @@ public abstract class DimensionalValues {
      *  consumer should blindly accept the docID. */
     void visit(int docID) throws IOException;
 
+    /** Called with all docs of a leaf cell that's fully contained by the query, so
+     *  that consumers can accept them in bulk.  The consumer should blindly accept
+     *  {@code docIDs[offset]} through {@code docIDs[offset+count-1]}, and must not
+     *  hold on to the array, which is re-used.  By default this calls {@link
+     *  #visit(int)} for each docID. */
+    default void visit(int[] docIDs, int offset, int count) throws IOException {
+      for(int i=0;i<count;i++) {
+        visit(docIDs[offset+i]);
+      }
+    }
+
     /** Called for all docs in a leaf cell that crosses the query.  The consumer
      *  should scrutinize the packedValue to decide whether to accept it. */
     void visit(int docID, byte[] packedValue) throws IOException;
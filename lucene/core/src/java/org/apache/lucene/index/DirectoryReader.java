@@ -86,6 +86,30 @@ public abstract class DirectoryReader extends BaseCompositeReader<LeafReader> {
     return writer.getReader(applyAllDeletes);
   }
 
+  /**
+   * Expert: open a near real time IndexReader from the {@link org.apache.lucene.index.IndexWriter},
+   * controlling whether past deletions should be applied, and whether they should be written to
+   * the index files.
+   *
+   * @param writer The IndexWriter to open from
+   * @param applyAllDeletes If true, all buffered deletes will
+   * be applied (made visible) in the returned reader.
+   * @param writeAllDeletes If true, new deletes will be written
+   * down to index files instead of carried over from writer to
+   * reader directly in heap; this requires {@code applyAllDeletes}.
+   * This is needed if the reader's files are copied elsewhere,
+   * e.g. for near-real-time replication.
+   * @return The new IndexReader
+   * @throws IOException if there is a low-level IO error
+   *
+   * @see #open(IndexWriter,boolean)
+   *
+   * @lucene.experimental
+   */
+  public static DirectoryReader open(final IndexWriter writer, boolean applyAllDeletes, boolean writeAllDeletes) throws IOException {
+    return writer.getReader(applyAllDeletes, writeAllDeletes);
+  }
+
   /** Expert: returns an IndexReader reading the index in the given
    *  {@link IndexCommit}.
    * @param commit the commit point to open
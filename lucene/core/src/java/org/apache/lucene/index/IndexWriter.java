@@ -394,8 +394,26 @@ public class IndexWriter implements Closeable, TwoPhaseCommit, Accountable {
    * @throws IOException If there is a low-level I/O error
    */
   DirectoryReader getReader(boolean applyAllDeletes) throws IOException {
+    return getReader(applyAllDeletes, false);
+  }
+
+  /**
+   * Expert: like {@link #getReader(boolean)}, but if {@code
+   * writeAllDeletes} is true, deletes are also written to
+   * the index files instead of only being carried over to
+   * the reader in heap, so that the returned reader's
+   * segments can be copied to another node (e.g. for
+   * near-real-time replication).
+   *
+   * @lucene.experimental
+   */
+  DirectoryReader getReader(boolean applyAllDeletes, boolean writeAllDeletes) throws IOException {
     ensureOpen();
 
+    if (writeAllDeletes && applyAllDeletes == false) {
+      throw new IllegalArgumentException("applyAllDeletes must be true when writeAllDeletes=true");
+    }
+
     final long tStart = System.currentTimeMillis();
 
     if (infoStream.isEnabled("IW")) {
@@ -431,7 +449,11 @@ public class IndexWriter implements Closeable, TwoPhaseCommit, Accountable {
           // just like we do when loading segments_N
           synchronized(this) {
             anyChanges |= maybeApplyDeletes(applyAllDeletes);
-            r = StandardDirectoryReader.open(this, segmentInfos, applyAllDeletes);
+            if (writeAllDeletes) {
+              // Must move the deletes to disk:
+              readerPool.commit(segmentInfos);
+            }
+            r = StandardDirectoryReader.open(this, segmentInfos, applyAllDeletes, writeAllDeletes);
             if (infoStream.isEnabled("IW")) {
               infoStream.message("IW", "return reader version=" + r.getVersion() + " reader=" + r);
             }
@@ -31,6 +31,7 @@ import org.apache.lucene.util.Bits;
 import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.InPlaceMergeSorter;
 import org.apache.lucene.util.LongValues;
+import org.apache.lucene.util.PriorityQueue;
 import org.apache.lucene.util.RamUsageEstimator;
 import org.apache.lucene.util.packed.PackedInts;
 import org.apache.lucene.util.packed.PackedLongValues;
@@ -481,29 +482,9 @@ public class MultiDocValues {
 
       // enums are not sorted, so let's sort to save memory
       final SegmentMap segmentMap = new SegmentMap(weights);
-      return new OrdinalMap(owner, subs, segmentMap, acceptableOverheadRatio);
-    }
-
-    private static final long BASE_RAM_BYTES_USED = RamUsageEstimator.shallowSizeOfInstance(OrdinalMap.class);
 
-    // cache key of whoever asked for this awful thing
-    final Object owner;
-    // globalOrd -> (globalOrd - segmentOrd) where segmentOrd is the the ordinal in the first segment that contains this term
-    final PackedLongValues globalOrdDeltas;
-    // globalOrd -> first segment container
-    final PackedLongValues firstSegments;
-    // for every segment, segmentOrd -> globalOrd
-    final LongValues segmentToGlobalOrds[];
-    // the map from/to segment ids
-    final SegmentMap segmentMap;
-    // ram usage
-    final long ramBytesUsed;
-    
-    OrdinalMap(Object owner, TermsEnum subs[], SegmentMap segmentMap, float acceptableOverheadRatio) throws IOException {
       // create the ordinal mappings by pulling a termsenum over each sub's 
       // unique terms, and walking a multitermsenum over those
-      this.owner = owner;
-      this.segmentMap = segmentMap;
       // even though we accept an overhead ratio, we keep these ones with COMPACT
       // since they are only used to resolve values given a global ord, which is
       // slow anyway
@@ -552,10 +533,366 @@ public class MultiDocValues {
         globalOrdDeltas.add(globalOrdDelta);
         globalOrd++;
       }
+      return new OrdinalMap(owner, segmentMap, globalOrdDeltas, firstSegments, ordDeltas, ordDeltaBits, acceptableOverheadRatio);
+    }
+
+    /**
+     * Creates an ordinal map over {@code values}, like {@link #build(Object, SortedSetDocValues[], float)},
+     * but re-using the global ordinals of {@code previous} for the subs that did not change since it
+     * was built. This is typically used when an {@link IndexReader} is reopened, in which case only
+     * the terms of new segments need to be merged with the existing global ordinal space, while the
+     * mappings of unchanged segments are only renumbered.
+     * @param previous ordinal map that was built over the previous version of the subs, or null
+     * @param previousSegments for each sub, the index of the identical sub in {@code previous}, or
+     *             -1 if the sub is new
+     * @see #build(Object, SortedSetDocValues[], float)
+     * @lucene.experimental
+     */
+    public static OrdinalMap build(Object owner, SortedSetDocValues[] values, OrdinalMap previous, int[] previousSegments, float acceptableOverheadRatio) throws IOException {
+      final TermsEnum[] subs = new TermsEnum[values.length];
+      final long[] weights = new long[values.length];
+      for (int i = 0; i < values.length; ++i) {
+        subs[i] = values[i].termsEnum();
+        weights[i] = values[i].getValueCount();
+      }
+      return build(owner, subs, weights, previous, previousSegments, acceptableOverheadRatio);
+    }
+
+    /**
+     * Creates an ordinal map over {@code values}, like {@link #build(Object, SortedDocValues[], float)},
+     * but re-using the global ordinals of {@code previous} for the subs that did not change since it
+     * was built.
+     * @see #build(Object, SortedSetDocValues[], OrdinalMap, int[], float)
+     * @lucene.experimental
+     */
+    public static OrdinalMap build(Object owner, SortedDocValues[] values, OrdinalMap previous, int[] previousSegments, float acceptableOverheadRatio) throws IOException {
+      final TermsEnum[] subs = new TermsEnum[values.length];
+      final long[] weights = new long[values.length];
+      for (int i = 0; i < values.length; ++i) {
+        subs[i] = values[i].termsEnum();
+        weights[i] = values[i].getValueCount();
+      }
+      return build(owner, subs, weights, previous, previousSegments, acceptableOverheadRatio);
+    }
+
+    /** 
+     * Incremental build: subs must be dense, ie. {@code valueCounts[i]} is the number of ords of
+     * {@code subs[i]}, and must support {@link TermsEnum#seekCeil}.
+     */
+    private static OrdinalMap build(Object owner, TermsEnum subs[], long[] valueCounts, OrdinalMap previous, int[] previousSegments, float acceptableOverheadRatio) throws IOException {
+      if (subs.length != previousSegments.length) {
+        throw new IllegalArgumentException("subs and previousSegments must have the same length");
+      }
+      if (previous == null) {
+        return build(owner, subs, valueCounts, acceptableOverheadRatio);
+      }
+
+      final int numPrevious = previous.segmentToGlobalOrds.length;
+      final int[] previousToNew = new int[numPrevious];
+      Arrays.fill(previousToNew, -1);
+      int numRetained = 0;
+      final LongValues[] previousGlobalOrds = new LongValues[subs.length];
+      for (int i = 0; i < subs.length; ++i) {
+        final int previousSegment = previousSegments[i];
+        if (previousSegment >= 0) {
+          if (previousSegment >= numPrevious || previousToNew[previousSegment] != -1) {
+            throw new IllegalArgumentException("previousSegments must hold distinct indexes of segments of the previous map (got " + previousSegment + " for sub " + i + ")");
+          }
+          previousToNew[previousSegment] = i;
+          previousGlobalOrds[i] = previous.getGlobalOrds(previousSegment);
+          numRetained++;
+        }
+      }
+      if (numRetained == 0) {
+        return build(owner, subs, valueCounts, acceptableOverheadRatio);
+      }
+
+      final SegmentMap segmentMap = new SegmentMap(valueCounts);
+      final long previousValueCount = previous.getValueCount();
+
+      // First, merge the terms of the new subs, and locate each of them in the previous global ord
+      // space by seeking the retained subs: code is 2*prevOrd+1 if the term already has a previous
+      // global ord, or 2*prevOrd if it sorts right before previous global ord prevOrd (which is
+      // always used by a retained sub, or previousValueCount if it sorts after all of them).
+      final PackedLongValues.Builder codesBuilder = PackedLongValues.monotonicBuilder(PackedInts.COMPACT);
+      final PackedLongValues.Builder newFirstSegmentsBuilder = PackedLongValues.packedBuilder(PackedInts.COMPACT);
+      final PackedLongValues.Builder newFirstOrdsBuilder = PackedLongValues.packedBuilder(PackedInts.COMPACT);
+      final PackedLongValues.Builder[] subToMerged = new PackedLongValues.Builder[subs.length];
+      int numNew = 0;
+      for (int i = 0; i < subs.length; ++i) {
+        if (previousSegments[i] < 0) {
+          subToMerged[i] = PackedLongValues.monotonicBuilder(PackedInts.COMPACT);
+          numNew++;
+        }
+      }
+      if (numNew > 0) {
+        final long[] segmentOrds = new long[subs.length];
+        // current ord of each retained sub: -2 if not positioned yet, -1 if exhausted
+        final long[] retainedOrds = new long[subs.length];
+        Arrays.fill(retainedOrds, -2);
+        final ReaderSlice slices[] = new ReaderSlice[subs.length];
+        final TermsEnumIndex indexes[] = new TermsEnumIndex[numNew];
+        for (int i = 0, j = 0; i < slices.length; i++) {
+          slices[i] = new ReaderSlice(0, 0, i);
+          if (previousSegments[i] < 0) {
+            indexes[j++] = new TermsEnumIndex(subs[i], i);
+          }
+        }
+        final MultiTermsEnum mte = new MultiTermsEnum(slices);
+        mte.reset(indexes);
+        long mergedOrd = 0;
+        BytesRef term;
+        while ((term = mte.next()) != null) {
+          final TermsEnumWithSlice matches[] = mte.getMatchArray();
+          int firstSegmentIndex = Integer.MAX_VALUE;
+          long firstSegmentOrd = -1;
+          for (int i = 0; i < mte.getMatchCount(); i++) {
+            final int sub = matches[i].index;
+            final long segmentOrd = matches[i].terms.ord();
+            if (segmentMap.oldToNew(sub) < firstSegmentIndex) {
+              firstSegmentIndex = segmentMap.oldToNew(sub);
+              firstSegmentOrd = segmentOrd;
+            }
+            while (segmentOrds[sub] <= segmentOrd) {
+              subToMerged[sub].add(mergedOrd);
+              segmentOrds[sub]++;
+            }
+          }
+
+          long code = 2 * previousValueCount;
+          for (int sub = 0; sub < subs.length; ++sub) {
+            long ord = retainedOrds[sub];
+            if (previousSegments[sub] < 0 || ord == -1) {
+              continue;
+            }
+            int cmp = ord == -2 ? -1 : subs[sub].term().compareTo(term);
+            if (cmp < 0) {
+              final TermsEnum.SeekStatus status = subs[sub].seekCeil(term);
+              if (status == TermsEnum.SeekStatus.END) {
+                retainedOrds[sub] = -1;
+                continue;
+              }
+              ord = retainedOrds[sub] = subs[sub].ord();
+              cmp = status == TermsEnum.SeekStatus.FOUND ? 0 : 1;
+            }
+            final long previousOrd = previousGlobalOrds[sub].get(ord);
+            if (cmp == 0) {
+              code = 2 * previousOrd + 1;
+              break;
+            }
+            code = Math.min(code, 2 * previousOrd);
+          }
+          codesBuilder.add(code);
+          newFirstSegmentsBuilder.add(firstSegmentIndex);
+          newFirstOrdsBuilder.add(firstSegmentOrd);
+          mergedOrd++;
+        }
+      }
+      final PackedLongValues codes = codesBuilder.build();
+      final PackedLongValues newFirstSegments = newFirstSegmentsBuilder.build();
+      final PackedLongValues newFirstOrds = newFirstOrdsBuilder.build();
+      final long numMerged = codes.size();
+
+      // Then, walk the previous global ords that are still used in order, and interleave the new
+      // terms to assign the new global ords:
+      final PackedLongValues.Builder previousToGlobalBuilder = PackedLongValues.monotonicBuilder(PackedInts.COMPACT);
+      final PackedLongValues.Builder mergedToGlobalBuilder = PackedLongValues.monotonicBuilder(PackedInts.COMPACT);
+      final PackedLongValues.Builder globalOrdDeltas = PackedLongValues.monotonicBuilder(PackedInts.COMPACT);
+      final PackedLongValues.Builder firstSegments = PackedLongValues.packedBuilder(PackedInts.COMPACT);
+      final PreviousOrdIterator previousOrds;
+      if (numRetained == numPrevious) {
+        previousOrds = new AllPreviousOrds(previous, previousToNew);
+      } else {
+        previousOrds = new RetainedPreviousOrds(previousGlobalOrds, valueCounts, segmentMap);
+      }
+      long globalOrd = 0;
+      long merged = 0;
+      long nextPreviousOrd = 0;
+      long previousOrd;
+      while ((previousOrd = previousOrds.next()) != -1) {
+        // previous ords that are not used anymore:
+        for (; nextPreviousOrd < previousOrd; ++nextPreviousOrd) {
+          previousToGlobalBuilder.add(globalOrd);
+        }
+        // new terms that sort before this one:
+        for (; merged < numMerged && codes.get(merged) == 2 * previousOrd; ++merged) {
+          firstSegments.add(newFirstSegments.get(merged));
+          globalOrdDeltas.add(globalOrd - newFirstOrds.get(merged));
+          mergedToGlobalBuilder.add(globalOrd);
+          globalOrd++;
+        }
+        int firstSegmentIndex = segmentMap.oldToNew(previousOrds.sub);
+        long firstSegmentOrd = previousOrds.subOrd;
+        if (merged < numMerged && codes.get(merged) == 2 * previousOrd + 1) {
+          // also a term of a new sub
+          if (newFirstSegments.get(merged) < firstSegmentIndex) {
+            firstSegmentIndex = (int) newFirstSegments.get(merged);
+            firstSegmentOrd = newFirstOrds.get(merged);
+          }
+          mergedToGlobalBuilder.add(globalOrd);
+          merged++;
+        }
+        previousToGlobalBuilder.add(globalOrd);
+        nextPreviousOrd++;
+        firstSegments.add(firstSegmentIndex);
+        globalOrdDeltas.add(globalOrd - firstSegmentOrd);
+        globalOrd++;
+      }
+      for (; nextPreviousOrd < previousValueCount; ++nextPreviousOrd) {
+        previousToGlobalBuilder.add(globalOrd);
+      }
+      for (; merged < numMerged; ++merged) {
+        assert codes.get(merged) == 2 * previousValueCount;
+        firstSegments.add(newFirstSegments.get(merged));
+        globalOrdDeltas.add(globalOrd - newFirstOrds.get(merged));
+        mergedToGlobalBuilder.add(globalOrd);
+        globalOrd++;
+      }
+      final PackedLongValues previousToGlobal = previousToGlobalBuilder.build();
+      final PackedLongValues mergedToGlobal = mergedToGlobalBuilder.build();
+
+      // Finally, compute the per-segment mappings:
+      final PackedLongValues.Builder[] ordDeltas = new PackedLongValues.Builder[subs.length];
+      final long[] ordDeltaBits = new long[subs.length];
+      for (int i = 0; i < ordDeltas.length; i++) {
+        ordDeltas[i] = PackedLongValues.monotonicBuilder(acceptableOverheadRatio);
+        final int sub = segmentMap.newToOld(i);
+        if (previousSegments[sub] >= 0) {
+          final LongValues subPreviousOrds = previousGlobalOrds[sub];
+          for (long segmentOrd = 0; segmentOrd < valueCounts[sub]; ++segmentOrd) {
+            final long delta = previousToGlobal.get(subPreviousOrds.get(segmentOrd)) - segmentOrd;
+            ordDeltaBits[i] |= delta;
+            ordDeltas[i].add(delta);
+          }
+        } else {
+          final PackedLongValues subMergedOrds = subToMerged[sub].build();
+          assert subMergedOrds.size() == valueCounts[sub];
+          for (long segmentOrd = 0; segmentOrd < subMergedOrds.size(); ++segmentOrd) {
+            final long delta = mergedToGlobal.get(subMergedOrds.get(segmentOrd)) - segmentOrd;
+            ordDeltaBits[i] |= delta;
+            ordDeltas[i].add(delta);
+          }
+        }
+      }
+      return new OrdinalMap(owner, segmentMap, globalOrdDeltas, firstSegments, ordDeltas, ordDeltaBits, acceptableOverheadRatio);
+    }
+
+    /** Iterates over the previous global ords that are still used, and a sub that holds each. */
+    private static abstract class PreviousOrdIterator {
+      /** Sub (index in the new subs) and ord in that sub of the current previous global ord. */
+      int sub;
+      long subOrd;
+
+      /** Returns the next previous global ord that is still used, or -1 when exhausted. */
+      abstract long next();
+    }
+
+    /** All previous segments were retained: all previous global ords are still used. */
+    private static class AllPreviousOrds extends PreviousOrdIterator {
+      private final OrdinalMap previous;
+      private final int[] previousToNew;
+      private long ord = -1;
+
+      AllPreviousOrds(OrdinalMap previous, int[] previousToNew) {
+        this.previous = previous;
+        this.previousToNew = previousToNew;
+      }
+
+      @Override
+      long next() {
+        if (++ord >= previous.getValueCount()) {
+          return -1;
+        }
+        sub = previousToNew[previous.getFirstSegmentNumber(ord)];
+        subOrd = previous.getFirstSegmentOrd(ord);
+        return ord;
+      }
+    }
+
+    /** Some previous segments were dropped: merge the previous global ords of the retained ones. */
+    private static class RetainedPreviousOrds extends PreviousOrdIterator {
+
+      private static class Cursor {
+        final int sub;
+        final int sortedSub;
+        final LongValues previousOrds;
+        final long valueCount;
+        long ord;
+        long previousOrd;
+
+        Cursor(int sub, int sortedSub, LongValues previousOrds, long valueCount) {
+          this.sub = sub;
+          this.sortedSub = sortedSub;
+          this.previousOrds = previousOrds;
+          this.valueCount = valueCount;
+          this.previousOrd = previousOrds.get(0);
+        }
+      }
+
+      private final PriorityQueue<Cursor> queue;
+
+      RetainedPreviousOrds(LongValues[] previousGlobalOrds, long[] valueCounts, SegmentMap segmentMap) {
+        queue = new PriorityQueue<Cursor>(previousGlobalOrds.length) {
+          @Override
+          protected boolean lessThan(Cursor a, Cursor b) {
+            if (a.previousOrd != b.previousOrd) {
+              return a.previousOrd < b.previousOrd;
+            }
+            return a.sortedSub < b.sortedSub;
+          }
+        };
+        for (int i = 0; i < previousGlobalOrds.length; ++i) {
+          if (previousGlobalOrds[i] != null && valueCounts[i] > 0) {
+            queue.add(new Cursor(i, segmentMap.oldToNew(i), previousGlobalOrds[i], valueCounts[i]));
+          }
+        }
+      }
+
+      @Override
+      long next() {
+        if (queue.size() == 0) {
+          return -1;
+        }
+        Cursor top = queue.top();
+        final long previousOrd = top.previousOrd;
+        sub = top.sub;
+        subOrd = top.ord;
+        do {
+          if (++top.ord == top.valueCount) {
+            queue.pop();
+          } else {
+            top.previousOrd = top.previousOrds.get(top.ord);
+            queue.updateTop();
+          }
+          top = queue.top();
+        } while (queue.size() > 0 && top.previousOrd == previousOrd);
+        return previousOrd;
+      }
+    }
+
+    private static final long BASE_RAM_BYTES_USED = RamUsageEstimator.shallowSizeOfInstance(OrdinalMap.class);
+
+    // cache key of whoever asked for this awful thing
+    final Object owner;
+    // globalOrd -> (globalOrd - segmentOrd) where segmentOrd is the the ordinal in the first segment that contains this term
+    final PackedLongValues globalOrdDeltas;
+    // globalOrd -> first segment container
+    final PackedLongValues firstSegments;
+    // for every segment, segmentOrd -> globalOrd
+    final LongValues segmentToGlobalOrds[];
+    // the map from/to segment ids
+    final SegmentMap segmentMap;
+    // ram usage
+    final long ramBytesUsed;
+    
+    private OrdinalMap(Object owner, SegmentMap segmentMap, PackedLongValues.Builder globalOrdDeltas, PackedLongValues.Builder firstSegments,
+                       PackedLongValues.Builder[] ordDeltas, long[] ordDeltaBits, float acceptableOverheadRatio) {
+      this.owner = owner;
+      this.segmentMap = segmentMap;
       this.firstSegments = firstSegments.build();
       this.globalOrdDeltas = globalOrdDeltas.build();
       // ordDeltas is typically the bottleneck, so let's see what we can do to make it faster
-      segmentToGlobalOrds = new LongValues[subs.length];
+      segmentToGlobalOrds = new LongValues[ordDeltas.length];
       long ramBytesUsed = BASE_RAM_BYTES_USED + this.globalOrdDeltas.ramBytesUsed()
           + this.firstSegments.ramBytesUsed() + RamUsageEstimator.shallowSizeOf(segmentToGlobalOrds)
           + segmentMap.ramBytesUsed();
@@ -703,7 +1040,7 @@ public class MultiDocValues {
     LongValues currentGlobalOrds;
     
     /** Creates a new MultiSortedSetDocValues over <code>values</code> */
-    MultiSortedSetDocValues(SortedSetDocValues values[], int docStarts[], OrdinalMap mapping) throws IOException {
+    public MultiSortedSetDocValues(SortedSetDocValues values[], int docStarts[], OrdinalMap mapping) throws IOException {
       assert docStarts.length == values.length + 1;
       this.values = values;
       this.docStarts = docStarts;
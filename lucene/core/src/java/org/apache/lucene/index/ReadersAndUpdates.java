@@ -19,6 +19,7 @@ package org.apache.lucene.index;
 
 import java.io.IOException;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -312,6 +313,13 @@ class ReadersAndUpdates {
       final String field = e.getKey();
       final NumericDocValuesFieldUpdates fieldUpdates = e.getValue();
 
+      final int updatedDocCount = StackedDocValuesUpdates.countDocs(fieldUpdates.iterator());
+      if (StackedDocValuesUpdates.canStack(reader.getFieldInfos().fieldInfo(field), DocValuesType.NUMERIC, updatedDocCount, info.info.maxDoc())) {
+        // only few docs changed: stack a sparse generation on top of the current values instead of rewriting them all
+        stackNumericDVUpdates(infos.fieldInfo(field), fieldUpdates, updatedDocCount, dir, fieldFiles);
+        continue;
+      }
+
       final long nextDocValuesGen = info.getNextDocValuesGen();
       final String segmentSuffix = Long.toString(nextDocValuesGen, Character.MAX_RADIX);
       final long estUpdatesSize = fieldUpdates.ramBytesPerDoc() * info.info.maxDoc();
@@ -319,6 +327,8 @@ class ReadersAndUpdates {
       final FieldInfo fieldInfo = infos.fieldInfo(field);
       assert fieldInfo != null;
       fieldInfo.setDocValuesGen(nextDocValuesGen);
+      // the complete generation includes all previously stacked updates
+      StackedDocValuesUpdates.clearGens(fieldInfo);
       final FieldInfos fieldInfos = new FieldInfos(new FieldInfo[] { fieldInfo });
       // separately also track which files were created for this gen
       final TrackingDirectoryWrapper trackingDir = new TrackingDirectoryWrapper(dir);
@@ -385,6 +395,13 @@ class ReadersAndUpdates {
       final String field = e.getKey();
       final BinaryDocValuesFieldUpdates fieldUpdates = e.getValue();
 
+      final int updatedDocCount = StackedDocValuesUpdates.countDocs(fieldUpdates.iterator());
+      if (StackedDocValuesUpdates.canStack(reader.getFieldInfos().fieldInfo(field), DocValuesType.BINARY, updatedDocCount, info.info.maxDoc())) {
+        // only few docs changed: stack a sparse generation on top of the current values instead of rewriting them all
+        stackBinaryDVUpdates(infos.fieldInfo(field), fieldUpdates, updatedDocCount, dir, fieldFiles);
+        continue;
+      }
+
       final long nextDocValuesGen = info.getNextDocValuesGen();
       final String segmentSuffix = Long.toString(nextDocValuesGen, Character.MAX_RADIX);
       final long estUpdatesSize = fieldUpdates.ramBytesPerDoc() * info.info.maxDoc();
@@ -392,6 +409,8 @@ class ReadersAndUpdates {
       final FieldInfo fieldInfo = infos.fieldInfo(field);
       assert fieldInfo != null;
       fieldInfo.setDocValuesGen(nextDocValuesGen);
+      // the complete generation includes all previously stacked updates
+      StackedDocValuesUpdates.clearGens(fieldInfo);
       final FieldInfos fieldInfos = new FieldInfos(new FieldInfo[] { fieldInfo });
       // separately also track which files were created for this gen
       final TrackingDirectoryWrapper trackingDir = new TrackingDirectoryWrapper(dir);
@@ -451,6 +470,38 @@ class ReadersAndUpdates {
     }
   }
   
+  private void stackNumericDVUpdates(FieldInfo fieldInfo, NumericDocValuesFieldUpdates fieldUpdates, int updatedDocCount,
+      Directory dir, Map<Integer,Set<String>> fieldFiles) throws IOException {
+    final long nextDocValuesGen = info.getNextDocValuesGen();
+    final IOContext updatesContext = new IOContext(new FlushInfo(updatedDocCount, fieldUpdates.ramBytesPerDoc() * updatedDocCount));
+    final TrackingDirectoryWrapper trackingDir = new TrackingDirectoryWrapper(dir);
+    StackedDocValuesUpdates.writeNumeric(trackingDir, info.info, nextDocValuesGen, fieldInfo, updatedDocCount, fieldUpdates.iterator(), updatesContext);
+    addStackedGen(fieldInfo, nextDocValuesGen, updatedDocCount, trackingDir.getCreatedFiles(), fieldFiles);
+  }
+
+  private void stackBinaryDVUpdates(FieldInfo fieldInfo, BinaryDocValuesFieldUpdates fieldUpdates, int updatedDocCount,
+      Directory dir, Map<Integer,Set<String>> fieldFiles) throws IOException {
+    final long nextDocValuesGen = info.getNextDocValuesGen();
+    final IOContext updatesContext = new IOContext(new FlushInfo(updatedDocCount, fieldUpdates.ramBytesPerDoc() * updatedDocCount));
+    final TrackingDirectoryWrapper trackingDir = new TrackingDirectoryWrapper(dir);
+    StackedDocValuesUpdates.writeBinary(trackingDir, info.info, nextDocValuesGen, fieldInfo, updatedDocCount, fieldUpdates.iterator(), updatesContext);
+    addStackedGen(fieldInfo, nextDocValuesGen, updatedDocCount, trackingDir.getCreatedFiles(), fieldFiles);
+  }
+
+  private void addStackedGen(FieldInfo fieldInfo, long gen, int updatedDocCount, Set<String> createdFiles, Map<Integer,Set<String>> fieldFiles) {
+    assert fieldInfo != null;
+    StackedDocValuesUpdates.addGen(fieldInfo, gen, updatedDocCount);
+    info.advanceDocValuesGen();
+    assert !fieldFiles.containsKey(fieldInfo.number);
+    // the field still needs the files of its last complete generation and of all previously stacked ones:
+    final Set<String> files = new HashSet<>(createdFiles);
+    final Set<String> previousFiles = info.getDocValuesUpdatesFiles().get(fieldInfo.number);
+    if (previousFiles != null) {
+      files.addAll(previousFiles);
+    }
+    fieldFiles.put(fieldInfo.number, files);
+  }
+
   private Set<String> writeFieldInfosGen(FieldInfos fieldInfos, Directory dir, DocValuesFormat dvFormat, 
       FieldInfosFormat infosFormat) throws IOException {
     final long nextFieldInfosGen = info.getNextFieldInfosGen();
@@ -46,6 +46,7 @@ class SegmentDocValuesProducer extends DocValuesProducer {
   final Map<String,DocValuesProducer> dvProducersByField = new HashMap<>();
   final Set<DocValuesProducer> dvProducers = Collections.newSetFromMap(new IdentityHashMap<DocValuesProducer,Boolean>());
   final List<Long> dvGens = new ArrayList<>();
+  final Map<String,StackedDocValuesUpdates.Overlay> overlaysByField = new HashMap<>();
   
   /**
    * Creates a new producer that handles updated docvalues fields
@@ -80,6 +81,11 @@ class SegmentDocValuesProducer extends DocValuesProducer {
           dvProducers.add(dvp);
           dvProducersByField.put(fi.name, dvp);
         }
+        // sparse updates stacked on top of the last complete generation are always outside of CFS
+        final StackedDocValuesUpdates.Overlay overlay = StackedDocValuesUpdates.read(si.info.dir, si.info, fi);
+        if (overlay != null) {
+          overlaysByField.put(fi.name, overlay);
+        }
       }
       success = true;
     } finally {
@@ -97,6 +103,10 @@ class SegmentDocValuesProducer extends DocValuesProducer {
   public NumericDocValues getNumeric(FieldInfo field) throws IOException {
     DocValuesProducer dvProducer = dvProducersByField.get(field.name);
     assert dvProducer != null;
+    final StackedDocValuesUpdates.Overlay overlay = overlaysByField.get(field.name);
+    if (overlay != null) {
+      return overlay.wrap(dvProducer.getNumeric(field));
+    }
     return dvProducer.getNumeric(field);
   }
 
@@ -104,6 +114,10 @@ class SegmentDocValuesProducer extends DocValuesProducer {
   public BinaryDocValues getBinary(FieldInfo field) throws IOException {
     DocValuesProducer dvProducer = dvProducersByField.get(field.name);
     assert dvProducer != null;
+    final StackedDocValuesUpdates.Overlay overlay = overlaysByField.get(field.name);
+    if (overlay != null) {
+      return overlay.wrap(dvProducer.getBinary(field));
+    }
     return dvProducer.getBinary(field);
   }
 
@@ -132,6 +146,10 @@ class SegmentDocValuesProducer extends DocValuesProducer {
   public Bits getDocsWithField(FieldInfo field) throws IOException {
     DocValuesProducer dvProducer = dvProducersByField.get(field.name);
     assert dvProducer != null;
+    final StackedDocValuesUpdates.Overlay overlay = overlaysByField.get(field.name);
+    if (overlay != null) {
+      return overlay.wrap(dvProducer.getDocsWithField(field));
+    }
     return dvProducer.getDocsWithField(field);
   }
 
@@ -156,6 +174,10 @@ class SegmentDocValuesProducer extends DocValuesProducer {
     for (DocValuesProducer producer : dvProducers) {
       ramBytesUsed += producer.ramBytesUsed();
     }
+    ramBytesUsed += overlaysByField.size() * 2 * RamUsageEstimator.NUM_BYTES_OBJECT_REF;
+    for (Accountable overlay : overlaysByField.values()) {
+      ramBytesUsed += overlay.ramBytesUsed();
+    }
     return ramBytesUsed;
   }
 
@@ -165,6 +187,9 @@ class SegmentDocValuesProducer extends DocValuesProducer {
     for (Accountable producer : dvProducers) {
       resources.add(Accountables.namedAccountable("delegate", producer));
     }
+    for (Map.Entry<String,StackedDocValuesUpdates.Overlay> e : overlaysByField.entrySet()) {
+      resources.add(Accountables.namedAccountable("stacked updates field '" + e.getKey() + "'", e.getValue()));
+    }
     return Collections.unmodifiableList(resources);
   }
 
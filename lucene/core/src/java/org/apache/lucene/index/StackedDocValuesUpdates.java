@@ -0,0 +1,358 @@
+package org.apache.lucene.index;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.lucene.codecs.CodecUtil;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.store.ChecksumIndexInput;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexOutput;
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.RamUsageEstimator;
+
+/**
+ * Writes and reads sparse doc values update generations.
+ * <p>
+ * When only a small fraction of a segment's documents receive numeric or
+ * binary doc values updates, writing a complete new doc values generation
+ * for the field is wasteful. Instead, the updated documents and their new
+ * values are written to a small {@code .dvu} file, and the generation is
+ * recorded in the field's attributes. Readers load all stacked generations
+ * into a sorted in-memory overlay, which is consulted before the field's
+ * last complete generation.
+ * <p>
+ * Once a field has too many stacked generations, or they cover too many
+ * documents, the next update writes a complete generation again (which
+ * reads through the overlay), compacting the stack away. Merges compact it
+ * as well.
+ *
+ * @lucene.internal
+ */
+final class StackedDocValuesUpdates {
+
+  /** Extension of sparse update generation files. */
+  static final String EXTENSION = "dvu";
+
+  static final String CODEC_NAME = "StackedDocValuesUpdates";
+  static final int VERSION_START = 0;
+  static final int VERSION_CURRENT = VERSION_START;
+
+  /** {@link FieldInfo} attribute listing the stacked generations, oldest first. */
+  static final String GENS_KEY = StackedDocValuesUpdates.class.getSimpleName() + ".gens";
+
+  /** {@link FieldInfo} attribute holding the number of documents updated across all stacked generations. */
+  static final String DOC_COUNT_KEY = StackedDocValuesUpdates.class.getSimpleName() + ".docCount";
+
+  /** Maximum number of stacked generations per field before updates are compacted into a complete generation. */
+  static final int MAX_STACKED_GENS = 10;
+
+  /** Stacked generations may cover at most 1/MAX_DOC_RATIO of the segment's documents. */
+  static final int MAX_DOC_RATIO = 100;
+
+  private StackedDocValuesUpdates() {} // no instance
+
+  /** Returns the stacked generations of this field, oldest first. */
+  static long[] getGens(FieldInfo fi) {
+    final String gens = fi.getAttribute(GENS_KEY);
+    if (gens == null) {
+      return new long[0];
+    }
+    final String[] parts = gens.split(",");
+    final long[] result = new long[parts.length];
+    for (int i = 0; i < parts.length; i++) {
+      result[i] = Long.parseLong(parts[i]);
+    }
+    return result;
+  }
+
+  /** Returns the number of documents updated across all stacked generations of this field. */
+  static int getDocCount(FieldInfo fi) {
+    final String docCount = fi.getAttribute(DOC_COUNT_KEY);
+    return docCount == null ? 0 : Integer.parseInt(docCount);
+  }
+
+  /** Records a new stacked generation covering {@code docCount} documents. */
+  static void addGen(FieldInfo fi, long gen, int docCount) {
+    final String gens = fi.getAttribute(GENS_KEY);
+    fi.putAttribute(GENS_KEY, gens == null ? Long.toString(gen) : gens + "," + gen);
+    fi.putAttribute(DOC_COUNT_KEY, Integer.toString(getDocCount(fi) + docCount));
+  }
+
+  /** Forgets all stacked generations, after a complete generation was written for the field. */
+  static void clearGens(FieldInfo fi) {
+    fi.attributes().remove(GENS_KEY);
+    fi.attributes().remove(DOC_COUNT_KEY);
+  }
+
+  /**
+   * Returns true if {@code docCount} updated documents can be written as a
+   * stacked generation on top of the current values of the field.
+   */
+  static boolean canStack(FieldInfo readerFieldInfo, DocValuesType type, int docCount, int maxDoc) {
+    if (readerFieldInfo == null || readerFieldInfo.getDocValuesType() != type) {
+      // new field, or its type changes: need a complete generation
+      return false;
+    }
+    if (getGens(readerFieldInfo).length >= MAX_STACKED_GENS) {
+      return false;
+    }
+    return (long) getDocCount(readerFieldInfo) + docCount <= maxDoc / MAX_DOC_RATIO;
+  }
+
+  /** Returns the number of distinct documents the iterator returns, and resets it. */
+  static int countDocs(DocValuesFieldUpdates.Iterator iterator) {
+    iterator.reset();
+    int count = 0;
+    while (iterator.nextDoc() != DocIdSetIterator.NO_MORE_DOCS) {
+      count++;
+    }
+    iterator.reset();
+    return count;
+  }
+
+  /** Returns the name of the file holding the stacked generation {@code gen}. */
+  static String fileName(SegmentInfo si, long gen) {
+    return IndexFileNames.segmentFileName(si.name, Long.toString(gen, Character.MAX_RADIX), EXTENSION);
+  }
+
+  /** Writes a stacked generation of numeric updates. */
+  static void writeNumeric(Directory dir, SegmentInfo si, long gen, FieldInfo fi, int docCount,
+      NumericDocValuesFieldUpdates.Iterator iterator, IOContext context) throws IOException {
+    try (IndexOutput out = dir.createOutput(fileName(si, gen), context)) {
+      writeHeader(out, si, gen, fi, DocValuesType.NUMERIC, docCount);
+      iterator.reset();
+      int lastDoc = 0;
+      for (int doc = iterator.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = iterator.nextDoc()) {
+        out.writeVInt(doc - lastDoc);
+        out.writeZLong(iterator.value());
+        lastDoc = doc;
+      }
+      CodecUtil.writeFooter(out);
+    }
+  }
+
+  /** Writes a stacked generation of binary updates. */
+  static void writeBinary(Directory dir, SegmentInfo si, long gen, FieldInfo fi, int docCount,
+      BinaryDocValuesFieldUpdates.Iterator iterator, IOContext context) throws IOException {
+    try (IndexOutput out = dir.createOutput(fileName(si, gen), context)) {
+      writeHeader(out, si, gen, fi, DocValuesType.BINARY, docCount);
+      iterator.reset();
+      int lastDoc = 0;
+      for (int doc = iterator.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = iterator.nextDoc()) {
+        final BytesRef value = iterator.value();
+        out.writeVInt(doc - lastDoc);
+        out.writeVInt(value.length);
+        out.writeBytes(value.bytes, value.offset, value.length);
+        lastDoc = doc;
+      }
+      CodecUtil.writeFooter(out);
+    }
+  }
+
+  private static void writeHeader(IndexOutput out, SegmentInfo si, long gen, FieldInfo fi, DocValuesType type, int docCount) throws IOException {
+    CodecUtil.writeIndexHeader(out, CODEC_NAME, VERSION_CURRENT, si.getId(), Long.toString(gen, Character.MAX_RADIX));
+    out.writeVInt(fi.number);
+    out.writeByte((byte) type.ordinal());
+    out.writeVInt(docCount);
+  }
+
+  /** Reads all stacked generations of the field, and merges them into one overlay; returns null if there are none. */
+  static Overlay read(Directory dir, SegmentInfo si, FieldInfo fi) throws IOException {
+    final long[] gens = getGens(fi);
+    if (gens.length == 0) {
+      return null;
+    }
+    final DocValuesType type = fi.getDocValuesType();
+    if (type != DocValuesType.NUMERIC && type != DocValuesType.BINARY) {
+      throw new CorruptIndexException("stacked updates for field \"" + fi.name + "\" of type " + type, fi.getAttribute(GENS_KEY));
+    }
+    Overlay overlay = null;
+    for (long gen : gens) {
+      final Overlay next = readGen(dir, si, gen, fi);
+      overlay = overlay == null ? next : overlay.stack(next);
+    }
+    return overlay;
+  }
+
+  private static Overlay readGen(Directory dir, SegmentInfo si, long gen, FieldInfo fi) throws IOException {
+    final String fileName = fileName(si, gen);
+    try (ChecksumIndexInput in = dir.openChecksumInput(fileName, IOContext.READONCE)) {
+      Throwable priorE = null;
+      Overlay overlay = null;
+      try {
+        CodecUtil.checkIndexHeader(in, CODEC_NAME, VERSION_START, VERSION_CURRENT, si.getId(), Long.toString(gen, Character.MAX_RADIX));
+        final int fieldNumber = in.readVInt();
+        if (fieldNumber != fi.number) {
+          throw new CorruptIndexException("expected field number " + fi.number + " but got " + fieldNumber, in);
+        }
+        final int typeOrd = in.readByte();
+        if (typeOrd != fi.getDocValuesType().ordinal()) {
+          throw new CorruptIndexException("expected doc values type " + fi.getDocValuesType() + " but got ord " + typeOrd, in);
+        }
+        final int docCount = in.readVInt();
+        final int[] docs = new int[docCount];
+        if (fi.getDocValuesType() == DocValuesType.NUMERIC) {
+          final long[] values = new long[docCount];
+          int doc = 0;
+          for (int i = 0; i < docCount; i++) {
+            doc += in.readVInt();
+            docs[i] = doc;
+            values[i] = in.readZLong();
+          }
+          overlay = new Overlay(docs, values, null);
+        } else {
+          final BytesRef[] values = new BytesRef[docCount];
+          int doc = 0;
+          for (int i = 0; i < docCount; i++) {
+            doc += in.readVInt();
+            docs[i] = doc;
+            final BytesRef value = new BytesRef(in.readVInt());
+            in.readBytes(value.bytes, 0, value.bytes.length);
+            value.length = value.bytes.length;
+            values[i] = value;
+          }
+          overlay = new Overlay(docs, null, values);
+        }
+      } catch (Throwable exception) {
+        priorE = exception;
+      } finally {
+        CodecUtil.checkFooter(in, priorE);
+      }
+      return overlay;
+    }
+  }
+
+  /** Updated values of a field, sorted by docID, that take precedence over its last complete generation. */
+  static final class Overlay implements Accountable {
+
+    private static final long BASE_RAM_BYTES_USED = RamUsageEstimator.shallowSizeOfInstance(Overlay.class);
+
+    final int[] docs;
+    final long[] numericValues;
+    final BytesRef[] binaryValues;
+
+    Overlay(int[] docs, long[] numericValues, BytesRef[] binaryValues) {
+      this.docs = docs;
+      this.numericValues = numericValues;
+      this.binaryValues = binaryValues;
+    }
+
+    /** Returns the index of the doc in the overlay, or a negative value if it was not updated. */
+    int indexOf(int doc) {
+      return Arrays.binarySearch(docs, doc);
+    }
+
+    /** Returns a new overlay where values from {@code newer} replace the ones of this overlay. */
+    Overlay stack(Overlay newer) {
+      final boolean numeric = numericValues != null;
+      final int[] mergedDocs = new int[docs.length + newer.docs.length];
+      final long[] mergedNumeric = numeric ? new long[mergedDocs.length] : null;
+      final BytesRef[] mergedBinary = numeric ? null : new BytesRef[mergedDocs.length];
+      int i = 0, j = 0, upto = 0;
+      while (i < docs.length || j < newer.docs.length) {
+        final int cmp;
+        if (i == docs.length) {
+          cmp = 1;
+        } else if (j == newer.docs.length) {
+          cmp = -1;
+        } else {
+          cmp = Integer.compare(docs[i], newer.docs[j]);
+        }
+        if (cmp < 0) {
+          mergedDocs[upto] = docs[i];
+          if (numeric) {
+            mergedNumeric[upto] = numericValues[i];
+          } else {
+            mergedBinary[upto] = binaryValues[i];
+          }
+          i++;
+        } else {
+          if (cmp == 0) {
+            // the newer generation wins
+            i++;
+          }
+          mergedDocs[upto] = newer.docs[j];
+          if (numeric) {
+            mergedNumeric[upto] = newer.numericValues[j];
+          } else {
+            mergedBinary[upto] = newer.binaryValues[j];
+          }
+          j++;
+        }
+        upto++;
+      }
+      return new Overlay(Arrays.copyOf(mergedDocs, upto),
+                         numeric ? Arrays.copyOf(mergedNumeric, upto) : null,
+                         numeric ? null : Arrays.copyOf(mergedBinary, upto));
+    }
+
+    NumericDocValues wrap(final NumericDocValues in) {
+      return new NumericDocValues() {
+        @Override
+        public long get(int docID) {
+          final int index = indexOf(docID);
+          return index >= 0 ? numericValues[index] : in.get(docID);
+        }
+      };
+    }
+
+    BinaryDocValues wrap(final BinaryDocValues in) {
+      return new BinaryDocValues() {
+        @Override
+        public BytesRef get(int docID) {
+          final int index = indexOf(docID);
+          return index >= 0 ? binaryValues[index] : in.get(docID);
+        }
+      };
+    }
+
+    Bits wrap(final Bits in) {
+      return new Bits() {
+        @Override
+        public boolean get(int index) {
+          return indexOf(index) >= 0 || in.get(index);
+        }
+
+        @Override
+        public int length() {
+          return in.length();
+        }
+      };
+    }
+
+    @Override
+    public long ramBytesUsed() {
+      long ramBytesUsed = BASE_RAM_BYTES_USED + RamUsageEstimator.sizeOf(docs);
+      if (numericValues != null) {
+        ramBytesUsed += RamUsageEstimator.sizeOf(numericValues);
+      } else {
+        ramBytesUsed += RamUsageEstimator.shallowSizeOf(binaryValues);
+        for (BytesRef value : binaryValues) {
+          ramBytesUsed += RamUsageEstimator.NUM_BYTES_OBJECT_HEADER + RamUsageEstimator.sizeOf(value.bytes);
+        }
+      }
+      return ramBytesUsed;
+    }
+  }
+}
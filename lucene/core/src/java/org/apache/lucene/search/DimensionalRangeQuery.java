@@ -255,6 +255,12 @@ public class DimensionalRangeQuery extends Query {
                              result.add(docID);
                            }
 
+                           @Override
+                           public void visit(int[] docIDs, int offset, int count) {
+                             hitCount[0] += count;
+                             result.add(docIDs, offset, count);
+                           }
+
                            @Override
                            public void visit(int docID, byte[] packedValue) {
                              for(int dim=0;dim<numDims;dim++) {
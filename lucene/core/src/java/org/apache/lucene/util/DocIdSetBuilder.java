@@ -149,6 +149,24 @@ public final class DocIdSetBuilder {
     }
   }
 
+  /**
+   * Add {@code count} documents from {@code docs}, starting at {@code offset}, to
+   * this builder at once.
+   * NOTE: doc IDs do not need to be provided in order.
+   */
+  public void add(int[] docs, int offset, int count) {
+    grow(count);
+    if (bitSet != null) {
+      for (int i = 0; i < count; ++i) {
+        bitSet.set(docs[offset + i]);
+      }
+    } else {
+      assert bufferSize + count <= buffer.length;
+      System.arraycopy(docs, offset, buffer, bufferSize, count);
+      bufferSize += count;
+    }
+  }
+
   private static int dedup(int[] arr, int length) {
     if (length == 0) {
       return 0;
@@ -36,7 +36,7 @@ import org.apache.lucene.util.StringHelper;
 
 public class BKDReader implements Accountable {
   // Packed array of byte[] holding all split values in the full binary tree:
-  final private byte[] splitPackedValues; 
+  final byte[] splitPackedValues; 
   final long[] leafBlockFPs;
   final private int leafNodeOffset;
   final int numDims;
@@ -241,7 +241,9 @@ public class BKDReader implements Accountable {
     }
   }
 
-  static final class IntersectState {
+  /** Used to track all state for a single call to {@link #intersect}, or for visiting single
+   *  leaf blocks with {@link #visitLeafBlockValues}. */
+  public static final class IntersectState {
     final IndexInput in;
     final int[] scratchDocIDs;
     final byte[] scratchPackedValue;
@@ -262,23 +264,91 @@ public class BKDReader implements Accountable {
   }
 
   public void intersect(IntersectVisitor visitor) throws IOException {
-    IntersectState state = new IntersectState(in.clone(), numDims,
-                                              packedBytesLength,
-                                              maxPointsInLeafNode,
-                                              visitor);
+    IntersectState state = getIntersectState(visitor);
     byte[] rootMinPacked = new byte[packedBytesLength];
     byte[] rootMaxPacked = new byte[packedBytesLength];
     Arrays.fill(rootMaxPacked, (byte) 0xff);
     intersect(state, 1, rootMinPacked, rootMaxPacked);
   }
 
+  /** Create a new {@link IntersectState}, for visiting leaf blocks directly with {@link #visitLeafBlockValues}. */
+  public IntersectState getIntersectState(IntersectVisitor visitor) {
+    return new IntersectState(in.clone(), numDims,
+                              packedBytesLength,
+                              maxPointsInLeafNode,
+                              visitor);
+  }
+
+  /** Number of dimensions of the indexed points. */
+  public int getNumDimensions() {
+    return numDims;
+  }
+
+  /** Number of bytes in each dimension of the indexed points. */
+  public int getBytesPerDimension() {
+    return bytesPerDim;
+  }
+
+  /** Returns true if this node, in the same numbering that {@link #intersect} uses (the root is
+   *  node 1, and the children of node N are 2*N and 2*N+1), is a leaf block. */
+  public boolean isLeafNode(int nodeID) {
+    return nodeID >= leafNodeOffset;
+  }
+
+  /** Copies the split value of this inner node into {@code splitPackedValue}, at the offset
+   *  of its split dimension, and returns the split dimension.  The left child holds values
+   *  up to (inclusive) the split value, and the right child from (inclusive) the split value. */
+  public int copySplitValue(int nodeID, byte[] splitPackedValue) {
+    assert isLeafNode(nodeID) == false;
+    int address = nodeID * (bytesPerDim+1);
+    int splitDim = splitPackedValues[address] & 0xff;
+    assert splitDim < numDims;
+    System.arraycopy(splitPackedValues, address+1, splitPackedValue, splitDim*bytesPerDim, bytesPerDim);
+    return splitDim;
+  }
+
+  /** Visits all docIDs and values of this leaf block with {@link IntersectVisitor#visit(int,byte[])}
+   *  of the state's visitor. */
+  public void visitLeafBlockValues(int nodeID, IntersectState state) throws IOException {
+    assert isLeafNode(nodeID);
+    int leafID = nodeID - leafNodeOffset;
+
+    // In the unbalanced case it's possible the left most node only has one child:
+    if (leafID < leafBlockFPs.length) {
+      int count = readDocIDs(state.in, leafBlockFPs[leafID], state.scratchDocIDs);
+      visitDocValues(state.commonPrefixLengths, state.scratchPackedValue, state.in, state.scratchDocIDs, count, state.visitor);
+    }
+  }
+
+  /** Returns the number of points in this leaf block, reading only the block's header. */
+  public int getLeafPointCount(int nodeID, IntersectState state) throws IOException {
+    assert isLeafNode(nodeID);
+    int leafID = nodeID - leafNodeOffset;
+    if (leafID < leafBlockFPs.length) {
+      state.in.seek(leafBlockFPs[leafID]);
+      return state.in.readVInt();
+    } else {
+      return 0;
+    }
+  }
+
+  /** Hands all docIDs of this leaf block at once to {@link IntersectVisitor#visit(int[],int,int)}
+   *  of the state's visitor, without reading the values. */
+  public void visitLeafBlockDocIDs(int nodeID, IntersectState state) throws IOException {
+    assert isLeafNode(nodeID);
+    int leafID = nodeID - leafNodeOffset;
+    if (leafID < leafBlockFPs.length) {
+      visitDocIDs(state.in, leafBlockFPs[leafID], state.scratchDocIDs, state.visitor);
+    }
+  }
+
   /** Fast path: this is called when the query box fully encompasses all cells under this node. */
   private void addAll(IntersectState state, int nodeID) throws IOException {
     //System.out.println("R: addAll nodeID=" + nodeID);
 
     if (nodeID >= leafNodeOffset) {
       //System.out.println("ADDALL");
-      visitDocIDs(state.in, leafBlockFPs[nodeID-leafNodeOffset], state.visitor);
+      visitDocIDs(state.in, leafBlockFPs[nodeID-leafNodeOffset], state.scratchDocIDs, state.visitor);
       // TODO: we can assert that the first value here in fact matches what the index claimed?
     } else {
       addAll(state, 2*nodeID);
@@ -286,17 +356,12 @@ public class BKDReader implements Accountable {
     }
   }
 
-  protected void visitDocIDs(IndexInput in, long blockFP, IntersectVisitor visitor) throws IOException {
+  /** Hands all docIDs of the leaf block to the visitor at once, using {@code scratchDocIDs} as the buffer. */
+  protected void visitDocIDs(IndexInput in, long blockFP, int[] scratchDocIDs, IntersectVisitor visitor) throws IOException {
     // Leaf node
-    in.seek(blockFP);
-      
-    // How many points are stored in this leaf cell:
-    int count = in.readVInt();
+    int count = readDocIDs(in, blockFP, scratchDocIDs);
     visitor.grow(count);
-
-    for(int i=0;i<count;i++) {
-      visitor.visit(in.readInt());
-    }
+    visitor.visit(scratchDocIDs, 0, count);
   }
 
   protected int readDocIDs(IndexInput in, long blockFP, int[] docIDs) throws IOException {
@@ -359,16 +424,8 @@ public class BKDReader implements Accountable {
     if (nodeID >= leafNodeOffset) {
       // TODO: we can assert that the first value here in fact matches what the index claimed?
 
-      int leafID = nodeID - leafNodeOffset;
-      
-      // In the unbalanced case it's possible the left most node only has one child:
-      if (leafID < leafBlockFPs.length) {
-        // Leaf node; scan and filter all points in this block:
-        int count = readDocIDs(state.in, leafBlockFPs[leafID], state.scratchDocIDs);
-
-        // Again, this time reading values and checking with the visitor
-        visitDocValues(state.commonPrefixLengths, state.scratchPackedValue, state.in, state.scratchDocIDs, count, state.visitor);
-      }
+      // Leaf node; scan and filter all points in this block:
+      visitLeafBlockValues(nodeID, state);
 
     } else {
       
@@ -22,13 +22,23 @@ import java.io.EOFException;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.lucene.codecs.CodecUtil;
 import org.apache.lucene.index.MergeState;
 import org.apache.lucene.store.ByteArrayDataInput;
 import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FilterDirectory;
+import org.apache.lucene.store.IOContext;
 import org.apache.lucene.store.IndexInput;
 import org.apache.lucene.store.IndexOutput;
 import org.apache.lucene.store.TrackingDirectoryWrapper;
@@ -44,6 +54,7 @@ import org.apache.lucene.util.OfflineSorter.ByteSequencesWriter;
 import org.apache.lucene.util.PriorityQueue;
 import org.apache.lucene.util.RamUsageEstimator;
 import org.apache.lucene.util.StringHelper;
+import org.apache.lucene.util.ThreadInterruptedException;
 
 // TODO
 //   - the compression is somewhat stupid now (delta vInt for 1024 docIDs, no compression for the byte[] values even though they have high locality)
@@ -54,7 +65,6 @@ import org.apache.lucene.util.StringHelper;
 //     (monotonic) long[] leafBlockFPs; or we could use MonotonicLongValues ... but then
 //     the index is already plenty small: 60M OSM points --> 1.1 MB with 128 points
 //     per leaf, and you can reduce that by putting more points per leaf
-//   - we could use threads while building; the higher nodes are very parallelizable
 
 /** Recursively builds a block KD-tree to assign all incoming points in N-dim space to smaller
  *  and smaller N-dim rectangles (cells) until the number of points in a given
@@ -71,6 +81,10 @@ import org.apache.lucene.util.StringHelper;
  *  <p>This consumes heap during writing: it allocates a <code>LongBitSet(numPoints)</code>, 
  *  and then uses up to the specified {@code maxMBSortInHeap} heap space for writing.
  *
+ *  <p>If an executor is provided with {@link #setExecutor}, {@link #finish} sorts the dimensions
+ *  concurrently, and once the top levels of the tree are split, builds the independent subtrees
+ *  concurrently as well.  The written tree is identical to the one written by a single thread.
+ *
  *  <p>
  *  <b>NOTE</b>: This can write at most Integer.MAX_VALUE * <code>maxPointsInLeafNode</code> total points, and
  *
@@ -104,12 +118,11 @@ public class BKDWriter implements Closeable {
   protected final int packedBytesLength;
 
   final TrackingDirectoryWrapper tempDir;
+
+  /** Counts the bytes of temp files as they are deleted */
+  private final AtomicLong tempBytesWritten = new AtomicLong();
   final String tempFileNamePrefix;
 
-  final byte[] scratchDiff;
-  final byte[] scratchPackedValue;
-  final byte[] scratch1;
-  final byte[] scratch2;
   final int[] commonPrefixLengths;
 
   private OfflinePointWriter offlinePointWriter;
@@ -121,6 +134,9 @@ public class BKDWriter implements Closeable {
 
   private long pointCount;
 
+  private ExecutorService executor;
+  private int maxConcurrentSubtrees;
+
   public BKDWriter(Directory tempDir, String tempFileNamePrefix, int numDims, int bytesPerDim) throws IOException {
     this(tempDir, tempFileNamePrefix, numDims, bytesPerDim, DEFAULT_MAX_POINTS_IN_LEAF_NODE, DEFAULT_MAX_MB_SORT_IN_HEAP);
   }
@@ -129,17 +145,26 @@ public class BKDWriter implements Closeable {
     verifyParams(numDims, maxPointsInLeafNode, maxMBSortInHeap);
     // We use tracking dir to deal with removing files on exception, so each place that
     // creates temp files doesn't need crazy try/finally/sucess logic:
-    this.tempDir = new TrackingDirectoryWrapper(tempDir);
+    this.tempDir = new TrackingDirectoryWrapper(new FilterDirectory(tempDir) {
+        @Override
+        public void deleteFile(String name) throws IOException {
+          long length;
+          try {
+            length = in.fileLength(name);
+          } catch (IOException ioe) {
+            // let deleteFile report the problem
+            length = 0;
+          }
+          in.deleteFile(name);
+          tempBytesWritten.addAndGet(length);
+        }
+      });
     this.tempFileNamePrefix = tempFileNamePrefix;
     this.maxPointsInLeafNode = maxPointsInLeafNode;
     this.numDims = numDims;
     this.bytesPerDim = bytesPerDim;
     packedBytesLength = numDims * bytesPerDim;
 
-    scratchDiff = new byte[bytesPerDim];
-    scratchPackedValue = new byte[packedBytesLength];
-    scratch1 = new byte[packedBytesLength];
-    scratch2 = new byte[packedBytesLength];
     commonPrefixLengths = new int[numDims];
 
     // dimensional values (numDims * bytesPerDim) + ord (long) + docID (int)
@@ -182,6 +207,21 @@ public class BKDWriter implements Closeable {
     }
   }
 
+  /** Expert: uses the provided {@link ExecutorService} during {@link #finish} to sort each dimension
+   *  concurrently and to build up to {@code maxConcurrentSubtrees} (rounded up to a power of 2)
+   *  independent subtrees of the tree concurrently.  Each concurrent subtree may use up to
+   *  {@code maxMBSortInHeap} heap space, and a <code>LongBitSet(numPoints)</code> when indexing
+   *  more than one dimension.  Tasks that the executor rejects, or has not started by the time
+   *  their result is needed, run on the calling thread.  Pass null to build on the calling
+   *  thread only (the default). */
+  public void setExecutor(ExecutorService executor, int maxConcurrentSubtrees) {
+    if (executor != null && maxConcurrentSubtrees < 1) {
+      throw new IllegalArgumentException("maxConcurrentSubtrees must be >= 1 (got: " + maxConcurrentSubtrees + ")");
+    }
+    this.executor = executor;
+    this.maxConcurrentSubtrees = maxConcurrentSubtrees;
+  }
+
   /** If the current segment has too many points then we switchover to temp files / offline sort. */
   private void switchToOffline() throws IOException {
 
@@ -221,6 +261,13 @@ public class BKDWriter implements Closeable {
     return pointCount;
   }
 
+  /** Returns how many bytes were written to temporary files (offline sort partitions, and partitions while
+   *  recursing) so far.  Temporary files are accounted for once they are deleted, which {@link #finish} and
+   *  {@link #merge} do before they return. */
+  public long getTempBytesWritten() {
+    return tempBytesWritten.get();
+  }
+
   private static class MergeReader {
     final BKDReader bkd;
     final BKDReader.IntersectState state;
@@ -327,13 +374,14 @@ public class BKDWriter implements Closeable {
     }
   }
 
-  /** More efficient bulk-add for incoming {@link BKDReader}s.  This does a merge sort of the already
-   *  sorted values and currently only works when numDims==1.  This returns -1 if all documents containing
-   *  dimensional values were deleted. */
+  /** More efficient bulk-add for incoming {@link BKDReader}s.  When numDims==1 this does a merge sort of the
+   *  already sorted values.  Otherwise, this re-uses the leaf blocks and split values of the incoming readers,
+   *  only remapping (and dropping deleted) docIDs, so nothing needs to be sorted, if no leaf block loses all its
+   *  points to deletions and, when several readers have live points, their values don't overlap in at least one
+   *  dimension (e.g. segments that were indexed in time order); the merged tree then splits on that dimension
+   *  between the incoming trees.  Otherwise, their points are added block by block and the tree is built with
+   *  {@link #finish}.  This returns -1 if all documents containing dimensional values were deleted. */
   public long merge(IndexOutput out, List<MergeState.DocMap> docMaps, List<BKDReader> readers, List<Integer> docIDBases) throws IOException {
-    if (numDims != 1) {
-      throw new UnsupportedOperationException("numDims must be 1 but got " + numDims);
-    }
     if (pointCount != 0) {
       throw new IllegalStateException("cannot mix add and merge");
     }
@@ -345,6 +393,10 @@ public class BKDWriter implements Closeable {
       throw new IllegalStateException("already finished");
     }
 
+    if (numDims != 1) {
+      return mergeMultiDim(out, docMaps, readers, docIDBases);
+    }
+
     // Mark that we already finished:
     heapPointWriter = null;
 
@@ -464,6 +516,360 @@ public class BKDWriter implements Closeable {
     return indexFP;
   }
 
+  private long mergeMultiDim(IndexOutput out, List<MergeState.DocMap> docMaps, List<BKDReader> readers, List<Integer> docIDBases) throws IOException {
+    assert docMaps == null || readers.size() == docMaps.size();
+
+    ReusedTrees trees = getReusableTrees(docMaps, readers, docIDBases);
+    if (trees != null) {
+      // Mark that we already finished:
+      heapPointWriter = null;
+      if (trees.trees.isEmpty()) {
+        return -1;
+      }
+      return reuseLeafBlocks(out, trees);
+    }
+
+    for(int i=0;i<readers.size();i++) {
+      MergeState.DocMap docMap;
+      if (docMaps == null) {
+        docMap = null;
+      } else {
+        docMap = docMaps.get(i);
+      }
+      MergeReader reader = new MergeReader(readers.get(i), docMap, docIDBases.get(i));
+      while (reader.next()) {
+        add(reader.state.scratchPackedValue, reader.docIDBase + reader.docID);
+      }
+    }
+
+    if (pointCount == 0) {
+      return -1;
+    }
+
+    return finish(out);
+  }
+
+  /** An incoming tree whose leaf blocks and split values are re-used as is. */
+  private static final class ReusedTree {
+    final BKDReader bkd;
+    final MergeState.DocMap docMap;
+    final int docIDBase;
+    /** Bounds of the live values; only computed when there are several incoming trees */
+    byte[] minPackedValue;
+    byte[] maxPackedValue;
+    /** Position of the tree's first leaf block among the leaf blocks of the merged tree */
+    int firstLeaf;
+
+    ReusedTree(BKDReader bkd, MergeState.DocMap docMap, int docIDBase) {
+      this.bkd = bkd;
+      this.docMap = docMap;
+      this.docIDBase = docIDBase;
+    }
+
+    int numLeaves() {
+      return bkd.leafBlockFPs.length;
+    }
+  }
+
+  /** The incoming trees that still have live points, in the order their leaf blocks are written. */
+  private static final class ReusedTrees {
+    final List<ReusedTree> trees;
+    /** Dimension in which the trees' values are ordered, if there are several */
+    final int orderDim;
+    /** Number of leaf blocks of the merged tree */
+    final int numLeaves;
+
+    ReusedTrees(List<ReusedTree> trees, int orderDim, int numLeaves) {
+      this.trees = trees;
+      this.orderDim = orderDim;
+      this.numLeaves = numLeaves;
+    }
+  }
+
+  /** Returns the incoming trees that still have live points, in the order their leaf blocks should be written,
+   *  or null if their leaf blocks can't be re-used.  This requires that their layout matches ours, that no leaf
+   *  block loses all its points to deletions, and, if several trees have live points, that their values are
+   *  ordered along one dimension, so that a split value in that dimension can separate any two of them. */
+  private ReusedTrees getReusableTrees(List<MergeState.DocMap> docMaps, List<BKDReader> readers, List<Integer> docIDBases) throws IOException {
+    List<ReusedTree> trees = new ArrayList<>();
+    long numIncomingLeaves = 0;
+    for(int i=0;i<readers.size();i++) {
+      BKDReader bkd = readers.get(i);
+      if (bkd.numDims != numDims || bkd.bytesPerDim != bytesPerDim || bkd.maxPointsInLeafNode > maxPointsInLeafNode) {
+        return null;
+      }
+      MergeState.DocMap docMap = docMaps == null ? null : docMaps.get(i);
+      int liveLeaves = countLiveLeafBlocks(bkd, docMap);
+      if (liveLeaves == 0) {
+        // All deleted: nothing to merge from this one
+        continue;
+      } else if (liveLeaves != bkd.leafBlockFPs.length) {
+        return null;
+      }
+      trees.add(new ReusedTree(bkd, docMap, docIDBases.get(i)));
+      numIncomingLeaves += bkd.leafBlockFPs.length;
+    }
+    if (trees.size() <= 1) {
+      return new ReusedTrees(trees, -1, trees.isEmpty() ? 0 : trees.get(0).numLeaves());
+    }
+
+    for(ReusedTree tree : trees) {
+      computeBounds(tree);
+    }
+
+    // Find a dimension in which the trees' values don't overlap:
+    int orderDim = -1;
+    for(int dim=0;dim<numDims && orderDim == -1;dim++) {
+      final int offset = dim * bytesPerDim;
+      Collections.sort(trees, new Comparator<ReusedTree>() {
+          @Override
+          public int compare(ReusedTree a, ReusedTree b) {
+            return StringHelper.compare(bytesPerDim, a.minPackedValue, offset, b.minPackedValue, offset);
+          }
+        });
+      orderDim = dim;
+      for(int i=1;i<trees.size();i++) {
+        if (StringHelper.compare(bytesPerDim, trees.get(i-1).maxPackedValue, offset, trees.get(i).minPackedValue, offset) > 0) {
+          orderDim = -1;
+          break;
+        }
+      }
+    }
+    if (orderDim == -1) {
+      return null;
+    }
+
+    // Give each tree its own aligned range of leaves, in order, so that any node of the merged tree either holds
+    // a node of one of the incoming trees, or only whole incoming trees:
+    long numLeaves = 0;
+    for(ReusedTree tree : trees) {
+      int treeLeaves = tree.numLeaves();
+      numLeaves = (numLeaves + treeLeaves - 1) / treeLeaves * treeLeaves;
+      tree.firstLeaf = Math.toIntExact(numLeaves);
+      numLeaves += treeLeaves;
+    }
+    // Leaves that don't come from an incoming tree are written as empty blocks; don't let these take over:
+    numLeaves = Long.highestOneBit(numLeaves - 1) << 1;
+    if (numLeaves > 2 * numIncomingLeaves) {
+      return null;
+    }
+    checkMaxLeafNodeCount(Math.toIntExact(numLeaves));
+
+    return new ReusedTrees(trees, orderDim, (int) numLeaves);
+  }
+
+  /** Returns how many leaf blocks of the incoming reader have at least one live point, only reading their docIDs. */
+  private static int countLiveLeafBlocks(BKDReader bkd, MergeState.DocMap docMap) throws IOException {
+    if (docMap == null) {
+      return bkd.leafBlockFPs.length;
+    }
+    IndexInput in = bkd.in.clone();
+    int[] docIDs = new int[bkd.maxPointsInLeafNode];
+    int liveLeaves = 0;
+    for(long fp : bkd.leafBlockFPs) {
+      int count = bkd.readDocIDs(in, fp, docIDs);
+      for(int i=0;i<count;i++) {
+        if (docMap.get(docIDs[i]) != -1) {
+          liveLeaves++;
+          break;
+        }
+      }
+    }
+    return liveLeaves;
+  }
+
+  /** Computes the per-dimension bounds of the live values of the incoming tree. */
+  private void computeBounds(ReusedTree tree) throws IOException {
+    BKDReader bkd = tree.bkd;
+    IndexInput in = bkd.in.clone();
+    int[] docIDs = new int[bkd.maxPointsInLeafNode];
+    int[] incomingPrefixLengths = new int[numDims];
+    byte[] scratchPackedValue = new byte[packedBytesLength];
+    byte[] minPackedValue = new byte[packedBytesLength];
+    byte[] maxPackedValue = new byte[packedBytesLength];
+    Arrays.fill(minPackedValue, (byte) 0xff);
+    for(long fp : bkd.leafBlockFPs) {
+      int count = bkd.readDocIDs(in, fp, docIDs);
+      readCommonPrefixes(in, incomingPrefixLengths, scratchPackedValue);
+      for(int i=0;i<count;i++) {
+        readPackedValue(in, incomingPrefixLengths, scratchPackedValue);
+        if (tree.docMap != null && tree.docMap.get(docIDs[i]) == -1) {
+          continue;
+        }
+        for(int dim=0;dim<numDims;dim++) {
+          int offset = dim*bytesPerDim;
+          if (StringHelper.compare(bytesPerDim, scratchPackedValue, offset, minPackedValue, offset) < 0) {
+            System.arraycopy(scratchPackedValue, offset, minPackedValue, offset, bytesPerDim);
+          }
+          if (StringHelper.compare(bytesPerDim, scratchPackedValue, offset, maxPackedValue, offset) > 0) {
+            System.arraycopy(scratchPackedValue, offset, maxPackedValue, offset, bytesPerDim);
+          }
+        }
+      }
+    }
+    tree.minPackedValue = minPackedValue;
+    tree.maxPackedValue = maxPackedValue;
+  }
+
+  private void readCommonPrefixes(IndexInput in, int[] prefixLengths, byte[] scratchPackedValue) throws IOException {
+    for(int dim=0;dim<numDims;dim++) {
+      int prefix = in.readVInt();
+      prefixLengths[dim] = prefix;
+      if (prefix > 0) {
+        in.readBytes(scratchPackedValue, dim*bytesPerDim, prefix);
+      }
+    }
+  }
+
+  private void readPackedValue(IndexInput in, int[] prefixLengths, byte[] scratchPackedValue) throws IOException {
+    for(int dim=0;dim<numDims;dim++) {
+      int prefix = prefixLengths[dim];
+      in.readBytes(scratchPackedValue, dim*bytesPerDim + prefix, bytesPerDim - prefix);
+    }
+  }
+
+  /** Writes the leaf blocks of the incoming trees, with remapped docIDs, each followed by empty blocks up to
+   *  the next tree's first leaf, and then the index of the merged tree. */
+  private long reuseLeafBlocks(IndexOutput out, ReusedTrees reusedTrees) throws IOException {
+    List<ReusedTree> trees = reusedTrees.trees;
+    int numLeaves = reusedTrees.numLeaves;
+    long[] leafBlockFPs = new long[numLeaves];
+
+    int[] docIDs = new int[maxPointsInLeafNode];
+    int[] leafDocIDs = new int[maxPointsInLeafNode];
+    byte[][] leafPackedValues = new byte[maxPointsInLeafNode][];
+    for(int i=0;i<leafPackedValues.length;i++) {
+      leafPackedValues[i] = new byte[packedBytesLength];
+    }
+    int[] incomingPrefixLengths = new int[numDims];
+    byte[] scratchPackedValue = new byte[packedBytesLength];
+
+    int leaf = 0;
+    for(ReusedTree tree : trees) {
+      for(;leaf<tree.firstLeaf;leaf++) {
+        leafBlockFPs[leaf] = writeEmptyLeafBlock(out, scratchPackedValue);
+      }
+
+      BKDReader bkd = tree.bkd;
+      IndexInput in = bkd.in.clone();
+      for(long fp : bkd.leafBlockFPs) {
+        int count = bkd.readDocIDs(in, fp, docIDs);
+        readCommonPrefixes(in, incomingPrefixLengths, scratchPackedValue);
+
+        int leafCount = 0;
+        for(int i=0;i<count;i++) {
+          readPackedValue(in, incomingPrefixLengths, scratchPackedValue);
+          int mappedDocID = tree.docMap == null ? docIDs[i] : tree.docMap.get(docIDs[i]);
+          if (mappedDocID != -1) {
+            leafDocIDs[leafCount] = tree.docIDBase + mappedDocID;
+            System.arraycopy(scratchPackedValue, 0, leafPackedValues[leafCount], 0, packedBytesLength);
+            leafCount++;
+          }
+        }
+        assert leafCount > 0;
+        pointCount += leafCount;
+
+        // Deletions may have grown the common prefixes:
+        Arrays.fill(commonPrefixLengths, bytesPerDim);
+        for(int i=1;i<leafCount;i++) {
+          for(int dim=0;dim<numDims;dim++) {
+            int offset = dim * bytesPerDim;
+            for(int j=0;j<commonPrefixLengths[dim];j++) {
+              if (leafPackedValues[0][offset+j] != leafPackedValues[i][offset+j]) {
+                commonPrefixLengths[dim] = j;
+                break;
+              }
+            }
+          }
+        }
+
+        leafBlockFPs[leaf++] = out.getFilePointer();
+        writeLeafBlockDocs(out, leafDocIDs, 0, leafCount);
+        writeCommonPrefixes(out, commonPrefixLengths, leafPackedValues[0]);
+        for(int i=0;i<leafCount;i++) {
+          writeLeafBlockPackedValue(out, commonPrefixLengths, leafPackedValues[i]);
+        }
+      }
+    }
+    for(;leaf<numLeaves;leaf++) {
+      leafBlockFPs[leaf] = writeEmptyLeafBlock(out, scratchPackedValue);
+    }
+
+    long indexFP = out.getFilePointer();
+    byte[] splitPackedValues;
+    if (trees.size() == 1) {
+      // The incoming cells are unchanged, so we can re-use its split values as is:
+      splitPackedValues = trees.get(0).bkd.splitPackedValues.clone();
+    } else {
+      splitPackedValues = new byte[numLeaves * (1+bytesPerDim)];
+      setMergedSplitValues(1, 0, numLeaves, reusedTrees, splitPackedValues);
+    }
+    writeIndex(out, leafBlockFPs, splitPackedValues);
+    return indexFP;
+  }
+
+  /** Writes a leaf block without points, and returns its file pointer. */
+  private long writeEmptyLeafBlock(IndexOutput out, byte[] scratchPackedValue) throws IOException {
+    long fp = out.getFilePointer();
+    Arrays.fill(commonPrefixLengths, 0);
+    writeLeafBlockDocs(out, null, 0, 0);
+    writeCommonPrefixes(out, commonPrefixLengths, scratchPackedValue);
+    return fp;
+  }
+
+  /** Sets the split value of the node of the merged tree that holds leaves {@code fromLeaf} (inclusive) to
+   *  {@code toLeaf} (exclusive), and of all nodes below it. */
+  private void setMergedSplitValues(int nodeID, int fromLeaf, int toLeaf, ReusedTrees reusedTrees, byte[] splitPackedValues) {
+    int nodeLeaves = toLeaf - fromLeaf;
+    if (nodeLeaves == 1) {
+      // Leaf node
+      return;
+    }
+    List<ReusedTree> trees = reusedTrees.trees;
+    for(ReusedTree tree : trees) {
+      if (tree.firstLeaf <= fromLeaf && toLeaf <= tree.firstLeaf + tree.numLeaves()) {
+        // This node is a node of an incoming tree: copy its split value, and those of the nodes below it
+        int incomingNodeID = tree.numLeaves() / nodeLeaves + (fromLeaf - tree.firstLeaf) / nodeLeaves;
+        copyIncomingSplitValues(nodeID, tree, incomingNodeID, splitPackedValues);
+        return;
+      }
+    }
+
+    // This node holds whole incoming trees (or none), ordered by orderDim: split at the start of the first
+    // tree on the right, or else past the end of the last tree on the left:
+    int midLeaf = (fromLeaf + toLeaf) >>> 1;
+    byte[] splitValue = null;
+    for(ReusedTree tree : trees) {
+      if (tree.firstLeaf >= fromLeaf && tree.firstLeaf < midLeaf) {
+        splitValue = tree.maxPackedValue;
+      } else if (tree.firstLeaf >= midLeaf && tree.firstLeaf < toLeaf) {
+        splitValue = tree.minPackedValue;
+        break;
+      }
+    }
+    if (splitValue == null) {
+      // No points below this node
+      return;
+    }
+    int address = nodeID * (1+bytesPerDim);
+    splitPackedValues[address] = (byte) reusedTrees.orderDim;
+    System.arraycopy(splitValue, reusedTrees.orderDim*bytesPerDim, splitPackedValues, address+1, bytesPerDim);
+    setMergedSplitValues(2*nodeID, fromLeaf, midLeaf, reusedTrees, splitPackedValues);
+    setMergedSplitValues(2*nodeID+1, midLeaf, toLeaf, reusedTrees, splitPackedValues);
+  }
+
+  /** Copies the split values of the incoming tree's node {@code incomingNodeID}, and of all nodes below it, to
+   *  the merged tree's node {@code nodeID} and the nodes below it. */
+  private void copyIncomingSplitValues(int nodeID, ReusedTree tree, int incomingNodeID, byte[] splitPackedValues) {
+    if (incomingNodeID >= tree.numLeaves()) {
+      // Leaf node
+      return;
+    }
+    System.arraycopy(tree.bkd.splitPackedValues, incomingNodeID * (1+bytesPerDim), splitPackedValues, nodeID * (1+bytesPerDim), 1+bytesPerDim);
+    copyIncomingSplitValues(2*nodeID, tree, 2*incomingNodeID, splitPackedValues);
+    copyIncomingSplitValues(2*nodeID+1, tree, 2*incomingNodeID+1, splitPackedValues);
+  }
+
   // TODO: there must be a simpler way?
   private void rotateToTree(int nodeID, int offset, int count, byte[] index, List<byte[]> leafBlockStartValues) {
     //System.out.println("ROTATE: nodeID=" + nodeID + " offset=" + offset + " count=" + count + " bpd=" + bytesPerDim + " index.length=" + index.length);
@@ -528,6 +934,7 @@ public class BKDWriter implements Closeable {
     // All buffered points are still in heap; just do in-place sort:
     new IntroSorter() {
       private final byte[] pivotPackedValue = new byte[bytesPerDim];
+      private final byte[] scratch = new byte[packedBytesLength];
       private int pivotDocID;
       private long pivotOrd;
 
@@ -576,12 +983,12 @@ public class BKDWriter implements Closeable {
         byte[] blockJ = writer.blocks.get(j / writer.valuesPerBlock);
         int indexJ = (j % writer.valuesPerBlock) * packedBytesLength;
 
-        // scratch1 = values[i]
-        System.arraycopy(blockI, indexI, scratch1, 0, packedBytesLength);
+        // scratch = values[i]
+        System.arraycopy(blockI, indexI, scratch, 0, packedBytesLength);
         // values[i] = values[j]
         System.arraycopy(blockJ, indexJ, blockI, indexI, packedBytesLength);
-        // values[j] = scratch1
-        System.arraycopy(scratch1, 0, blockJ, indexJ, packedBytesLength);
+        // values[j] = scratch
+        System.arraycopy(scratch, 0, blockJ, indexJ, packedBytesLength);
       }
 
       @Override
@@ -611,112 +1018,266 @@ public class BKDWriter implements Closeable {
   private PointWriter sort(int dim) throws IOException {
 
     if (heapPointWriter != null) {
+      return sortHeap(dim, copyForSort(dim));
+    } else {
+      return sortOffline(dim);
+    }
+  }
 
-      assert tempInput == null;
+  /** Returns the heap writer to sort in place for the specified dim. */
+  private HeapPointWriter copyForSort(int dim) {
 
-      // We never spilled the incoming points to disk, so now we sort in heap:
-      HeapPointWriter sorted;
+    assert tempInput == null;
 
-      if (dim == 0) {
-        // First dim can re-use the current heap writer
-        sorted = heapPointWriter;
-      } else {
-        // Subsequent dims need a private copy
-        sorted = new HeapPointWriter((int) pointCount, (int) pointCount, packedBytesLength);
-        sorted.copyFrom(heapPointWriter);
-      }
+    if (dim == 0) {
+      // First dim can re-use the current heap writer
+      return heapPointWriter;
+    } else {
+      // Subsequent dims need a private copy
+      HeapPointWriter sorted = new HeapPointWriter((int) pointCount, (int) pointCount, packedBytesLength);
+      sorted.copyFrom(heapPointWriter);
+      return sorted;
+    }
+  }
 
-      //long t0 = System.nanoTime();
-      sortHeapPointWriter(sorted, 0, (int) pointCount, dim);
-      //long t1 = System.nanoTime();
-      //System.out.println("BKD: sort took " + ((t1-t0)/1000000.0) + " msec");
+  private PointWriter sortHeap(int dim, HeapPointWriter sorted) {
 
-      sorted.close();
-      return sorted;
-    } else {
+    // We never spilled the incoming points to disk, so now we sort in heap:
+    //long t0 = System.nanoTime();
+    sortHeapPointWriter(sorted, 0, (int) pointCount, dim);
+    //long t1 = System.nanoTime();
+    //System.out.println("BKD: sort took " + ((t1-t0)/1000000.0) + " msec");
 
-      // Offline sort:
-      assert tempInput != null;
+    sorted.close();
+    return sorted;
+  }
 
-      final ByteArrayDataInput reader = new ByteArrayDataInput();
-      Comparator<BytesRef> cmp = new Comparator<BytesRef>() {
-        private final ByteArrayDataInput readerB = new ByteArrayDataInput();
+  private PointWriter sortOffline(int dim) throws IOException {
 
-        @Override
-        public int compare(BytesRef a, BytesRef b) {
-          reader.reset(a.bytes, a.offset, a.length);
-          reader.readBytes(scratch1, 0, scratch1.length);
-          final int docIDA = reader.readVInt();
-          final long ordA = reader.readVLong();
+    // Offline sort:
+    assert tempInput != null;
 
-          reader.reset(b.bytes, b.offset, b.length);
-          reader.readBytes(scratch2, 0, scratch2.length);
-          final int docIDB = reader.readVInt();
-          final long ordB = reader.readVLong();
+    final ByteArrayDataInput reader = new ByteArrayDataInput();
+    // Private scratch, since dims may be sorted concurrently:
+    final byte[] scratch1 = new byte[packedBytesLength];
+    final byte[] scratch2 = new byte[packedBytesLength];
+    Comparator<BytesRef> cmp = new Comparator<BytesRef>() {
+      @Override
+      public int compare(BytesRef a, BytesRef b) {
+        reader.reset(a.bytes, a.offset, a.length);
+        reader.readBytes(scratch1, 0, scratch1.length);
+        final int docIDA = reader.readVInt();
+        final long ordA = reader.readVLong();
 
-          int cmp = NumericUtils.compare(bytesPerDim, scratch1, dim, scratch2, dim);
+        reader.reset(b.bytes, b.offset, b.length);
+        reader.readBytes(scratch2, 0, scratch2.length);
+        final int docIDB = reader.readVInt();
+        final long ordB = reader.readVLong();
 
-          if (cmp != 0) {
-            return cmp;
-          }
+        int cmp = NumericUtils.compare(bytesPerDim, scratch1, dim, scratch2, dim);
 
-          // Tie-break
-          cmp = Integer.compare(docIDA, docIDB);
-          if (cmp != 0) {
-            return cmp;
-          }
+        if (cmp != 0) {
+          return cmp;
+        }
 
-          return Long.compare(ordA, ordB);
+        // Tie-break
+        cmp = Integer.compare(docIDA, docIDB);
+        if (cmp != 0) {
+          return cmp;
         }
-      };
 
-      // TODO: this is sort of sneaky way to get the final OfflinePointWriter from OfflineSorter:
-      IndexOutput[] lastWriter = new IndexOutput[1];
+        return Long.compare(ordA, ordB);
+      }
+    };
 
-      OfflineSorter sorter = new OfflineSorter(tempDir, tempFileNamePrefix, cmp) {
+    // TODO: this is sort of sneaky way to get the final OfflinePointWriter from OfflineSorter:
+    IndexOutput[] lastWriter = new IndexOutput[1];
 
-          /** We write/read fixed-byte-width file that {@link OfflinePointReader} can read. */
-          @Override
-          protected ByteSequencesWriter getWriter(IndexOutput out) {
-            lastWriter[0] = out;
-            return new ByteSequencesWriter(out) {
-              @Override
-              public void write(byte[] bytes, int off, int len) throws IOException {
-                if (len != bytesPerDoc) {
-                  throw new IllegalArgumentException("len=" + len + " bytesPerDoc=" + bytesPerDoc);
-                }
-                out.writeBytes(bytes, off, len);
+    OfflineSorter sorter = new OfflineSorter(tempDir, tempFileNamePrefix, cmp) {
+
+        /** We write/read fixed-byte-width file that {@link OfflinePointReader} can read. */
+        @Override
+        protected ByteSequencesWriter getWriter(IndexOutput out) {
+          lastWriter[0] = out;
+          return new ByteSequencesWriter(out) {
+            @Override
+            public void write(byte[] bytes, int off, int len) throws IOException {
+              if (len != bytesPerDoc) {
+                throw new IllegalArgumentException("len=" + len + " bytesPerDoc=" + bytesPerDoc);
               }
-            };
-          }
+              out.writeBytes(bytes, off, len);
+            }
+          };
+        }
 
-          /** We write/read fixed-byte-width file that {@link OfflinePointReader} can read. */
-          @Override
-          protected ByteSequencesReader getReader(IndexInput in) throws IOException {
-            return new ByteSequencesReader(in) {
-              @Override
-              public boolean read(BytesRefBuilder ref) throws IOException {
-                ref.grow(bytesPerDoc);
-                try {
-                  in.readBytes(ref.bytes(), 0, bytesPerDoc);
-                } catch (EOFException eofe) {
-                  return false;
-                }
-                ref.setLength(bytesPerDoc);
-                return true;
+        /** We write/read fixed-byte-width file that {@link OfflinePointReader} can read. */
+        @Override
+        protected ByteSequencesReader getReader(IndexInput in) throws IOException {
+          return new ByteSequencesReader(in) {
+            @Override
+            public boolean read(BytesRefBuilder ref) throws IOException {
+              ref.grow(bytesPerDoc);
+              try {
+                in.readBytes(ref.bytes(), 0, bytesPerDoc);
+              } catch (EOFException eofe) {
+                return false;
               }
-            };
+              ref.setLength(bytesPerDoc);
+              return true;
+            }
+          };
+        }
+      };
+
+    sorter.sort(tempInput.getName());
+
+    assert lastWriter[0] != null;
+
+    return new OfflinePointWriter(tempDir, lastWriter[0], packedBytesLength, pointCount);
+  }
+
+  /** Sorts all points once by each dimension, concurrently if an executor was provided. */
+  private void sortAllDims(PathSlice[] sortedPointWriters) throws IOException {
+    if (executor == null || numDims == 1) {
+      for(int dim=0;dim<numDims;dim++) {
+        sortedPointWriters[dim] = new PathSlice(sort(dim), 0, pointCount);
+      }
+      return;
+    }
+
+    // The first dim sorts heapPointWriter in place, so make the private copies up front:
+    final HeapPointWriter[] heapCopies = new HeapPointWriter[numDims];
+    if (heapPointWriter != null) {
+      for(int dim=0;dim<numDims;dim++) {
+        heapCopies[dim] = copyForSort(dim);
+      }
+    }
+
+    List<ForkedTask<PointWriter>> tasks = new ArrayList<>();
+    for(int dim=0;dim<numDims;dim++) {
+      final int sortDim = dim;
+      tasks.add(new ForkedTask<>(executor, new Callable<PointWriter>() {
+        @Override
+        public PointWriter call() throws IOException {
+          if (heapCopies[sortDim] != null) {
+            return sortHeap(sortDim, heapCopies[sortDim]);
+          } else {
+            return sortOffline(sortDim);
+          }
+        }
+      }));
+    }
+
+    Throwable th = null;
+    for(int dim=0;dim<numDims;dim++) {
+      if (th != null && tasks.get(dim).cancel()) {
+        continue;
+      }
+      try {
+        sortedPointWriters[dim] = new PathSlice(tasks.get(dim).get(), 0, pointCount);
+      } catch (Throwable t) {
+        if (th == null) {
+          th = t;
+        }
+      }
+    }
+    boolean success = false;
+    try {
+      IOUtils.reThrow(th);
+      success = true;
+    } finally {
+      if (success == false) {
+        // Release the dims that did sort:
+        List<PointWriter> sorted = new ArrayList<>();
+        for(int dim=0;dim<numDims;dim++) {
+          if (sortedPointWriters[dim] != null) {
+            sorted.add(sortedPointWriters[dim].writer);
+            sortedPointWriters[dim] = null;
           }
-        };
+        }
+        destroyIgnoringExceptions(sorted);
+      }
+    }
+  }
 
-      sorter.sort(tempInput.getName());
+  private static void destroyIgnoringExceptions(List<PointWriter> writers) {
+    for(PointWriter writer : writers) {
+      try {
+        writer.destroy();
+      } catch (Throwable t) {
+        // ignore
+      }
+    }
+  }
+
+  /** A task handed to the executor.  The calling thread runs it itself if the executor rejects it, or
+   *  if no pool thread has started it by the time its result is needed, so {@link #finish} never waits
+   *  for a queued task.  This makes it safe to share a small, bounded (or shut down) executor, even
+   *  with callers that themselves run on that executor. */
+  private static final class ForkedTask<T> {
+    final Callable<T> callable;
 
-      assert lastWriter[0] != null;
+    /** Set by whichever thread runs the task: a pool thread or the calling thread. */
+    final AtomicBoolean claimed = new AtomicBoolean();
 
-      return new OfflinePointWriter(tempDir, lastWriter[0], packedBytesLength, pointCount);
+    /** Null if the executor rejected the task. */
+    final Future<T> future;
+
+    ForkedTask(ExecutorService executor, final Callable<T> callable) {
+      this.callable = callable;
+      Future<T> future;
+      try {
+        future = executor.submit(new Callable<T>() {
+          @Override
+          public T call() throws Exception {
+            return claimed.compareAndSet(false, true) ? callable.call() : null;
+          }
+        });
+      } catch (RejectedExecutionException ree) {
+        // run by the calling thread in get()
+        future = null;
+      }
+      this.future = future;
+    }
+
+    /** Returns true if the task will never run, i.e. it was rejected or had not started yet. */
+    boolean cancel() {
+      if (claimed.compareAndSet(false, true)) {
+        if (future != null) {
+          future.cancel(false);
+        }
+        return true;
+      }
+      return false;
+    }
+
+    T get() throws IOException {
+      if (claimed.compareAndSet(false, true)) {
+        // not started: don't wait for a pool thread, which may never come
+        if (future != null) {
+          future.cancel(false);
+        }
+        try {
+          return callable.call();
+        } catch (Exception e) {
+          IOUtils.reThrow(e);
+          // dead code but javac disagrees:
+          return null;
+        }
+      }
+      try {
+        return future.get();
+      } catch (InterruptedException ie) {
+        throw new ThreadInterruptedException(ie);
+      } catch (ExecutionException ee) {
+        IOUtils.reThrow(ee.getCause());
+        // dead code but javac disagrees:
+        return null;
+      }
     }
   }
 
+
   private void checkMaxLeafNodeCount(int numLeaves) {
     if ((1+bytesPerDim) * (long) numLeaves > ArrayUtil.MAX_ARRAY_LENGTH) {
       throw new IllegalStateException("too many nodes; increase maxPointsInLeafNode (currently " + maxPointsInLeafNode + ") and reindex");
@@ -783,9 +1344,7 @@ public class BKDWriter implements Closeable {
     boolean success = false;
     try {
       //long t0 = System.nanoTime();
-      for(int dim=0;dim<numDims;dim++) {
-        sortedPointWriters[dim] = new PathSlice(sort(dim), 0, pointCount);
-      }
+      sortAllDims(sortedPointWriters);
       //long t1 = System.nanoTime();
       //System.out.println("sort time: " + ((t1-t0)/1000000.0) + " msec");
 
@@ -797,11 +1356,21 @@ public class BKDWriter implements Closeable {
         heapPointWriter = null;
       }
 
-      build(1, numLeaves, sortedPointWriters,
-            ordBitSet, out,
-            minPacked, maxPacked,
-            splitPackedValues,
-            leafBlockFPs);
+      BuildState state = new BuildState(ordBitSet);
+      int numSubtrees = numConcurrentSubtrees(numLeaves);
+      if (numSubtrees > 1) {
+        buildConcurrently(numSubtrees, numLeaves, sortedPointWriters,
+                          state, out,
+                          minPacked, maxPacked,
+                          splitPackedValues,
+                          leafBlockFPs);
+      } else {
+        build(1, numLeaves, sortedPointWriters,
+              state, out,
+              minPacked, maxPacked,
+              splitPackedValues,
+              leafBlockFPs);
+      }
 
       for(PathSlice slice : sortedPointWriters) {
         slice.writer.destroy();
@@ -827,6 +1396,133 @@ public class BKDWriter implements Closeable {
     return indexFP;
   }
 
+  /** Returns how many subtrees to build concurrently: a power of 2, and at most half the leaves. */
+  private int numConcurrentSubtrees(int numLeaves) {
+    if (executor == null) {
+      return 1;
+    }
+    int numSubtrees = 1;
+    while (numSubtrees < maxConcurrentSubtrees && 2*numSubtrees <= numLeaves/2) {
+      numSubtrees *= 2;
+    }
+    return numSubtrees;
+  }
+
+  /** Builds the top levels of the tree on the calling thread, and the {@code numSubtrees} subtrees below
+   *  them concurrently, each into its own temp file.  The temp files are then appended to {@code out} in
+   *  order, so the result is identical to {@link #build} on a single thread. */
+  private void buildConcurrently(int numSubtrees, int numLeaves,
+                                 PathSlice[] slices,
+                                 BuildState state,
+                                 IndexOutput out,
+                                 byte[] minPackedValue, byte[] maxPackedValue,
+                                 byte[] splitPackedValues,
+                                 long[] leafBlockFPs) throws IOException {
+    state.forkNodeOffset = numSubtrees;
+    state.subtrees = new ArrayList<>();
+    state.deferredDestroys = new ArrayList<>();
+
+    Throwable th = null;
+    try {
+      build(1, numLeaves, slices,
+            state, out,
+            minPackedValue, maxPackedValue,
+            splitPackedValues,
+            leafBlockFPs);
+    } catch (Throwable t) {
+      th = t;
+    }
+
+    // Always wait for all started subtrees, so we never delete temp files that are still in use:
+    String[] subtreeFiles = new String[state.subtrees.size()];
+    for(int i=0;i<subtreeFiles.length;i++) {
+      if (th != null && state.subtrees.get(i).cancel()) {
+        continue;
+      }
+      try {
+        subtreeFiles[i] = state.subtrees.get(i).get();
+      } catch (Throwable t) {
+        if (th == null) {
+          th = t;
+        }
+      }
+    }
+
+    boolean success = false;
+    try {
+      IOUtils.reThrow(th);
+
+      assert subtreeFiles.length == numSubtrees: "subtrees=" + subtreeFiles.length + " numSubtrees=" + numSubtrees;
+
+      // Subtrees were submitted left to right, so appending them in order yields the single-threaded output:
+      int leavesPerSubtree = numLeaves / numSubtrees;
+      for(int i=0;i<subtreeFiles.length;i++) {
+        long baseFP = out.getFilePointer();
+        try (IndexInput in = tempDir.openInput(subtreeFiles[i], IOContext.READONCE)) {
+          out.copyBytes(in, in.length());
+        }
+        tempDir.deleteFile(subtreeFiles[i]);
+        subtreeFiles[i] = null;
+        for(int leaf=i*leavesPerSubtree;leaf<(i+1)*leavesPerSubtree;leaf++) {
+          leafBlockFPs[leaf] += baseFP;
+        }
+      }
+
+      for(PointWriter writer : state.deferredDestroys) {
+        writer.destroy();
+      }
+      success = true;
+    } finally {
+      if (success == false) {
+        // All subtrees are done, so their temp files and the writers they read can go:
+        List<String> leftovers = new ArrayList<>();
+        for(String file : subtreeFiles) {
+          if (file != null) {
+            leftovers.add(file);
+          }
+        }
+        IOUtils.deleteFilesIgnoringExceptions(tempDir, leftovers);
+        destroyIgnoringExceptions(state.deferredDestroys);
+      }
+    }
+  }
+
+  /** Hands the subtree under {@code nodeID} to the executor; it is written to its own temp file. */
+  private void forkSubtree(final int nodeID, final int leafNodeOffset,
+                           PathSlice[] slices,
+                           BuildState state,
+                           byte[] minPackedValue, byte[] maxPackedValue,
+                           final byte[] splitPackedValues,
+                           final long[] leafBlockFPs) {
+    // The subtree may replace its slices (1D switch to heap), so it gets private copies:
+    final PathSlice[] subtreeSlices = slices.clone();
+    final byte[] subtreeMinPackedValue = minPackedValue.clone();
+    final byte[] subtreeMaxPackedValue = maxPackedValue.clone();
+    state.subtrees.add(new ForkedTask<>(executor, new Callable<String>() {
+      @Override
+      public String call() throws IOException {
+        BuildState subtreeState = new BuildState(numDims > 1 ? new LongBitSet(pointCount) : null);
+        IndexOutput subtreeOut = tempDir.createTempOutput(tempFileNamePrefix, "bkd_subtree", IOContext.DEFAULT);
+        boolean success = false;
+        try {
+          build(nodeID, leafNodeOffset, subtreeSlices,
+                subtreeState, subtreeOut,
+                subtreeMinPackedValue, subtreeMaxPackedValue,
+                splitPackedValues, leafBlockFPs);
+          success = true;
+        } finally {
+          if (success) {
+            subtreeOut.close();
+          } else {
+            IOUtils.closeWhileHandlingException(subtreeOut);
+            IOUtils.deleteFilesIgnoringExceptions(tempDir, subtreeOut.getName());
+          }
+        }
+        return subtreeOut.getName();
+      }
+    }));
+  }
+
   /** Subclass can change how it writes the index. */
   protected void writeIndex(IndexOutput out, long[] leafBlockFPs, byte[] splitPackedValues) throws IOException {
     CodecUtil.writeHeader(out, CODEC_NAME, VERSION_CURRENT);
@@ -851,7 +1547,7 @@ public class BKDWriter implements Closeable {
   }
 
   protected void writeLeafBlockDocs(IndexOutput out, int[] docIDs, int start, int count) throws IOException {
-    assert count > 0: "maxPointsInLeafNode=" + maxPointsInLeafNode;
+    assert count >= 0: "maxPointsInLeafNode=" + maxPointsInLeafNode;
     out.writeVInt(count);
 
     for (int i=0;i<count;i++) {
@@ -887,6 +1583,38 @@ public class BKDWriter implements Closeable {
     }
   }
 
+  /** Per-thread state used while recursively building the tree, or a subtree of it. */
+  private final class BuildState {
+    final byte[] scratchDiff = new byte[bytesPerDim];
+    final byte[] scratchPackedValue = new byte[packedBytesLength];
+    final byte[] scratch1 = new byte[packedBytesLength];
+    final int[] commonPrefixLengths = new int[numDims];
+
+    /** Marks the ords that belong in the right sub tree; null when numDims is 1. */
+    final LongBitSet ordBitSet;
+
+    /** Nodes at or below this nodeID are built concurrently, see {@link #buildConcurrently}. */
+    int forkNodeOffset = Integer.MAX_VALUE;
+
+    /** Concurrently building subtrees, left to right, or null. */
+    List<ForkedTask<String>> subtrees;
+
+    /** Writers that concurrent subtrees may still read, so we destroy them once all subtrees are done, or null. */
+    List<PointWriter> deferredDestroys;
+
+    BuildState(LongBitSet ordBitSet) {
+      this.ordBitSet = ordBitSet;
+    }
+
+    void destroy(PointWriter writer) throws IOException {
+      if (deferredDestroys != null) {
+        deferredDestroys.add(writer);
+      } else {
+        writer.destroy();
+      }
+    }
+  }
+
   /** Sliced reference to points in an OfflineSorter.ByteSequencesWriter file. */
   private static final class PathSlice {
     final PointWriter writer;
@@ -906,7 +1634,10 @@ public class BKDWriter implements Closeable {
   }
 
   /** Marks bits for the ords (points) that belong in the right sub tree (those docs that have values >= the splitValue). */
-  private byte[] markRightTree(long rightCount, int splitDim, PathSlice source, LongBitSet ordBitSet) throws IOException {
+  private byte[] markRightTree(long rightCount, int splitDim, PathSlice source, BuildState state) throws IOException {
+
+    final LongBitSet ordBitSet = state.ordBitSet;
+    final byte[] scratch1 = state.scratch1;
 
     // Now we mark ords that fall into the right half, so we can partition on all other dims that are not the split dim:
     assert numDims == 1 || ordBitSet.cardinality() == 0: "cardinality=" + ordBitSet.cardinality();
@@ -950,7 +1681,9 @@ public class BKDWriter implements Closeable {
   }
 
   // TODO: make this protected when we want to subclass to play with different splitting criteria
-  private int split(byte[] minPackedValue, byte[] maxPackedValue) {
+  private int split(byte[] minPackedValue, byte[] maxPackedValue, BuildState state) {
+    final byte[] scratchDiff = state.scratchDiff;
+    final byte[] scratch1 = state.scratch1;
     // Find which dim has the largest span so we can split on it:
     int splitDim = -1;
     for(int dim=0;dim<numDims;dim++) {
@@ -985,7 +1718,7 @@ public class BKDWriter implements Closeable {
   /** The array (sized numDims) of PathSlice describe the cell we have currently recursed to. */
   private void build(int nodeID, int leafNodeOffset,
                      PathSlice[] slices,
-                     LongBitSet ordBitSet,
+                     BuildState state,
                      IndexOutput out,
                      byte[] minPackedValue, byte[] maxPackedValue,
                      byte[] splitPackedValues,
@@ -995,6 +1728,11 @@ public class BKDWriter implements Closeable {
       assert slice.count == slices[0].count;
     }
 
+    if (nodeID >= state.forkNodeOffset) {
+      forkSubtree(nodeID, leafNodeOffset, slices, state, minPackedValue, maxPackedValue, splitPackedValues, leafBlockFPs);
+      return;
+    }
+
     if (numDims == 1 && slices[0].writer instanceof OfflinePointWriter && slices[0].count <= maxPointsSortInHeap) {
       // Special case for 1D, to cutover to heap once we recurse deeply enough:
       slices[0] = switchToHeap(slices[0]);
@@ -1027,6 +1765,10 @@ public class BKDWriter implements Closeable {
       // TODO: we should delta compress / only write suffix bytes, like terms dict (the values will all be "close together" since we are at
       // a leaf cell):
 
+      final int[] commonPrefixLengths = state.commonPrefixLengths;
+      final byte[] scratch1 = state.scratch1;
+      final byte[] scratchPackedValue = state.scratchPackedValue;
+
       // First pass: find the per-dim common prefix for all values in this block:
       Arrays.fill(commonPrefixLengths, bytesPerDim);
       for (int i=0;i<count;i++) {
@@ -1065,7 +1807,7 @@ public class BKDWriter implements Closeable {
 
       int splitDim;
       if (numDims > 1) {
-        splitDim = split(minPackedValue, maxPackedValue);
+        splitDim = split(minPackedValue, maxPackedValue, state);
       } else {
         splitDim = 0;
       }
@@ -1078,7 +1820,7 @@ public class BKDWriter implements Closeable {
       long rightCount = source.count / 2;
       long leftCount = source.count - rightCount;
 
-      byte[] splitValue = markRightTree(rightCount, splitDim, source, ordBitSet);
+      byte[] splitValue = markRightTree(rightCount, splitDim, source, state);
       int address = nodeID * (1+bytesPerDim);
       splitPackedValues[address] = (byte) splitDim;
       System.arraycopy(splitValue, 0, splitPackedValues, address + 1, bytesPerDim);
@@ -1117,7 +1859,7 @@ public class BKDWriter implements Closeable {
             byte[] packedValue = reader.packedValue();
             long ord = reader.ord();
             int docID = reader.docID();
-            if (ordBitSet.get(ord)) {
+            if (state.ordBitSet.get(ord)) {
               rightPointWriter.append(packedValue, ord, docID);
               nextRightCount++;
             } else {
@@ -1133,31 +1875,31 @@ public class BKDWriter implements Closeable {
       }
 
       if (numDims > 1) {
-        ordBitSet.clear(0, pointCount);
+        state.ordBitSet.clear(0, pointCount);
       }
 
       // Recurse on left tree:
       build(2*nodeID, leafNodeOffset, leftSlices,
-            ordBitSet, out,
+            state, out,
             minPackedValue, maxSplitPackedValue,
             splitPackedValues, leafBlockFPs);
       for(int dim=0;dim<numDims;dim++) {
         // Don't destroy the dim we split on because we just re-used what our caller above gave us for that dim:
         if (dim != splitDim) {
-          leftSlices[dim].writer.destroy();
+          state.destroy(leftSlices[dim].writer);
         }
       }
 
       // TODO: we could "tail recurse" here?  have our parent discard its refs as we recurse right?
       // Recurse on right tree:
       build(2*nodeID+1, leafNodeOffset, rightSlices,
-            ordBitSet, out,
+            state, out,
             minSplitPackedValue, maxPackedValue,
             splitPackedValues, leafBlockFPs);
       for(int dim=0;dim<numDims;dim++) {
         // Don't destroy the dim we split on because we just re-used what our caller above gave us for that dim:
         if (dim != splitDim) {
-          rightSlices[dim].writer.destroy();
+          state.destroy(rightSlices[dim].writer);
         }
       }
     }
@@ -0,0 +1,194 @@
+package org.apache.lucene.index;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.TimeZone;
+
+import org.apache.lucene.analysis.MockAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.store.Directory;
+
+public class TestBudgetedTieredMergePolicy extends BaseMergePolicyTestCase {
+
+  private static final long HOUR_MS = 60 * 60 * 1000L;
+
+  public MergePolicy mergePolicy() {
+    BudgetedTieredMergePolicy mp = new BudgetedTieredMergePolicy();
+    mp.setSegmentCountWeight(random().nextDouble());
+    return mp;
+  }
+
+  /** Merge policy whose clock is controlled by the test. */
+  private static class FakeClockMergePolicy extends BudgetedTieredMergePolicy {
+    long now;
+
+    @Override
+    protected long currentTimeMillis() {
+      return now;
+    }
+  }
+
+  private static void addDocs(IndexWriter w, int count) throws Exception {
+    for(int i=0;i<count;i++) {
+      Document doc = new Document();
+      doc.add(newTextField("content", "aaa " + (i%4), Field.Store.NO));
+      w.addDocument(doc);
+    }
+  }
+
+  public void testIOBudgetDefersMerges() throws Exception {
+    Directory dir = newDirectory();
+    IndexWriterConfig conf = newIndexWriterConfig(new MockAnalyzer(random()));
+    conf.setMergeScheduler(new SerialMergeScheduler());
+    conf.setMaxBufferedDocs(2);
+    conf.setRAMBufferSizeMB(IndexWriterConfig.DISABLE_AUTO_FLUSH);
+    FakeClockMergePolicy mp = new FakeClockMergePolicy();
+    mp.now = 12 * HOUR_MS;
+    mp.setMaxMergeAtOnce(2);
+    mp.setSegmentsPerTier(2);
+    // far smaller than any merge:
+    mp.setMaxMergeMBPerHour(0.000001);
+    conf.setMergePolicy(mp);
+    IndexWriter w = new IndexWriter(dir, conf);
+
+    addDocs(w, 40);
+    // only the first merge of the hour may exceed the budget:
+    assertEquals(19, w.getSegmentCount());
+
+    // Still within the same hour:
+    mp.now += HOUR_MS/2;
+    w.maybeMerge();
+    assertEquals(19, w.getSegmentCount());
+
+    // An hour later the budget allows one more merge:
+    mp.now += HOUR_MS/2;
+    w.maybeMerge();
+    assertEquals(18, w.getSegmentCount());
+
+    mp.setMaxMergeMBPerHour(Double.POSITIVE_INFINITY);
+    w.maybeMerge();
+    assertTrue(w.getSegmentCount() < 20);
+
+    // forceMerge is never deferred:
+    w.forceMerge(1);
+    assertEquals(1, w.getSegmentCount());
+
+    w.close();
+    dir.close();
+  }
+
+  /** A merge larger than the whole hourly budget must not be deferred forever */
+  public void testMergeLargerThanBudget() throws Exception {
+    Directory dir = newDirectory();
+    IndexWriterConfig conf = newIndexWriterConfig(new MockAnalyzer(random()));
+    conf.setMergeScheduler(new SerialMergeScheduler());
+    conf.setMaxBufferedDocs(2);
+    conf.setRAMBufferSizeMB(IndexWriterConfig.DISABLE_AUTO_FLUSH);
+    FakeClockMergePolicy mp = new FakeClockMergePolicy();
+    mp.now = 12 * HOUR_MS;
+    mp.setMaxMergeAtOnce(2);
+    mp.setSegmentsPerTier(2);
+    // far smaller than the merge of the two segments:
+    mp.setMaxMergeMBPerHour(0.000001);
+    conf.setMergePolicy(mp);
+    IndexWriter w = new IndexWriter(dir, conf);
+
+    // nothing used the budget yet, so the merge runs right after the second flush:
+    addDocs(w, 4);
+    assertEquals(1, w.getSegmentCount());
+
+    w.close();
+    dir.close();
+  }
+
+  public void testLargeMergesWaitForOffPeak() throws Exception {
+    Directory dir = newDirectory();
+    IndexWriterConfig conf = newIndexWriterConfig(new MockAnalyzer(random()));
+    conf.setMergeScheduler(new SerialMergeScheduler());
+    conf.setMaxBufferedDocs(2);
+    conf.setRAMBufferSizeMB(IndexWriterConfig.DISABLE_AUTO_FLUSH);
+    FakeClockMergePolicy mp = new FakeClockMergePolicy();
+    // noon UTC is peak time:
+    mp.now = 12 * HOUR_MS;
+    mp.setMaxMergeAtOnce(2);
+    mp.setSegmentsPerTier(2);
+    // every merge is "large":
+    mp.setLargeMergeMB(0.000001);
+    mp.setOffPeakHours(22, 6, TimeZone.getTimeZone("UTC"));
+    conf.setMergePolicy(mp);
+    IndexWriter w = new IndexWriter(dir, conf);
+
+    addDocs(w, 20);
+    assertEquals(10, w.getSegmentCount());
+
+    // 2 AM UTC is off-peak, so the deferred merges now run:
+    mp.now = 26 * HOUR_MS;
+    w.maybeMerge();
+    assertTrue(w.getSegmentCount() < 10);
+
+    w.close();
+    dir.close();
+  }
+
+  public void testSetters() {
+    BudgetedTieredMergePolicy mp = new BudgetedTieredMergePolicy();
+    mp.setMaxMergeMBPerHour(100.0);
+    assertEquals(100.0, mp.getMaxMergeMBPerHour(), 0.0);
+    mp.setLargeMergeMB(512.0);
+    assertEquals(512.0, mp.getLargeMergeMB(), 0.0);
+    mp.setSegmentCountWeight(0.5);
+    assertEquals(0.5, mp.getSegmentCountWeight(), 0.0);
+
+    try {
+      mp.setMaxMergeMBPerHour(0.0);
+      fail("Didn't throw IllegalArgumentException");
+    } catch (IllegalArgumentException iae) {
+      // pass
+    }
+    try {
+      mp.setOffPeakHours(3, 3, TimeZone.getTimeZone("UTC"));
+      fail("Didn't throw IllegalArgumentException");
+    } catch (IllegalArgumentException iae) {
+      // pass
+    }
+    try {
+      mp.setOffPeakHours(24, 3, TimeZone.getTimeZone("UTC"));
+      fail("Didn't throw IllegalArgumentException");
+    } catch (IllegalArgumentException iae) {
+      // pass
+    }
+  }
+
+  public void testOffPeakWindow() {
+    FakeClockMergePolicy mp = new FakeClockMergePolicy();
+    assertFalse(mp.isOffPeak());
+    mp.setOffPeakHours(1, 5, TimeZone.getTimeZone("UTC"));
+    mp.now = 3 * HOUR_MS;
+    assertTrue(mp.isOffPeak());
+    mp.now = 5 * HOUR_MS;
+    assertFalse(mp.isOffPeak());
+    mp.setOffPeakHours(22, 2, TimeZone.getTimeZone("UTC"));
+    mp.now = 23 * HOUR_MS;
+    assertTrue(mp.isOffPeak());
+    mp.now = 25 * HOUR_MS;
+    assertTrue(mp.isOffPeak());
+    mp.now = 12 * HOUR_MS;
+    assertFalse(mp.isOffPeak());
+  }
+}
@@ -22,6 +22,9 @@ import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.BitSet;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.lucene.analysis.MockAnalyzer;
 import org.apache.lucene.codecs.Codec;
@@ -45,12 +48,30 @@ import org.apache.lucene.util.Bits;
 import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.IOUtils;
 import org.apache.lucene.util.LuceneTestCase;
+import org.apache.lucene.util.NamedThreadFactory;
 import org.apache.lucene.util.NumericUtils;
 import org.apache.lucene.util.TestUtil;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
 
 // TODO: factor out a BaseTestDimensionFormat
 
 public class TestDimensionalValues extends LuceneTestCase {
+
+  private static ExecutorService executor;
+
+  @BeforeClass
+  public static void beforeClass() {
+    executor = Executors.newFixedThreadPool(TestUtil.nextInt(random(), 1, 4), new NamedThreadFactory("TestDimensionalValues"));
+  }
+
+  @AfterClass
+  public static void afterClass() throws Exception {
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+    executor = null;
+  }
+
   public void testBasic() throws Exception {
     Directory dir = getDirectory(20);
     // TODO: randomize codec once others support dimensional format
@@ -840,8 +861,12 @@ public class TestDimensionalValues extends LuceneTestCase {
     if (Codec.getDefault().getName().equals("Lucene60")) {
       int maxPointsInLeafNode = TestUtil.nextInt(random(), 50, 500);
       double maxMBSortInHeap = 0.1 + (3*random().nextDouble());
+      // sometimes build the trees concurrently, which must write the same index:
+      final ExecutorService codecExecutor = random().nextBoolean() ? executor : null;
+      final int maxConcurrentSubtrees = TestUtil.nextInt(random(), 1, 8);
       if (VERBOSE) {
-        System.out.println("TEST: using Lucene60DimensionalFormat with maxPointsInLeafNode=" + maxPointsInLeafNode + " and maxMBSortInHeap=" + maxMBSortInHeap);
+        System.out.println("TEST: using Lucene60DimensionalFormat with maxPointsInLeafNode=" + maxPointsInLeafNode + " and maxMBSortInHeap=" + maxMBSortInHeap
+                           + " executor=" + codecExecutor + " maxConcurrentSubtrees=" + maxConcurrentSubtrees);
       }
 
       return new FilterCodec("Lucene60", Codec.getDefault()) {
@@ -850,7 +875,7 @@ public class TestDimensionalValues extends LuceneTestCase {
           return new DimensionalFormat() {
             @Override
             public DimensionalWriter fieldsWriter(SegmentWriteState writeState) throws IOException {
-              return new Lucene60DimensionalWriter(writeState, maxPointsInLeafNode, maxMBSortInHeap);
+              return new Lucene60DimensionalWriter(writeState, maxPointsInLeafNode, maxMBSortInHeap, codecExecutor, maxConcurrentSubtrees);
             }
 
             @Override
@@ -1413,4 +1413,37 @@ public class TestIndexWriterDelete extends LuceneTestCase {
     w.close();
     dir.close();
   }
+
+  // Delete terms that fall beyond some segments' last term must still be applied to the segments that do have them
+  public void testDeleteTermsPastSegmentMaxTerm() throws Exception {
+    Directory dir = newDirectory();
+    IndexWriterConfig iwc = new IndexWriterConfig(new MockAnalyzer(random()));
+    iwc.setMergePolicy(NoMergePolicy.INSTANCE);
+    IndexWriter w = new IndexWriter(dir, iwc);
+    String[] prefixes = new String[] {"a", "m", "z"};
+    for(String prefix : prefixes) {
+      for(int i=0;i<20;i++) {
+        Document doc = new Document();
+        doc.add(newStringField("id", prefix + i, Field.Store.NO));
+        w.addDocument(doc);
+      }
+      w.commit();
+    }
+
+    // Sorted delete terms: some before, between, inside and after every segment's term range
+    w.deleteDocuments(new Term("id", "0"), new Term("id", "a3"), new Term("id", "b"), new Term("id", "m17"),
+                      new Term("id", "n"), new Term("id", "z0"), new Term("id", "z19"), new Term("id", "zz"),
+                      new Term("missing", "a3"));
+    DirectoryReader r = DirectoryReader.open(w, true);
+    assertEquals(3, r.leaves().size());
+    assertEquals(56, r.numDocs());
+    IndexSearcher s = newSearcher(r);
+    for(String id : new String[] {"a3", "m17", "z0", "z19"}) {
+      assertEquals(0, s.search(new TermQuery(new Term("id", id)), 1).totalHits);
+    }
+    assertEquals(1, s.search(new TermQuery(new Term("id", "z18")), 1).totalHits);
+    r.close();
+    w.close();
+    dir.close();
+  }
 }
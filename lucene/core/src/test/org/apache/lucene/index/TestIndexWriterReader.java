@@ -1173,4 +1173,36 @@ public class TestIndexWriterReader extends LuceneTestCase {
     w.close();
     dir.close();
   }
+
+  public void testWriteAllDeletes() throws Exception {
+    Directory dir = newDirectory();
+    IndexWriter w = new IndexWriter(dir, newIndexWriterConfig(new MockAnalyzer(random())));
+    for (int i = 0; i < 10; i++) {
+      Document doc = new Document();
+      doc.add(newStringField("id", "" + i, Field.Store.NO));
+      w.addDocument(doc);
+    }
+    w.commit();
+    w.deleteDocuments(new Term("id", "3"));
+
+    try {
+      DirectoryReader.open(w, false, true);
+      fail("did not hit exception");
+    } catch (IllegalArgumentException iae) {
+      // expected
+    }
+
+    DirectoryReader r = DirectoryReader.open(w, true, true);
+    assertEquals(9, r.numDocs());
+
+    // Deletes were written, so a reader opened only from the NRT SegmentInfos sees them:
+    SegmentInfos infos = ((StandardDirectoryReader) r).getSegmentInfos();
+    DirectoryReader r2 = StandardDirectoryReader.open(dir, infos, null);
+    assertEquals(9, r2.numDocs());
+
+    r2.close();
+    r.close();
+    w.close();
+    dir.close();
+  }
 }
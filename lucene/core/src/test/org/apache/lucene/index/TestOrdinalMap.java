@@ -28,12 +28,14 @@ import org.apache.lucene.document.SortedSetDocValuesField;
 import org.apache.lucene.index.MultiDocValues.MultiSortedDocValues;
 import org.apache.lucene.index.MultiDocValues.MultiSortedSetDocValues;
 import org.apache.lucene.index.MultiDocValues.OrdinalMap;
+import org.apache.lucene.search.MatchAllDocsQuery;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.LongValues;
 import org.apache.lucene.util.LuceneTestCase;
 import org.apache.lucene.util.RamUsageTester;
 import org.apache.lucene.util.TestUtil;
+import org.apache.lucene.util.packed.PackedInts;
 
 public class TestOrdinalMap extends LuceneTestCase {
 
@@ -99,4 +101,78 @@ public class TestOrdinalMap extends LuceneTestCase {
     dir.close();
   }
 
+  private static SortedSetDocValues[] getSortedSetValues(IndexReader r, String field) throws IOException {
+    final SortedSetDocValues[] values = new SortedSetDocValues[r.leaves().size()];
+    for (LeafReaderContext context : r.leaves()) {
+      values[context.ord] = DocValues.getSortedSet(context.reader(), field);
+    }
+    return values;
+  }
+
+  public void testIncrementalBuild() throws IOException {
+    Directory dir = newDirectory();
+    IndexWriterConfig cfg = new IndexWriterConfig(new MockAnalyzer(random())).setCodec(TestUtil.alwaysDocValuesFormat(TestUtil.getDefaultDocValuesFormat()));
+    RandomIndexWriter iw = new RandomIndexWriter(random(), dir, cfg);
+    final int maxTermLength = TestUtil.nextInt(random(), 1, 4);
+    DirectoryReader previousReader = null;
+    OrdinalMap previousMap = null;
+    final int iters = atLeast(10);
+    for (int iter = 0; iter < iters; ++iter) {
+      final int numDocs = TestUtil.nextInt(random(), 1, 200);
+      for (int i = 0; i < numDocs; ++i) {
+        Document d = new Document();
+        final int numSortedSet = random().nextInt(3);
+        for (int j = 0; j < numSortedSet; ++j) {
+          d.add(new SortedSetDocValuesField("ssdv", new BytesRef(TestUtil.randomSimpleString(random(), maxTermLength))));
+        }
+        iw.addDocument(d);
+      }
+      if (random().nextInt(4) == 0) {
+        iw.deleteDocuments(new MatchAllDocsQuery());
+      } else if (random().nextInt(4) == 0) {
+        iw.forceMerge(TestUtil.nextInt(random(), 1, 3));
+      }
+      DirectoryReader r = iw.getReader();
+
+      final SortedSetDocValues[] values = getSortedSetValues(r, "ssdv");
+      final int[] previousSegments = new int[values.length];
+      for (LeafReaderContext context : r.leaves()) {
+        previousSegments[context.ord] = -1;
+        if (previousReader != null) {
+          for (LeafReaderContext previousContext : previousReader.leaves()) {
+            if (previousContext.reader().getCoreCacheKey() == context.reader().getCoreCacheKey()) {
+              previousSegments[context.ord] = previousContext.ord;
+            }
+          }
+        }
+      }
+      final OrdinalMap expected = OrdinalMap.build(r.getCoreCacheKey(), values, PackedInts.DEFAULT);
+      final OrdinalMap actual = OrdinalMap.build(r.getCoreCacheKey(), getSortedSetValues(r, "ssdv"), previousMap, previousSegments, PackedInts.DEFAULT);
+
+      assertEquals(expected.getValueCount(), actual.getValueCount());
+      for (int i = 0; i < values.length; ++i) {
+        final LongValues expectedOrds = expected.getGlobalOrds(i);
+        final LongValues actualOrds = actual.getGlobalOrds(i);
+        for (long ord = 0; ord < values[i].getValueCount(); ++ord) {
+          assertEquals(expectedOrds.get(ord), actualOrds.get(ord));
+        }
+      }
+      for (long globalOrd = 0; globalOrd < actual.getValueCount(); ++globalOrd) {
+        final BytesRef expectedTerm = BytesRef.deepCopyOf(values[expected.getFirstSegmentNumber(globalOrd)].lookupOrd(expected.getFirstSegmentOrd(globalOrd)));
+        final BytesRef actualTerm = values[actual.getFirstSegmentNumber(globalOrd)].lookupOrd(actual.getFirstSegmentOrd(globalOrd));
+        assertEquals(expectedTerm, actualTerm);
+      }
+      assertEquals(RamUsageTester.sizeOf(actual, ORDINAL_MAP_ACCUMULATOR), actual.ramBytesUsed());
+
+      if (previousReader != null) {
+        previousReader.close();
+      }
+      previousReader = r;
+      previousMap = actual;
+    }
+    iw.close();
+    previousReader.close();
+    dir.close();
+  }
+
 }
@@ -0,0 +1,176 @@
+package org.apache.lucene.index;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.apache.lucene.analysis.MockAnalyzer;
+import org.apache.lucene.document.BinaryDocValuesField;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.LuceneTestCase;
+import org.apache.lucene.util.TestUtil;
+
+public class TestStackedDocValuesUpdates extends LuceneTestCase {
+
+  private static final int NUM_DOCS = 1000;
+
+  private IndexWriter newWriter(Directory dir) throws Exception {
+    IndexWriterConfig conf = newIndexWriterConfig(new MockAnalyzer(random()));
+    conf.setMergePolicy(NoMergePolicy.INSTANCE);
+    conf.setMaxBufferedDocs(IndexWriterConfig.DISABLE_AUTO_FLUSH);
+    conf.setRAMBufferSizeMB(16);
+    IndexWriter writer = new IndexWriter(dir, conf);
+    for (int i = 0; i < NUM_DOCS; i++) {
+      Document doc = new Document();
+      doc.add(new StringField("id", "doc-" + i, Store.NO));
+      doc.add(new NumericDocValuesField("ndv", i));
+      doc.add(new BinaryDocValuesField("bdv", new BytesRef(Integer.toString(i))));
+      writer.addDocument(doc);
+    }
+    writer.commit();
+    return writer;
+  }
+
+  private static int stackedGenCount(DirectoryReader reader, String field) {
+    assertEquals(1, reader.leaves().size());
+    FieldInfo fi = reader.leaves().get(0).reader().getFieldInfos().fieldInfo(field);
+    return StackedDocValuesUpdates.getGens(fi).length;
+  }
+
+  private static void assertValues(DirectoryReader reader, long[] expected) throws Exception {
+    LeafReader leaf = reader.leaves().get(0).reader();
+    NumericDocValues ndv = leaf.getNumericDocValues("ndv");
+    BinaryDocValues bdv = leaf.getBinaryDocValues("bdv");
+    for (int i = 0; i < NUM_DOCS; i++) {
+      assertEquals(expected[i], ndv.get(i));
+      assertEquals(new BytesRef(Long.toString(expected[i])), bdv.get(i));
+      assertTrue(leaf.getDocsWithField("ndv").get(i));
+    }
+  }
+
+  public void testFewUpdatesAreStacked() throws Exception {
+    Directory dir = newDirectory();
+    IndexWriter writer = newWriter(dir);
+    long[] expected = new long[NUM_DOCS];
+    for (int i = 0; i < NUM_DOCS; i++) {
+      expected[i] = i;
+    }
+
+    int expectedGens = 0;
+    for (int round = 0; round < 3 * StackedDocValuesUpdates.MAX_STACKED_GENS; round++) {
+      // at most 1% of the docs, so the updates can be stacked
+      int numUpdates = TestUtil.nextInt(random(), 1, 2);
+      for (int i = 0; i < numUpdates; i++) {
+        int doc = random().nextInt(NUM_DOCS);
+        long value = random().nextInt(1000000);
+        expected[doc] = value;
+        writer.updateDocValues(new Term("id", "doc-" + doc),
+            new NumericDocValuesField("ndv", value),
+            new BinaryDocValuesField("bdv", new BytesRef(Long.toString(value))));
+      }
+      DirectoryReader reader;
+      if (random().nextBoolean()) {
+        writer.commit();
+        reader = DirectoryReader.open(dir);
+      } else {
+        reader = DirectoryReader.open(writer, true);
+      }
+      int gens = stackedGenCount(reader, "ndv");
+      assertEquals(gens, stackedGenCount(reader, "bdv"));
+      assertTrue("gens=" + gens, gens <= StackedDocValuesUpdates.MAX_STACKED_GENS);
+      // either one more generation was stacked, or everything was compacted into a complete generation
+      assertTrue("gens=" + gens + " expectedGens=" + expectedGens, gens == expectedGens + 1 || gens == 0);
+      expectedGens = gens;
+      assertValues(reader, expected);
+      reader.close();
+    }
+
+    // merging compacts the stack away
+    Document doc = new Document();
+    doc.add(new StringField("id", "doc-" + NUM_DOCS, Store.NO));
+    writer.addDocument(doc);
+    writer.commit();
+    writer.getConfig().setMergePolicy(newLogMergePolicy());
+    writer.forceMerge(1);
+    DirectoryReader reader = DirectoryReader.open(writer, true);
+    assertEquals(0, stackedGenCount(reader, "ndv"));
+    assertValues(reader, expected);
+    reader.close();
+
+    writer.close();
+    dir.close();
+  }
+
+  public void testManyUpdatesWriteCompleteGeneration() throws Exception {
+    Directory dir = newDirectory();
+    IndexWriter writer = newWriter(dir);
+    long[] expected = new long[NUM_DOCS];
+    for (int i = 0; i < NUM_DOCS; i++) {
+      expected[i] = i;
+    }
+
+    writer.updateNumericDocValue(new Term("id", "doc-7"), "ndv", 17L);
+    writer.updateBinaryDocValue(new Term("id", "doc-7"), "bdv", new BytesRef("17"));
+    expected[7] = 17;
+    writer.commit();
+    DirectoryReader reader = DirectoryReader.open(dir);
+    assertEquals(1, stackedGenCount(reader, "ndv"));
+    assertValues(reader, expected);
+    reader.close();
+
+    // more than 1% of the docs: the stack is compacted
+    for (int doc = 0; doc < NUM_DOCS / 10; doc++) {
+      expected[doc] = -doc;
+      writer.updateDocValues(new Term("id", "doc-" + doc),
+          new NumericDocValuesField("ndv", -doc),
+          new BinaryDocValuesField("bdv", new BytesRef(Long.toString(-doc))));
+    }
+    writer.commit();
+    reader = DirectoryReader.open(dir);
+    assertEquals(0, stackedGenCount(reader, "ndv"));
+    assertEquals(0, stackedGenCount(reader, "bdv"));
+    assertValues(reader, expected);
+    reader.close();
+
+    writer.close();
+    dir.close();
+  }
+
+  public void testStackedGenerationFilesAreSmall() throws Exception {
+    Directory dir = newDirectory();
+    IndexWriter writer = newWriter(dir);
+    writer.updateNumericDocValue(new Term("id", "doc-42"), "ndv", 4242L);
+    writer.commit();
+
+    SegmentInfos infos = SegmentInfos.readLatestCommit(dir);
+    boolean found = false;
+    for (String file : infos.info(0).files()) {
+      if (file.endsWith("." + StackedDocValuesUpdates.EXTENSION)) {
+        found = true;
+        assertTrue("file=" + file + " length=" + dir.fileLength(file), dir.fileLength(file) < 200);
+      }
+    }
+    assertTrue(found);
+
+    writer.close();
+    dir.close();
+  }
+}
@@ -136,6 +136,32 @@ public class TestDocIdSetBuilder extends LuceneTestCase {
     }
   }
 
+  public void testBulkAdd() throws IOException {
+    final int maxDoc = 1 + random().nextInt(1000000);
+    DocIdSetBuilder builder = new DocIdSetBuilder(maxDoc);
+    final FixedBitSet ref = new FixedBitSet(maxDoc);
+    final int numBlocks = random().nextInt(maxDoc < 1000 ? 10 : 1000);
+    for (int i = 0; i < numBlocks; ++i) {
+      final int count = random().nextInt(1024);
+      final int offset = random().nextInt(10);
+      final int[] docs = new int[offset + count + random().nextInt(10)];
+      for (int j = 0; j < docs.length; ++j) {
+        docs[j] = random().nextInt(maxDoc);
+      }
+      for (int j = offset; j < offset + count; ++j) {
+        ref.set(docs[j]);
+      }
+      if (random().nextBoolean()) {
+        builder.add(docs, offset, count);
+      } else {
+        for (int j = offset; j < offset + count; ++j) {
+          builder.add(docs[j]);
+        }
+      }
+    }
+    assertEquals(new BitDocIdSet(ref), builder.build());
+  }
+
   public void testMisleadingDISICost() throws IOException {
     final int maxDoc = TestUtil.nextInt(random(), 1000, 10000);
     DocIdSetBuilder builder = new DocIdSetBuilder(maxDoc);
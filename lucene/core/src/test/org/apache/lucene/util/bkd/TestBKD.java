@@ -22,7 +22,12 @@ import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.BitSet;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.lucene.index.DimensionalValues.IntersectVisitor;
 import org.apache.lucene.index.DimensionalValues.Relation;
@@ -34,6 +39,7 @@ import org.apache.lucene.store.MockDirectoryWrapper;
 import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.IOUtils;
 import org.apache.lucene.util.LuceneTestCase;
+import org.apache.lucene.util.NamedThreadFactory;
 import org.apache.lucene.util.NumericUtils;
 import org.apache.lucene.util.TestUtil;
 
@@ -423,6 +429,372 @@ public class TestBKD extends LuceneTestCase {
     }
   }
 
+  public void testConcurrentBuildIsIdentical() throws Exception {
+    int numDocs = atLeast(2000);
+    int numDims = TestUtil.nextInt(random(), 1, 4);
+    int numBytesPerDim = TestUtil.nextInt(random(), 2, 8);
+    int maxPointsInLeafNode = TestUtil.nextInt(random(), 5, 50);
+    // Sometimes force offline sorting:
+    double maxMB = random().nextBoolean() ? 0.05 + random().nextDouble() * 0.1 : 16.0;
+
+    byte[][] values = new byte[numDocs][];
+    for(int docID=0;docID<numDocs;docID++) {
+      values[docID] = new byte[numDims*numBytesPerDim];
+      random().nextBytes(values[docID]);
+      if (docID > 0 && random().nextInt(10) == 0) {
+        // some duplicates:
+        values[docID] = values[random().nextInt(docID)];
+      }
+    }
+
+    ExecutorService executor = Executors.newFixedThreadPool(TestUtil.nextInt(random(), 1, 4), new NamedThreadFactory("TestBKD"));
+    try (Directory dir = getDirectory(numDocs)) {
+      byte[][] written = new byte[2][];
+      for(int iter=0;iter<2;iter++) {
+        BKDWriter w = new BKDWriter(dir, "tmp" + iter, numDims, numBytesPerDim, maxPointsInLeafNode, maxMB);
+        if (iter == 1) {
+          w.setExecutor(executor, TestUtil.nextInt(random(), 1, 16));
+        }
+        for(int docID=0;docID<numDocs;docID++) {
+          w.add(values[docID], docID);
+        }
+        String fileName = "bkd" + iter;
+        try (IndexOutput out = dir.createOutput(fileName, IOContext.DEFAULT)) {
+          w.finish(out);
+        }
+        w.close();
+        try (IndexInput in = dir.openInput(fileName, IOContext.DEFAULT)) {
+          written[iter] = new byte[(int) in.length()];
+          in.readBytes(written[iter], 0, written[iter].length);
+        }
+      }
+      assertArrayEquals(written[0], written[1]);
+    } finally {
+      executor.shutdown();
+      assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+    }
+  }
+
+  /** Make sure a rejecting executor, or running finish on the only thread of the executor, still builds the tree */
+  public void testConcurrentBuildWithSaturatedExecutor() throws Exception {
+    int numDocs = atLeast(2000);
+    final int numDims = TestUtil.nextInt(random(), 1, 4);
+    final int numBytesPerDim = TestUtil.nextInt(random(), 2, 8);
+    final int maxPointsInLeafNode = TestUtil.nextInt(random(), 5, 50);
+    // Sometimes force offline sorting:
+    final double maxMB = random().nextBoolean() ? 0.05 + random().nextDouble() * 0.1 : 16.0;
+
+    final byte[][] values = new byte[numDocs][];
+    for(int docID=0;docID<numDocs;docID++) {
+      values[docID] = new byte[numDims*numBytesPerDim];
+      random().nextBytes(values[docID]);
+    }
+
+    final ExecutorService executor = Executors.newFixedThreadPool(1, new NamedThreadFactory("TestBKD"));
+    final boolean rejecting = random().nextBoolean();
+    if (rejecting) {
+      // a shut down executor rejects all tasks:
+      executor.shutdown();
+    }
+    try (final Directory dir = getDirectory(numDocs)) {
+      final byte[][] written = new byte[2][];
+      for(int iter=0;iter<2;iter++) {
+        final int i = iter;
+        Callable<byte[]> build = new Callable<byte[]>() {
+          @Override
+          public byte[] call() throws IOException {
+            BKDWriter w = new BKDWriter(dir, "tmp" + i, numDims, numBytesPerDim, maxPointsInLeafNode, maxMB);
+            if (i == 1) {
+              w.setExecutor(executor, TestUtil.nextInt(random(), 2, 16));
+            }
+            for(int docID=0;docID<values.length;docID++) {
+              w.add(values[docID], docID);
+            }
+            String fileName = "bkd" + i;
+            try (IndexOutput out = dir.createOutput(fileName, IOContext.DEFAULT)) {
+              w.finish(out);
+            }
+            w.close();
+            try (IndexInput in = dir.openInput(fileName, IOContext.DEFAULT)) {
+              byte[] bytes = new byte[(int) in.length()];
+              in.readBytes(bytes, 0, bytes.length);
+              return bytes;
+            }
+          }
+        };
+        if (iter == 1 && rejecting == false) {
+          // finish runs on the executor's only thread, so none of its own tasks can start there:
+          written[iter] = executor.submit(build).get();
+        } else {
+          written[iter] = build.call();
+        }
+      }
+      assertArrayEquals(written[0], written[1]);
+    } finally {
+      executor.shutdown();
+      assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+    }
+  }
+
+  /** Make sure the concurrent build also deletes its temp files on exception */
+  public void testConcurrentBuildWithExceptions() throws Exception {
+    int numDocs = atLeast(5000);
+    int numDims = TestUtil.nextInt(random(), 1, 4);
+    int numBytesPerDim = TestUtil.nextInt(random(), 2, 8);
+    byte[][] values = new byte[numDocs][];
+    for(int docID=0;docID<numDocs;docID++) {
+      values[docID] = new byte[numDims*numBytesPerDim];
+      random().nextBytes(values[docID]);
+    }
+
+    ExecutorService executor = Executors.newFixedThreadPool(TestUtil.nextInt(random(), 1, 4), new NamedThreadFactory("TestBKD"));
+    try {
+      double maxMB = 0.05;
+      boolean done = false;
+      while (done == false) {
+        try (MockDirectoryWrapper dir = newMockFSDirectory(createTempDir())) {
+          dir.setEnableVirusScanner(false);
+          BKDWriter w = null;
+          try {
+            w = new BKDWriter(dir, "_0", numDims, numBytesPerDim, 20, maxMB);
+            w.setExecutor(executor, TestUtil.nextInt(random(), 2, 8));
+            for(int docID=0;docID<numDocs;docID++) {
+              w.add(values[docID], docID);
+            }
+            dir.setRandomIOExceptionRate(0.05);
+            dir.setRandomIOExceptionRateOnOpen(0.05);
+            try (IndexOutput out = dir.createOutput("bkd", IOContext.DEFAULT)) {
+              w.finish(out);
+            }
+            dir.deleteFile("bkd");
+          } catch (IllegalArgumentException iae) {
+            assertTrue(iae.getMessage().contains("either increase maxMBSortInHeap or decrease maxPointsInLeafNode"));
+            maxMB *= 1.25;
+          } catch (IOException ioe) {
+            if (ioe.getMessage().contains("a random IOException")) {
+              done = true;
+            } else {
+              throw ioe;
+            }
+          } finally {
+            dir.setRandomIOExceptionRate(0.0);
+            dir.setRandomIOExceptionRateOnOpen(0.0);
+            IOUtils.closeWhileHandlingException(w);
+            IOUtils.deleteFilesIgnoringExceptions(dir, "bkd");
+          }
+
+          String[] files = dir.listAll();
+          assertTrue("files=" + Arrays.toString(files), files.length == 0 || Arrays.equals(files, new String[] {"extra0"}));
+        }
+      }
+    } finally {
+      executor.shutdown();
+      assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+    }
+  }
+
+  public void testMultiDimMergeReusesLeafBlocks() throws Exception {
+    int numDocs = atLeast(2000);
+    int numDims = TestUtil.nextInt(random(), 2, 4);
+    int numBytesPerDim = TestUtil.nextInt(random(), 2, 8);
+    int maxPointsInLeafNode = TestUtil.nextInt(random(), 5, 20);
+    // Force offline sorting when building the incoming segment:
+    double maxMB = 0.02;
+
+    byte[][] values = new byte[numDocs][];
+    for(int docID=0;docID<numDocs;docID++) {
+      values[docID] = new byte[numDims*numBytesPerDim];
+      random().nextBytes(values[docID]);
+    }
+
+    int docIDBase = TestUtil.nextInt(random(), 0, 100);
+
+    try (Directory dir = getDirectory(numDocs)) {
+      BKDWriter w = new BKDWriter(dir, "_0", numDims, numBytesPerDim, maxPointsInLeafNode, maxMB);
+      for(int docID=0;docID<numDocs;docID++) {
+        w.add(values[docID], docID);
+      }
+      long fp;
+      try (IndexOutput out = dir.createOutput("bkd", IOContext.DEFAULT)) {
+        fp = w.finish(out);
+      }
+      assertTrue(w.getTempBytesWritten() > 0);
+      w.close();
+
+      long indexFP;
+      try (IndexInput in = dir.openInput("bkd", IOContext.DEFAULT)) {
+        in.seek(fp);
+        BKDReader reader = new BKDReader(in);
+        w = new BKDWriter(dir, "_1", numDims, numBytesPerDim, maxPointsInLeafNode, maxMB);
+        try (IndexOutput out = dir.createOutput("bkd2", IOContext.DEFAULT)) {
+          indexFP = w.merge(out, null, Collections.singletonList(reader), Collections.singletonList(docIDBase));
+        }
+        // No re-sorting happened:
+        assertEquals(0, w.getTempBytesWritten());
+        w.close();
+      }
+
+      try (IndexInput in = dir.openInput("bkd2", IOContext.DEFAULT)) {
+        in.seek(indexFP);
+        BKDReader r = new BKDReader(in);
+        final byte[][] seen = new byte[docIDBase + numDocs][];
+        r.intersect(new IntersectVisitor() {
+            @Override
+            public void visit(int docID) {
+              throw new IllegalStateException();
+            }
+
+            @Override
+            public void visit(int docID, byte[] packedValue) {
+              assertNull(seen[docID]);
+              seen[docID] = packedValue.clone();
+            }
+
+            @Override
+            public Relation compare(byte[] minPacked, byte[] maxPacked) {
+              return Relation.CELL_CROSSES_QUERY;
+            }
+          });
+        for(int docID=0;docID<numDocs;docID++) {
+          assertArrayEquals(values[docID], seen[docIDBase + docID]);
+        }
+        for(int docID=0;docID<docIDBase;docID++) {
+          assertNull(seen[docID]);
+        }
+      }
+      dir.deleteFile("bkd");
+      dir.deleteFile("bkd2");
+    }
+  }
+
+  public void testMultiDimMergeReusesDisjointSegments() throws Exception {
+    int numSegs = TestUtil.nextInt(random(), 2, 6);
+    int numDocsPerSeg = TestUtil.nextInt(random(), 50, 500);
+    int numDims = TestUtil.nextInt(random(), 2, 3);
+    int numBytesPerDim = 4;
+    int maxPointsInLeafNode = TestUtil.nextInt(random(), 5, 20);
+    // Segments hold increasing values in this dimension, as if they were indexed in time order:
+    int orderDim = random().nextInt(numDims);
+
+    // The order in which the segments are passed to merge, which needn't be the order of their values:
+    List<Integer> segOrder = new ArrayList<>();
+    for(int seg=0;seg<numSegs;seg++) {
+      segOrder.add(seg);
+    }
+    Collections.shuffle(segOrder, random());
+
+    int numDocs = numSegs * numDocsPerSeg;
+    byte[][] values = new byte[numDocs][];
+    try (Directory dir = getDirectory(numDocs)) {
+      List<Long> fps = new ArrayList<>();
+      List<Integer> docIDBases = new ArrayList<>();
+      try (IndexOutput out = dir.createOutput("bkd", IOContext.DEFAULT)) {
+        for(int i=0;i<numSegs;i++) {
+          int seg = segOrder.get(i);
+          BKDWriter w = new BKDWriter(dir, "_" + i, numDims, numBytesPerDim, maxPointsInLeafNode, 1.0);
+          int docIDBase = i * numDocsPerSeg;
+          for(int docID=0;docID<numDocsPerSeg;docID++) {
+            byte[] value = new byte[numDims*numBytesPerDim];
+            for(int dim=0;dim<numDims;dim++) {
+              int v = dim == orderDim ? seg * 1000 + random().nextInt(1000) : random().nextInt(10000);
+              NumericUtils.intToBytes(v, value, dim);
+            }
+            values[docIDBase + docID] = value;
+            w.add(value, docID);
+          }
+          fps.add(w.finish(out));
+          docIDBases.add(docIDBase);
+          w.close();
+        }
+      }
+
+      long indexFP;
+      try (IndexInput in = dir.openInput("bkd", IOContext.DEFAULT)) {
+        List<BKDReader> readers = new ArrayList<>();
+        for(long fp : fps) {
+          in.seek(fp);
+          readers.add(new BKDReader(in));
+        }
+        // Would sort offline if it had to re-partition the points:
+        BKDWriter w = new BKDWriter(dir, "_merged", numDims, numBytesPerDim, maxPointsInLeafNode, 0.02);
+        try (IndexOutput out = dir.createOutput("bkd2", IOContext.DEFAULT)) {
+          indexFP = w.merge(out, null, readers, docIDBases);
+        }
+        // The incoming leaf blocks were re-used, so nothing was sorted:
+        assertEquals(0, w.getTempBytesWritten());
+        w.close();
+      }
+
+      try (IndexInput in = dir.openInput("bkd2", IOContext.DEFAULT)) {
+        in.seek(indexFP);
+        BKDReader r = new BKDReader(in);
+        // All values are within the cells of the merged tree:
+        r.verify(numDocs);
+
+        int iters = atLeast(20);
+        for(int iter=0;iter<iters;iter++) {
+          final int[] queryMin = new int[numDims];
+          final int[] queryMax = new int[numDims];
+          for(int dim=0;dim<numDims;dim++) {
+            int range = dim == orderDim ? numSegs * 1000 : 10000;
+            int x = random().nextInt(range);
+            int y = random().nextInt(range);
+            queryMin[dim] = Math.min(x, y);
+            queryMax[dim] = Math.max(x, y);
+          }
+
+          final BitSet hits = new BitSet();
+          r.intersect(new IntersectVisitor() {
+              @Override
+              public void visit(int docID) {
+                hits.set(docID);
+              }
+
+              @Override
+              public void visit(int docID, byte[] packedValue) {
+                for(int dim=0;dim<queryMin.length;dim++) {
+                  int x = NumericUtils.bytesToInt(packedValue, dim);
+                  if (x < queryMin[dim] || x > queryMax[dim]) {
+                    return;
+                  }
+                }
+                hits.set(docID);
+              }
+
+              @Override
+              public Relation compare(byte[] minPacked, byte[] maxPacked) {
+                boolean crosses = false;
+                for(int dim=0;dim<queryMin.length;dim++) {
+                  int min = NumericUtils.bytesToInt(minPacked, dim);
+                  int max = NumericUtils.bytesToInt(maxPacked, dim);
+                  if (max < queryMin[dim] || min > queryMax[dim]) {
+                    return Relation.CELL_OUTSIDE_QUERY;
+                  } else if (min < queryMin[dim] || max > queryMax[dim]) {
+                    crosses = true;
+                  }
+                }
+                return crosses ? Relation.CELL_CROSSES_QUERY : Relation.CELL_INSIDE_QUERY;
+              }
+            });
+
+          for(int docID=0;docID<numDocs;docID++) {
+            boolean expected = true;
+            for(int dim=0;dim<numDims;dim++) {
+              int x = NumericUtils.bytesToInt(values[docID], dim);
+              if (x < queryMin[dim] || x > queryMax[dim]) {
+                expected = false;
+                break;
+              }
+            }
+            assertEquals("docID=" + docID, expected, hits.get(docID));
+          }
+        }
+      }
+      dir.deleteFile("bkd");
+      dir.deleteFile("bkd2");
+    }
+  }
+
   private void doTestRandomBinary(int count) throws Exception {
     int numDocs = TestUtil.nextInt(random(), count, count*2);
     int numBytesPerDim = TestUtil.nextInt(random(), 2, 30);
@@ -629,7 +1001,7 @@ public class TestBKD extends LuceneTestCase {
 
       byte[] scratch = new byte[numBytesPerDim*numDims];
       int lastDocIDBase = 0;
-      boolean useMerge = numDims == 1 && numValues >= 10 && random().nextBoolean();
+      boolean useMerge = numValues >= 10 && random().nextBoolean();
       int valuesInThisSeg;
       if (useMerge) {
         // Sometimes we will call merge with a single segment:
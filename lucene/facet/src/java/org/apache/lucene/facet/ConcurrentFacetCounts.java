@@ -0,0 +1,161 @@
+package org.apache.lucene.facet;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.lucene.facet.FacetsCollector.MatchingDocs;
+import org.apache.lucene.util.ThreadInterruptedException;
+
+/** Tallies per-segment facet counts with an optional
+ *  {@link ExecutorService}: each task pulls segments off a
+ *  shared queue and counts them into its own private
+ *  {@code int[]}, and the private arrays are summed into
+ *  the caller's array once all tasks are done.  The calling
+ *  thread runs one of the tasks itself.
+ *
+ *  <p>Each task holds a full size counts array, so besides
+ *  the calling thread at most as many tasks are submitted as
+ *  there are available processors, or pool threads if the
+ *  executor is a {@link ThreadPoolExecutor}.
+ *
+ *  <p>The calling thread never waits for a task that has not
+ *  started yet: once it has drained the queue, tasks still
+ *  waiting for a pool thread are cancelled, and tasks the
+ *  executor rejects are simply not run.  It is therefore safe
+ *  to share a small, bounded pool, including with callers that
+ *  themselves run on that pool.
+ *
+ * @lucene.internal */
+public final class ConcurrentFacetCounts {
+
+  private ConcurrentFacetCounts() {}
+
+  /** Counts the hits of a single segment. */
+  public interface LeafCounter {
+    /** Adds the counts for {@code hits} to {@code counts};
+     *  may be called concurrently from several threads, but
+     *  never with the same {@code counts} array. */
+    void count(MatchingDocs hits, int[] counts) throws IOException;
+  }
+
+  /** Counts all {@code matchingDocs} into {@code counts}.
+   *  If {@code executor} is null, or there is only one
+   *  segment, all segments are counted in the calling
+   *  thread. */
+  public static void count(ExecutorService executor, final List<MatchingDocs> matchingDocs, int[] counts, final LeafCounter counter) throws IOException {
+    final int numTasks = Math.min(matchingDocs.size(), 1 + getMaxThreads(executor));
+    if (executor == null || numTasks <= 1) {
+      for(MatchingDocs hits : matchingDocs) {
+        counter.count(hits, counts);
+      }
+      return;
+    }
+
+    final AtomicInteger nextSegment = new AtomicInteger();
+    final int size = counts.length;
+    final List<Future<int[]>> futures = new ArrayList<>(numTasks-1);
+    final List<AtomicBoolean> started = new ArrayList<>(numTasks-1);
+    for(int i=1;i<numTasks;i++) {
+      final AtomicBoolean taskStarted = new AtomicBoolean();
+      final Future<int[]> future;
+      try {
+        future = executor.submit(new Callable<int[]>() {
+          @Override
+          public int[] call() throws IOException {
+            if (taskStarted.compareAndSet(false, true) == false) {
+              // the calling thread gave up on this task
+              return null;
+            }
+            int[] taskCounts = null;
+            int idx;
+            while ((idx = nextSegment.getAndIncrement()) < matchingDocs.size()) {
+              if (taskCounts == null) {
+                taskCounts = new int[size];
+              }
+              counter.count(matchingDocs.get(idx), taskCounts);
+            }
+            return taskCounts;
+          }
+        });
+      } catch (RejectedExecutionException ree) {
+        // the calling thread will count the remaining segments
+        break;
+      }
+      futures.add(future);
+      started.add(taskStarted);
+    }
+
+    // The calling thread counts directly into the target array:
+    int idx;
+    while ((idx = nextSegment.getAndIncrement()) < matchingDocs.size()) {
+      counter.count(matchingDocs.get(idx), counts);
+    }
+
+    for(int i=0;i<futures.size();i++) {
+      // NOTE: Future.cancel also succeeds on a running task, so the task claims itself instead:
+      if (started.get(i).compareAndSet(false, true)) {
+        // never started, and there is nothing left for it to count
+        futures.get(i).cancel(false);
+        continue;
+      }
+      final Future<int[]> future = futures.get(i);
+      final int[] taskCounts;
+      try {
+        taskCounts = future.get();
+      } catch (InterruptedException e) {
+        throw new ThreadInterruptedException(e);
+      } catch (ExecutionException e) {
+        final Throwable cause = e.getCause();
+        if (cause instanceof IOException) {
+          throw (IOException) cause;
+        } else if (cause instanceof RuntimeException) {
+          throw (RuntimeException) cause;
+        } else if (cause instanceof Error) {
+          throw (Error) cause;
+        }
+        throw new RuntimeException(e);
+      }
+      if (taskCounts != null) {
+        for(int ord=0;ord<size;ord++) {
+          counts[ord] += taskCounts[ord];
+        }
+      }
+    }
+  }
+
+  /** Returns how many tasks may run besides the calling
+   *  thread, see the class javadocs. */
+  private static int getMaxThreads(ExecutorService executor) {
+    int maxThreads = Runtime.getRuntime().availableProcessors();
+    if (executor instanceof ThreadPoolExecutor) {
+      maxThreads = Math.min(maxThreads, ((ThreadPoolExecutor) executor).getMaximumPoolSize());
+    }
+    return maxThreads;
+  }
+}
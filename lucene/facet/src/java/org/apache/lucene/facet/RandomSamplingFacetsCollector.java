@@ -39,7 +39,15 @@ import org.apache.lucene.util.FixedBitSet;
  * If you require the original set of hits, you can call
  * {@link #getOriginalMatchingDocs()}. Also, since the counts of the top-facets
  * is based on the sampled set, you can amortize the counts by calling
- * {@link #amortizeFacetCounts}.
+ * {@link #amortizeFacetCounts}, and get the error bounds of the amortized
+ * counts with {@link #getCountErrorBound}.
+ * <p>
+ * Since the sample size is fixed, the sampling rate adapts to the number of
+ * hits, and the cost of counting facets is bounded regardless of how many
+ * documents match. Sampling works with any {@link Facets} implementation that
+ * counts the {@link #getMatchingDocs() matching docs}, e.g. taxonomy facets,
+ * {@link org.apache.lucene.facet.sortedset.SortedSetDocValuesFacetCounts} and
+ * range facets.
  */
 public class RandomSamplingFacetsCollector extends FacetsCollector {
   
@@ -81,6 +89,7 @@ public class RandomSamplingFacetsCollector extends FacetsCollector {
   private final XORShift64Random random;
   
   private double samplingRate;
+  private int binSize;
   private List<MatchingDocs> sampledDocs;
   private int totalHits = NOT_CALCULATED;
   private int leftoverBin = NOT_CALCULATED;
@@ -141,7 +150,9 @@ public class RandomSamplingFacetsCollector extends FacetsCollector {
     }
     
     if (sampledDocs == null) {
-      samplingRate = (1.0 * sampleSize) / totalHits;
+      // one doc is sampled out of every binSize hits:
+      binSize = (int) ((1.0 * totalHits) / sampleSize);
+      samplingRate = 1.0 / binSize;
       sampledDocs = createSampledDocs(matchingDocs);
     }
     return sampledDocs;
@@ -168,8 +179,6 @@ public class RandomSamplingFacetsCollector extends FacetsCollector {
     // TODO: we could try the WAH8DocIdSet here as well, as the results will be sparse
     FixedBitSet sampleDocs = new FixedBitSet(maxdoc);
     
-    int binSize = (int) (1.0 / samplingRate);
-    
     try {
       int counter = 0;
       int limit, randomIndex;
@@ -257,6 +266,55 @@ public class RandomSamplingFacetsCollector extends FacetsCollector {
     return new FacetResult(res.dim, res.path, correctedTotalCount, fixedLabelValues, res.childCount);
   }
   
+  /**
+   * Amortizes the counts of a {@link FacetResult} that was computed over the
+   * sampled hits, capping them at the total number of hits. Unlike
+   * {@link #amortizeFacetCounts(FacetResult, FacetsConfig, IndexSearcher)}
+   * this does not look up the number of documents of each label in the index,
+   * so it also works for facets that are not indexed as drill-down terms, like
+   * {@link org.apache.lucene.facet.range.LongRangeFacetCounts} and
+   * {@link org.apache.lucene.facet.range.DoubleRangeFacetCounts}.
+   */
+  public FacetResult amortizeFacetCounts(FacetResult res) {
+    if (res == null || totalHits <= sampleSize) {
+      return res;
+    }
+    
+    LabelAndValue[] fixedLabelValues = new LabelAndValue[res.labelValues.length];
+    for (int i = 0; i < res.labelValues.length; i++) {
+      fixedLabelValues[i] = new LabelAndValue(res.labelValues[i].label, amortizeCount(res.labelValues[i].value));
+    }
+    
+    return new FacetResult(res.dim, res.path, amortizeCount(res.value), fixedLabelValues, res.childCount);
+  }
+  
+  /**
+   * Returns the estimated count, over all hits, of a count that was computed
+   * over the sampled hits, capped at the total number of hits.
+   */
+  public int amortizeCount(Number sampledCount) {
+    if (totalHits <= sampleSize) {
+      return sampledCount.intValue();
+    }
+    return (int) Math.min(totalHits, Math.round(sampledCount.doubleValue() / samplingRate));
+  }
+  
+  /**
+   * Returns the half-width of the confidence interval of an amortized count,
+   * for the given z-score, e.g. 1.96 for a 95% confidence interval: the true
+   * count is estimated to be within {@code amortizedCount +/- bound}. Sampling
+   * is approximated as an independent random draw of each hit with probability
+   * {@link #getSamplingRate()}, which slightly overestimates the error of the
+   * systematic sampling done by this collector. Returns 0 if no sampling was
+   * done.
+   */
+  public double getCountErrorBound(Number amortizedCount, double zScore) {
+    if (totalHits <= sampleSize) {
+      return 0;
+    }
+    return zScore * Math.sqrt(amortizedCount.doubleValue() * (1 - samplingRate) / samplingRate);
+  }
+  
   /** Returns the sampling rate that was used. */
   public double getSamplingRate() {
     return samplingRate;
@@ -18,6 +18,7 @@ package org.apache.lucene.facet.range;
  */
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -26,19 +27,33 @@ import java.util.Map;
 /** Counts how many times each range was seen;
  *  per-hit it's just a binary search ({@link #add})
  *  against the elementary intervals, and in the end we
- *  rollup back to the original ranges. */
+ *  rollup back to the original ranges.  Multi-valued
+ *  docs ({@link #addMultiValued}) are instead counted
+ *  directly against the ranges holding each elementary
+ *  interval. */
 
 final class LongRangeCounter {
 
   final LongRangeNode root;
   final long[] boundaries;
   final int[] leafCounts;
+  final LongRange[] ranges;
+
+  // Used for multi-valued docs, which are counted per range
+  // instead of per elementary interval so that a doc with
+  // several values in one range is only counted once:
+  private int[][] leafRanges;
+  private int[] multiValuedCounts;
+  private int[] rangeLastDoc;
+  private int multiValuedDoc;
+  private int multiValuedMissingCount;
 
   // Used during rollup
   private int leafUpto;
   private int missingCount;
 
   public LongRangeCounter(LongRange[] ranges) {
+    this.ranges = ranges;
     // Maps all range inclusive endpoints to int flags; 1
     // = start of interval, 2 = end of interval.  We need to
     // track the start vs end case separately because if a
@@ -172,6 +187,82 @@ final class LongRangeCounter {
     }
   }
 
+  /** Adds the first {@code count} values; this is the
+   *  same as calling {@link #add} for each value, but
+   *  uses a branch-free search over the boundaries so
+   *  that a block of values can be bucketed without
+   *  mispredicted branches. */
+  public void addAll(long[] values, int count) {
+    final long[] boundaries = this.boundaries;
+    final int[] leafCounts = this.leafCounts;
+    for(int i=0;i<count;i++) {
+      leafCounts[findLeaf(boundaries, values[i])]++;
+    }
+  }
+
+  /** Adds the sorted values of one multi-valued doc: each
+   *  range is counted at most once, no matter how many of
+   *  the values it holds. */
+  public void addMultiValued(long[] values, int count) {
+    if (leafRanges == null) {
+      initLeafRanges();
+    }
+    multiValuedDoc++;
+    boolean matched = false;
+    int lastLeaf = -1;
+    for(int i=0;i<count;i++) {
+      int leaf = findLeaf(boundaries, values[i]);
+      if (leaf == lastLeaf) {
+        // values are sorted, so equal leaves are adjacent
+        continue;
+      }
+      lastLeaf = leaf;
+      for(int rangeIndex : leafRanges[leaf]) {
+        matched = true;
+        if (rangeLastDoc[rangeIndex] != multiValuedDoc) {
+          rangeLastDoc[rangeIndex] = multiValuedDoc;
+          multiValuedCounts[rangeIndex]++;
+        }
+      }
+    }
+    if (matched == false) {
+      multiValuedMissingCount++;
+    }
+  }
+
+  /** Returns the index of the elementary interval holding
+   *  {@code v}, i.e. the first boundary that is {@code >= v}. */
+  private static int findLeaf(long[] boundaries, long v) {
+    int base = 0;
+    int len = boundaries.length;
+    while (len > 1) {
+      final int half = len >>> 1;
+      base = boundaries[base + half - 1] < v ? base + half : base;
+      len -= half;
+    }
+    return base;
+  }
+
+  /** Maps each elementary interval to the ranges holding it. */
+  private void initLeafRanges() {
+    leafRanges = new int[boundaries.length][];
+    int[] buffer = new int[ranges.length];
+    for(int leaf=0;leaf<boundaries.length;leaf++) {
+      long start = leaf == 0 ? Long.MIN_VALUE : boundaries[leaf-1] + 1;
+      int upto = 0;
+      for(int i=0;i<ranges.length;i++) {
+        // elementary intervals never straddle a range end
+        // point, so the start is enough:
+        if (start >= ranges[i].minIncl && start <= ranges[i].maxIncl) {
+          buffer[upto++] = i;
+        }
+      }
+      leafRanges[leaf] = Arrays.copyOf(buffer, upto);
+    }
+    multiValuedCounts = new int[ranges.length];
+    rangeLastDoc = new int[ranges.length];
+  }
+
   /** Fills counts corresponding to the original input
    *  ranges, returning the missing count (how many hits
    *  didn't match any ranges). */
@@ -180,7 +271,12 @@ final class LongRangeCounter {
     missingCount = 0;
     leafUpto = 0;
     rollup(root, counts, false);
-    return missingCount;
+    if (multiValuedCounts != null) {
+      for(int i=0;i<counts.length;i++) {
+        counts[i] += multiValuedCounts[i];
+      }
+    }
+    return missingCount + multiValuedMissingCount;
   }
 
   private int rollup(LongRangeNode node, int[] counts, boolean sawOutputs) {
@@ -24,17 +24,21 @@ import java.util.List;
 import org.apache.lucene.facet.Facets;
 import org.apache.lucene.facet.FacetsCollector.MatchingDocs;
 import org.apache.lucene.facet.FacetsCollector;
+import org.apache.lucene.index.DocValues;
 import org.apache.lucene.index.IndexReaderContext;
+import org.apache.lucene.index.NumericDocValues;
 import org.apache.lucene.index.ReaderUtil;
+import org.apache.lucene.index.SortedNumericDocValues;
 import org.apache.lucene.queries.function.FunctionValues;
 import org.apache.lucene.queries.function.ValueSource;
-import org.apache.lucene.queries.function.valuesource.LongFieldSource;
 import org.apache.lucene.search.DocIdSet;
 import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.Scorer;
 import org.apache.lucene.search.Weight;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.Bits;
 
 /** {@link Facets} implementation that computes counts for
  *  dynamic long ranges from a provided {@link ValueSource},
@@ -45,13 +49,26 @@ import org.apache.lucene.search.Weight;
  *  distance from the user's location, "&lt; 1 km", "&lt; 2 km",
  *  etc.).
  *
+ *  <p>When counting from a field, the field's {@link
+ *  NumericDocValues} or {@link SortedNumericDocValues} are
+ *  read directly, without a {@link ValueSource}: values of
+ *  matching docs are decoded in blocks and then bucketed
+ *  into the ranges in one go.  A multi-valued doc counts
+ *  once for each range holding at least one of its values.
+ *
  *  @lucene.experimental */
 public class LongRangeFacetCounts extends RangeFacetCounts {
 
-  /** Create {@code LongRangeFacetCounts}, using {@link
-   *  LongFieldSource} from the specified field. */
+  /** Number of matching docs whose values are decoded
+   *  before they are counted. */
+  private static final int BLOCK_SIZE = 256;
+
+  /** Create {@code LongRangeFacetCounts}, counting the
+   *  numeric or sorted numeric doc values of the
+   *  specified field. */
   public LongRangeFacetCounts(String field, FacetsCollector hits, LongRange... ranges) throws IOException {
-    this(field, new LongFieldSource(field), hits, ranges);
+    super(field, ranges, null);
+    count(field, hits.getMatchingDocs());
   }
 
   /** Create {@code RangeFacetCounts}, using the provided
@@ -70,6 +87,77 @@ public class LongRangeFacetCounts extends RangeFacetCounts {
     count(valueSource, hits.getMatchingDocs());
   }
 
+  private void count(String field, List<MatchingDocs> matchingDocs) throws IOException {
+
+    LongRange[] ranges = (LongRange[]) this.ranges;
+
+    LongRangeCounter counter = new LongRangeCounter(ranges);
+
+    final int[] docs = new int[BLOCK_SIZE];
+    final long[] values = new long[BLOCK_SIZE];
+    long[] docValues = new long[8];
+
+    int missingCount = 0;
+    for (MatchingDocs hits : matchingDocs) {
+      totCount += hits.totalHits;
+
+      SortedNumericDocValues multiValues = DocValues.getSortedNumeric(hits.context.reader(), field);
+      NumericDocValues singleValues = DocValues.unwrapSingleton(multiValues);
+      DocIdSetIterator it = hits.bits.iterator();
+
+      if (singleValues != null) {
+        // null if all docs have a value:
+        Bits docsWithField = DocValues.unwrapSingletonBits(multiValues);
+        int upto = 0;
+        for (int doc = it.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = it.nextDoc()) {
+          docs[upto++] = doc;
+          if (upto == BLOCK_SIZE) {
+            missingCount += countBlock(counter, singleValues, docsWithField, docs, values, upto);
+            upto = 0;
+          }
+        }
+        missingCount += countBlock(counter, singleValues, docsWithField, docs, values, upto);
+      } else {
+        for (int doc = it.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = it.nextDoc()) {
+          multiValues.setDocument(doc);
+          final int count = multiValues.count();
+          if (count == 0) {
+            missingCount++;
+          } else if (count == 1) {
+            counter.add(multiValues.valueAt(0));
+          } else {
+            docValues = ArrayUtil.grow(docValues, count);
+            for (int i = 0; i < count; i++) {
+              docValues[i] = multiValues.valueAt(i);
+            }
+            counter.addMultiValued(docValues, count);
+          }
+        }
+      }
+    }
+
+    missingCount += counter.fillCounts(counts);
+
+    totCount -= missingCount;
+  }
+
+  /** Decodes the values of a block of docs and counts
+   *  them, returning how many docs had no value. */
+  private static int countBlock(LongRangeCounter counter, NumericDocValues singleValues, Bits docsWithField,
+                                int[] docs, long[] values, int numDocs) {
+    int numValues = 0;
+    for (int i = 0; i < numDocs; i++) {
+      final int doc = docs[i];
+      final long value = singleValues.get(doc);
+      // missing docs decode to 0:
+      if (value != 0 || docsWithField == null || docsWithField.get(doc)) {
+        values[numValues++] = value;
+      }
+    }
+    counter.addAll(values, numValues);
+    return numDocs - numValues;
+  }
+
   private void count(ValueSource valueSource, List<MatchingDocs> matchingDocs) throws IOException {
 
     LongRange[] ranges = (LongRange[]) this.ranges;
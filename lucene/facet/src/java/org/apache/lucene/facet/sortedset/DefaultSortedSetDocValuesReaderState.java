@@ -20,15 +20,22 @@ package org.apache.lucene.facet.sortedset;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.apache.lucene.facet.FacetsConfig;
 import org.apache.lucene.facet.sortedset.SortedSetDocValuesReaderState.OrdRange;
-import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.DocValues;
 import org.apache.lucene.index.IndexReader;
-import org.apache.lucene.index.SlowCompositeReaderWrapper;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.MultiDocValues.MultiSortedSetDocValues;
+import org.apache.lucene.index.MultiDocValues.OrdinalMap;
 import org.apache.lucene.index.SortedSetDocValues;
+import org.apache.lucene.index.TermsEnum;
 import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefBuilder;
+import org.apache.lucene.util.packed.PackedInts;
 
 /**
  * Default implementation of {@link SortedSetDocValuesFacetCounts}
@@ -36,12 +43,18 @@ import org.apache.lucene.util.BytesRef;
 public class DefaultSortedSetDocValuesReaderState extends SortedSetDocValuesReaderState {
 
   private final String field;
-  private final LeafReader topReader;
   private final int valueCount;
 
   /** {@link IndexReader} passed to the constructor. */
   public final IndexReader origReader;
 
+  // Maps segment ords to global ords, or null if the reader has a single segment:
+  private final OrdinalMap ordinalMap;
+
+  // Core cache key of each segment, to find the unchanged segments when a new state is created
+  // from this one:
+  private final Object[] leafCoreKeys;
+
   private final Map<String,OrdRange> prefixToOrdRange = new HashMap<>();
 
   /** Creates this, pulling doc values from the default {@link
@@ -53,13 +66,60 @@ public class DefaultSortedSetDocValuesReaderState extends SortedSetDocValuesRead
   /** Creates this, pulling doc values from the specified
    *  field. */
   public DefaultSortedSetDocValuesReaderState(IndexReader reader, String field) throws IOException {
+    this(reader, field, null);
+  }
+
+  /** Creates this for a reopened reader, pulling doc
+   *  values from the specified field, and re-using the
+   *  global ordinals that {@code previous} computed for the
+   *  segments that did not change, so that only the labels
+   *  of new segments need to be merged.  This is much
+   *  cheaper than creating a state from scratch when the
+   *  reader is frequently reopened (e.g. near-real-time).
+   *  The reader of {@code previous} may be closed already.
+   *
+   *  @param previous state of a previous version of this
+   *  reader, for the same field, or null */
+  public DefaultSortedSetDocValuesReaderState(IndexReader reader, String field, DefaultSortedSetDocValuesReaderState previous) throws IOException {
+    if (previous != null && previous.field.equals(field) == false) {
+      throw new IllegalArgumentException("previous state must be for the same field (got: \"" + previous.field + "\", expected: \"" + field + "\")");
+    }
     this.field = field;
     this.origReader = reader;
 
-    // We need this to create thread-safe MultiSortedSetDV
-    // per collector:
-    topReader = SlowCompositeReaderWrapper.wrap(reader);
-    SortedSetDocValues dv = topReader.getSortedSetDocValues(field);
+    final List<LeafReaderContext> leaves = reader.leaves();
+    leafCoreKeys = new Object[leaves.size()];
+    for(LeafReaderContext context : leaves) {
+      leafCoreKeys[context.ord] = context.reader().getCoreCacheKey();
+    }
+
+    // Segments that were already in the previous reader:
+    final int[] previousSegments = new int[leaves.size()];
+    Arrays.fill(previousSegments, -1);
+    if (previous != null) {
+      Map<Object,Integer> previousLeaves = new IdentityHashMap<>();
+      for(int i=0;i<previous.leafCoreKeys.length;i++) {
+        previousLeaves.put(previous.leafCoreKeys[i], i);
+      }
+      for(int i=0;i<leafCoreKeys.length;i++) {
+        Integer previousSegment = previousLeaves.get(leafCoreKeys[i]);
+        if (previousSegment != null) {
+          previousSegments[i] = previousSegment;
+        }
+      }
+    }
+
+    if (leaves.size() > 1) {
+      final SortedSetDocValues[] values = getLeafValues(leaves, field);
+      if (values == null) {
+        throw new IllegalArgumentException("field \"" + field + "\" was not indexed with SortedSetDocValues");
+      }
+      ordinalMap = OrdinalMap.build(reader.getCoreCacheKey(), values, previous == null ? null : previous.ordinalMap, previousSegments, PackedInts.DEFAULT);
+    } else {
+      ordinalMap = null;
+    }
+
+    SortedSetDocValues dv = getDocValues();
     if (dv == null) {
       throw new IllegalArgumentException("field \"" + field + "\" was not indexed with SortedSetDocValues");
     }
@@ -68,6 +128,21 @@ public class DefaultSortedSetDocValuesReaderState extends SortedSetDocValuesRead
     }
     valueCount = (int) dv.getValueCount();
 
+    if (previous != null && previous.ordinalMap != null) {
+      // Only the labels of the new segments need to be checked:
+      for(LeafReaderContext context : leaves) {
+        if (previousSegments[context.ord] == -1) {
+          TermsEnum termsEnum = DocValues.getSortedSet(context.reader(), field).termsEnum();
+          BytesRef term;
+          while ((term = termsEnum.next()) != null) {
+            checkLabel(term);
+          }
+        }
+      }
+      computeOrdRanges(dv);
+      return;
+    }
+
     // TODO: we can make this more efficient if eg we can be
     // "involved" when OrdinalMap is being created?  Ie see
     // each term/ord it's assigning as it goes...
@@ -80,10 +155,7 @@ public class DefaultSortedSetDocValuesReaderState extends SortedSetDocValuesRead
     // support arbitrary hierarchy:
     for(int ord=0;ord<valueCount;ord++) {
       final BytesRef term = dv.lookupOrd(ord);
-      String[] components = FacetsConfig.stringToPath(term.utf8ToString());
-      if (components.length != 2) {
-        throw new IllegalArgumentException("this class can only handle 2 level hierarchy (dim/value); got: " + Arrays.toString(components) + " " + term.utf8ToString());
-      }
+      String[] components = checkLabel(term);
       if (!components[0].equals(lastDim)) {
         if (lastDim != null) {
           prefixToOrdRange.put(lastDim, new OrdRange(startOrd, ord-1));
@@ -98,10 +170,72 @@ public class DefaultSortedSetDocValuesReaderState extends SortedSetDocValuesRead
     }
   }
 
+  /** Returns the doc values of each segment, using empty
+   *  doc values for segments that do not have the field, or
+   *  null if no segment has it. */
+  private static SortedSetDocValues[] getLeafValues(List<LeafReaderContext> leaves, String field) throws IOException {
+    boolean anyReal = false;
+    final SortedSetDocValues[] values = new SortedSetDocValues[leaves.size()];
+    for(LeafReaderContext context : leaves) {
+      SortedSetDocValues v = context.reader().getSortedSetDocValues(field);
+      if (v == null) {
+        v = DocValues.emptySortedSet();
+      } else {
+        anyReal = true;
+      }
+      values[context.ord] = v;
+    }
+    return anyReal ? values : null;
+  }
+
+  private static String[] checkLabel(BytesRef term) {
+    String[] components = FacetsConfig.stringToPath(term.utf8ToString());
+    if (components.length != 2) {
+      throw new IllegalArgumentException("this class can only handle 2 level hierarchy (dim/value); got: " + Arrays.toString(components) + " " + term.utf8ToString());
+    }
+    return components;
+  }
+
+  /** Computes the ord range of each dimension by seeking
+   *  past all labels of the dimension, instead of visiting
+   *  every label. */
+  private void computeOrdRanges(SortedSetDocValues dv) {
+    final BytesRefBuilder end = new BytesRefBuilder();
+    int ord = 0;
+    while (ord < valueCount) {
+      final String dim = FacetsConfig.stringToPath(dv.lookupOrd(ord).utf8ToString())[0];
+      // All labels of this dimension start with the encoded
+      // dimension followed by the delimiter; the smallest
+      // term that sorts after all of them has the delimiter
+      // byte incremented:
+      final int prefixLength = new BytesRef(FacetsConfig.pathToString(new String[] {dim})).length + 1;
+      end.copyBytes(new BytesRef(FacetsConfig.pathToString(dim, new String[] {"x"})));
+      end.setLength(prefixLength);
+      end.setByteAt(prefixLength-1, (byte) (end.byteAt(prefixLength-1) + 1));
+      long endOrd = dv.lookupTerm(end.get());
+      if (endOrd < 0) {
+        endOrd = -endOrd - 1;
+      }
+      assert endOrd > ord;
+      prefixToOrdRange.put(dim, new OrdRange(ord, (int) endOrd - 1));
+      ord = (int) endOrd;
+    }
+  }
+
   /** Return top-level doc values. */
   @Override
   public SortedSetDocValues getDocValues() throws IOException {
-    return topReader.getSortedSetDocValues(field);
+    final List<LeafReaderContext> leaves = origReader.leaves();
+    if (ordinalMap == null) {
+      return leaves.isEmpty() ? null : leaves.get(0).reader().getSortedSetDocValues(field);
+    }
+    final SortedSetDocValues[] values = getLeafValues(leaves, field);
+    final int[] starts = new int[leaves.size()+1];
+    for(LeafReaderContext context : leaves) {
+      starts[context.ord] = context.docBase;
+    }
+    starts[leaves.size()] = origReader.maxDoc();
+    return new MultiSortedSetDocValues(values, starts, ordinalMap);
   }
 
   /** Returns mapping from prefix to {@link OrdRange}. */
@@ -19,7 +19,9 @@ package org.apache.lucene.facet.taxonomy;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
 
+import org.apache.lucene.facet.ConcurrentFacetCounts;
 import org.apache.lucene.facet.FacetsCollector;
 import org.apache.lucene.facet.FacetsCollector.MatchingDocs;
 import org.apache.lucene.facet.FacetsConfig;
@@ -45,40 +47,55 @@ public class FastTaxonomyFacetCounts extends IntTaxonomyFacets {
    *  FacetsConfig#setIndexFieldName} to change the index
    *  field name for certain dimensions. */
   public FastTaxonomyFacetCounts(String indexFieldName, TaxonomyReader taxoReader, FacetsConfig config, FacetsCollector fc) throws IOException {
+    this(indexFieldName, taxoReader, config, fc, null);
+  }
+
+  /** Create {@code FastTaxonomyFacetCounts}, using the
+   *  specified {@code indexFieldName} for ordinals, and
+   *  counting segments concurrently with the provided
+   *  {@link ExecutorService} (may be null, to count all
+   *  segments in the calling thread). */
+  public FastTaxonomyFacetCounts(String indexFieldName, TaxonomyReader taxoReader, FacetsConfig config, FacetsCollector fc, ExecutorService executor) throws IOException {
     super(indexFieldName, taxoReader, config);
-    count(fc.getMatchingDocs());
+    count(fc.getMatchingDocs(), executor);
   }
 
-  private final void count(List<MatchingDocs> matchingDocs) throws IOException {
-    for(MatchingDocs hits : matchingDocs) {
-      BinaryDocValues dv = hits.context.reader().getBinaryDocValues(indexFieldName);
-      if (dv == null) { // this reader does not have DocValues for the requested category list
-        continue;
-      }
+  private final void count(List<MatchingDocs> matchingDocs, ExecutorService executor) throws IOException {
+    ConcurrentFacetCounts.count(executor, matchingDocs, values, new ConcurrentFacetCounts.LeafCounter() {
+        @Override
+        public void count(MatchingDocs hits, int[] counts) throws IOException {
+          countOneSegment(hits, counts);
+        }
+      });
+    rollup();
+  }
+
+  private void countOneSegment(MatchingDocs hits, int[] values) throws IOException {
+    BinaryDocValues dv = hits.context.reader().getBinaryDocValues(indexFieldName);
+    if (dv == null) { // this reader does not have DocValues for the requested category list
+      return;
+    }
 
-      DocIdSetIterator docs = hits.bits.iterator();
+    DocIdSetIterator docs = hits.bits.iterator();
       
-      int doc;
-      while ((doc = docs.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
-        final BytesRef bytesRef = dv.get(doc);
-        byte[] bytes = bytesRef.bytes;
-        int end = bytesRef.offset + bytesRef.length;
-        int ord = 0;
-        int offset = bytesRef.offset;
-        int prev = 0;
-        while (offset < end) {
-          byte b = bytes[offset++];
-          if (b >= 0) {
-            prev = ord = ((ord << 7) | b) + prev;
-            ++values[ord];
-            ord = 0;
-          } else {
-            ord = (ord << 7) | (b & 0x7F);
-          }
+    int doc;
+    while ((doc = docs.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+      final BytesRef bytesRef = dv.get(doc);
+      byte[] bytes = bytesRef.bytes;
+      int end = bytesRef.offset + bytesRef.length;
+      int ord = 0;
+      int offset = bytesRef.offset;
+      int prev = 0;
+      while (offset < end) {
+        byte b = bytes[offset++];
+        if (b >= 0) {
+          prev = ord = ((ord << 7) | b) + prev;
+          ++values[ord];
+          ord = 0;
+        } else {
+          ord = (ord << 7) | (b & 0x7F);
         }
       }
     }
-
-    rollup();
   }
 }
@@ -0,0 +1,161 @@
+package org.apache.lucene.facet.taxonomy.writercache;
+
+import org.apache.lucene.facet.taxonomy.FacetLabel;
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.ByteBlockPool;
+import org.apache.lucene.util.BytesRefBuilder;
+import org.apache.lucene.util.BytesRefHash;
+import org.apache.lucene.util.Counter;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.apache.lucene.util.UnicodeUtil;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * {@link TaxonomyWriterCache} that keeps all the mappings from category to
+ * ordinal in memory, like {@link Cl2oTaxonomyWriterCache}, but stores the
+ * labels as UTF-8 bytes in a {@link BytesRefHash}: the labels are appended
+ * to large paged byte blocks and looked up through open addressing over
+ * primitive int arrays, and the ordinals are kept in paged int arrays.  This
+ * creates no objects per category, so adding many millions of categories
+ * puts little pressure on the garbage collector.
+ *
+ * <p>Because the byte blocks are addressed with {@code int} offsets, the
+ * encoded labels (plus one or two length bytes each) may take up at most
+ * about 2 GB; {@link #put} throws {@link IllegalStateException} once that
+ * limit would be exceeded.
+ * 
+ * @lucene.experimental
+ */
+public final class UTF8TaxonomyWriterCache implements TaxonomyWriterCache, Accountable {
+
+  // Separates the components of a label; can never occur in UTF-8:
+  private static final byte DELIMITER = (byte) 0xFF;
+
+  private static final int PAGE_BITS = 16;
+  private static final int PAGE_SIZE = 1 << PAGE_BITS;
+  private static final int PAGE_MASK = PAGE_SIZE - 1;
+
+  private final BytesRefBuilder bytes = new BytesRefBuilder();
+  private Counter bytesUsed;
+  private ByteBlockPool pool;
+  private BytesRefHash map;
+  private int[][] ordinals;
+
+  /** Sole constructor. */
+  public UTF8TaxonomyWriterCache() {
+    init();
+  }
+
+  private void init() {
+    bytesUsed = Counter.newCounter();
+    pool = new ByteBlockPool(new ByteBlockPool.DirectTrackingAllocator(bytesUsed));
+    map = new BytesRefHash(pool,
+                           BytesRefHash.DEFAULT_CAPACITY,
+                           new BytesRefHash.DirectBytesStartArray(BytesRefHash.DEFAULT_CAPACITY, bytesUsed));
+    ordinals = new int[1][];
+  }
+
+  /** Encodes the label into {@link #bytes}. */
+  private void encode(FacetLabel categoryPath) {
+    bytes.clear();
+    for (int i = 0; i < categoryPath.length; i++) {
+      if (i > 0) {
+        bytes.append(DELIMITER);
+      }
+      final String component = categoryPath.components[i];
+      // worst case UTF-8 length:
+      bytes.grow(bytes.length() + component.length() * UnicodeUtil.MAX_UTF8_BYTES_PER_CHAR);
+      bytes.setLength(UnicodeUtil.UTF16toUTF8(component, 0, component.length(), bytes.bytes(), bytes.length()));
+    }
+  }
+
+  @Override
+  public synchronized int get(FacetLabel categoryPath) {
+    encode(categoryPath);
+    final int id = map.find(bytes.get());
+    if (id < 0) {
+      return -1;
+    }
+    return ordinals[id >>> PAGE_BITS][id & PAGE_MASK];
+  }
+
+  @Override
+  public synchronized boolean put(FacetLabel categoryPath, int ordinal) {
+    encode(categoryPath);
+    // the pool may have to start a new block for this label, and block
+    // offsets must remain representable as an int:
+    if ((long) pool.byteOffset + 2 * ByteBlockPool.BYTE_BLOCK_SIZE > Integer.MAX_VALUE) {
+      throw new IllegalStateException("cannot add more than ~2 GB of label bytes to this cache (got " + ((long) pool.byteOffset + pool.byteUpto) + " bytes)");
+    }
+    int id = map.add(bytes.get());
+    if (id < 0) {
+      // already there: replace the ordinal
+      id = -id - 1;
+    }
+    final int page = id >>> PAGE_BITS;
+    if (page == ordinals.length) {
+      ordinals = ArrayUtil.grow(ordinals, page + 1);
+    }
+    if (ordinals[page] == null) {
+      ordinals[page] = new int[PAGE_SIZE];
+    }
+    ordinals[page][id & PAGE_MASK] = ordinal;
+    // Tell the caller we didn't clear part of the cache, so it doesn't
+    // have to flush its on-disk index now
+    return false;
+  }
+
+  @Override
+  public boolean isFull() {
+    // This cache is never full
+    return false;
+  }
+
+  @Override
+  public synchronized void clear() {
+    init();
+  }
+
+  @Override
+  public synchronized void close() {
+    pool = null;
+    map = null;
+    ordinals = null;
+  }
+
+  /** Returns the number of categories in this cache. */
+  public synchronized int size() {
+    return map == null ? 0 : map.size();
+  }
+
+  @Override
+  public synchronized long ramBytesUsed() {
+    if (ordinals == null) {
+      return 0;
+    }
+    long ramBytesUsed = bytesUsed.get() + RamUsageEstimator.shallowSizeOf(ordinals);
+    for (int[] page : ordinals) {
+      if (page != null) {
+        ramBytesUsed += RamUsageEstimator.sizeOf(page);
+      }
+    }
+    return ramBytesUsed;
+  }
+}
@@ -5,8 +5,15 @@ import java.util.Random;
 
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.document.NumericDocValuesField;
 import org.apache.lucene.document.StringField;
 import org.apache.lucene.facet.FacetsCollector.MatchingDocs;
+import org.apache.lucene.facet.range.LongRange;
+import org.apache.lucene.facet.range.LongRangeFacetCounts;
+import org.apache.lucene.facet.sortedset.DefaultSortedSetDocValuesReaderState;
+import org.apache.lucene.facet.sortedset.SortedSetDocValuesFacetCounts;
+import org.apache.lucene.facet.sortedset.SortedSetDocValuesFacetField;
+import org.apache.lucene.facet.sortedset.SortedSetDocValuesReaderState;
 import org.apache.lucene.facet.taxonomy.FastTaxonomyFacetCounts;
 import org.apache.lucene.facet.taxonomy.TaxonomyReader;
 import org.apache.lucene.facet.taxonomy.directory.DirectoryTaxonomyReader;
@@ -15,6 +22,7 @@ import org.apache.lucene.index.RandomIndexWriter;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
 import org.apache.lucene.search.MultiCollector;
 import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.store.Directory;
@@ -147,4 +155,79 @@ public class TestRandomSamplingFacetsCollector extends FacetTestCase {
     IOUtils.close(searcher.getIndexReader(), taxoReader, dir, taxoDir);
   }
   
+  public void testSortedSetAndRangeSampling() throws Exception {
+    Directory dir = newDirectory();
+    Random random = random();
+    RandomIndexWriter writer = new RandomIndexWriter(random, dir);
+    
+    FacetsConfig config = new FacetsConfig();
+    
+    final int numCategories = 3;
+    int numDocs = atLeast(10000);
+    int[] expectedCounts = new int[numCategories];
+    for (int i = 0; i < numDocs; i++) {
+      Document doc = new Document();
+      doc.add(new SortedSetDocValuesFacetField("iMod3", Integer.toString(i % numCategories)));
+      doc.add(new NumericDocValuesField("num", i));
+      writer.addDocument(config.build(doc));
+      expectedCounts[i % numCategories]++;
+    }
+    
+    // can't wrap because SSDV facets require the top-level reader
+    IndexSearcher searcher = newSearcher(writer.getReader(), false);
+    writer.close();
+    
+    RandomSamplingFacetsCollector sfc = new RandomSamplingFacetsCollector(numDocs / 10, random.nextLong());
+    searcher.search(new MatchAllDocsQuery(), sfc);
+    final List<MatchingDocs> matchingDocs = sfc.getMatchingDocs();
+    final double samplingRate = sfc.getSamplingRate();
+    assertTrue("samplingRate=" + samplingRate, samplingRate > 0 && samplingRate < 1);
+    
+    // sampling is done per bin of 1/samplingRate hits, which may straddle
+    // segments, so allow for one extra bin of error per segment
+    final double slack = matchingDocs.size() / samplingRate;
+    final double zScore = 5;
+    
+    SortedSetDocValuesReaderState state = new DefaultSortedSetDocValuesReaderState(searcher.getIndexReader());
+    Facets facets = new SortedSetDocValuesFacetCounts(state, sfc);
+    FacetResult amortized = sfc.amortizeFacetCounts(facets.getTopChildren(10, "iMod3"));
+    assertEquals(numCategories, amortized.labelValues.length);
+    for (LabelAndValue lv : amortized.labelValues) {
+      int expected = expectedCounts[Integer.parseInt(lv.label)];
+      double bound = sfc.getCountErrorBound(lv.value, zScore);
+      assertTrue(bound > 0);
+      assertEquals("label=" + lv.label, expected, lv.value.doubleValue(), bound + slack);
+    }
+    
+    LongRange[] ranges = new LongRange[] {
+        new LongRange("first half", 0L, true, numDocs / 2, false),
+        new LongRange("second half", numDocs / 2, true, numDocs, false),
+        new LongRange("first tenth", 0L, true, numDocs / 10, false),
+        new LongRange("none", numDocs, true, Long.MAX_VALUE, true)
+    };
+    facets = new LongRangeFacetCounts("num", sfc, ranges);
+    amortized = sfc.amortizeFacetCounts(facets.getTopChildren(0, "num"));
+    assertEquals(ranges.length, amortized.labelValues.length);
+    for (int i = 0; i < ranges.length; i++) {
+      LongRange range = ranges[i];
+      int expected = (int) (Math.min(numDocs, range.max) - Math.min(numDocs, range.min));
+      LabelAndValue lv = amortized.labelValues[i];
+      assertEquals(range.label, lv.label);
+      double bound = sfc.getCountErrorBound(lv.value, zScore);
+      assertEquals(range.label, expected, lv.value.doubleValue(), bound + slack);
+      assertTrue(lv.value.intValue() <= numDocs);
+    }
+    
+    // no sampling when there are fewer hits than the sample size
+    RandomSamplingFacetsCollector allDocs = new RandomSamplingFacetsCollector(numDocs, random.nextLong());
+    searcher.search(new MatchAllDocsQuery(), allDocs);
+    facets = new LongRangeFacetCounts("num", allDocs, ranges);
+    FacetResult result = facets.getTopChildren(0, "num");
+    assertSame(result, allDocs.amortizeFacetCounts(result));
+    assertEquals(0.0, allDocs.getCountErrorBound(numDocs, zScore), 0.0);
+    assertEquals(numDocs / 2, result.labelValues[0].value.intValue());
+    
+    IOUtils.close(searcher.getIndexReader(), dir);
+  }
+  
 }
@@ -30,6 +30,7 @@ import org.apache.lucene.document.Document;
 import org.apache.lucene.document.DoubleDocValuesField;
 import org.apache.lucene.document.FloatDocValuesField;
 import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.SortedNumericDocValuesField;
 import org.apache.lucene.facet.DrillDownQuery;
 import org.apache.lucene.facet.DrillSideways;
 import org.apache.lucene.facet.DrillSideways.DrillSidewaysResult;
@@ -483,7 +484,13 @@ public class TestRangeFacetCounts extends FacetTestCase {
         fastMatchQuery = null;
       }
       ValueSource vs = new LongFieldSource("field");
-      Facets facets = new LongRangeFacetCounts("field", vs, sfc, fastMatchQuery, ranges);
+      Facets facets;
+      if (fastMatchQuery == null && random().nextBoolean()) {
+        // count from the doc values directly:
+        facets = new LongRangeFacetCounts("field", sfc, ranges);
+      } else {
+        facets = new LongRangeFacetCounts("field", vs, sfc, fastMatchQuery, ranges);
+      }
       FacetResult result = facets.getTopChildren(10, "field");
       assertEquals(numRange, result.labelValues.length);
       for(int rangeID=0;rangeID<numRange;rangeID++) {
@@ -511,6 +518,84 @@ public class TestRangeFacetCounts extends FacetTestCase {
     IOUtils.close(r, dir);
   }
 
+  public void testRandomMultiValuedLongs() throws Exception {
+    Directory dir = newDirectory();
+    RandomIndexWriter w = new RandomIndexWriter(random(), dir);
+
+    int numDocs = atLeast(1000);
+    // small value space, so that docs often have several
+    // values in the same range:
+    long maxValue = TestUtil.nextInt(random(), 10, 1000);
+    long[][] values = new long[numDocs][];
+    for(int i=0;i<numDocs;i++) {
+      Document doc = new Document();
+      int numValues = random().nextInt(5);
+      values[i] = new long[numValues];
+      for(int j=0;j<numValues;j++) {
+        long v = random().nextInt((int) maxValue + 1);
+        values[i][j] = v;
+        doc.add(new SortedNumericDocValuesField("field", v));
+      }
+      w.addDocument(doc);
+    }
+    IndexReader r = w.getReader();
+    IndexSearcher s = newSearcher(r);
+
+    int numIters = atLeast(10);
+    for(int iter=0;iter<numIters;iter++) {
+      int numRange = TestUtil.nextInt(random(), 1, 100);
+      LongRange[] ranges = new LongRange[numRange];
+      for(int rangeID=0;rangeID<numRange;rangeID++) {
+        long min = random().nextInt((int) maxValue + 1);
+        long max = random().nextInt((int) maxValue + 1);
+        if (min > max) {
+          long x = min;
+          min = max;
+          max = x;
+        }
+        // ranges like (5, 6) would match nothing:
+        boolean minIncl = max - min < 2 || random().nextBoolean();
+        boolean maxIncl = max - min < 2 || random().nextBoolean();
+        ranges[rangeID] = new LongRange("r" + rangeID, min, minIncl, max, maxIncl);
+      }
+
+      // Do "slow but hopefully correct" computation of
+      // expected counts; a doc counts once per range:
+      int[] expectedCounts = new int[numRange];
+      int expectedTotCount = 0;
+      for(int i=0;i<numDocs;i++) {
+        boolean matched = false;
+        for(int rangeID=0;rangeID<numRange;rangeID++) {
+          for(long v : values[i]) {
+            if (ranges[rangeID].accept(v)) {
+              expectedCounts[rangeID]++;
+              matched = true;
+              break;
+            }
+          }
+        }
+        if (matched) {
+          expectedTotCount++;
+        }
+      }
+
+      FacetsCollector sfc = new FacetsCollector();
+      s.search(new MatchAllDocsQuery(), sfc);
+      Facets facets = new LongRangeFacetCounts("field", sfc, ranges);
+      FacetResult result = facets.getTopChildren(10, "field");
+      assertEquals(numRange, result.labelValues.length);
+      assertEquals(expectedTotCount, result.value.intValue());
+      for(int rangeID=0;rangeID<numRange;rangeID++) {
+        LabelAndValue subNode = result.labelValues[rangeID];
+        assertEquals("r" + rangeID, subNode.label);
+        assertEquals(ranges[rangeID].toString(), expectedCounts[rangeID], subNode.value.intValue());
+      }
+    }
+
+    w.close();
+    IOUtils.close(r, dir);
+  }
+
   public void testRandomFloats() throws Exception {
     Directory dir = newDirectory();
     RandomIndexWriter w = new RandomIndexWriter(random(), dir);
@@ -21,6 +21,8 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
@@ -32,6 +34,8 @@ import org.apache.lucene.facet.FacetsCollector;
 import org.apache.lucene.facet.FacetsConfig;
 import org.apache.lucene.facet.LabelAndValue;
 import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.NoMergePolicy;
 import org.apache.lucene.index.RandomIndexWriter;
 import org.apache.lucene.index.SlowCompositeReaderWrapper;
 import org.apache.lucene.index.Term;
@@ -41,6 +45,7 @@ import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.search.TopDocs;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.util.IOUtils;
+import org.apache.lucene.util.NamedThreadFactory;
 import org.apache.lucene.util.TestUtil;
 
 public class TestSortedSetDocValuesFacets extends FacetTestCase {
@@ -139,6 +144,66 @@ public class TestSortedSetDocValuesFacets extends FacetTestCase {
   }
 
   // LUCENE-5333
+  public void testReopenWithPreviousState() throws Exception {
+    Directory dir = newDirectory();
+    RandomIndexWriter writer = new RandomIndexWriter(random(), dir);
+    FacetsConfig config = new FacetsConfig();
+    config.setMultiValued("b", true);
+
+    IndexReader previousReader = null;
+    DefaultSortedSetDocValuesReaderState previousState = null;
+    int id = 0;
+    int iters = atLeast(10);
+    for(int iter=0;iter<iters;iter++) {
+      int numDocs = TestUtil.nextInt(random(), 1, 50);
+      for(int i=0;i<numDocs;i++) {
+        Document doc = new Document();
+        doc.add(newStringField("id", Integer.toString(id++), Field.Store.NO));
+        doc.add(new SortedSetDocValuesFacetField(random().nextBoolean() ? "a" : "c", "foo" + random().nextInt(100)));
+        int numB = random().nextInt(3);
+        for(int j=0;j<numB;j++) {
+          doc.add(new SortedSetDocValuesFacetField("b", "bar" + random().nextInt(100)));
+        }
+        writer.addDocument(config.build(doc));
+      }
+      if (random().nextInt(5) == 0) {
+        writer.deleteDocuments(new Term("id", Integer.toString(random().nextInt(id))));
+      }
+      if (random().nextInt(5) == 0) {
+        writer.forceMerge(TestUtil.nextInt(random(), 1, 3));
+      }
+
+      IndexReader r = writer.getReader();
+      if (previousReader != null) {
+        // the previous reader may be closed already
+        previousReader.close();
+      }
+      DefaultSortedSetDocValuesReaderState state = new DefaultSortedSetDocValuesReaderState(r, FacetsConfig.DEFAULT_INDEX_FIELD_NAME, previousState);
+      SortedSetDocValuesReaderState expectedState = new DefaultSortedSetDocValuesReaderState(r);
+      assertEquals(expectedState.getSize(), state.getSize());
+      assertEquals(expectedState.getPrefixToOrdRange().keySet(), state.getPrefixToOrdRange().keySet());
+      for(String dim : expectedState.getPrefixToOrdRange().keySet()) {
+        assertEquals(expectedState.getOrdRange(dim).start, state.getOrdRange(dim).start);
+        assertEquals(expectedState.getOrdRange(dim).end, state.getOrdRange(dim).end);
+      }
+
+      // don't wrap the reader, the state must match the reader being searched:
+      IndexSearcher searcher = newSearcher(r, false);
+      FacetsCollector c = new FacetsCollector();
+      searcher.search(new MatchAllDocsQuery(), c);
+      Facets expected = new SortedSetDocValuesFacetCounts(expectedState, c);
+      Facets actual = new SortedSetDocValuesFacetCounts(state, c);
+      assertEquals(expected.getAllDims(200).toString(), actual.getAllDims(200).toString());
+
+      previousReader = r;
+      previousState = state;
+    }
+
+    previousReader.close();
+    writer.close();
+    dir.close();
+  }
+
   public void testSparseFacets() throws Exception {
     Directory dir = newDirectory();
 
@@ -231,6 +296,52 @@ public class TestSortedSetDocValuesFacets extends FacetTestCase {
     dir.close();
   }
 
+  public void testConcurrentCounting() throws Exception {
+    Directory dir = newDirectory();
+    IndexWriterConfig iwc = newIndexWriterConfig();
+    iwc.setMergePolicy(NoMergePolicy.INSTANCE);
+    RandomIndexWriter writer = new RandomIndexWriter(random(), dir, iwc);
+
+    FacetsConfig config = new FacetsConfig();
+    config.setMultiValued("b", true);
+    int numSegments = TestUtil.nextInt(random(), 2, 8);
+    for(int seg=0;seg<numSegments;seg++) {
+      int numDocs = atLeast(20);
+      for(int i=0;i<numDocs;i++) {
+        Document doc = new Document();
+        if (random().nextInt(5) != 0) {
+          doc.add(new SortedSetDocValuesFacetField("a", "foo" + random().nextInt(20)));
+        }
+        int numB = random().nextInt(3);
+        for(int j=0;j<numB;j++) {
+          doc.add(new SortedSetDocValuesFacetField("b", "bar" + random().nextInt(50)));
+        }
+        writer.addDocument(config.build(doc));
+      }
+      writer.commit();
+    }
+
+    IndexSearcher searcher = newSearcher(writer.getReader());
+    writer.close();
+
+    SortedSetDocValuesReaderState state = new DefaultSortedSetDocValuesReaderState(searcher.getIndexReader());
+
+    FacetsCollector c = new FacetsCollector();
+    searcher.search(new MatchAllDocsQuery(), c);
+
+    ExecutorService executor = Executors.newFixedThreadPool(TestUtil.nextInt(random(), 1, 4), new NamedThreadFactory("TestSortedSetDocValuesFacets"));
+    try {
+      Facets expected = new SortedSetDocValuesFacetCounts(state, c);
+      Facets actual = new SortedSetDocValuesFacetCounts(state, c, executor);
+      assertEquals(expected.getAllDims(100).toString(), actual.getAllDims(100).toString());
+    } finally {
+      executor.shutdown();
+    }
+
+    searcher.getIndexReader().close();
+    dir.close();
+  }
+
   public void testSlowCompositeReaderWrapper() throws Exception {
     Directory dir = newDirectory();
 
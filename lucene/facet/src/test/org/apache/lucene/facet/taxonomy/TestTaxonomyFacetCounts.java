@@ -25,6 +25,10 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.apache.lucene.analysis.MockAnalyzer;
 import org.apache.lucene.document.Document;
@@ -55,6 +59,7 @@ import org.apache.lucene.search.similarities.PerFieldSimilarityWrapper;
 import org.apache.lucene.search.similarities.Similarity;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.util.IOUtils;
+import org.apache.lucene.util.NamedThreadFactory;
 import org.apache.lucene.util.TestUtil;
 
 public class TestTaxonomyFacetCounts extends FacetTestCase {
@@ -684,6 +689,74 @@ public class TestTaxonomyFacetCounts extends FacetTestCase {
     IOUtils.close(indexReader, taxoReader, indexDir, taxoDir);
   }
 
+  public void testConcurrentCounting() throws Exception {
+    Directory indexDir = newDirectory();
+    Directory taxoDir = newDirectory();
+
+    IndexWriterConfig iwc = newIndexWriterConfig(new MockAnalyzer(random()));
+    iwc.setMergePolicy(NoMergePolicy.INSTANCE); // prevent merges
+    IndexWriter indexWriter = new IndexWriter(indexDir, iwc);
+    DirectoryTaxonomyWriter taxoWriter = new DirectoryTaxonomyWriter(taxoDir);
+    FacetsConfig config = new FacetsConfig();
+    config.setHierarchical("b", true);
+    config.setMultiValued("b", true);
+
+    int numSegments = TestUtil.nextInt(random(), 2, 8);
+    for(int seg=0;seg<numSegments;seg++) {
+      int numDocs = atLeast(20);
+      for(int i=0;i<numDocs;i++) {
+        Document doc = new Document();
+        if (random().nextInt(5) != 0) {
+          doc.add(new FacetField("a", "foo" + random().nextInt(20)));
+        }
+        int numB = random().nextInt(3);
+        for(int j=0;j<numB;j++) {
+          doc.add(new FacetField("b", "bar" + random().nextInt(5), "baz" + random().nextInt(10)));
+        }
+        indexWriter.addDocument(config.build(taxoWriter, doc));
+      }
+      indexWriter.commit();
+    }
+    indexWriter.close();
+    IOUtils.close(taxoWriter);
+
+    DirectoryReader indexReader = DirectoryReader.open(indexDir);
+    TaxonomyReader taxoReader = new DirectoryTaxonomyReader(taxoDir);
+    FacetsCollector sfc = new FacetsCollector();
+    newSearcher(indexReader).search(new MatchAllDocsQuery(), sfc);
+
+    ExecutorService executor = Executors.newFixedThreadPool(TestUtil.nextInt(random(), 1, 4), new NamedThreadFactory("TestTaxonomyFacetCounts"));
+    try {
+      Facets expected = new FastTaxonomyFacetCounts(FacetsConfig.DEFAULT_INDEX_FIELD_NAME, taxoReader, config, sfc);
+      Facets actual = new FastTaxonomyFacetCounts(FacetsConfig.DEFAULT_INDEX_FIELD_NAME, taxoReader, config, sfc, executor);
+      assertEquals(expected.getAllDims(100).toString(), actual.getAllDims(100).toString());
+      assertEquals(expected.getTopChildren(100, "b", "bar0").toString(), actual.getTopChildren(100, "b", "bar0").toString());
+    } finally {
+      executor.shutdown();
+    }
+
+    // A pool whose only thread is busy must not block counting:
+    executor = Executors.newFixedThreadPool(1, new NamedThreadFactory("TestTaxonomyFacetCounts"));
+    final CountDownLatch release = new CountDownLatch(1);
+    try {
+      executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws Exception {
+            release.await();
+            return null;
+          }
+        });
+      Facets expected = new FastTaxonomyFacetCounts(FacetsConfig.DEFAULT_INDEX_FIELD_NAME, taxoReader, config, sfc);
+      Facets actual = new FastTaxonomyFacetCounts(FacetsConfig.DEFAULT_INDEX_FIELD_NAME, taxoReader, config, sfc, executor);
+      assertEquals(expected.getAllDims(100).toString(), actual.getAllDims(100).toString());
+    } finally {
+      release.countDown();
+      executor.shutdown();
+    }
+
+    IOUtils.close(indexReader, taxoReader, indexDir, taxoDir);
+  }
+
   public void testRandom() throws Exception {
     String[] tokens = getRandomTokens(10);
     Directory indexDir = newDirectory();
@@ -0,0 +1,95 @@
+package org.apache.lucene.facet.taxonomy.writercache;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.lucene.facet.FacetTestCase;
+import org.apache.lucene.facet.taxonomy.FacetLabel;
+import org.apache.lucene.util.TestUtil;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+public class TestUTF8TaxonomyWriterCache extends FacetTestCase {
+
+  private static FacetLabel randomLabel() {
+    String[] components = new String[TestUtil.nextInt(random(), 1, 4)];
+    for (int i = 0; i < components.length; i++) {
+      do {
+        components[i] = random().nextBoolean() ? TestUtil.randomSimpleString(random(), 1, 5) : TestUtil.randomRealisticUnicodeString(random(), 1, 10);
+      } while (components[i].length() == 0);
+    }
+    return new FacetLabel(components);
+  }
+
+  public void testRandom() throws Exception {
+    UTF8TaxonomyWriterCache cache = new UTF8TaxonomyWriterCache();
+    Map<FacetLabel,Integer> expected = new HashMap<>();
+    int numLabels = atLeast(100000);
+    for (int ord = 0; ord < numLabels; ord++) {
+      FacetLabel label = randomLabel();
+      if (expected.containsKey(label)) {
+        assertEquals(expected.get(label).intValue(), cache.get(label));
+        continue;
+      }
+      assertEquals(-1, cache.get(label));
+      assertFalse(cache.put(label, ord));
+      expected.put(label, ord);
+    }
+    assertFalse(cache.isFull());
+    assertEquals(expected.size(), cache.size());
+    for (Map.Entry<FacetLabel,Integer> ent : expected.entrySet()) {
+      assertEquals(ent.getValue().intValue(), cache.get(ent.getKey()));
+    }
+    assertTrue(cache.ramBytesUsed() > 0);
+
+    cache.clear();
+    assertEquals(0, cache.size());
+    for (FacetLabel label : expected.keySet()) {
+      assertEquals(-1, cache.get(label));
+    }
+    cache.put(new FacetLabel("a", "b"), 17);
+    assertEquals(17, cache.get(new FacetLabel("a", "b")));
+    cache.close();
+  }
+
+  public void testComponentsAreNotConcatenated() throws Exception {
+    UTF8TaxonomyWriterCache cache = new UTF8TaxonomyWriterCache();
+    cache.put(new FacetLabel("ab", "c"), 1);
+    cache.put(new FacetLabel("a", "bc"), 2);
+    cache.put(new FacetLabel("abc"), 3);
+    assertEquals(1, cache.get(new FacetLabel("ab", "c")));
+    assertEquals(2, cache.get(new FacetLabel("a", "bc")));
+    assertEquals(3, cache.get(new FacetLabel("abc")));
+    assertEquals(-1, cache.get(new FacetLabel("a", "b", "c")));
+
+    // replaces the previous ordinal:
+    cache.put(new FacetLabel("abc"), 4);
+    assertEquals(4, cache.get(new FacetLabel("abc")));
+    assertEquals(3, cache.size());
+    cache.close();
+  }
+
+  public void testClosed() throws Exception {
+    UTF8TaxonomyWriterCache cache = new UTF8TaxonomyWriterCache();
+    cache.put(new FacetLabel("a", "b"), 1);
+    cache.close();
+    assertEquals(0, cache.size());
+    assertEquals(0, cache.ramBytesUsed());
+  }
+}
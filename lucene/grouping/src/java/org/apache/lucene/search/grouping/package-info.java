@@ -174,6 +174,23 @@
  * have to separately retrieve it (for example using stored
  * fields, <code>FieldCache</code>, etc.).
  * 
+ * <p>If the group field has few enough distinct values, the
+ *    <code>TermSinglePassGroupingCollector</code> computes the same top groups
+ *    as the two-pass search without running the query twice, at the cost of
+ *    keeping the top documents of every matching group in RAM. Its
+ *    <code>TermSinglePassGroupingCollectorManager</code> variant runs the
+ *    search concurrently when the <code>IndexSearcher</code> has an executor,
+ *    and its <code>search</code> method falls back to the two-pass search
+ *    when more than <code>maxGroups</code> groups match:</p>
+ * 
+ * <pre class="prettyprint">
+ *   TopGroups&lt;BytesRef&gt; groupsResult = new TermSinglePassGroupingCollectorManager("author", groupSort, withinGroupSort,
+ *       docOffset+docsPerGroup, needsScores, needsScores, fillFields, groupOffset, groupOffset+topNGroups, docOffset, maxGroups)
+ *       .search(s, new TermQuery(new Term("content", searchTerm)));
+ * 
+ *   // Render groupsResult...
+ * </pre>
+ * 
  * <p>Another collector is the <code>TermAllGroupHeadsCollector</code> that can be used to retrieve all most relevant
  *    documents per group. Also known as group heads. This can be useful in situations when one wants to compute group
  *    based facets / statistics on the complete query result. The collector can be executed during the first or second
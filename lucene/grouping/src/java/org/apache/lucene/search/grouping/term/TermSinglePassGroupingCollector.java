@@ -0,0 +1,506 @@
+package org.apache.lucene.search.grouping.term;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.SortedDocValues;
+import org.apache.lucene.search.CollectionTerminatedException;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.FieldComparator;
+import org.apache.lucene.search.FieldDoc;
+import org.apache.lucene.search.LeafCollector;
+import org.apache.lucene.search.ScoreCachingWrappingScorer;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TopDocsCollector;
+import org.apache.lucene.search.TopFieldCollector;
+import org.apache.lucene.search.TopFieldDocs;
+import org.apache.lucene.search.TopScoreDocCollector;
+import org.apache.lucene.search.grouping.GroupDocs;
+import org.apache.lucene.search.grouping.TopGroups;
+import org.apache.lucene.util.BytesRef;
+
+/**
+ * Collects the top groups, and the top documents within each of them, in a
+ * single pass. Groups are based on field values and more specifically uses
+ * {@link org.apache.lucene.index.SortedDocValues} to collect groups.
+ * <p>
+ * The results are the same as running {@link TermFirstPassGroupingCollector}
+ * and then {@link TermSecondPassGroupingCollector}, but the query only needs
+ * to be run once. The trade-off is memory: this collector keeps the top
+ * documents of every group that has a matching document, so its memory usage
+ * grows with the number of matching groups. The queues of a group grow with
+ * the number of its hits, up to {@code maxDocsPerGroup}, so that groups with
+ * few hits stay cheap, but this collector is best suited to group fields of
+ * low to moderate cardinality. A {@code maxGroups} limit can be given: once
+ * more groups match, this collector drops its groups and terminates
+ * collection, {@link #exceededMaxGroups()} returns true, and the two-pass
+ * collectors should be used instead.
+ * <p>
+ * Collectors that collected different leaves of the same index can be merged
+ * with {@link #getTopGroups(Collection, int, int, int)}, see
+ * {@link TermSinglePassGroupingCollectorManager} to search with the executor of
+ * an {@link org.apache.lucene.search.IndexSearcher}.
+ *
+ * @lucene.experimental
+ */
+public class TermSinglePassGroupingCollector implements Collector {
+
+  private final String groupField;
+  private final Sort groupSort;
+  private final Sort withinGroupSort;
+  private final int maxDocsPerGroup;
+  private final boolean getScores;
+  private final boolean getMaxScores;
+  private final boolean fillSortFields;
+  private final boolean needsScores;
+  // If true, the top document of a group according to the group sort is its
+  // top document within the group, so no extra collector is needed:
+  private final boolean groupHeadIsTopDoc;
+  private final int maxGroups;
+
+  private final Map<BytesRef,CollectedGroup> groups = new HashMap<>();
+  private int totalHitCount;
+  private boolean exceededMaxGroups;
+
+  /**
+   * Create the single pass collector, with no limit on the number of groups.
+   *
+   * @see #TermSinglePassGroupingCollector(String, Sort, Sort, int, boolean, boolean, boolean, int)
+   */
+  public TermSinglePassGroupingCollector(String groupField, Sort groupSort, Sort withinGroupSort, int maxDocsPerGroup,
+                                         boolean getScores, boolean getMaxScores, boolean fillSortFields) {
+    this(groupField, groupSort, withinGroupSort, maxDocsPerGroup, getScores, getMaxScores, fillSortFields, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Create the single pass collector.
+   *
+   *  @param groupField The field used to group
+   *    documents. This field must be single-valued and
+   *    indexed (DocValues is used to access its value
+   *    per-document).
+   *  @param groupSort The {@link Sort} used to sort the
+   *    groups.  The top sorted document within each group
+   *    according to groupSort, determines how that group
+   *    sorts against other groups.  This must be non-null,
+   *    ie, if you want to groupSort by relevance use
+   *    Sort.RELEVANCE.
+   *  @param withinGroupSort The {@link Sort} used to sort
+   *    documents within each group.
+   *  @param maxDocsPerGroup How many top documents to keep
+   *    within each group, including the within group offset.
+   *  @param getScores If true, the score of each top document
+   *    is computed.
+   *  @param getMaxScores If true, the max score of each group
+   *    is computed.
+   *  @param fillSortFields If true, the sort values of the
+   *    groups and of the documents within groups are filled.
+   *  @param maxGroups How many distinct groups may be
+   *    collected before this collector gives up, see
+   *    {@link #exceededMaxGroups()}.
+   */
+  public TermSinglePassGroupingCollector(String groupField, Sort groupSort, Sort withinGroupSort, int maxDocsPerGroup,
+                                         boolean getScores, boolean getMaxScores, boolean fillSortFields, int maxGroups) {
+    if (maxDocsPerGroup < 1) {
+      throw new IllegalArgumentException("maxDocsPerGroup must be >= 1 (got " + maxDocsPerGroup + ")");
+    }
+    if (maxGroups < 1) {
+      throw new IllegalArgumentException("maxGroups must be >= 1 (got " + maxGroups + ")");
+    }
+    this.groupField = Objects.requireNonNull(groupField);
+    this.groupSort = Objects.requireNonNull(groupSort);
+    this.withinGroupSort = Objects.requireNonNull(withinGroupSort);
+    this.maxDocsPerGroup = maxDocsPerGroup;
+    this.getScores = getScores;
+    this.getMaxScores = getMaxScores;
+    this.fillSortFields = fillSortFields;
+    this.needsScores = getScores || getMaxScores || groupSort.needsScores() || withinGroupSort.needsScores();
+    this.groupHeadIsTopDoc = groupSort.equals(withinGroupSort);
+    this.maxGroups = maxGroups;
+  }
+
+  /**
+   * Returns true if more than {@code maxGroups} groups matched. In that case
+   * this collector kept no groups and stopped collecting, so its top groups
+   * cannot be computed, and the query should be run with
+   * {@link TermFirstPassGroupingCollector} and
+   * {@link TermSecondPassGroupingCollector} instead.
+   */
+  public boolean exceededMaxGroups() {
+    return exceededMaxGroups;
+  }
+
+  @Override
+  public boolean needsScores() {
+    return needsScores;
+  }
+
+  @Override
+  public LeafCollector getLeafCollector(final LeafReaderContext context) throws IOException {
+    if (exceededMaxGroups) {
+      throw new CollectionTerminatedException();
+    }
+    final SortedDocValues index = DocValues.getSorted(context.reader(), groupField);
+    // Groups of this segment by ord + 1, so that docs without a value go to 0:
+    final CollectedGroup[] ordToGroup = new CollectedGroup[index.getValueCount() + 1];
+    final List<CollectedGroup> segmentGroups = new ArrayList<>();
+
+    return new LeafCollector() {
+
+      private Scorer scorer;
+
+      @Override
+      public void setScorer(Scorer scorer) throws IOException {
+        // Groups may use two collectors that both need the score:
+        this.scorer = needsScores ? new ScoreCachingWrappingScorer(scorer) : scorer;
+        for (CollectedGroup group : segmentGroups) {
+          group.setScorer(this.scorer);
+        }
+      }
+
+      @Override
+      public void collect(int doc) throws IOException {
+        totalHitCount++;
+        final int slot = index.getOrd(doc) + 1;
+        CollectedGroup group = ordToGroup[slot];
+        if (group == null) {
+          final BytesRef groupValue = slot == 0 ? null : index.lookupOrd(slot - 1);
+          group = groups.get(groupValue);
+          if (group == null) {
+            if (groups.size() == maxGroups) {
+              // too many groups: release them, the caller has to fall back to two passes
+              exceededMaxGroups = true;
+              groups.clear();
+              segmentGroups.clear();
+              Arrays.fill(ordToGroup, null);
+              throw new CollectionTerminatedException();
+            }
+            group = new CollectedGroup(groupValue == null ? null : BytesRef.deepCopyOf(groupValue));
+            groups.put(group.groupValue, group);
+          }
+          group.setNextReader(context);
+          if (scorer != null) {
+            group.setScorer(scorer);
+          }
+          ordToGroup[slot] = group;
+          segmentGroups.add(group);
+        }
+        group.collect(doc);
+      }
+    };
+  }
+
+  /**
+   * Returns the top groups, or null if no documents were collected.
+   *
+   * @param groupOffset Which group to start from
+   * @param topNGroups How many top groups to keep, including the group offset
+   * @param withinGroupOffset Which document to start from within each group
+   * @throws IOException When I/O related errors occur
+   */
+  public TopGroups<BytesRef> getTopGroups(int groupOffset, int topNGroups, int withinGroupOffset) throws IOException {
+    return getTopGroups(Collections.singletonList(this), groupOffset, topNGroups, withinGroupOffset);
+  }
+
+  /**
+   * Merges the groups of collectors that were created with the same parameters
+   * and collected different leaves of the same index, in the order of the
+   * leaves, and returns the top groups, or null if no documents were collected.
+   * This may only be called once per collector.
+   *
+   * @param collectors The collectors to merge
+   * @param groupOffset Which group to start from
+   * @param topNGroups How many top groups to keep, including the group offset
+   * @param withinGroupOffset Which document to start from within each group
+   * @throws IOException When I/O related errors occur
+   * @throws IllegalStateException If one of the collectors {@link #exceededMaxGroups() exceeded maxGroups}
+   */
+  public static TopGroups<BytesRef> getTopGroups(Collection<TermSinglePassGroupingCollector> collectors,
+                                                 int groupOffset, int topNGroups, int withinGroupOffset) throws IOException {
+    if (groupOffset < 0) {
+      throw new IllegalArgumentException("groupOffset must be >= 0 (got " + groupOffset + ")");
+    }
+    if (topNGroups < 1) {
+      throw new IllegalArgumentException("topNGroups must be >= 1 (got " + topNGroups + ")");
+    }
+    if (collectors.isEmpty()) {
+      return null;
+    }
+    final TermSinglePassGroupingCollector first = collectors.iterator().next();
+
+    int totalHitCount = 0;
+    final Map<BytesRef,List<CollectedGroup>> merged = new HashMap<>();
+    for (TermSinglePassGroupingCollector collector : collectors) {
+      if (collector.exceededMaxGroups) {
+        throw new IllegalStateException("more than maxGroups=" + collector.maxGroups + " groups matched");
+      }
+      totalHitCount += collector.totalHitCount;
+      for (CollectedGroup group : collector.groups.values()) {
+        List<CollectedGroup> shards = merged.get(group.groupValue);
+        if (shards == null) {
+          shards = new ArrayList<>(collectors.size());
+          merged.put(group.groupValue, shards);
+        }
+        shards.add(group);
+      }
+    }
+    if (merged.isEmpty()) {
+      return null;
+    }
+
+    final Comparator<FieldDoc> headComparator = first.newHeadComparator();
+    final List<MergedGroup> mergedGroups = new ArrayList<>(merged.size());
+    for (Map.Entry<BytesRef,List<CollectedGroup>> entry : merged.entrySet()) {
+      FieldDoc head = null;
+      for (CollectedGroup shard : entry.getValue()) {
+        final FieldDoc shardHead = first.getGroupHead(shard);
+        if (head == null || headComparator.compare(shardHead, head) < 0) {
+          head = shardHead;
+        }
+      }
+      mergedGroups.add(new MergedGroup(entry.getKey(), entry.getValue(), head));
+    }
+    Collections.sort(mergedGroups, new Comparator<MergedGroup>() {
+      @Override
+      public int compare(MergedGroup group1, MergedGroup group2) {
+        return headComparator.compare(group1.head, group2.head);
+      }
+    });
+
+    final int numGroups = Math.max(0, Math.min(topNGroups, mergedGroups.size()) - groupOffset);
+    @SuppressWarnings({"unchecked","rawtypes"})
+    final GroupDocs<BytesRef>[] groupDocsResult = (GroupDocs<BytesRef>[]) new GroupDocs[numGroups];
+    int totalGroupedHitCount = 0;
+    float maxScore = Float.MIN_VALUE;
+    for (int i = 0; i < numGroups; i++) {
+      final MergedGroup group = mergedGroups.get(groupOffset + i);
+      final TopDocs topDocs = first.mergeTopDocs(group.shards, withinGroupOffset);
+      groupDocsResult[i] = new GroupDocs<>(Float.NaN,
+                                           topDocs.getMaxScore(),
+                                           topDocs.totalHits,
+                                           topDocs.scoreDocs,
+                                           group.groupValue,
+                                           first.fillSortFields ? group.head.fields : null);
+      totalGroupedHitCount += topDocs.totalHits;
+      maxScore = Math.max(maxScore, topDocs.getMaxScore());
+    }
+
+    final TopGroups<BytesRef> topGroups = new TopGroups<>(first.groupSort.getSort(),
+                                                          first.withinGroupSort.getSort(),
+                                                          totalHitCount, totalGroupedHitCount, groupDocsResult,
+                                                          maxScore);
+    return new TopGroups<>(topGroups, mergedGroups.size());
+  }
+
+  /** Returns the top document of the group according to the group sort, with its sort values. */
+  private FieldDoc getGroupHead(CollectedGroup group) throws IOException {
+    final ScoreDoc top;
+    if (groupHeadIsTopDoc) {
+      top = group.getTopDocs().scoreDocs[0];
+    } else {
+      top = group.headCollector.topDocs().scoreDocs[0];
+    }
+    if (top instanceof FieldDoc) {
+      return (FieldDoc) top;
+    }
+    // Within group relevance sort, the only group sort value is the score:
+    return new FieldDoc(top.doc, top.score, new Object[] {top.score});
+  }
+
+  /** Compares group heads by their sort values, and then by doc id, like the first pass. */
+  private Comparator<FieldDoc> newHeadComparator() throws IOException {
+    final SortField[] sortFields = groupSort.getSort();
+    @SuppressWarnings({"unchecked","rawtypes"})
+    final FieldComparator<Object>[] comparators = new FieldComparator[sortFields.length];
+    final int[] reverseMul = new int[sortFields.length];
+    for (int i = 0; i < sortFields.length; i++) {
+      @SuppressWarnings("unchecked")
+      final FieldComparator<Object> comparator = (FieldComparator<Object>) sortFields[i].getComparator(1, i);
+      comparators[i] = comparator;
+      reverseMul[i] = sortFields[i].getReverse() ? -1 : 1;
+    }
+    return new Comparator<FieldDoc>() {
+      @Override
+      public int compare(FieldDoc head1, FieldDoc head2) {
+        for (int i = 0; i < comparators.length; i++) {
+          final int c = reverseMul[i] * comparators[i].compareValues(head1.fields[i], head2.fields[i]);
+          if (c != 0) {
+            return c;
+          }
+        }
+        return Integer.compare(head1.doc, head2.doc);
+      }
+    };
+  }
+
+  /** Merges the top documents of the shards of a group, in the order of the shards. */
+  private TopDocs mergeTopDocs(List<CollectedGroup> shards, int withinGroupOffset) throws IOException {
+    final TopDocs[] shardHits = new TopDocs[shards.size()];
+    for (int i = 0; i < shardHits.length; i++) {
+      shardHits[i] = shards.get(i).getTopDocs();
+    }
+    TopDocs topDocs = mergeWithinGroup(shardHits, withinGroupOffset, Math.max(0, maxDocsPerGroup - withinGroupOffset));
+    if (topDocs.scoreDocs.length == 0) {
+      // like TopDocsCollector, there is no max score if the offset is past the top docs
+      topDocs = new TopDocs(topDocs.totalHits, topDocs.scoreDocs, Float.NaN);
+    }
+    for (ScoreDoc scoreDoc : topDocs.scoreDocs) {
+      scoreDoc.shardIndex = -1;
+      if (fillSortFields == false && scoreDoc instanceof FieldDoc) {
+        // sort values were only needed to merge
+        ((FieldDoc) scoreDoc).fields = null;
+      }
+    }
+    return topDocs;
+  }
+
+  /** Merges hits that were collected in this order, with the within group sort. */
+  private TopDocs mergeWithinGroup(TopDocs[] hits, int start, int size) throws IOException {
+    if (withinGroupSort.equals(Sort.RELEVANCE)) {
+      return TopDocs.merge(start, size, hits);
+    } else {
+      final TopFieldDocs[] fieldHits = new TopFieldDocs[hits.length];
+      for (int i = 0; i < hits.length; i++) {
+        fieldHits[i] = (TopFieldDocs) hits[i];
+      }
+      return TopDocs.merge(withinGroupSort, start, size, fieldHits);
+    }
+  }
+
+  private final class CollectedGroup {
+
+    final BytesRef groupValue;
+    // The hits of the group are collected by a series of collectors that each
+    // hold twice as many hits as the previous one, up to maxDocsPerGroup, so
+    // that queues are only allocated for about as many hits as the group has:
+    final List<TopDocsCollector<?>> withinGroupCollectors = new ArrayList<>(1);
+    final TopFieldCollector headCollector;
+    LeafCollector withinGroupLeafCollector;
+    LeafCollector headLeafCollector;
+    private int withinGroupCapacity;
+    private int withinGroupCount;
+    private LeafReaderContext context;
+    private Scorer scorer;
+    private TopDocs topDocs;
+
+    CollectedGroup(BytesRef groupValue) throws IOException {
+      this.groupValue = groupValue;
+      if (groupHeadIsTopDoc) {
+        headCollector = null;
+      } else {
+        headCollector = TopFieldCollector.create(groupSort, 1, true, false, false);
+      }
+    }
+
+    void setNextReader(LeafReaderContext context) throws IOException {
+      this.context = context;
+      scorer = null;
+      // created on the next hit, which may need a larger collector:
+      withinGroupLeafCollector = null;
+      if (headCollector != null) {
+        headLeafCollector = headCollector.getLeafCollector(context);
+      }
+    }
+
+    void setScorer(Scorer scorer) throws IOException {
+      this.scorer = scorer;
+      if (withinGroupLeafCollector != null) {
+        withinGroupLeafCollector.setScorer(scorer);
+      }
+      if (headLeafCollector != null) {
+        headLeafCollector.setScorer(scorer);
+      }
+    }
+
+    void collect(int doc) throws IOException {
+      if (withinGroupCount == withinGroupCapacity && withinGroupCapacity < maxDocsPerGroup) {
+        // the current collector is full, continue with a larger one:
+        withinGroupCapacity = (int) Math.min(Math.max(1, 2L * withinGroupCapacity), maxDocsPerGroup);
+        withinGroupCollectors.add(newWithinGroupCollector(withinGroupCapacity));
+        withinGroupCount = 0;
+        withinGroupLeafCollector = null;
+      }
+      if (withinGroupLeafCollector == null) {
+        withinGroupLeafCollector = withinGroupCollectors.get(withinGroupCollectors.size() - 1).getLeafCollector(context);
+        if (scorer != null) {
+          withinGroupLeafCollector.setScorer(scorer);
+        }
+      }
+      withinGroupLeafCollector.collect(doc);
+      withinGroupCount++;
+      if (headLeafCollector != null) {
+        headLeafCollector.collect(doc);
+      }
+    }
+
+    private TopDocsCollector<?> newWithinGroupCollector(int numHits) throws IOException {
+      if (withinGroupSort.equals(Sort.RELEVANCE)) { // optimize to use TopScoreDocCollector
+        // Sort by score
+        return TopScoreDocCollector.create(numHits);
+      } else {
+        // Sort by fields; sort values are always needed to find the group head or merge
+        return TopFieldCollector.create(withinGroupSort, numHits, true, getScores, getMaxScores);
+      }
+    }
+
+    TopDocs getTopDocs() throws IOException {
+      if (topDocs == null) {
+        if (withinGroupCollectors.size() == 1) {
+          topDocs = withinGroupCollectors.get(0).topDocs();
+        } else {
+          final TopDocs[] hits = new TopDocs[withinGroupCollectors.size()];
+          for (int i = 0; i < hits.length; i++) {
+            hits[i] = withinGroupCollectors.get(i).topDocs();
+          }
+          topDocs = mergeWithinGroup(hits, 0, maxDocsPerGroup);
+        }
+      }
+      return topDocs;
+    }
+  }
+
+  private static final class MergedGroup {
+
+    final BytesRef groupValue;
+    final List<CollectedGroup> shards;
+    final FieldDoc head;
+
+    MergedGroup(BytesRef groupValue, List<CollectedGroup> shards, FieldDoc head) {
+      this.groupValue = groupValue;
+      this.shards = shards;
+      this.head = head;
+    }
+  }
+}
@@ -0,0 +1,149 @@
+package org.apache.lucene.search.grouping.term;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+import java.io.IOException;
+import java.util.Collection;
+
+import org.apache.lucene.search.CollectorManager;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MultiCollector;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.grouping.SearchGroup;
+import org.apache.lucene.search.grouping.TopGroups;
+import org.apache.lucene.util.BytesRef;
+
+/**
+ * A {@link CollectorManager} for {@link TermSinglePassGroupingCollector}, so
+ * that grouped searches can run concurrently on the leaf slices of an
+ * {@link org.apache.lucene.search.IndexSearcher} with an executor. The groups
+ * collected on each slice are merged into the same top groups as a
+ * sequential search would return. {@link #search(IndexSearcher, Query)} falls
+ * back to a two-pass search if a slice matches more than {@code maxGroups}
+ * groups.
+ *
+ * @lucene.experimental
+ */
+public class TermSinglePassGroupingCollectorManager implements CollectorManager<TermSinglePassGroupingCollector, TopGroups<BytesRef>> {
+
+  private final String groupField;
+  private final Sort groupSort;
+  private final Sort withinGroupSort;
+  private final int maxDocsPerGroup;
+  private final boolean getScores;
+  private final boolean getMaxScores;
+  private final boolean fillSortFields;
+  private final int groupOffset;
+  private final int topNGroups;
+  private final int withinGroupOffset;
+  private final int maxGroups;
+
+  /**
+   * Create the collector manager, with no limit on the number of groups.
+   *
+   * @see #TermSinglePassGroupingCollectorManager(String, Sort, Sort, int, boolean, boolean, boolean, int, int, int, int)
+   */
+  public TermSinglePassGroupingCollectorManager(String groupField, Sort groupSort, Sort withinGroupSort, int maxDocsPerGroup,
+                                                boolean getScores, boolean getMaxScores, boolean fillSortFields,
+                                                int groupOffset, int topNGroups, int withinGroupOffset) {
+    this(groupField, groupSort, withinGroupSort, maxDocsPerGroup, getScores, getMaxScores, fillSortFields,
+         groupOffset, topNGroups, withinGroupOffset, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Create the collector manager, see
+   * {@link TermSinglePassGroupingCollector#TermSinglePassGroupingCollector(String, Sort, Sort, int, boolean, boolean, boolean, int)}
+   * and {@link TermSinglePassGroupingCollector#getTopGroups(int, int, int)}
+   * for the parameters.
+   */
+  public TermSinglePassGroupingCollectorManager(String groupField, Sort groupSort, Sort withinGroupSort, int maxDocsPerGroup,
+                                                boolean getScores, boolean getMaxScores, boolean fillSortFields,
+                                                int groupOffset, int topNGroups, int withinGroupOffset, int maxGroups) {
+    this.groupField = groupField;
+    this.groupSort = groupSort;
+    this.withinGroupSort = withinGroupSort;
+    this.maxDocsPerGroup = maxDocsPerGroup;
+    this.getScores = getScores;
+    this.getMaxScores = getMaxScores;
+    this.fillSortFields = fillSortFields;
+    this.groupOffset = groupOffset;
+    this.topNGroups = topNGroups;
+    this.withinGroupOffset = withinGroupOffset;
+    this.maxGroups = maxGroups;
+  }
+
+  @Override
+  public TermSinglePassGroupingCollector newCollector() throws IOException {
+    return new TermSinglePassGroupingCollector(groupField, groupSort, withinGroupSort, maxDocsPerGroup,
+                                               getScores, getMaxScores, fillSortFields, maxGroups);
+  }
+
+  /**
+   * Merges the groups of the collectors.
+   *
+   * @throws IllegalStateException If a collector matched more than {@code maxGroups} groups
+   * @see #search(IndexSearcher, Query)
+   */
+  @Override
+  public TopGroups<BytesRef> reduce(Collection<TermSinglePassGroupingCollector> collectors) throws IOException {
+    return TermSinglePassGroupingCollector.getTopGroups(collectors, groupOffset, topNGroups, withinGroupOffset);
+  }
+
+  /**
+   * Runs the query in a single pass, or, if a slice matched more than
+   * {@code maxGroups} groups, with {@link TermFirstPassGroupingCollector} and
+   * {@link TermSecondPassGroupingCollector}. Returns the top groups, or null if
+   * no groups matched.
+   */
+  public TopGroups<BytesRef> search(IndexSearcher searcher, Query query) throws IOException {
+    final Collection<TermSinglePassGroupingCollector> collectors = searcher.search(query,
+        new CollectorManager<TermSinglePassGroupingCollector, Collection<TermSinglePassGroupingCollector>>() {
+          @Override
+          public TermSinglePassGroupingCollector newCollector() throws IOException {
+            return TermSinglePassGroupingCollectorManager.this.newCollector();
+          }
+
+          @Override
+          public Collection<TermSinglePassGroupingCollector> reduce(Collection<TermSinglePassGroupingCollector> collectors) {
+            return collectors;
+          }
+        });
+    boolean exceededMaxGroups = false;
+    for (TermSinglePassGroupingCollector collector : collectors) {
+      exceededMaxGroups |= collector.exceededMaxGroups();
+    }
+    if (exceededMaxGroups == false) {
+      return reduce(collectors);
+    }
+
+    // Too many groups to keep them all, only keep the top groups and count the others:
+    final TermFirstPassGroupingCollector firstPass = new TermFirstPassGroupingCollector(groupField, groupSort, topNGroups);
+    final TermAllGroupsCollector allGroups = new TermAllGroupsCollector(groupField);
+    searcher.search(query, MultiCollector.wrap(firstPass, allGroups));
+    final Collection<SearchGroup<BytesRef>> searchGroups = firstPass.getTopGroups(groupOffset, fillSortFields);
+    if (searchGroups == null) {
+      return null;
+    }
+    final TermSecondPassGroupingCollector secondPass = new TermSecondPassGroupingCollector(groupField, searchGroups,
+        groupSort, withinGroupSort, maxDocsPerGroup, getScores, getMaxScores, fillSortFields);
+    searcher.search(query, secondPass);
+    return new TopGroups<>(secondPass.getTopGroups(withinGroupOffset), allGroups.getGroupCount());
+  }
+}
@@ -0,0 +1,273 @@
+package org.apache.lucene.search.grouping;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+import java.util.Collection;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.analysis.MockAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.SortedDocValuesField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.RandomIndexWriter;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.FieldDoc;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.grouping.term.TermFirstPassGroupingCollector;
+import org.apache.lucene.search.grouping.term.TermSecondPassGroupingCollector;
+import org.apache.lucene.search.grouping.term.TermSinglePassGroupingCollector;
+import org.apache.lucene.search.grouping.term.TermSinglePassGroupingCollectorManager;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.NamedThreadFactory;
+import org.apache.lucene.util.TestUtil;
+
+public class SinglePassGroupingCollectorTest extends AbstractGroupingTestCase {
+
+  private static final String GROUP_FIELD = "group";
+
+  public void testBasic() throws Exception {
+    Directory dir = newDirectory();
+    RandomIndexWriter w = new RandomIndexWriter(random(), dir, newIndexWriterConfig(new MockAnalyzer(random())));
+    String[][] docs = new String[][] {
+        {"author1", "random text blob"},
+        {"author1", "some more random text"},
+        {"author1", "some more random textual data"},
+        {"author2", "some random text"},
+        {"author3", "some more random text"},
+        {null, "random text"}
+    };
+    for (String[] values : docs) {
+      Document doc = new Document();
+      if (values[0] != null) {
+        doc.add(new SortedDocValuesField(GROUP_FIELD, new BytesRef(values[0])));
+      }
+      doc.add(new TextField("content", values[1], Field.Store.NO));
+      w.addDocument(doc);
+    }
+    IndexSearcher searcher = newSearcher(w.getReader());
+    w.close();
+
+    TermSinglePassGroupingCollector c = new TermSinglePassGroupingCollector(GROUP_FIELD, Sort.RELEVANCE, Sort.RELEVANCE, 10, true, true, true);
+    searcher.search(new TermQuery(new Term("content", "some")), c);
+    TopGroups<BytesRef> groups = c.getTopGroups(0, 10, 0);
+    assertEquals(4, groups.totalHitCount);
+    assertEquals(4, groups.totalGroupedHitCount);
+    assertEquals(3, groups.totalGroupCount.intValue());
+    assertEquals(3, groups.groups.length);
+    int numAuthor1 = 0;
+    for (GroupDocs<BytesRef> group : groups.groups) {
+      assertEquals(1, group.groupSortValues.length);
+      assertEquals(group.scoreDocs[0].score, (Float) group.groupSortValues[0], 0f);
+      if (new BytesRef("author1").equals(group.groupValue)) {
+        numAuthor1 += group.totalHits;
+        assertEquals(2, group.scoreDocs.length);
+      }
+    }
+    assertEquals(2, numAuthor1);
+
+    groups = c.getTopGroups(2, 10, 0);
+    assertEquals(1, groups.groups.length);
+    assertEquals(3, groups.totalGroupCount.intValue());
+
+    c = new TermSinglePassGroupingCollector(GROUP_FIELD, Sort.RELEVANCE, Sort.RELEVANCE, 10, true, true, true, 2);
+    searcher.search(new TermQuery(new Term("content", "some")), c);
+    assertTrue(c.exceededMaxGroups());
+    try {
+      c.getTopGroups(0, 10, 0);
+      fail("did not hit exception");
+    } catch (IllegalStateException ise) {
+      // expected
+    }
+
+    searcher.getIndexReader().close();
+    dir.close();
+  }
+
+  public void testIllegalArgs() throws Exception {
+    try {
+      new TermSinglePassGroupingCollector(GROUP_FIELD, Sort.RELEVANCE, Sort.RELEVANCE, 0, true, true, true);
+      fail("did not hit exception");
+    } catch (IllegalArgumentException iae) {
+      assertTrue(iae.getMessage().contains("maxDocsPerGroup must be >= 1"));
+    }
+    try {
+      new TermSinglePassGroupingCollector(GROUP_FIELD, Sort.RELEVANCE, Sort.RELEVANCE, 1, true, true, true, 0);
+      fail("did not hit exception");
+    } catch (IllegalArgumentException iae) {
+      assertTrue(iae.getMessage().contains("maxGroups must be >= 1"));
+    }
+    TermSinglePassGroupingCollector c = new TermSinglePassGroupingCollector(GROUP_FIELD, Sort.RELEVANCE, Sort.RELEVANCE, 1, true, true, true);
+    try {
+      c.getTopGroups(-1, 10, 0);
+      fail("did not hit exception");
+    } catch (IllegalArgumentException iae) {
+      assertTrue(iae.getMessage().contains("groupOffset must be >= 0"));
+    }
+    assertNull(c.getTopGroups(0, 10, 0));
+  }
+
+  public void testRandomMatchesTwoPass() throws Exception {
+    Directory dir = newDirectory();
+    RandomIndexWriter w = new RandomIndexWriter(random(), dir, newIndexWriterConfig(new MockAnalyzer(random())));
+    int numGroups = TestUtil.nextInt(random(), 1, 100);
+    String[] groupValues = new String[numGroups];
+    for (int i = 0; i < numGroups; i++) {
+      groupValues[i] = generateRandomNonEmptyString();
+    }
+    int numDocs = atLeast(500);
+    for (int i = 0; i < numDocs; i++) {
+      Document doc = new Document();
+      if (random().nextInt(20) != 0) {
+        doc.add(new SortedDocValuesField(GROUP_FIELD, new BytesRef(groupValues[random().nextInt(numGroups)])));
+      }
+      StringBuilder content = new StringBuilder();
+      int numTokens = TestUtil.nextInt(random(), 1, 10);
+      for (int j = 0; j < numTokens; j++) {
+        content.append(random().nextInt(3) == 0 ? "a " : "b ");
+      }
+      doc.add(new TextField("content", content.toString(), Field.Store.NO));
+      doc.add(new NumericDocValuesField("sort1", random().nextInt(20)));
+      doc.add(new NumericDocValuesField("sort2", random().nextInt(1000)));
+      w.addDocument(doc);
+    }
+    IndexReader reader = w.getReader();
+    w.close();
+
+    ExecutorService executor = new ThreadPoolExecutor(0, 2, 0L, TimeUnit.MILLISECONDS,
+                                                      new LinkedBlockingQueue<Runnable>(),
+                                                      new NamedThreadFactory("SinglePassGroupingCollectorTest"));
+    IndexSearcher searcher = newSearcher(reader);
+    IndexSearcher concurrentSearcher = new IndexSearcher(reader, executor);
+    // make sure both searchers produce the same scores:
+    concurrentSearcher.setSimilarity(searcher.getSimilarity(true));
+
+    try {
+      int iters = atLeast(20);
+      for (int iter = 0; iter < iters; iter++) {
+        Query query = new TermQuery(new Term("content", random().nextBoolean() ? "a" : "b"));
+        Sort groupSort = randomSort();
+        Sort withinGroupSort = random().nextBoolean() ? groupSort : randomSort();
+        int groupOffset = random().nextInt(5);
+        int topNGroups = groupOffset + TestUtil.nextInt(random(), 1, 20);
+        int withinGroupOffset = random().nextInt(3);
+        int maxDocsPerGroup = withinGroupOffset + TestUtil.nextInt(random(), 1, 5);
+        boolean getScores = random().nextBoolean();
+        boolean getMaxScores = random().nextBoolean();
+        boolean fillSortFields = random().nextBoolean();
+        if (VERBOSE) {
+          System.out.println("TEST: iter=" + iter + " groupSort=" + groupSort + " withinGroupSort=" + withinGroupSort
+              + " groupOffset=" + groupOffset + " topNGroups=" + topNGroups);
+        }
+
+        TermFirstPassGroupingCollector firstPass = new TermFirstPassGroupingCollector(GROUP_FIELD, groupSort, topNGroups);
+        searcher.search(query, firstPass);
+        Collection<SearchGroup<BytesRef>> searchGroups = firstPass.getTopGroups(groupOffset, fillSortFields);
+        TopGroups<BytesRef> expected = null;
+        if (searchGroups != null) {
+          TermSecondPassGroupingCollector secondPass = new TermSecondPassGroupingCollector(GROUP_FIELD, searchGroups, groupSort,
+              withinGroupSort, maxDocsPerGroup, getScores, getMaxScores, fillSortFields);
+          searcher.search(query, secondPass);
+          expected = secondPass.getTopGroups(withinGroupOffset);
+        }
+
+        TermSinglePassGroupingCollector singlePass = new TermSinglePassGroupingCollector(GROUP_FIELD, groupSort, withinGroupSort,
+            maxDocsPerGroup, getScores, getMaxScores, fillSortFields);
+        searcher.search(query, singlePass);
+        assertTopGroups(expected, singlePass.getTopGroups(groupOffset, topNGroups, withinGroupOffset), fillSortFields);
+
+        TopGroups<BytesRef> concurrent = concurrentSearcher.search(query, new TermSinglePassGroupingCollectorManager(GROUP_FIELD,
+            groupSort, withinGroupSort, maxDocsPerGroup, getScores, getMaxScores, fillSortFields,
+            groupOffset, topNGroups, withinGroupOffset));
+        assertTopGroups(expected, concurrent, fillSortFields);
+
+        // falls back to two passes if there are too many groups:
+        int maxGroups = TestUtil.nextInt(random(), 1, numGroups + 1);
+        TopGroups<BytesRef> capped = new TermSinglePassGroupingCollectorManager(GROUP_FIELD,
+            groupSort, withinGroupSort, maxDocsPerGroup, getScores, getMaxScores, fillSortFields,
+            groupOffset, topNGroups, withinGroupOffset, maxGroups).search(random().nextBoolean() ? searcher : concurrentSearcher, query);
+        assertTopGroups(expected, capped, fillSortFields);
+      }
+    } finally {
+      executor.shutdown();
+      executor.awaitTermination(1, TimeUnit.MINUTES);
+    }
+
+    reader.close();
+    dir.close();
+  }
+
+  private static Sort randomSort() {
+    switch (random().nextInt(4)) {
+      case 0:
+        return Sort.RELEVANCE;
+      case 1:
+        return new Sort(new SortField("sort1", SortField.Type.INT), new SortField("sort2", SortField.Type.INT, true));
+      case 2:
+        return new Sort(new SortField("sort1", SortField.Type.INT, true), SortField.FIELD_SCORE);
+      default:
+        return new Sort(new SortField("sort2", SortField.Type.INT));
+    }
+  }
+
+  private static void assertTopGroups(TopGroups<BytesRef> expected, TopGroups<BytesRef> actual, boolean fillSortFields) {
+    if (expected == null) {
+      if (actual != null) {
+        // the two-pass search has no group for an offset past the last group
+        assertEquals(0, actual.groups.length);
+      }
+      return;
+    }
+    assertEquals(expected.totalHitCount, actual.totalHitCount);
+    assertEquals(expected.totalGroupedHitCount, actual.totalGroupedHitCount);
+    assertEquals(expected.maxScore, actual.maxScore, 0f);
+    assertEquals(expected.groups.length, actual.groups.length);
+    for (int i = 0; i < expected.groups.length; i++) {
+      GroupDocs<BytesRef> expectedGroup = expected.groups[i];
+      GroupDocs<BytesRef> actualGroup = actual.groups[i];
+      assertEquals("group " + i, expectedGroup.groupValue, actualGroup.groupValue);
+      if (expectedGroup.scoreDocs.length > 0 || expectedGroup.totalHits > 0) {
+        // TopScoreDocCollector reports no hits at all if the within group offset is past its top docs
+        assertEquals(expectedGroup.totalHits, actualGroup.totalHits);
+      }
+      assertEquals(expectedGroup.maxScore, actualGroup.maxScore, 0f);
+      if (fillSortFields) {
+        assertArrayEquals(expectedGroup.groupSortValues, actualGroup.groupSortValues);
+      }
+      assertEquals(expectedGroup.scoreDocs.length, actualGroup.scoreDocs.length);
+      for (int j = 0; j < expectedGroup.scoreDocs.length; j++) {
+        assertEquals(expectedGroup.scoreDocs[j].doc, actualGroup.scoreDocs[j].doc);
+        assertEquals(expectedGroup.scoreDocs[j].score, actualGroup.scoreDocs[j].score, 0f);
+        if (expectedGroup.scoreDocs[j] instanceof FieldDoc) {
+          assertArrayEquals(((FieldDoc) expectedGroup.scoreDocs[j]).fields, ((FieldDoc) actualGroup.scoreDocs[j]).fields);
+        }
+      }
+    }
+  }
+}
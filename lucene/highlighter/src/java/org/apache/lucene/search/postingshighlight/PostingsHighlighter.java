@@ -45,6 +45,7 @@ import org.apache.lucene.index.StoredFieldVisitor;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.index.Terms;
 import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.index.memory.MemoryIndex;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.ScoreDoc;
@@ -115,6 +116,10 @@ public class PostingsHighlighter {
   /** Default maximum content size to process. Typically snippets
    *  closer to the beginning of the document better summarize its content */
   public static final int DEFAULT_MAX_LENGTH = 10000;
+
+  /** Default maximum number of documents whose field values are loaded at once
+   *  (see {@link #getLoadBatchSize()}). */
+  public static final int DEFAULT_LOAD_BATCH_SIZE = 256;
     
   private final int maxLength;
 
@@ -389,31 +394,50 @@ public class PostingsHighlighter {
       
     }.sort(0, fields.length);
     
-    // pull stored data:
-    String[][] contents = loadFieldValues(searcher, fields, docids, maxLength);
-    
-    Map<String,Object[]> highlights = new HashMap<>();
+    BytesRef fieldTerms[][] = new BytesRef[fields.length][];
+    BreakIterator breakIterators[] = new BreakIterator[fields.length];
+    List<Map<Integer,Object>> fieldHighlights = new ArrayList<>();
     for (int i = 0; i < fields.length; i++) {
       String field = fields[i];
-      int numPassages = maxPassages[i];
       Term floor = new Term(field, "");
       Term ceiling = new Term(field, UnicodeUtil.BIG_TERM);
-      SortedSet<Term> fieldTerms = queryTerms.subSet(floor, ceiling);
+      SortedSet<Term> termSet = queryTerms.subSet(floor, ceiling);
       // TODO: should we have some reasonable defaults for term pruning? (e.g. stopwords)
 
       // Strip off the redundant field:
-      BytesRef terms[] = new BytesRef[fieldTerms.size()];
+      BytesRef terms[] = new BytesRef[termSet.size()];
       int termUpto = 0;
-      for(Term term : fieldTerms) {
+      for(Term term : termSet) {
         terms[termUpto++] = term.bytes();
       }
-      Map<Integer,Object> fieldHighlights = highlightField(field, contents[i], getBreakIterator(field), terms, docids, leaves, numPassages, query);
-        
+      fieldTerms[i] = terms;
+      breakIterators[i] = getBreakIterator(field);
+      fieldHighlights.add(new HashMap<Integer,Object>());
+    }
+
+    // pull stored data, a batch of documents at a time so that
+    // only the contents of one batch are held in memory:
+    final int batchSize = getLoadBatchSize();
+    if (batchSize < 1) {
+      throw new IllegalArgumentException("loadBatchSize must be >= 1 (got " + batchSize + ")");
+    }
+    for (int start = 0; start < docids.length; start += batchSize) {
+      final int end = (int) Math.min(docids.length, (long) start + batchSize);
+      final int batchDocids[] = (start == 0 && end == docids.length) ? docids : Arrays.copyOfRange(docids, start, end);
+      String[][] contents = loadFieldValues(searcher, fields, batchDocids, maxLength);
+      for (int i = 0; i < fields.length; i++) {
+        fieldHighlights.get(i).putAll(highlightField(fields[i], contents[i], breakIterators[i], fieldTerms[i], batchDocids, leaves, maxPassages[i], query));
+      }
+    }
+
+    Map<String,Object[]> highlights = new HashMap<>();
+    for (int i = 0; i < fields.length; i++) {
+      Map<Integer,Object> docHighlights = fieldHighlights.get(i);
       Object[] result = new Object[docids.length];
       for (int j = 0; j < docidsIn.length; j++) {
-        result[j] = fieldHighlights.get(docidsIn[j]);
+        result[j] = docHighlights.get(docidsIn[j]);
       }
-      highlights.put(field, result);
+      highlights.put(fields[i], result);
     }
     return highlights;
   }
@@ -423,7 +447,8 @@ public class PostingsHighlighter {
    *  fields, but a subclass can change the source.  This
    *  method should allocate the String[fields.length][docids.length]
    *  and fill all values.  The returned Strings must be
-   *  identical to what was indexed. */
+   *  identical to what was indexed.  The docids are sorted,
+   *  and there are at most {@link #getLoadBatchSize()} of them. */
   protected String[][] loadFieldValues(IndexSearcher searcher, String[] fields, int[] docids, int maxLength) throws IOException {
     String contents[][] = new String[fields.length][docids.length];
     char valueSeparators[] = new char[fields.length];
@@ -441,6 +466,46 @@ public class PostingsHighlighter {
     return contents;
   }
   
+  /**
+   * Returns the maximum number of documents whose field values are loaded
+   * with {@link #loadFieldValues} and held in memory at once. The default
+   * is {@link #DEFAULT_LOAD_BATCH_SIZE}, so that memory use is bounded by that
+   * many documents' fields (each at most {@code maxLength} chars) regardless
+   * of the number of hits. A subclass highlighting very large documents can
+   * lower it, or return {@code Integer.MAX_VALUE} to load all documents up
+   * front.
+   */
+  protected int getLoadBatchSize() {
+    return DEFAULT_LOAD_BATCH_SIZE;
+  }
+
+  /**
+   * Where the offsets of the query terms in a field are read from, see
+   * {@link #getOffsetSource}.
+   */
+  public enum OffsetSource {
+    /** Offsets are read from the postings, which must be indexed with
+     *  {@link IndexOptions#DOCS_AND_FREQS_AND_POSITIONS_AND_OFFSETS}. */
+    POSTINGS,
+    /** Offsets are read from the term vectors of each document, which must
+     *  store offsets; if they don't, the content is re-analyzed instead. */
+    TERM_VECTORS,
+    /** The content of each document is re-analyzed into a {@link MemoryIndex}
+     *  with the {@link #getIndexAnalyzer index analyzer}. */
+    ANALYSIS
+  }
+
+  /**
+   * Returns where to read the offsets of {@code field} from, for a segment
+   * whose {@link FieldInfo} is given ({@code null} if the segment does not
+   * have the field). This returns {@link OffsetSource#POSTINGS} by default;
+   * the other sources require {@link #getIndexAnalyzer} to return the
+   * analyzer used at index time, for re-analysis.
+   */
+  protected OffsetSource getOffsetSource(String field, FieldInfo fieldInfo) {
+    return OffsetSource.POSTINGS;
+  }
+
   /** 
    * Returns the logical separator between values for multi-valued fields.
    * The default value is a space character, which means passages can span across values,
@@ -487,6 +552,7 @@ public class PostingsHighlighter {
     // otherwise, we will just advance() existing enums to the new document in the same segment.
     PostingsEnum postings[] = null;
     TermsEnum termsEnum = null;
+    OffsetSource offsetSource = null;
     int lastLeaf = -1;
     
     for (int i = 0; i < docids.length; i++) {
@@ -504,17 +570,35 @@ public class PostingsHighlighter {
       
       // if the segment has changed, we must initialize new enums.
       if (leaf != lastLeaf) {
-        Terms t = r.terms(field);
-        if (t != null) {
-          if (!t.hasOffsets()) {
-            // no offsets available
-            throw new IllegalArgumentException("field '" + field + "' was indexed without offsets, cannot highlight");
+        offsetSource = getOffsetSource(field, r.getFieldInfos().fieldInfo(field));
+        if (offsetSource == null) {
+          throw new NullPointerException("OffsetSource cannot be null");
+        }
+        if (offsetSource == OffsetSource.POSTINGS) {
+          Terms t = r.terms(field);
+          if (t != null) {
+            if (!t.hasOffsets()) {
+              // no offsets available
+              throw new IllegalArgumentException("field '" + field + "' was indexed without offsets, cannot highlight");
+            }
+            termsEnum = t.iterator();
+            postings = new PostingsEnum[terms.length];
+          } else {
+            termsEnum = null;
           }
+        }
+      }
+      int localDoc = doc - subContext.docBase;
+      if (offsetSource != OffsetSource.POSTINGS) {
+        // term vectors and re-analysis only hold this one document, as doc 0:
+        Terms t = getDocTerms(offsetSource, field, content, r, localDoc, analyzer);
+        if (t != null) {
           termsEnum = t.iterator();
           postings = new PostingsEnum[terms.length];
         } else {
           termsEnum = null;
         }
+        localDoc = 0;
       }
       if (termsEnum == null) {
         continue; // no terms for this field, nothing to do
@@ -523,11 +607,11 @@ public class PostingsHighlighter {
       // if there are multi-term matches, we have to initialize the "fake" enum for each document
       if (automata.length > 0) {
         PostingsEnum dp = MultiTermHighlighting.getDocsEnum(analyzer.tokenStream(field, content), automata);
-        dp.advance(doc - subContext.docBase);
+        dp.advance(localDoc);
         postings[terms.length-1] = dp; // last term is the multiterm matcher
       }
       
-      Passage passages[] = highlightDoc(field, terms, content.length(), bi, doc - subContext.docBase, termsEnum, postings, maxPassages);
+      Passage passages[] = highlightDoc(field, terms, content.length(), bi, localDoc, termsEnum, postings, maxPassages);
       
       if (passages.length == 0) {
         // no passages were returned, so ask for a default summary
@@ -544,6 +628,28 @@ public class PostingsHighlighter {
     return highlights;
   }
   
+  /** Returns the terms, with offsets, of a single document from its term
+   *  vectors or by re-analyzing its content with the index analyzer. */
+  private Terms getDocTerms(OffsetSource offsetSource, String field, String content, LeafReader r, int docID, Analyzer analyzer) throws IOException {
+    if (offsetSource == OffsetSource.TERM_VECTORS) {
+      Terms tv = r.getTermVector(docID, field);
+      if (tv == null || tv.hasOffsets()) {
+        return tv;
+      }
+      if (analyzer == null) {
+        throw new IllegalArgumentException("field '" + field + "' has term vectors without offsets, cannot highlight");
+      }
+      // fall back to re-analysis
+    }
+    assert offsetSource == OffsetSource.TERM_VECTORS || offsetSource == OffsetSource.ANALYSIS;
+    if (analyzer == null) {
+      throw new IllegalArgumentException("field '" + field + "' has no index analyzer, cannot highlight by re-analysis");
+    }
+    MemoryIndex index = new MemoryIndex(true);
+    index.addField(field, content, analyzer);
+    return index.createSearcher().getIndexReader().leaves().get(0).reader().terms(field);
+  }
+  
   // algorithm: treat sentence snippets as miniature documents
   // we can intersect these with the postings lists via BreakIterator.preceding(offset),s
   // score each sentence as norm(sentenceStartOffset) * sum(weight * tf(freq))
@@ -783,12 +889,16 @@ public class PostingsHighlighter {
     
     @Override
     public void stringField(FieldInfo fieldInfo, byte[] bytes) throws IOException {
-      String value = new String(bytes, StandardCharsets.UTF_8);
       assert currentField >= 0;
       StringBuilder builder = builders[currentField];
       if (builder.length() > 0 && builder.length() < maxLength) {
         builder.append(valueSeparators[currentField]);
       }
+      // a char takes at most 3 bytes in UTF-8, so there is no need to
+      // decode more than that for what is left until maxLength; the
+      // extra 3 bytes make up for a character cut in the middle:
+      int numBytes = (int) Math.min(bytes.length, 3L * (maxLength - builder.length()) + 3);
+      String value = new String(bytes, 0, numBytes, StandardCharsets.UTF_8);
       if (builder.length() + value.length() > maxLength) {
         builder.append(value, 0, maxLength - builder.length());
       } else {
@@ -0,0 +1,206 @@
+package org.apache.lucene.search.postingshighlight;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.IndexOptions;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.util.IOUtils;
+import org.apache.lucene.util.ThreadInterruptedException;
+
+/**
+ * A {@link PostingsHighlighter} that does not require offsets in the postings:
+ * for each field (and segment) it picks where the offsets of the query terms
+ * come from, see {@link #getOffsetSource}:
+ * <ul>
+ *   <li>{@link OffsetSource#POSTINGS} if the field is indexed with
+ *       {@link IndexOptions#DOCS_AND_FREQS_AND_POSITIONS_AND_OFFSETS},
+ *   <li>else {@link OffsetSource#TERM_VECTORS} if the field has term vectors,
+ *   <li>else {@link OffsetSource#ANALYSIS}, which re-analyzes the stored
+ *       content with the analyzer that was used at index time.
+ * </ul>
+ * Whatever the source, passages are found, scored and formatted just like
+ * {@link PostingsHighlighter} does. The analyzer also enables highlighting of
+ * MultiTermQuerys such as {@code WildcardQuery}.
+ * <p>
+ * If an {@link ExecutorService} is provided, the hits are split into slices
+ * which are highlighted concurrently, scheduled like the segments in the facet
+ * module's {@code ConcurrentFacetCounts}.
+ * <p>
+ * This is thread-safe, and can be used across different readers.
+ * @lucene.experimental
+ */
+public class UnifiedHighlighter extends PostingsHighlighter {
+
+  private final Analyzer indexAnalyzer;
+  private final ExecutorService executor;
+
+  /**
+   * Creates a new highlighter with {@link #DEFAULT_MAX_LENGTH}, which
+   * highlights hits sequentially.
+   * @param indexAnalyzer the analyzer that was used to index the highlighted fields.
+   */
+  public UnifiedHighlighter(Analyzer indexAnalyzer) {
+    this(indexAnalyzer, DEFAULT_MAX_LENGTH, null);
+  }
+
+  /**
+   * Creates a new highlighter.
+   * @param indexAnalyzer the analyzer that was used to index the highlighted fields.
+   * @param maxLength maximum content size to process.
+   * @param executor if not null, used to highlight slices of the hits concurrently.
+   * @throws IllegalArgumentException if <code>maxLength</code> is negative or <code>Integer.MAX_VALUE</code>
+   */
+  public UnifiedHighlighter(Analyzer indexAnalyzer, int maxLength, ExecutorService executor) {
+    super(maxLength);
+    if (indexAnalyzer == null) {
+      throw new NullPointerException("indexAnalyzer cannot be null");
+    }
+    this.indexAnalyzer = indexAnalyzer;
+    this.executor = executor;
+  }
+
+  @Override
+  protected Analyzer getIndexAnalyzer(String field) {
+    return indexAnalyzer;
+  }
+
+  @Override
+  protected OffsetSource getOffsetSource(String field, FieldInfo fieldInfo) {
+    if (fieldInfo != null) {
+      if (fieldInfo.getIndexOptions().compareTo(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS_AND_OFFSETS) >= 0) {
+        return OffsetSource.POSTINGS;
+      }
+      if (fieldInfo.hasVectors()) {
+        return OffsetSource.TERM_VECTORS;
+      }
+    }
+    return OffsetSource.ANALYSIS;
+  }
+
+  @Override
+  protected Map<String,Object[]> highlightFieldsAsObjects(final String fieldsIn[], final Query query, final IndexSearcher searcher,
+                                                          int[] docidsIn, final int maxPassagesIn[]) throws IOException {
+    final int numSlices = executor == null ? 1 : Math.min(docidsIn.length, 1 + getMaxThreads(executor));
+    if (numSlices <= 1) {
+      return super.highlightFieldsAsObjects(fieldsIn, query, searcher, docidsIn, maxPassagesIn);
+    }
+
+    // contiguous slices, so that the hits of each slice keep their order:
+    final int[][] slices = new int[numSlices][];
+    for (int i = 0; i < numSlices; i++) {
+      final int start = (int) ((long) docidsIn.length * i / numSlices);
+      final int end = (int) ((long) docidsIn.length * (i+1) / numSlices);
+      slices[i] = Arrays.copyOfRange(docidsIn, start, end);
+    }
+
+    final List<Future<Map<String,Object[]>>> futures = new ArrayList<>();
+    final List<AtomicBoolean> started = new ArrayList<>();
+    for (int i = 1; i < numSlices; i++) {
+      final int[] slice = slices[i];
+      final AtomicBoolean sliceStarted = new AtomicBoolean();
+      Future<Map<String,Object[]>> future;
+      try {
+        future = executor.submit(new Callable<Map<String,Object[]>>() {
+          @Override
+          public Map<String,Object[]> call() throws IOException {
+            if (sliceStarted.compareAndSet(false, true) == false) {
+              // the calling thread highlights this slice
+              return null;
+            }
+            return UnifiedHighlighter.super.highlightFieldsAsObjects(fieldsIn, query, searcher, slice, maxPassagesIn);
+          }
+        });
+      } catch (RejectedExecutionException ree) {
+        // highlighted by the calling thread below
+        future = null;
+      }
+      futures.add(future);
+      started.add(sliceStarted);
+    }
+
+    final List<Map<String,Object[]>> results = new ArrayList<>();
+    try {
+      results.add(super.highlightFieldsAsObjects(fieldsIn, query, searcher, slices[0], maxPassagesIn));
+      for (int i = 1; i < numSlices; i++) {
+        final Future<Map<String,Object[]>> future = futures.get(i-1);
+        // NOTE: Future.cancel also succeeds on a running task, so the slice is claimed instead:
+        if (started.get(i-1).compareAndSet(false, true)) {
+          // not started yet: don't wait for a pool thread, which may never come
+          if (future != null) {
+            future.cancel(false);
+          }
+          results.add(super.highlightFieldsAsObjects(fieldsIn, query, searcher, slices[i], maxPassagesIn));
+        } else {
+          try {
+            results.add(future.get());
+          } catch (InterruptedException e) {
+            throw new ThreadInterruptedException(e);
+          } catch (ExecutionException e) {
+            IOUtils.reThrow(e.getCause());
+          }
+        }
+      }
+    } catch (Throwable t) {
+      for (int i = 0; i < futures.size(); i++) {
+        if (started.get(i).compareAndSet(false, true) && futures.get(i) != null) {
+          futures.get(i).cancel(false);
+        }
+      }
+      IOUtils.reThrow(t);
+    }
+
+    final Map<String,Object[]> highlights = new HashMap<>();
+    for (String field : fieldsIn) {
+      final Object[] merged = new Object[docidsIn.length];
+      int upto = 0;
+      for (int i = 0; i < numSlices; i++) {
+        final Object[] sliceHighlights = results.get(i).get(field);
+        System.arraycopy(sliceHighlights, 0, merged, upto, slices[i].length);
+        upto += slices[i].length;
+      }
+      highlights.put(field, merged);
+    }
+    return highlights;
+  }
+
+  /** Same bound as the facet module's {@code ConcurrentFacetCounts}. */
+  private static int getMaxThreads(ExecutorService executor) {
+    int maxThreads = Runtime.getRuntime().availableProcessors();
+    if (executor instanceof ThreadPoolExecutor) {
+      maxThreads = Math.min(maxThreads, ((ThreadPoolExecutor) executor).getMaximumPoolSize());
+    }
+    return maxThreads;
+  }
+}
@@ -46,6 +46,7 @@ import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.search.TopDocs;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.util.LuceneTestCase;
+import org.apache.lucene.util.TestUtil;
 
 import java.io.BufferedReader;
 import java.io.IOException;
@@ -307,6 +308,101 @@ public class TestPostingsHighlighter extends LuceneTestCase {
     dir.close();
   }
   
+  public void testLoadBatchSize() throws Exception {
+    Directory dir = newDirectory();
+    IndexWriterConfig iwc = newIndexWriterConfig(new MockAnalyzer(random(), MockTokenizer.SIMPLE, true));
+    iwc.setMergePolicy(newLogMergePolicy());
+    RandomIndexWriter iw = new RandomIndexWriter(random(), dir, iwc);
+    
+    FieldType offsetsType = new FieldType(TextField.TYPE_STORED);
+    offsetsType.setIndexOptions(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS_AND_OFFSETS);
+    Field body = new Field("body", "", offsetsType);
+    Field title = new Field("title", "", offsetsType);
+    Document doc = new Document();
+    doc.add(body);
+    doc.add(title);
+    
+    int numDocs = atLeast(10);
+    for (int i = 0; i < numDocs; i++) {
+      body.setStringValue("This is test " + i + ". Just a test highlighting from postings. Feel free to ignore.");
+      title.setStringValue("I am hoping for the best " + i + ".");
+      iw.addDocument(doc);
+    }
+    
+    IndexReader ir = iw.getReader();
+    iw.close();
+    
+    IndexSearcher searcher = newSearcher(ir);
+    BooleanQuery.Builder query = new BooleanQuery.Builder();
+    query.add(new TermQuery(new Term("body", "highlighting")), BooleanClause.Occur.SHOULD);
+    query.add(new TermQuery(new Term("title", "best")), BooleanClause.Occur.SHOULD);
+    TopDocs topDocs = searcher.search(query.build(), numDocs);
+    assertEquals(numDocs, topDocs.totalHits);
+    String fields[] = new String[] { "body", "title" };
+    
+    // by default, field values are loaded in bounded batches:
+    assertEquals(PostingsHighlighter.DEFAULT_LOAD_BATCH_SIZE, new PostingsHighlighter().getLoadBatchSize());
+    Map<String,String[]> expected = new PostingsHighlighter() {
+      @Override
+      protected int getLoadBatchSize() {
+        return Integer.MAX_VALUE;
+      }
+    }.highlightFields(fields, query.build(), searcher, topDocs);
+    
+    final int batchSize = TestUtil.nextInt(random(), 1, 3);
+    PostingsHighlighter highlighter = new PostingsHighlighter() {
+      @Override
+      protected int getLoadBatchSize() {
+        return batchSize;
+      }
+
+      @Override
+      protected String[][] loadFieldValues(IndexSearcher searcher, String[] fields, int[] docids, int maxLength) throws IOException {
+        assertTrue(docids.length <= batchSize);
+        return super.loadFieldValues(searcher, fields, docids, maxLength);
+      }
+    };
+    Map<String,String[]> snippets = highlighter.highlightFields(fields, query.build(), searcher, topDocs);
+    assertEquals(2, snippets.size());
+    for (String field : fields) {
+      assertArrayEquals(expected.get(field), snippets.get(field));
+    }
+    
+    ir.close();
+    dir.close();
+  }
+  
+  public void testMaxLengthWithMultiByteChars() throws Exception {
+    Directory dir = newDirectory();
+    IndexWriterConfig iwc = newIndexWriterConfig(new MockAnalyzer(random(), MockTokenizer.SIMPLE, true));
+    RandomIndexWriter iw = new RandomIndexWriter(random(), dir, iwc);
+    
+    FieldType offsetsType = new FieldType(TextField.TYPE_STORED);
+    offsetsType.setIndexOptions(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS_AND_OFFSETS);
+    final String value = TestUtil.randomRealisticUnicodeString(random(), 50, 500);
+    Document doc = new Document();
+    doc.add(new Field("body", value, offsetsType));
+    iw.addDocument(doc);
+    
+    IndexReader ir = iw.getReader();
+    iw.close();
+    
+    IndexSearcher searcher = newSearcher(ir);
+    final int maxLength = TestUtil.nextInt(random(), 1, value.length() + 10);
+    PostingsHighlighter highlighter = new PostingsHighlighter(maxLength) {
+      @Override
+      protected String[][] loadFieldValues(IndexSearcher searcher, String[] fields, int[] docids, int maxLength) throws IOException {
+        String contents[][] = super.loadFieldValues(searcher, fields, docids, maxLength);
+        assertEquals(value.substring(0, Math.min(maxLength, value.length())), contents[0][0]);
+        return contents;
+      }
+    };
+    highlighter.highlight("body", new MatchAllDocsQuery(), searcher, searcher.search(new MatchAllDocsQuery(), 1));
+    
+    ir.close();
+    dir.close();
+  }
+
   public void testMultipleTerms() throws Exception {
     Directory dir = newDirectory();
     IndexWriterConfig iwc = newIndexWriterConfig(new MockAnalyzer(random()));
@@ -0,0 +1,246 @@
+package org.apache.lucene.search.postingshighlight;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.MockAnalyzer;
+import org.apache.lucene.analysis.MockTokenizer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.FieldType;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.IndexOptions;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.RandomIndexWriter;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.WildcardQuery;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.LuceneTestCase;
+import org.apache.lucene.util.NamedThreadFactory;
+import org.apache.lucene.util.TestUtil;
+
+public class TestUnifiedHighlighter extends LuceneTestCase {
+
+  private static final String[] FIELDS = new String[] { "postings", "vectors", "analysis" };
+
+  private Directory dir;
+  private Analyzer analyzer;
+  private IndexReader ir;
+
+  @Override
+  public void setUp() throws Exception {
+    super.setUp();
+    dir = newDirectory();
+    // use simpleanalyzer for more natural tokenization (else "test." is a token)
+    analyzer = new MockAnalyzer(random(), MockTokenizer.SIMPLE, true);
+    IndexWriterConfig iwc = newIndexWriterConfig(analyzer);
+    iwc.setMergePolicy(newLogMergePolicy());
+    RandomIndexWriter iw = new RandomIndexWriter(random(), dir, iwc);
+
+    FieldType offsetsType = new FieldType(TextField.TYPE_STORED);
+    offsetsType.setIndexOptions(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS_AND_OFFSETS);
+    FieldType vectorsType = new FieldType(TextField.TYPE_STORED);
+    vectorsType.setStoreTermVectors(true);
+    vectorsType.setStoreTermVectorPositions(true);
+    vectorsType.setStoreTermVectorOffsets(true);
+    Field postings = new Field("postings", "", offsetsType);
+    Field vectors = new Field("vectors", "", vectorsType);
+    Field analysis = new Field("analysis", "", TextField.TYPE_STORED);
+    Document doc = new Document();
+    doc.add(postings);
+    doc.add(vectors);
+    doc.add(analysis);
+
+    int numDocs = atLeast(20);
+    for (int i = 0; i < numDocs; i++) {
+      String text = "This is test number " + i + ". Just a test highlighting from postings. Feel free to ignore.";
+      if (i % 3 == 0) {
+        text = "Highlighting the first term. Hope it works.";
+      }
+      postings.setStringValue(text);
+      vectors.setStringValue(text);
+      analysis.setStringValue(text);
+      iw.addDocument(doc);
+    }
+    ir = iw.getReader();
+    iw.close();
+  }
+
+  @Override
+  public void tearDown() throws Exception {
+    ir.close();
+    dir.close();
+    super.tearDown();
+  }
+
+  /** Highlights the same query on each field, which only differ in how their offsets are found. */
+  private void assertSameHighlights(UnifiedHighlighter highlighter, String[] queryTerms) throws Exception {
+    IndexSearcher searcher = newSearcher(ir);
+    int[] maxPassages = new int[FIELDS.length];
+    BooleanQuery.Builder query = new BooleanQuery.Builder();
+    for (int i = 0; i < FIELDS.length; i++) {
+      maxPassages[i] = 2;
+      for (String queryTerm : queryTerms) {
+        query.add(new TermQuery(new Term(FIELDS[i], queryTerm)), BooleanClause.Occur.SHOULD);
+      }
+    }
+    TopDocs topDocs = searcher.search(query.build(), ir.maxDoc(), Sort.INDEXORDER);
+    assertEquals(ir.maxDoc(), topDocs.totalHits);
+    Map<String,String[]> snippets = highlighter.highlightFields(FIELDS, query.build(), searcher, topDocs, maxPassages);
+    assertEquals(FIELDS.length, snippets.size());
+    String[] expected = snippets.get("postings");
+    assertEquals(ir.maxDoc(), expected.length);
+    for (int i = 0; i < expected.length; i++) {
+      assertTrue(expected[i], expected[i].contains("<b>"));
+    }
+    assertArrayEquals(expected, snippets.get("vectors"));
+    assertArrayEquals(expected, snippets.get("analysis"));
+  }
+
+  public void testOffsetSources() throws Exception {
+    final Map<String,PostingsHighlighter.OffsetSource> expectedSources = new HashMap<>();
+    expectedSources.put("postings", PostingsHighlighter.OffsetSource.POSTINGS);
+    expectedSources.put("vectors", PostingsHighlighter.OffsetSource.TERM_VECTORS);
+    expectedSources.put("analysis", PostingsHighlighter.OffsetSource.ANALYSIS);
+    UnifiedHighlighter highlighter = new UnifiedHighlighter(analyzer) {
+      @Override
+      protected OffsetSource getOffsetSource(String field, FieldInfo fieldInfo) {
+        OffsetSource source = super.getOffsetSource(field, fieldInfo);
+        assertEquals(expectedSources.get(field), source);
+        return source;
+      }
+    };
+    assertSameHighlights(highlighter, new String[] { "highlighting", "test" });
+  }
+
+  public void testPostingsHighlighterRequiresOffsets() throws Exception {
+    IndexSearcher searcher = newSearcher(ir);
+    Query query = new TermQuery(new Term("analysis", "highlighting"));
+    TopDocs topDocs = searcher.search(query, 10, Sort.INDEXORDER);
+    try {
+      new PostingsHighlighter().highlight("analysis", query, searcher, topDocs);
+      fail("did not hit expected exception");
+    } catch (IllegalArgumentException iae) {
+      // expected
+    }
+    String snippets[] = new UnifiedHighlighter(analyzer).highlight("analysis", query, searcher, topDocs);
+    assertEquals(topDocs.scoreDocs.length, snippets.length);
+    for (String snippet : snippets) {
+      assertTrue(snippet, snippet.contains("<b>Highlighting</b>") || snippet.contains("<b>highlighting</b>"));
+    }
+  }
+
+  public void testMultiTermQuery() throws Exception {
+    IndexSearcher searcher = newSearcher(ir);
+    for (String field : FIELDS) {
+      Query query = new WildcardQuery(new Term(field, "highl*"));
+      TopDocs topDocs = searcher.search(query, 10, Sort.INDEXORDER);
+      String snippets[] = new UnifiedHighlighter(analyzer).highlight(field, query, searcher, topDocs);
+      assertEquals(topDocs.scoreDocs.length, snippets.length);
+      for (String snippet : snippets) {
+        assertTrue(field + ": " + snippet, snippet.toLowerCase(Locale.ROOT).contains("<b>highlighting</b>"));
+      }
+    }
+  }
+
+  public void testExecutor() throws Exception {
+    int numThreads = TestUtil.nextInt(random(), 1, 4);
+    ExecutorService executor = new ThreadPoolExecutor(numThreads, numThreads, 0L, TimeUnit.MILLISECONDS,
+                                                      new LinkedBlockingQueue<Runnable>(),
+                                                      new NamedThreadFactory("TestUnifiedHighlighter"));
+    try {
+      assertSameHighlights(new UnifiedHighlighter(analyzer, PostingsHighlighter.DEFAULT_MAX_LENGTH, executor),
+                           new String[] { "highlighting", "first" });
+
+      IndexSearcher searcher = newSearcher(ir);
+      Query query = new TermQuery(new Term("postings", "test"));
+      TopDocs topDocs = searcher.search(query, ir.maxDoc());
+      String expected[] = new UnifiedHighlighter(analyzer).highlight("postings", query, searcher, topDocs);
+      String actual[] = new UnifiedHighlighter(analyzer, PostingsHighlighter.DEFAULT_MAX_LENGTH, executor).highlight("postings", query, searcher, topDocs);
+      assertArrayEquals(expected, actual);
+    } finally {
+      executor.shutdown();
+      assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+    }
+  }
+
+  public void testBusyExecutor() throws Exception {
+    // the only pool thread is blocked, so queued slices must run in the calling thread:
+    ExecutorService executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                                                      new LinkedBlockingQueue<Runnable>(),
+                                                      new NamedThreadFactory("TestUnifiedHighlighter"));
+    final CountDownLatch release = new CountDownLatch(1);
+    try {
+      executor.submit(new Callable<Void>() {
+        @Override
+        public Void call() throws Exception {
+          release.await();
+          return null;
+        }
+      });
+      IndexSearcher searcher = newSearcher(ir);
+      Query query = new TermQuery(new Term("postings", "test"));
+      TopDocs topDocs = searcher.search(query, ir.maxDoc());
+      String expected[] = new UnifiedHighlighter(analyzer).highlight("postings", query, searcher, topDocs);
+      String actual[] = new UnifiedHighlighter(analyzer, PostingsHighlighter.DEFAULT_MAX_LENGTH, executor).highlight("postings", query, searcher, topDocs);
+      assertArrayEquals(expected, actual);
+    } finally {
+      release.countDown();
+      executor.shutdown();
+      assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+    }
+  }
+
+  public void testStoredOnlyField() throws Exception {
+    Directory dir = newDirectory();
+    RandomIndexWriter iw = new RandomIndexWriter(random(), dir, newIndexWriterConfig(analyzer));
+    Document doc = new Document();
+    doc.add(new StoredField("body", "This is a test. Just a test highlighting from stored fields."));
+    doc.add(new TextField("id", "one", Field.Store.NO));
+    iw.addDocument(doc);
+    IndexReader ir = iw.getReader();
+    iw.close();
+
+    IndexSearcher searcher = newSearcher(ir);
+    TopDocs topDocs = searcher.search(new TermQuery(new Term("id", "one")), 1);
+    String snippets[] = new UnifiedHighlighter(analyzer).highlight("body", new TermQuery(new Term("body", "highlighting")), searcher, topDocs);
+    assertEquals("Just a test <b>highlighting</b> from stored fields.", snippets[0]);
+    ir.close();
+    dir.close();
+  }
+}
@@ -17,7 +17,7 @@ package org.apache.lucene.search.join;
  * limitations under the License.
  */
 
-import org.apache.lucene.index.SortedDocValues;
+import org.apache.lucene.index.SortedSetDocValues;
 import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.search.Scorer;
 import org.apache.lucene.search.TwoPhaseIterator;
@@ -27,12 +27,12 @@ import java.io.IOException;
 
 abstract class BaseGlobalOrdinalScorer extends Scorer {
 
-  final SortedDocValues values;
+  final SortedSetDocValues values;
   final DocIdSetIterator approximation;
 
   float score;
 
-  public BaseGlobalOrdinalScorer(Weight weight, SortedDocValues values, DocIdSetIterator approximationScorer) {
+  public BaseGlobalOrdinalScorer(Weight weight, SortedSetDocValues values, DocIdSetIterator approximationScorer) {
     super(weight);
     this.values = values;
     this.approximation = approximationScorer;
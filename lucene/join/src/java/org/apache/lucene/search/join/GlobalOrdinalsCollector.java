@@ -20,7 +20,7 @@ package org.apache.lucene.search.join;
 import org.apache.lucene.index.DocValues;
 import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.index.MultiDocValues;
-import org.apache.lucene.index.SortedDocValues;
+import org.apache.lucene.index.SortedSetDocValues;
 import org.apache.lucene.search.Collector;
 import org.apache.lucene.search.LeafCollector;
 import org.apache.lucene.search.Scorer;
@@ -31,6 +31,8 @@ import java.io.IOException;
 
 /**
  * A collector that collects all ordinals from a specified field matching the query.
+ * The field may be single ({@link org.apache.lucene.index.SortedDocValues}) or
+ * multi-valued ({@link SortedSetDocValues}).
  *
  * @lucene.experimental
  */
@@ -57,7 +59,7 @@ final class GlobalOrdinalsCollector implements Collector {
 
   @Override
   public LeafCollector getLeafCollector(LeafReaderContext context) throws IOException {
-    SortedDocValues docTermOrds = DocValues.getSorted(context.reader(), field);
+    SortedSetDocValues docTermOrds = DocValues.getSortedSet(context.reader(), field);
     if (ordinalMap != null) {
       LongValues segmentOrdToGlobalOrdLookup = ordinalMap.getGlobalOrds(context.ord);
       return new OrdinalMapCollector(docTermOrds, segmentOrdToGlobalOrdLookup);
@@ -68,18 +70,18 @@ final class GlobalOrdinalsCollector implements Collector {
 
   final class OrdinalMapCollector implements LeafCollector {
 
-    private final SortedDocValues docTermOrds;
+    private final SortedSetDocValues docTermOrds;
     private final LongValues segmentOrdToGlobalOrdLookup;
 
-    OrdinalMapCollector(SortedDocValues docTermOrds, LongValues segmentOrdToGlobalOrdLookup) {
+    OrdinalMapCollector(SortedSetDocValues docTermOrds, LongValues segmentOrdToGlobalOrdLookup) {
       this.docTermOrds = docTermOrds;
       this.segmentOrdToGlobalOrdLookup = segmentOrdToGlobalOrdLookup;
     }
 
     @Override
     public void collect(int doc) throws IOException {
-      final long segmentOrd = docTermOrds.getOrd(doc);
-      if (segmentOrd != -1) {
+      docTermOrds.setDocument(doc);
+      for (long segmentOrd = docTermOrds.nextOrd(); segmentOrd != SortedSetDocValues.NO_MORE_ORDS; segmentOrd = docTermOrds.nextOrd()) {
         final long globalOrd = segmentOrdToGlobalOrdLookup.get(segmentOrd);
         collectedOrds.set(globalOrd);
       }
@@ -92,16 +94,16 @@ final class GlobalOrdinalsCollector implements Collector {
 
   final class SegmentOrdinalCollector implements LeafCollector {
 
-    private final SortedDocValues docTermOrds;
+    private final SortedSetDocValues docTermOrds;
 
-    SegmentOrdinalCollector(SortedDocValues docTermOrds) {
+    SegmentOrdinalCollector(SortedSetDocValues docTermOrds) {
       this.docTermOrds = docTermOrds;
     }
 
     @Override
     public void collect(int doc) throws IOException {
-      final long segmentOrd = docTermOrds.getOrd(doc);
-      if (segmentOrd != -1) {
+      docTermOrds.setDocument(doc);
+      for (long segmentOrd = docTermOrds.nextOrd(); segmentOrd != SortedSetDocValues.NO_MORE_ORDS; segmentOrd = docTermOrds.nextOrd()) {
         collectedOrds.set(segmentOrd);
       }
     }
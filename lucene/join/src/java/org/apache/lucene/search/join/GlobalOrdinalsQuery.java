@@ -24,7 +24,7 @@ import org.apache.lucene.index.DocValues;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.index.MultiDocValues;
-import org.apache.lucene.index.SortedDocValues;
+import org.apache.lucene.index.SortedSetDocValues;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.search.ConstantScoreWeight;
 import org.apache.lucene.search.DocIdSetIterator;
@@ -112,10 +112,11 @@ final class GlobalOrdinalsQuery extends Query {
 
     @Override
     public Explanation explain(LeafReaderContext context, int doc) throws IOException {
-      SortedDocValues values = DocValues.getSorted(context.reader(), joinField);
-      if (values != null) {
-        int segmentOrd = values.getOrd(doc);
-        if (segmentOrd != -1) {
+      SortedSetDocValues values = DocValues.getSortedSet(context.reader(), joinField);
+      final LongValues segmentOrdToGlobalOrdLookup = globalOrds != null ? globalOrds.getGlobalOrds(context.ord) : LongValues.IDENTITY;
+      values.setDocument(doc);
+      for (long segmentOrd = values.nextOrd(); segmentOrd != SortedSetDocValues.NO_MORE_ORDS; segmentOrd = values.nextOrd()) {
+        if (foundOrds.get(segmentOrdToGlobalOrdLookup.get(segmentOrd))) {
           BytesRef joinValue = values.lookupOrd(segmentOrd);
           return Explanation.match(score(), "Score based on join value " + joinValue.utf8ToString());
         }
@@ -125,10 +126,7 @@ final class GlobalOrdinalsQuery extends Query {
 
     @Override
     public Scorer scorer(LeafReaderContext context) throws IOException {
-      SortedDocValues values = DocValues.getSorted(context.reader(), joinField);
-      if (values == null) {
-        return null;
-      }
+      SortedSetDocValues values = DocValues.getSortedSet(context.reader(), joinField);
 
       Scorer approximationScorer = approximationWeight.scorer(context);
       if (approximationScorer == null) {
@@ -148,7 +146,7 @@ final class GlobalOrdinalsQuery extends Query {
     final LongBitSet foundOrds;
     final LongValues segmentOrdToGlobalOrdLookup;
 
-    public OrdinalMapScorer(Weight weight, float score, LongBitSet foundOrds, SortedDocValues values, DocIdSetIterator approximationScorer, LongValues segmentOrdToGlobalOrdLookup) {
+    public OrdinalMapScorer(Weight weight, float score, LongBitSet foundOrds, SortedSetDocValues values, DocIdSetIterator approximationScorer, LongValues segmentOrdToGlobalOrdLookup) {
       super(weight, values, approximationScorer);
       this.score = score;
       this.foundOrds = foundOrds;
@@ -161,8 +159,8 @@ final class GlobalOrdinalsQuery extends Query {
 
         @Override
         public boolean matches() throws IOException {
-          final long segmentOrd = values.getOrd(approximation.docID());
-          if (segmentOrd != -1) {
+          values.setDocument(approximation.docID());
+          for (long segmentOrd = values.nextOrd(); segmentOrd != SortedSetDocValues.NO_MORE_ORDS; segmentOrd = values.nextOrd()) {
             final long globalOrd = segmentOrdToGlobalOrdLookup.get(segmentOrd);
             if (foundOrds.get(globalOrd)) {
               return true;
@@ -183,7 +181,7 @@ final class GlobalOrdinalsQuery extends Query {
 
     final LongBitSet foundOrds;
 
-    public SegmentOrdinalScorer(Weight weight, float score, LongBitSet foundOrds, SortedDocValues values, DocIdSetIterator approximationScorer) {
+    public SegmentOrdinalScorer(Weight weight, float score, LongBitSet foundOrds, SortedSetDocValues values, DocIdSetIterator approximationScorer) {
       super(weight, values, approximationScorer);
       this.score = score;
       this.foundOrds = foundOrds;
@@ -195,8 +193,8 @@ final class GlobalOrdinalsQuery extends Query {
 
         @Override
         public boolean matches() throws IOException {
-          final long segmentOrd = values.getOrd(approximation.docID());
-          if (segmentOrd != -1) {
+          values.setDocument(approximation.docID());
+          for (long segmentOrd = values.nextOrd(); segmentOrd != SortedSetDocValues.NO_MORE_ORDS; segmentOrd = values.nextOrd()) {
             if (foundOrds.get(segmentOrd)) {
               return true;
             }
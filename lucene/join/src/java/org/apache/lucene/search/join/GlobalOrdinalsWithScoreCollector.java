@@ -20,7 +20,7 @@ package org.apache.lucene.search.join;
 import org.apache.lucene.index.DocValues;
 import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.index.MultiDocValues;
-import org.apache.lucene.index.SortedDocValues;
+import org.apache.lucene.index.SortedSetDocValues;
 import org.apache.lucene.search.Collector;
 import org.apache.lucene.search.LeafCollector;
 import org.apache.lucene.search.Scorer;
@@ -83,11 +83,19 @@ abstract class GlobalOrdinalsWithScoreCollector implements Collector {
 
   protected abstract void doScore(int globalOrd, float existingScore, float newScore);
 
+  /** Combines the scores of two matching ordinals of a multi-valued "to" document. */
+  protected abstract float combineScores(float score1, float score2);
+
+  /** Returns the score of a "to" document from the combined scores of its {@code numMatches} matching ordinals. */
+  protected float finishScore(float combinedScore, int numMatches) {
+    return combinedScore;
+  }
+
   protected abstract float unset();
 
   @Override
   public LeafCollector getLeafCollector(LeafReaderContext context) throws IOException {
-    SortedDocValues docTermOrds = DocValues.getSorted(context.reader(), field);
+    SortedSetDocValues docTermOrds = DocValues.getSortedSet(context.reader(), field);
     if (ordinalMap != null) {
       LongValues segmentOrdToGlobalOrdLookup = ordinalMap.getGlobalOrds(context.ord);
       return new OrdinalMapCollector(docTermOrds, segmentOrdToGlobalOrdLookup);
@@ -103,23 +111,27 @@ abstract class GlobalOrdinalsWithScoreCollector implements Collector {
 
   final class OrdinalMapCollector implements LeafCollector {
 
-    private final SortedDocValues docTermOrds;
+    private final SortedSetDocValues docTermOrds;
     private final LongValues segmentOrdToGlobalOrdLookup;
     private Scorer scorer;
 
-    OrdinalMapCollector(SortedDocValues docTermOrds, LongValues segmentOrdToGlobalOrdLookup) {
+    OrdinalMapCollector(SortedSetDocValues docTermOrds, LongValues segmentOrdToGlobalOrdLookup) {
       this.docTermOrds = docTermOrds;
       this.segmentOrdToGlobalOrdLookup = segmentOrdToGlobalOrdLookup;
     }
 
     @Override
     public void collect(int doc) throws IOException {
-      final long segmentOrd = docTermOrds.getOrd(doc);
-      if (segmentOrd != -1) {
+      docTermOrds.setDocument(doc);
+      long segmentOrd = docTermOrds.nextOrd();
+      if (segmentOrd == SortedSetDocValues.NO_MORE_ORDS) {
+        return;
+      }
+      final float newScore = scorer.score();
+      for (; segmentOrd != SortedSetDocValues.NO_MORE_ORDS; segmentOrd = docTermOrds.nextOrd()) {
         final int globalOrd = (int) segmentOrdToGlobalOrdLookup.get(segmentOrd);
         collectedOrds.set(globalOrd);
         float existingScore = scores.getScore(globalOrd);
-        float newScore = scorer.score();
         doScore(globalOrd, existingScore, newScore);
         if (occurrences != null) {
           occurrences.increment(globalOrd);
@@ -135,20 +147,25 @@ abstract class GlobalOrdinalsWithScoreCollector implements Collector {
 
   final class SegmentOrdinalCollector implements LeafCollector {
 
-    private final SortedDocValues docTermOrds;
+    private final SortedSetDocValues docTermOrds;
     private Scorer scorer;
 
-    SegmentOrdinalCollector(SortedDocValues docTermOrds) {
+    SegmentOrdinalCollector(SortedSetDocValues docTermOrds) {
       this.docTermOrds = docTermOrds;
     }
 
     @Override
     public void collect(int doc) throws IOException {
-      final int segmentOrd = docTermOrds.getOrd(doc);
-      if (segmentOrd != -1) {
+      docTermOrds.setDocument(doc);
+      long ord = docTermOrds.nextOrd();
+      if (ord == SortedSetDocValues.NO_MORE_ORDS) {
+        return;
+      }
+      final float newScore = scorer.score();
+      for (; ord != SortedSetDocValues.NO_MORE_ORDS; ord = docTermOrds.nextOrd()) {
+        final int segmentOrd = (int) ord;
         collectedOrds.set(segmentOrd);
         float existingScore = scores.getScore(segmentOrd);
-        float newScore = scorer.score();
         doScore(segmentOrd, existingScore, newScore);
         if (occurrences != null) {
           occurrences.increment(segmentOrd);
@@ -173,6 +190,11 @@ abstract class GlobalOrdinalsWithScoreCollector implements Collector {
       scores.setScore(globalOrd, Math.min(existingScore, newScore));
     }
 
+    @Override
+    protected float combineScores(float score1, float score2) {
+      return Math.min(score1, score2);
+    }
+
     @Override
     protected float unset() {
       return Float.POSITIVE_INFINITY;
@@ -190,6 +212,11 @@ abstract class GlobalOrdinalsWithScoreCollector implements Collector {
       scores.setScore(globalOrd, Math.max(existingScore, newScore));
     }
 
+    @Override
+    protected float combineScores(float score1, float score2) {
+      return Math.max(score1, score2);
+    }
+
     @Override
     protected float unset() {
       return Float.NEGATIVE_INFINITY;
@@ -207,6 +234,11 @@ abstract class GlobalOrdinalsWithScoreCollector implements Collector {
       scores.setScore(globalOrd, existingScore + newScore);
     }
 
+    @Override
+    protected float combineScores(float score1, float score2) {
+      return score1 + score2;
+    }
+
     @Override
     protected float unset() {
       return 0f;
@@ -229,6 +261,16 @@ abstract class GlobalOrdinalsWithScoreCollector implements Collector {
       return scores.getScore(globalOrdinal) / occurrences.getOccurrence(globalOrdinal);
     }
 
+    @Override
+    protected float combineScores(float score1, float score2) {
+      return score1 + score2;
+    }
+
+    @Override
+    protected float finishScore(float combinedScore, int numMatches) {
+      return combinedScore / numMatches;
+    }
+
     @Override
     protected float unset() {
       return 0f;
@@ -243,7 +285,7 @@ abstract class GlobalOrdinalsWithScoreCollector implements Collector {
 
     @Override
     public LeafCollector getLeafCollector(LeafReaderContext context) throws IOException {
-      SortedDocValues docTermOrds = DocValues.getSorted(context.reader(), field);
+      SortedSetDocValues docTermOrds = DocValues.getSortedSet(context.reader(), field);
       if (ordinalMap != null) {
         LongValues segmentOrdToGlobalOrdLookup = ordinalMap.getGlobalOrds(context.ord);
         return new LeafCollector() {
@@ -254,8 +296,8 @@ abstract class GlobalOrdinalsWithScoreCollector implements Collector {
 
           @Override
           public void collect(int doc) throws IOException {
-            final long segmentOrd = docTermOrds.getOrd(doc);
-            if (segmentOrd != -1) {
+            docTermOrds.setDocument(doc);
+            for (long segmentOrd = docTermOrds.nextOrd(); segmentOrd != SortedSetDocValues.NO_MORE_ORDS; segmentOrd = docTermOrds.nextOrd()) {
               final int globalOrd = (int) segmentOrdToGlobalOrdLookup.get(segmentOrd);
               collectedOrds.set(globalOrd);
               occurrences.increment(globalOrd);
@@ -270,8 +312,9 @@ abstract class GlobalOrdinalsWithScoreCollector implements Collector {
 
           @Override
           public void collect(int doc) throws IOException {
-            final int segmentOrd = docTermOrds.getOrd(doc);
-            if (segmentOrd != -1) {
+            docTermOrds.setDocument(doc);
+            for (long ord = docTermOrds.nextOrd(); ord != SortedSetDocValues.NO_MORE_ORDS; ord = docTermOrds.nextOrd()) {
+              final int segmentOrd = (int) ord;
               collectedOrds.set(segmentOrd);
               occurrences.increment(segmentOrd);
             }
@@ -289,6 +332,11 @@ abstract class GlobalOrdinalsWithScoreCollector implements Collector {
       return 1f;
     }
 
+    @Override
+    protected float combineScores(float score1, float score2) {
+      return 1f;
+    }
+
     @Override
     protected float unset() {
       return 0f;
@@ -21,7 +21,7 @@ import org.apache.lucene.index.DocValues;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.index.MultiDocValues;
-import org.apache.lucene.index.SortedDocValues;
+import org.apache.lucene.index.SortedSetDocValues;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.search.Explanation;
@@ -34,6 +34,8 @@ import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.LongValues;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
 
 final class GlobalOrdinalsWithScoreQuery extends Query {
@@ -120,22 +122,26 @@ final class GlobalOrdinalsWithScoreQuery extends Query {
 
     @Override
     public Explanation explain(LeafReaderContext context, int doc) throws IOException {
-      SortedDocValues values = DocValues.getSorted(context.reader(), joinField);
-      if (values != null) {
-        int segmentOrd = values.getOrd(doc);
-        if (segmentOrd != -1) {
-          final float score;
-          if (globalOrds != null) {
-            long globalOrd = globalOrds.getGlobalOrds(context.ord).get(segmentOrd);
-            score = collector.score((int) globalOrd);
-          } else {
-            score = collector.score(segmentOrd);
-          }
+      SortedSetDocValues values = DocValues.getSortedSet(context.reader(), joinField);
+      final LongValues segmentOrdToGlobalOrdLookup = globalOrds != null ? globalOrds.getGlobalOrds(context.ord) : LongValues.IDENTITY;
+      List<Explanation> matches = new ArrayList<>();
+      float score = 0;
+      values.setDocument(doc);
+      for (long segmentOrd = values.nextOrd(); segmentOrd != SortedSetDocValues.NO_MORE_ORDS; segmentOrd = values.nextOrd()) {
+        final int globalOrd = (int) segmentOrdToGlobalOrdLookup.get(segmentOrd);
+        if (collector.match(globalOrd)) {
+          final float ordScore = collector.score(globalOrd);
+          score = matches.isEmpty() ? ordScore : collector.combineScores(score, ordScore);
           BytesRef joinValue = values.lookupOrd(segmentOrd);
-          return Explanation.match(score, "Score based on join value " + joinValue.utf8ToString());
+          matches.add(Explanation.match(ordScore, "Score based on join value " + joinValue.utf8ToString()));
         }
       }
-      return Explanation.noMatch("Not a match");
+      if (matches.isEmpty()) {
+        return Explanation.noMatch("Not a match");
+      } else if (matches.size() == 1) {
+        return matches.get(0);
+      }
+      return Explanation.match(collector.finishScore(score, matches.size()), "Score based on " + matches.size() + " join values", matches);
     }
 
     @Override
@@ -151,10 +157,7 @@ final class GlobalOrdinalsWithScoreQuery extends Query {
 
     @Override
     public Scorer scorer(LeafReaderContext context) throws IOException {
-      SortedDocValues values = DocValues.getSorted(context.reader(), joinField);
-      if (values == null) {
-        return null;
-      }
+      SortedSetDocValues values = DocValues.getSortedSet(context.reader(), joinField);
 
       Scorer approximationScorer = approximationWeight.scorer(context);
       if (approximationScorer == null) {
@@ -173,7 +176,7 @@ final class GlobalOrdinalsWithScoreQuery extends Query {
     final LongValues segmentOrdToGlobalOrdLookup;
     final GlobalOrdinalsWithScoreCollector collector;
 
-    public OrdinalMapScorer(Weight weight, GlobalOrdinalsWithScoreCollector collector, SortedDocValues values, DocIdSetIterator approximation, LongValues segmentOrdToGlobalOrdLookup) {
+    public OrdinalMapScorer(Weight weight, GlobalOrdinalsWithScoreCollector collector, SortedSetDocValues values, DocIdSetIterator approximation, LongValues segmentOrdToGlobalOrdLookup) {
       super(weight, values, approximation);
       this.segmentOrdToGlobalOrdLookup = segmentOrdToGlobalOrdLookup;
       this.collector = collector;
@@ -185,15 +188,20 @@ final class GlobalOrdinalsWithScoreQuery extends Query {
 
         @Override
         public boolean matches() throws IOException {
-          final long segmentOrd = values.getOrd(approximation.docID());
-          if (segmentOrd != -1) {
+          values.setDocument(approximation.docID());
+          int numMatches = 0;
+          for (long segmentOrd = values.nextOrd(); segmentOrd != SortedSetDocValues.NO_MORE_ORDS; segmentOrd = values.nextOrd()) {
             final int globalOrd = (int) segmentOrdToGlobalOrdLookup.get(segmentOrd);
             if (collector.match(globalOrd)) {
-              score = collector.score(globalOrd);
-              return true;
+              final float ordScore = collector.score(globalOrd);
+              score = numMatches == 0 ? ordScore : collector.combineScores(score, ordScore);
+              numMatches++;
             }
           }
-          return false;
+          if (numMatches > 1) {
+            score = collector.finishScore(score, numMatches);
+          }
+          return numMatches > 0;
         }
 
         @Override
@@ -208,7 +216,7 @@ final class GlobalOrdinalsWithScoreQuery extends Query {
 
     final GlobalOrdinalsWithScoreCollector collector;
 
-    public SegmentOrdinalScorer(Weight weight, GlobalOrdinalsWithScoreCollector collector, SortedDocValues values, DocIdSetIterator approximation) {
+    public SegmentOrdinalScorer(Weight weight, GlobalOrdinalsWithScoreCollector collector, SortedSetDocValues values, DocIdSetIterator approximation) {
       super(weight, values, approximation);
       this.collector = collector;
     }
@@ -219,14 +227,20 @@ final class GlobalOrdinalsWithScoreQuery extends Query {
 
         @Override
         public boolean matches() throws IOException {
-          final int segmentOrd = values.getOrd(approximation.docID());
-          if (segmentOrd != -1) {
+          values.setDocument(approximation.docID());
+          int numMatches = 0;
+          for (long ord = values.nextOrd(); ord != SortedSetDocValues.NO_MORE_ORDS; ord = values.nextOrd()) {
+            final int segmentOrd = (int) ord;
             if (collector.match(segmentOrd)) {
-              score = collector.score(segmentOrd);
-              return true;
+              final float ordScore = collector.score(segmentOrd);
+              score = numMatches == 0 ? ordScore : collector.combineScores(score, ordScore);
+              numMatches++;
             }
           }
-          return false;
+          if (numMatches > 1) {
+            score = collector.finishScore(score, numMatches);
+          }
+          return numMatches > 0;
         }
 
         @Override
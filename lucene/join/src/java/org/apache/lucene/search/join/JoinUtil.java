@@ -189,17 +189,21 @@ public final class JoinUtil {
    * A query time join using global ordinals over a dedicated join field.
    *
    * This join has certain restrictions and requirements:
-   * 1) A document can only refer to one other document. (but can be referred by one or more documents)
-   * 2) Documents on each side of the join must be distinguishable. Typically this can be done by adding an extra field
+   * 1) Documents on each side of the join must be distinguishable. Typically this can be done by adding an extra field
    *    that identifies the "from" and "to" side and then the fromQuery and toQuery must take the this into account.
-   * 3) There must be a single sorted doc values join field used by both the "from" and "to" documents. This join field
-   *    should store the join values as UTF-8 strings.
-   * 4) An ordinal map must be provided that is created on top of the join field.
+   * 2) There must be a single sorted or sorted set doc values join field used by both the "from" and "to" documents.
+   *    This join field should store the join values as UTF-8 strings.
+   * 3) An ordinal map must be provided that is created on top of the join field. An {@link OrdinalMapCache} can be
+   *    used to re-use ordinal maps across joins and reader reopens.
+   *
+   * If the join field is multi-valued, a "from" document contributes its score to each of its join values, and a "to"
+   * document matches if any of its join values matches. The score of a "to" document with several matching join values
+   * is the min, max, sum or average (depending on the score mode) of the scores of these join values.
    *
    * Note: min and max filtering and the avg score mode will require this join to keep track of the number of times
    * a document matches per join value. This will increase the per join cost in terms of execution time and memory.
    *
-   * @param joinField   The {@link SortedDocValues} field containing the join values
+   * @param joinField   The {@link SortedDocValues} or {@link SortedSetDocValues} field containing the join values
    * @param fromQuery   The query containing the actual user query. Also the fromQuery can only match "from" documents.
    * @param toQuery     The query identifying all documents on the "to" side.
    * @param searcher    The index searcher used to execute the from query
@@ -233,8 +237,11 @@ public final class JoinUtil {
       ordinalMap = null;
       LeafReader leafReader = searcher.getIndexReader().leaves().get(0).reader();
       SortedDocValues joinSortedDocValues = leafReader.getSortedDocValues(joinField);
+      SortedSetDocValues joinSortedSetDocValues = leafReader.getSortedSetDocValues(joinField);
       if (joinSortedDocValues != null) {
         valueCount = joinSortedDocValues.getValueCount();
+      } else if (joinSortedSetDocValues != null) {
+        valueCount = joinSortedSetDocValues.getValueCount();
       } else {
         return new MatchNoDocsQuery();
       }
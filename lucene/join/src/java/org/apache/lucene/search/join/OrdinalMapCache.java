@@ -0,0 +1,122 @@
+package org.apache.lucene.search.join;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.MultiDocValues;
+import org.apache.lucene.index.SortedSetDocValues;
+import org.apache.lucene.util.packed.PackedInts;
+
+/**
+ * Caches the {@link MultiDocValues.OrdinalMap} of join fields, for
+ * {@link JoinUtil#createJoinQuery(String, org.apache.lucene.search.Query, org.apache.lucene.search.Query, org.apache.lucene.search.IndexSearcher, ScoreMode, MultiDocValues.OrdinalMap)},
+ * so that it is not rebuilt for every join.
+ * <p>
+ * The ordinal map of a field is kept together with the core cache keys of
+ * the segments it was built over: it is returned as-is for readers over the
+ * same segments (e.g. after deletes), and when the reader was reopened the
+ * new map is built incrementally, only merging the terms of the new segments
+ * into the global ordinal space of the previous map (see
+ * {@link MultiDocValues.OrdinalMap#build(Object, SortedSetDocValues[], MultiDocValues.OrdinalMap, int[], float)}).
+ * The join field may be single ({@link org.apache.lucene.index.SortedDocValues})
+ * or multi-valued ({@link SortedSetDocValues}).
+ * <p>
+ * Only the latest map is kept per field, so this should be used with a single,
+ * periodically reopened reader. This class is thread-safe.
+ *
+ * @lucene.experimental
+ */
+public final class OrdinalMapCache {
+
+  private static final class Entry {
+    final Object[] coreKeys;
+    final MultiDocValues.OrdinalMap ordinalMap;
+
+    Entry(Object[] coreKeys, MultiDocValues.OrdinalMap ordinalMap) {
+      this.coreKeys = coreKeys;
+      this.ordinalMap = ordinalMap;
+    }
+  }
+
+  private final float acceptableOverheadRatio;
+  private final Map<String,Entry> cache = new HashMap<>();
+
+  /** Creates a new cache, using {@link PackedInts#DEFAULT} for the ordinal maps. */
+  public OrdinalMapCache() {
+    this(PackedInts.DEFAULT);
+  }
+
+  /** Creates a new cache, using the given acceptable overhead ratio for the ordinal maps. */
+  public OrdinalMapCache(float acceptableOverheadRatio) {
+    this.acceptableOverheadRatio = acceptableOverheadRatio;
+  }
+
+  /**
+   * Returns the ordinal map over the join field {@code field} of {@code reader},
+   * or null if the reader has fewer than two segments, in which case no ordinal
+   * map is needed.
+   */
+  public synchronized MultiDocValues.OrdinalMap getOrdinalMap(IndexReader reader, String field) throws IOException {
+    final List<LeafReaderContext> leaves = reader.leaves();
+    if (leaves.size() <= 1) {
+      return null;
+    }
+    final Object[] coreKeys = new Object[leaves.size()];
+    for (int i = 0; i < coreKeys.length; i++) {
+      coreKeys[i] = leaves.get(i).reader().getCoreCacheKey();
+    }
+
+    final Entry previous = cache.get(field);
+    if (previous != null && Arrays.equals(previous.coreKeys, coreKeys)) {
+      return previous.ordinalMap;
+    }
+
+    final int[] previousSegments = new int[coreKeys.length];
+    final Map<Object,Integer> previousSegmentsByKey = new IdentityHashMap<>();
+    if (previous != null) {
+      for (int i = 0; i < previous.coreKeys.length; i++) {
+        previousSegmentsByKey.put(previous.coreKeys[i], i);
+      }
+    }
+    final SortedSetDocValues[] values = new SortedSetDocValues[coreKeys.length];
+    for (int i = 0; i < coreKeys.length; i++) {
+      values[i] = DocValues.getSortedSet(leaves.get(i).reader(), field);
+      final Integer previousSegment = previousSegmentsByKey.get(coreKeys[i]);
+      previousSegments[i] = previousSegment == null ? -1 : previousSegment;
+    }
+
+    final MultiDocValues.OrdinalMap ordinalMap = MultiDocValues.OrdinalMap.build(reader.getCoreCacheKey(), values,
+        previous == null ? null : previous.ordinalMap, previousSegments, acceptableOverheadRatio);
+    cache.put(field, new Entry(coreKeys, ordinalMap));
+    return ordinalMap;
+  }
+
+  /** Removes all cached ordinal maps. */
+  public synchronized void clear() {
+    cache.clear();
+  }
+}
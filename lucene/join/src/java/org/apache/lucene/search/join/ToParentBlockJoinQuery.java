@@ -32,6 +32,7 @@ import org.apache.lucene.search.Explanation;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.TwoPhaseIterator;
 import org.apache.lucene.search.Weight;
 import org.apache.lucene.search.grouping.TopGroups;
 import org.apache.lucene.util.ArrayUtil;
@@ -163,8 +164,7 @@ public class ToParentBlockJoinQuery extends Query {
         return null;
       }
 
-      final int firstChildDoc = childScorer.iterator().nextDoc();
-      if (firstChildDoc == DocIdSetIterator.NO_MORE_DOCS) {
+      if (childScorer.twoPhaseIterator() == null && childScorer.iterator().nextDoc() == DocIdSetIterator.NO_MORE_DOCS) {
         // No matches
         return null;
       }
@@ -178,7 +178,7 @@ public class ToParentBlockJoinQuery extends Query {
         return null;
       }
 
-      return new BlockJoinScorer(this, childScorer, parents, firstChildDoc, scoreMode);
+      return new BlockJoinScorer(this, childScorer, parents, scoreMode);
     }
 
     @Override
@@ -225,24 +225,158 @@ public class ToParentBlockJoinQuery extends Query {
   
   static class BlockJoinScorer extends ChildrenMatchesScorer{
     private final Scorer childScorer;
+    private final TwoPhaseIterator childTwoPhase;
+    private final DocIdSetIterator childApproximation;
     private final BitSet parentBits;
     private final ScoreMode scoreMode;
+    private final TwoPhaseIterator twoPhase;
     private int parentDoc = -1;
-    private int prevParentDoc;
     private float parentScore;
     private int parentFreq;
-    private int nextChildDoc;
     private int[] pendingChildDocs;
     private float[] pendingChildScores;
     private int childDocUpto;
 
-    public BlockJoinScorer(Weight weight, Scorer childScorer, BitSet parentBits, int firstChildDoc, ScoreMode scoreMode) {
+    public BlockJoinScorer(Weight weight, Scorer childScorer, BitSet parentBits, ScoreMode scoreMode) {
       super(weight);
-      //System.out.println("Q.init firstChildDoc=" + firstChildDoc);
       this.parentBits = parentBits;
       this.childScorer = childScorer;
       this.scoreMode = scoreMode;
-      nextChildDoc = firstChildDoc;
+      childTwoPhase = childScorer.twoPhaseIterator();
+      childApproximation = childTwoPhase == null ? childScorer.iterator() : childTwoPhase.approximation();
+
+      // Parents that have at least one candidate child; the children of the
+      // block are only visited (and scored) in matches():
+      final DocIdSetIterator parentApproximation = new DocIdSetIterator() {
+        @Override
+        public int docID() {
+          return parentDoc;
+        }
+
+        @Override
+        public int nextDoc() throws IOException {
+          return nextParent(parentDoc + 1);
+        }
+
+        @Override
+        public int advance(int parentTarget) throws IOException {
+          if (parentTarget == NO_MORE_DOCS) {
+            return parentDoc = NO_MORE_DOCS;
+          }
+          // Callers should only be passing in a docID from the parent space,
+          // so the candidate children of parentTarget start right after the
+          // previous parent:
+          final int childTarget = parentTarget == 0 ? 0 : parentBits.prevSetBit(parentTarget - 1) + 1;
+          assert childTarget > parentDoc;
+          return nextParent(childTarget);
+        }
+
+        @Override
+        public long cost() {
+          return childApproximation.cost();
+        }
+      };
+
+      twoPhase = new TwoPhaseIterator(parentApproximation) {
+        @Override
+        public boolean matches() throws IOException {
+          return collectChildren();
+        }
+
+        @Override
+        public float matchCost() {
+          return childTwoPhase == null ? 0 : childTwoPhase.matchCost();
+        }
+      };
+    }
+
+    /** Moves to the parent of the first candidate child on or after {@code childTarget}. */
+    private int nextParent(int childTarget) throws IOException {
+      int childDoc = childApproximation.docID();
+      if (childDoc < childTarget) {
+        childDoc = childApproximation.advance(childTarget);
+      }
+      if (childDoc == DocIdSetIterator.NO_MORE_DOCS) {
+        return parentDoc = DocIdSetIterator.NO_MORE_DOCS;
+      }
+      return parentDoc = parentBits.nextSetBit(childDoc);
+    }
+
+    /**
+     * Visits the matching children of the current parent block, which start
+     * at the current position of the child approximation, and computes the
+     * parent score. Returns false if none of the candidate children match.
+     */
+    private boolean collectChildren() throws IOException {
+      float totalScore = 0;
+      float maxScore = Float.NEGATIVE_INFINITY;
+      float minScore = Float.POSITIVE_INFINITY;
+
+      childDocUpto = 0;
+      parentFreq = 0;
+      for (int childDoc = childApproximation.docID(); childDoc < parentDoc; childDoc = childApproximation.nextDoc()) {
+        if (childTwoPhase != null && childTwoPhase.matches() == false) {
+          continue;
+        }
+        if (pendingChildDocs != null) {
+          if (pendingChildDocs.length == childDocUpto) {
+            pendingChildDocs = ArrayUtil.grow(pendingChildDocs);
+          }
+          pendingChildDocs[childDocUpto] = childDoc;
+        }
+        childDocUpto++;
+
+        if (scoreMode == ScoreMode.None) {
+          if (pendingChildDocs == null) {
+            // Neither scores nor child docs are needed: one matching child is
+            // enough, skip the rest of the block at once
+            childApproximation.advance(parentDoc);
+            break;
+          }
+        } else {
+          // TODO: specialize this into dedicated classes per-scoreMode
+          final float childScore = childScorer.score();
+          final int childFreq = childScorer.freq();
+          if (pendingChildScores != null) {
+            if (pendingChildScores.length < childDocUpto) {
+              pendingChildScores = ArrayUtil.grow(pendingChildScores);
+            }
+            pendingChildScores[childDocUpto - 1] = childScore;
+          }
+          maxScore = Math.max(childScore, maxScore);
+          minScore = Math.min(childScore, minScore);
+          totalScore += childScore;
+          parentFreq += childFreq;
+        }
+      }
+
+      // Parent & child docs are supposed to be
+      // orthogonal:
+      if (childApproximation.docID() == parentDoc && (childTwoPhase == null || childTwoPhase.matches())) {
+        throw new IllegalStateException("child query must only match non-parent docs, but parent docID=" + parentDoc + " matched childScorer=" + childScorer.getClass());
+      }
+
+      if (childDocUpto == 0) {
+        return false;
+      }
+
+      switch(scoreMode) {
+      case Avg:
+        parentScore = totalScore / childDocUpto;
+        break;
+      case Max:
+        parentScore = maxScore;
+        break;
+      case Min:
+        parentScore = minScore;
+        break;
+      case Total:
+        parentScore = totalScore;
+        break;
+      case None:
+        break;
+      }
+      return true;
     }
 
     @Override
@@ -285,141 +419,14 @@ public class ToParentBlockJoinQuery extends Query {
 
     @Override
     public DocIdSetIterator iterator() {
-      return new DocIdSetIterator() {
-        final DocIdSetIterator childIt = childScorer.iterator();
-
-        @Override
-        public int nextDoc() throws IOException {
-          //System.out.println("Q.nextDoc() nextChildDoc=" + nextChildDoc);
-          if (nextChildDoc == NO_MORE_DOCS) {
-            //System.out.println("  end");
-            return parentDoc = NO_MORE_DOCS;
-          }
-
-          // Gather all children sharing the same parent as
-          // nextChildDoc
-
-          parentDoc = parentBits.nextSetBit(nextChildDoc);
-
-          // Parent & child docs are supposed to be
-          // orthogonal:
-          if (nextChildDoc == parentDoc) {
-            throw new IllegalStateException("child query must only match non-parent docs, but parent docID=" + nextChildDoc + " matched childScorer=" + childScorer.getClass());
-          }
-
-          //System.out.println("  parentDoc=" + parentDoc);
-          assert parentDoc != DocIdSetIterator.NO_MORE_DOCS;
-
-          float totalScore = 0;
-          float maxScore = Float.NEGATIVE_INFINITY;
-          float minScore = Float.POSITIVE_INFINITY;
-
-          childDocUpto = 0;
-          parentFreq = 0;
-          do {
-
-            //System.out.println("  c=" + nextChildDoc);
-            if (pendingChildDocs != null && pendingChildDocs.length == childDocUpto) {
-              pendingChildDocs = ArrayUtil.grow(pendingChildDocs);
-            }
-            if (pendingChildScores != null && scoreMode != ScoreMode.None && pendingChildScores.length == childDocUpto) {
-              pendingChildScores = ArrayUtil.grow(pendingChildScores);
-            }
-            if (pendingChildDocs != null) {
-              pendingChildDocs[childDocUpto] = nextChildDoc;
-            }
-            if (scoreMode != ScoreMode.None) {
-              // TODO: specialize this into dedicated classes per-scoreMode
-              final float childScore = childScorer.score();
-              final int childFreq = childScorer.freq();
-              if (pendingChildScores != null) {
-                pendingChildScores[childDocUpto] = childScore;
-              }
-              maxScore = Math.max(childScore, maxScore);
-              minScore = Math.min(childScore, minScore);
-              totalScore += childScore;
-              parentFreq += childFreq;
-            }
-            childDocUpto++;
-            nextChildDoc = childIt.nextDoc();
-          } while (nextChildDoc < parentDoc);
-
-          // Parent & child docs are supposed to be
-          // orthogonal:
-          if (nextChildDoc == parentDoc) {
-            throw new IllegalStateException("child query must only match non-parent docs, but parent docID=" + nextChildDoc + " matched childScorer=" + childScorer.getClass());
-          }
-
-          switch(scoreMode) {
-          case Avg:
-            parentScore = totalScore / childDocUpto;
-            break;
-          case Max:
-            parentScore = maxScore;
-            break;
-          case Min:
-            parentScore = minScore;
-            break;
-          case Total:
-            parentScore = totalScore;
-            break;
-          case None:
-            break;
-          }
-
-          //System.out.println("  return parentDoc=" + parentDoc + " childDocUpto=" + childDocUpto);
-          return parentDoc;
-        }
-
-        @Override
-        public int advance(int parentTarget) throws IOException {
-
-          //System.out.println("Q.advance parentTarget=" + parentTarget);
-          if (parentTarget == NO_MORE_DOCS) {
-            return parentDoc = NO_MORE_DOCS;
-          }
-
-          if (parentTarget == 0) {
-            // Callers should only be passing in a docID from
-            // the parent space, so this means this parent
-            // has no children (it got docID 0), so it cannot
-            // possibly match.  We must handle this case
-            // separately otherwise we pass invalid -1 to
-            // prevSetBit below:
-            return nextDoc();
-          }
-
-          prevParentDoc = parentBits.prevSetBit(parentTarget-1);
-
-          //System.out.println("  rolled back to prevParentDoc=" + prevParentDoc + " vs parentDoc=" + parentDoc);
-          assert prevParentDoc >= parentDoc;
-          if (prevParentDoc > nextChildDoc) {
-            nextChildDoc = childIt.advance(prevParentDoc);
-            // System.out.println("  childScorer advanced to child docID=" + nextChildDoc);
-          //} else {
-            //System.out.println("  skip childScorer advance");
-          }
-
-          // Parent & child docs are supposed to be orthogonal:
-          if (nextChildDoc == prevParentDoc) {
-            throw new IllegalStateException("child query must only match non-parent docs, but parent docID=" + nextChildDoc + " matched childScorer=" + childScorer.getClass());
-          }
-
-          final int nd = nextDoc();
-          //System.out.println("  return nextParentDoc=" + nd);
-          return nd;
-        }
-
-        @Override
-        public int docID() {
-          return parentDoc;
-        }
+      return TwoPhaseIterator.asDocIdSetIterator(twoPhase);
+    }
 
-        @Override
-        public long cost() {
-          return childIt.cost();
-        }
-      };
+    @Override
+    public TwoPhaseIterator twoPhaseIterator() {
+      // Only worth exposing if the child query has an approximation, otherwise
+      // every candidate parent matches
+      return childTwoPhase == null ? null : twoPhase;
     }
 
     @Override
@@ -438,6 +445,7 @@ public class ToParentBlockJoinQuery extends Query {
     }
 
     public Explanation explain(int docBase) throws IOException {
+      final int prevParentDoc = parentDoc == 0 ? -1 : parentBits.prevSetBit(parentDoc - 1);
       int start = docBase + prevParentDoc + 1; // +1 b/c prevParentDoc is previous parent doc
       int end = docBase + parentDoc - 1; // -1 b/c parentDoc is parent doc
       return Explanation.match(score(), String.format(Locale.ROOT, "Score based on child doc range from %d to %d", start, end)
@@ -1559,6 +1559,54 @@ public class TestBlockJoin extends LuceneTestCase {
     dir.close();
   }
   
+  public void testToParentWithRandomApproximation() throws IOException {
+    final Directory dir = newDirectory();
+    final RandomIndexWriter w = new RandomIndexWriter(random(), dir);
+
+    final int numBlocks = atLeast(50);
+    for (int i = 0; i < numBlocks; ++i) {
+      List<Document> docs = new ArrayList<>();
+      final int numChildren = random().nextInt(random().nextBoolean() ? 5 : 100);
+      for (int j = 0; j < numChildren; ++j) {
+        Document child = new Document();
+        child.add(new StringField("foo_child", random().nextInt(4) == 0 ? "bar" : "baz", Store.NO));
+        docs.add(child);
+      }
+      Document parent = new Document();
+      parent.add(new StringField("parent", "true", Store.NO));
+      parent.add(new StringField("foo_parent", random().nextBoolean() ? "bar" : "baz", Store.NO));
+      docs.add(parent);
+      w.addDocuments(docs);
+    }
+    final IndexReader reader = w.getReader();
+    final IndexSearcher searcher = newSearcher(reader);
+    searcher.setQueryCache(null); // to have real advance() calls
+
+    final BitSetProducer parentsFilter = new QueryBitSetProducer(new TermQuery(new Term("parent", "true")));
+    final Query childQuery = new TermQuery(new Term("foo_child", "bar"));
+    final Query parentQuery = new TermQuery(new Term("foo_parent", "bar"));
+
+    for (ScoreMode scoreMode : ScoreMode.values()) {
+      Query q1 = new ToParentBlockJoinQuery(childQuery, parentsFilter, scoreMode);
+      Query q2 = new ToParentBlockJoinQuery(new RandomApproximationQuery(childQuery, random()), parentsFilter, scoreMode);
+      if (random().nextBoolean()) {
+        q1 = new BooleanQuery.Builder().add(q1, Occur.MUST).add(parentQuery, Occur.FILTER).build();
+        q2 = new BooleanQuery.Builder().add(q2, Occur.MUST).add(parentQuery, Occur.FILTER).build();
+      }
+      final TopDocs expected = searcher.search(q1, reader.maxDoc());
+      final TopDocs actual = searcher.search(q2, reader.maxDoc());
+      assertEquals(expected.totalHits, actual.totalHits);
+      for (int i = 0; i < expected.scoreDocs.length; i++) {
+        assertEquals(expected.scoreDocs[i].doc, actual.scoreDocs[i].doc);
+        assertEquals(expected.scoreDocs[i].score, actual.scoreDocs[i].score, 0f);
+      }
+    }
+
+    searcher.getIndexReader().close();
+    w.close();
+    dir.close();
+  }
+  
   //LUCENE-6588
   // delete documents to simulate FilteredQuery applying a filter as acceptDocs
   public void testParentScoringBug() throws Exception {
@@ -32,6 +32,7 @@ import org.apache.lucene.index.BinaryDocValues;
 import org.apache.lucene.index.DirectoryReader;
 import org.apache.lucene.index.DocValues;
 import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.LeafReader;
 import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.index.MultiDocValues;
@@ -349,6 +350,202 @@ public class TestJoinUtil extends LuceneTestCase {
     context.close();
   }
 
+  public void testRandomMultiValuedOrdinalsJoin() throws Exception {
+    Directory dir = newDirectory();
+    RandomIndexWriter w = new RandomIndexWriter(random(), dir,
+        newIndexWriterConfig(new MockAnalyzer(random())).setMergePolicy(NoMergePolicy.INSTANCE));
+    int numValues = TestUtil.nextInt(random(), 1, 50);
+    int numDocs = atLeast(200);
+    int[][] docValues = new int[numDocs][];
+    boolean[] isFrom = new boolean[numDocs];
+    for (int i = 0; i < numDocs; i++) {
+      Document doc = new Document();
+      isFrom[i] = random().nextBoolean();
+      doc.add(new StringField("id", Integer.toString(i), Field.Store.YES));
+      doc.add(new StringField("type", isFrom[i] ? "from" : "to", Field.Store.NO));
+      StringBuilder text = new StringBuilder();
+      int numTokens = TestUtil.nextInt(random(), 1, 10);
+      for (int j = 0; j < numTokens; j++) {
+        text.append(random().nextInt(3) == 0 ? "a " : "b ");
+      }
+      doc.add(new TextField("text", text.toString(), Field.Store.NO));
+      Set<Integer> values = new HashSet<>();
+      int numDocValues = random().nextInt(4);
+      for (int j = 0; j < numDocValues; j++) {
+        values.add(random().nextInt(numValues));
+      }
+      docValues[i] = new int[values.size()];
+      int upto = 0;
+      for (int value : values) {
+        docValues[i][upto++] = value;
+        doc.add(new SortedSetDocValuesField("join_field", new BytesRef(Integer.toString(value))));
+      }
+      w.addDocument(doc);
+      if (random().nextInt(50) == 0) {
+        w.commit();
+      }
+    }
+    IndexReader reader = w.getReader();
+    w.close();
+    IndexSearcher searcher = newSearcher(reader, false);
+    OrdinalMapCache cache = new OrdinalMapCache();
+    MultiDocValues.OrdinalMap ordinalMap = cache.getOrdinalMap(reader, "join_field");
+
+    int[] idToDocID = new int[numDocs];
+    for (int docID = 0; docID < reader.maxDoc(); docID++) {
+      idToDocID[Integer.parseInt(reader.document(docID).get("id"))] = docID;
+    }
+
+    BooleanQuery.Builder fromQueryBuilder = new BooleanQuery.Builder();
+    fromQueryBuilder.add(new TermQuery(new Term("type", "from")), BooleanClause.Occur.FILTER);
+    fromQueryBuilder.add(new TermQuery(new Term("text", "a")), BooleanClause.Occur.MUST);
+    Query fromQuery = fromQueryBuilder.build();
+    Query toQuery = new TermQuery(new Term("type", "to"));
+
+    // the scores of the "from" documents, in doc id order:
+    float[] fromScores = new float[reader.maxDoc()];
+    Arrays.fill(fromScores, Float.NaN);
+    for (ScoreDoc scoreDoc : searcher.search(fromQuery, reader.maxDoc()).scoreDocs) {
+      fromScores[scoreDoc.doc] = scoreDoc.score;
+    }
+
+    for (ScoreMode scoreMode : ScoreMode.values()) {
+      // the score of each join value over the "from" side:
+      float[] valueScores = new float[numValues];
+      int[] valueCounts = new int[numValues];
+      for (int docID = 0; docID < reader.maxDoc(); docID++) {
+        if (Float.isNaN(fromScores[docID])) {
+          continue;
+        }
+        for (int value : docValues[Integer.parseInt(reader.document(docID).get("id"))]) {
+          float score = fromScores[docID];
+          if (valueCounts[value] == 0) {
+            valueScores[value] = score;
+          } else if (scoreMode == ScoreMode.Min) {
+            valueScores[value] = Math.min(valueScores[value], score);
+          } else if (scoreMode == ScoreMode.Max) {
+            valueScores[value] = Math.max(valueScores[value], score);
+          } else {
+            valueScores[value] += score;
+          }
+          valueCounts[value]++;
+        }
+      }
+
+      Query joinQuery = JoinUtil.createJoinQuery("join_field", fromQuery, toQuery, searcher, scoreMode, ordinalMap);
+      TopDocs actual = searcher.search(joinQuery, reader.maxDoc());
+      Map<Integer,Float> actualScores = new HashMap<>();
+      for (ScoreDoc scoreDoc : actual.scoreDocs) {
+        actualScores.put(scoreDoc.doc, scoreDoc.score);
+      }
+
+      int expectedTotalHits = 0;
+      for (int id = 0; id < numDocs; id++) {
+        if (isFrom[id]) {
+          continue;
+        }
+        int numMatches = 0;
+        float expectedScore = 0;
+        for (int value : docValues[id]) {
+          if (valueCounts[value] == 0) {
+            continue;
+          }
+          float valueScore = scoreMode == ScoreMode.Avg ? valueScores[value] / valueCounts[value] : valueScores[value];
+          if (numMatches == 0) {
+            expectedScore = valueScore;
+          } else if (scoreMode == ScoreMode.Min) {
+            expectedScore = Math.min(expectedScore, valueScore);
+          } else if (scoreMode == ScoreMode.Max) {
+            expectedScore = Math.max(expectedScore, valueScore);
+          } else {
+            expectedScore += valueScore;
+          }
+          numMatches++;
+        }
+        Float actualScore = actualScores.get(idToDocID[id]);
+        if (numMatches == 0) {
+          assertNull("id=" + id + " scoreMode=" + scoreMode, actualScore);
+          continue;
+        }
+        expectedTotalHits++;
+        assertNotNull("id=" + id + " scoreMode=" + scoreMode, actualScore);
+        if (scoreMode == ScoreMode.Avg) {
+          expectedScore /= numMatches;
+        }
+        if (scoreMode != ScoreMode.None) {
+          assertEquals("id=" + id + " scoreMode=" + scoreMode, expectedScore, actualScore, 0.001f * expectedScore);
+          Explanation explanation = searcher.explain(joinQuery, idToDocID[id]);
+          assertTrue(explanation.isMatch());
+          assertEquals(actualScore, explanation.getValue(), 0.001f * expectedScore);
+        }
+      }
+      assertEquals(expectedTotalHits, actual.totalHits);
+    }
+
+    reader.close();
+    dir.close();
+  }
+
+  public void testOrdinalMapCache() throws Exception {
+    Directory dir = newDirectory();
+    IndexWriter w = new IndexWriter(dir, newIndexWriterConfig(new MockAnalyzer(random())).setMergePolicy(NoMergePolicy.INSTANCE));
+    OrdinalMapCache cache = new OrdinalMapCache();
+    DirectoryReader reader = null;
+    int numIters = atLeast(5);
+    for (int iter = 0; iter < numIters; iter++) {
+      int numDocs = TestUtil.nextInt(random(), 1, 50);
+      for (int i = 0; i < numDocs; i++) {
+        Document doc = new Document();
+        doc.add(new StringField("id", Integer.toString(random().nextInt(100)), Field.Store.NO));
+        int numDocValues = random().nextInt(3);
+        for (int j = 0; j < numDocValues; j++) {
+          doc.add(new SortedSetDocValuesField("join_field", new BytesRef(TestUtil.randomSimpleString(random(), 3))));
+        }
+        w.addDocument(doc);
+      }
+      if (random().nextBoolean()) {
+        w.deleteDocuments(new Term("id", Integer.toString(random().nextInt(100))));
+      }
+      if (random().nextInt(4) == 0) {
+        w.forceMerge(TestUtil.nextInt(random(), 1, 3));
+      }
+      if (reader == null) {
+        reader = DirectoryReader.open(w, true);
+      } else {
+        DirectoryReader newReader = DirectoryReader.openIfChanged(reader, w, true);
+        if (newReader != null) {
+          reader.close();
+          reader = newReader;
+        }
+      }
+
+      MultiDocValues.OrdinalMap ordinalMap = cache.getOrdinalMap(reader, "join_field");
+      if (reader.leaves().size() <= 1) {
+        assertNull(ordinalMap);
+        continue;
+      }
+      assertSame(ordinalMap, cache.getOrdinalMap(reader, "join_field"));
+
+      // must be the same as a map that is built from scratch:
+      SortedSetDocValues[] values = new SortedSetDocValues[reader.leaves().size()];
+      for (LeafReaderContext context : reader.leaves()) {
+        values[context.ord] = DocValues.getSortedSet(context.reader(), "join_field");
+      }
+      MultiDocValues.OrdinalMap expected = MultiDocValues.OrdinalMap.build(reader.getCoreCacheKey(), values, PackedInts.DEFAULT);
+      assertEquals(expected.getValueCount(), ordinalMap.getValueCount());
+      for (int i = 0; i < values.length; i++) {
+        for (long ord = 0; ord < values[i].getValueCount(); ord++) {
+          assertEquals(expected.getGlobalOrds(i).get(ord), ordinalMap.getGlobalOrds(i).get(ord));
+        }
+      }
+    }
+
+    cache.clear();
+    reader.close();
+    w.close();
+    dir.close();
+  }
+
   public void testMinMaxScore() throws Exception {
     String priceField = "price";
     // FunctionQuery would be helpful, but join module doesn't depend on queries module.
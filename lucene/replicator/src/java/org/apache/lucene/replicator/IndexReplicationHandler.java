@@ -18,6 +18,7 @@ package org.apache.lucene.replicator;
  */
 
 import java.io.IOException;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
@@ -56,7 +57,7 @@ import org.apache.lucene.util.InfoStream;
  * 
  * @lucene.experimental
  */
-public class IndexReplicationHandler implements ReplicationHandler {
+public class IndexReplicationHandler implements ReplicationHandler, PreCopyMergedSegmentWarmer.Replica {
   
   /**
    * The component used to log messages to the {@link InfoStream#getDefault()
@@ -71,6 +72,9 @@ public class IndexReplicationHandler implements ReplicationHandler {
   private volatile String currentVersion;
   private volatile InfoStream infoStream = InfoStream.getDefault();
   
+  // files pre-copied by PreCopyMergedSegmentWarmer, not yet referenced by a revision
+  private final PreCopiedFiles preCopiedFiles = new PreCopiedFiles();
+  
   /**
    * Returns the last {@link IndexCommit} found in the {@link Directory}, or
    * {@code null} if there are no commits.
@@ -139,6 +143,14 @@ public class IndexReplicationHandler implements ReplicationHandler {
    * the next time.
    */
   public static void cleanupOldIndexFiles(Directory dir, String segmentsFile, InfoStream infoStream) {
+    cleanupOldIndexFiles(dir, segmentsFile, Collections.<String>emptySet(), infoStream);
+  }
+  
+  /**
+   * Like {@link #cleanupOldIndexFiles(Directory, String, InfoStream)}, but
+   * never deletes the given files, even if the commit does not reference them.
+   */
+  public static void cleanupOldIndexFiles(Directory dir, String segmentsFile, Collection<String> keepFiles, InfoStream infoStream) {
     try {
       IndexCommit commit = getLastCommit(dir);
       // commit == null means weird IO errors occurred, ignore them
@@ -149,7 +161,7 @@ public class IndexReplicationHandler implements ReplicationHandler {
         commitFiles.addAll(commit.getFileNames());
         Matcher matcher = IndexFileNames.CODEC_FILE_PATTERN.matcher("");
         for (String file : dir.listAll()) {
-          if (!commitFiles.contains(file)
+          if (!commitFiles.contains(file) && !keepFiles.contains(file)
               && (matcher.reset(file).matches() || file.startsWith(IndexFileNames.SEGMENTS))) {
             // suppress exceptions, it's just a best effort
             IOUtils.deleteFilesIgnoringExceptions(dir, file);
@@ -248,6 +260,9 @@ public class IndexReplicationHandler implements ReplicationHandler {
     // all files have been successfully copied + sync'd. update the handler's state
     currentRevisionFiles = revisionFiles;
     currentVersion = version;
+    // pre-copied files of merges that were never published are deleted:
+    List<String> expiredFiles = preCopiedFiles.revisionPublished(revisionFiles.values());
+    IOUtils.deleteFilesIgnoringExceptions(indexDir, expiredFiles);
     
     if (infoStream.isEnabled(INFO_STREAM_COMPONENT)) {
       infoStream.message(INFO_STREAM_COMPONENT, "revisionReady(): currentVersion=" + currentVersion
@@ -259,7 +274,7 @@ public class IndexReplicationHandler implements ReplicationHandler {
     // side-effects, e.g. if it hits sudden IO errors while opening the index
     // (and can end up deleting the entire index). It is not our job to protect
     // against those errors, app will probably hit them elsewhere.
-    cleanupOldIndexFiles(indexDir, segmentsFile, infoStream);
+    cleanupOldIndexFiles(indexDir, segmentsFile, preCopiedFiles.names(), infoStream);
 
     // successfully updated the index, notify the callback that the index is
     // ready.
@@ -272,6 +287,20 @@ public class IndexReplicationHandler implements ReplicationHandler {
     }
   }
 
+  @Override
+  public boolean hasFile(String source, RevisionFile file) {
+    return preCopiedFiles.contains(file);
+  }
+  
+  /**
+   * Copies and fsyncs the files of a merged segment to the index directory,
+   * ahead of the revision that references them.
+   */
+  @Override
+  public void preCopy(Directory source, List<RevisionFile> files) throws IOException {
+    preCopiedFiles.copy(source, indexDir, files, true);
+  }
+  
   /** Sets the {@link InfoStream} to use for logging messages. */
   public void setInfoStream(InfoStream infoStream) {
     if (infoStream == null) {
@@ -0,0 +1,246 @@
+package org.apache.lucene.replicator;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.regex.Matcher;
+
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexFileNames;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.SegmentInfos;
+import org.apache.lucene.index.StandardDirectoryReader;
+import org.apache.lucene.replicator.ReplicationClient.ReplicationHandler;
+import org.apache.lucene.store.ChecksumIndexInput;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.util.IOUtils;
+import org.apache.lucene.util.InfoStream;
+
+/**
+ * A {@link ReplicationHandler} for near real-time replication of an index
+ * published with {@link NRTRevision}. Implements {@link #revisionReady} by
+ * copying the new segment files to the index {@link Directory}, and then
+ * opening a new {@link DirectoryReader} directly from the replicated
+ * {@link SegmentInfos}, sharing the segment readers that did not change with
+ * the previous reader.
+ * <p>
+ * Nothing is ever committed to the index directory, so a replica always
+ * starts from scratch: readers are only available via {@link #acquire()} once
+ * the first revision was replicated. Acquired readers must be given back with
+ * {@link #release(DirectoryReader)}.
+ * <p>
+ * <b>NOTE:</b> like {@link IndexReplicationHandler}, this handler assumes that
+ * no {@link IndexWriter} is open on the index directory.
+ * <p>
+ * This handler notifies the application via a provided {@link Callable} when a
+ * new reader was made available for it.
+ * 
+ * @lucene.experimental
+ */
+public class NRTReplicationHandler implements ReplicationHandler, PreCopyMergedSegmentWarmer.Replica {
+  
+  /**
+   * The component used to log messages to the {@link InfoStream#getDefault()
+   * default} {@link InfoStream}.
+   */
+  public static final String INFO_STREAM_COMPONENT = "NRTReplicationHandler";
+  
+  private final Directory indexDir;
+  private final Callable<Boolean> callback;
+  
+  private volatile Map<String,List<RevisionFile>> currentRevisionFiles;
+  private volatile String currentVersion;
+  private volatile InfoStream infoStream = InfoStream.getDefault();
+  
+  // files pre-copied by PreCopyMergedSegmentWarmer, not yet referenced by a revision
+  private final PreCopiedFiles preCopiedFiles = new PreCopiedFiles();
+  
+  // guarded by this
+  private DirectoryReader currentReader;
+  
+  /**
+   * Constructor with the given index directory and callback to notify when a
+   * new reader is available.
+   */
+  public NRTReplicationHandler(Directory indexDir, Callable<Boolean> callback) {
+    this.indexDir = indexDir;
+    this.callback = callback;
+  }
+  
+  @Override
+  public String currentVersion() {
+    return currentVersion;
+  }
+  
+  @Override
+  public Map<String,List<RevisionFile>> currentRevisionFiles() {
+    return currentRevisionFiles;
+  }
+  
+  /**
+   * Returns the current reader, with its reference count incremented, or
+   * {@code null} if no revision was replicated yet. You must call
+   * {@link #release(DirectoryReader)} when you are done with it.
+   */
+  public synchronized DirectoryReader acquire() {
+    if (currentReader != null) {
+      currentReader.incRef();
+    }
+    return currentReader;
+  }
+  
+  /** Releases a reader obtained from {@link #acquire()}. */
+  public void release(DirectoryReader reader) throws IOException {
+    reader.decRef();
+  }
+  
+  @Override
+  public void revisionReady(String version, Map<String,List<RevisionFile>> revisionFiles,
+      Map<String,List<String>> copiedFiles, Map<String,Directory> sourceDirectory) throws IOException {
+    if (revisionFiles.size() > 1) {
+      throw new IllegalArgumentException("this handler handles only a single source; got " + revisionFiles.keySet());
+    }
+    
+    Directory clientDir = sourceDirectory.values().iterator().next();
+    List<String> files = copiedFiles.values().iterator().next();
+    if (files.isEmpty()) {
+      throw new IllegalStateException("empty list of files not allowed");
+    }
+    String segmentsFile = files.remove(files.size() - 1);
+    if (!segmentsFile.startsWith(NRTRevision.SEGMENTS_FILE_PREFIX)) {
+      throw new IllegalStateException("last file to copy must be " + NRTRevision.SEGMENTS_FILE_PREFIX
+          + "* but got " + segmentsFile + "; check your Revision implementation!");
+    }
+    
+    SegmentInfos infos;
+    boolean success = false;
+    try {
+      // copy the segment files from the client to index directory; no need
+      // to fsync them since nothing is ever committed
+      IndexReplicationHandler.copyFiles(clientDir, indexDir, files);
+      
+      try (ChecksumIndexInput input = clientDir.openChecksumInput(segmentsFile, IOContext.READONCE)) {
+        infos = SegmentInfos.readCommit(indexDir, input, NRTRevision.generationFromSegmentsFileName(segmentsFile));
+      }
+      success = true;
+    } finally {
+      if (!success) {
+        IndexReplicationHandler.cleanupFilesOnFailure(indexDir, files);
+      }
+    }
+    
+    DirectoryReader oldReader;
+    synchronized (this) {
+      oldReader = currentReader;
+      List<LeafReader> oldLeaves = null;
+      if (oldReader != null) {
+        oldLeaves = new ArrayList<>();
+        for (LeafReaderContext ctx : oldReader.leaves()) {
+          oldLeaves.add(ctx.reader());
+        }
+      }
+      currentReader = StandardDirectoryReader.open(indexDir, infos, oldLeaves);
+      currentRevisionFiles = revisionFiles;
+      currentVersion = version;
+    }
+    // pre-copied files of merges that were never published are deleted:
+    List<String> expiredFiles = preCopiedFiles.revisionPublished(revisionFiles.values());
+    IOUtils.deleteFilesIgnoringExceptions(indexDir, expiredFiles);
+    if (oldReader != null) {
+      oldReader.decRef();
+    }
+    
+    if (infoStream.isEnabled(INFO_STREAM_COMPONENT)) {
+      infoStream.message(INFO_STREAM_COMPONENT, "revisionReady(): currentVersion=" + currentVersion
+          + " currentRevisionFiles=" + currentRevisionFiles);
+    }
+    
+    cleanupOldIndexFiles(infos);
+    
+    // successfully opened the new reader, notify the callback
+    if (callback != null) {
+      try {
+        callback.call();
+      } catch (Exception e) {
+        throw new IOException(e);
+      }
+    }
+  }
+  
+  /**
+   * Deletes all index files not referenced by the given {@link SegmentInfos}.
+   * Files that are still held open by readers which were not released yet may
+   * fail to be deleted, in which case they are retried with the next revision.
+   */
+  private void cleanupOldIndexFiles(SegmentInfos infos) {
+    try {
+      Set<String> liveFiles = new HashSet<>(infos.files(false));
+      Matcher matcher = IndexFileNames.CODEC_FILE_PATTERN.matcher("");
+      for (String file : indexDir.listAll()) {
+        if (!liveFiles.contains(file) && !preCopiedFiles.names().contains(file) && matcher.reset(file).matches()) {
+          // suppress exceptions, it's just a best effort
+          IOUtils.deleteFilesIgnoringExceptions(indexDir, file);
+        }
+      }
+    } catch (Throwable t) {
+      if (infoStream.isEnabled(INFO_STREAM_COMPONENT)) {
+        infoStream.message(INFO_STREAM_COMPONENT, "cleanupOldIndexFiles(): failed on error " + t.getMessage());
+      }
+    }
+  }
+  
+  @Override
+  public boolean hasFile(String source, RevisionFile file) {
+    return preCopiedFiles.contains(file);
+  }
+  
+  /**
+   * Copies the files of a merged segment to the index directory, ahead of the
+   * revision that references them.
+   */
+  @Override
+  public void preCopy(Directory source, List<RevisionFile> files) throws IOException {
+    preCopiedFiles.copy(source, indexDir, files, false);
+  }
+  
+  /** Closes the current reader; acquired readers stay open until released. */
+  public synchronized void close() throws IOException {
+    if (currentReader != null) {
+      currentReader.decRef();
+      currentReader = null;
+    }
+  }
+  
+  /** Sets the {@link InfoStream} to use for logging messages. */
+  public void setInfoStream(InfoStream infoStream) {
+    if (infoStream == null) {
+      infoStream = InfoStream.NO_OUTPUT;
+    }
+    this.infoStream = infoStream;
+  }
+  
+}
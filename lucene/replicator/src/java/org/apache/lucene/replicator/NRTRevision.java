@@ -0,0 +1,174 @@
+package org.apache.lucene.replicator;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.SegmentInfos;
+import org.apache.lucene.index.StandardDirectoryReader;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexOutput;
+import org.apache.lucene.store.OutputStreamIndexOutput;
+
+/**
+ * A {@link Revision} of a single index which comprises the files of a near
+ * real-time (NRT) point in time of an {@link IndexWriter}, i.e. no commit is
+ * needed to replicate it. The revision holds an NRT reader, opened with
+ * {@link DirectoryReader#open(IndexWriter, boolean, boolean)} so that all
+ * deletes are written to the index files, for as long as it stays alive (i.e.
+ * until {@link #release()}), which prevents the writer from deleting its
+ * files.
+ * <p>
+ * Since an NRT point has no segments_N file, the in-memory
+ * {@link SegmentInfos} are serialized into an additional file, which is
+ * always listed last and is named after the revision's version. Use
+ * {@link NRTReplicationHandler} on the replicas to open NRT readers from the
+ * replicated files.
+ * 
+ * @lucene.experimental
+ */
+public class NRTRevision implements Revision {
+  
+  /** Prefix of the file holding the serialized {@link SegmentInfos}. */
+  public static final String SEGMENTS_FILE_PREFIX = "nrt_segments_";
+  
+  private static final int RADIX = 16;
+  private static final String SOURCE = "index";
+  
+  private final DirectoryReader reader;
+  private final Directory dir;
+  private final long infosVersion;
+  private final String version;
+  private final String segmentsFile;
+  private final byte[] segmentsBytes;
+  private final Map<String,List<RevisionFile>> sourceFiles;
+  
+  /** Returns the name of the file holding the serialized {@link SegmentInfos}. */
+  public static String segmentsFileName(SegmentInfos infos) {
+    return SEGMENTS_FILE_PREFIX + Long.toString(infos.getVersion(), RADIX)
+        + "_" + Long.toString(infos.getGeneration(), Character.MAX_RADIX);
+  }
+  
+  /** Returns the generation encoded in the given segments file name. */
+  public static long generationFromSegmentsFileName(String fileName) {
+    if (!fileName.startsWith(SEGMENTS_FILE_PREFIX)) {
+      throw new IllegalArgumentException("fileName \"" + fileName + "\" is not an NRT segments file");
+    }
+    return Long.parseLong(fileName.substring(fileName.lastIndexOf('_') + 1), Character.MAX_RADIX);
+  }
+  
+  /**
+   * Returns a String representation of a revision's version from the given
+   * {@link SegmentInfos}.
+   */
+  public static String revisionVersion(SegmentInfos infos) {
+    return Long.toString(infos.getVersion(), RADIX);
+  }
+  
+  /**
+   * Constructor over the given {@link IndexWriter}. Opens an NRT reader
+   * applying and writing all deletes, and replicates its segments.
+   */
+  public NRTRevision(IndexWriter writer) throws IOException {
+    this.reader = DirectoryReader.open(writer, true, true);
+    boolean success = false;
+    try {
+      SegmentInfos infos = ((StandardDirectoryReader) reader).getSegmentInfos();
+      this.dir = writer.getDirectory();
+      this.infosVersion = infos.getVersion();
+      this.version = revisionVersion(infos);
+      this.segmentsFile = segmentsFileName(infos);
+      
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      try (IndexOutput out = new OutputStreamIndexOutput(segmentsFile, segmentsFile, bytes, 1024)) {
+        infos.write(dir, out);
+      }
+      this.segmentsBytes = bytes.toByteArray();
+      
+      Collection<String> files = infos.files(false);
+      List<RevisionFile> revisionFiles = new ArrayList<>(files.size() + 1);
+      for (String file : files) {
+        RevisionFile revFile = new RevisionFile(file);
+        revFile.size = dir.fileLength(file);
+        revisionFiles.add(revFile);
+      }
+      RevisionFile revFile = new RevisionFile(segmentsFile);
+      revFile.size = segmentsBytes.length;
+      revisionFiles.add(revFile); // segments must be last
+      this.sourceFiles = Collections.singletonMap(SOURCE, revisionFiles);
+      success = true;
+    } finally {
+      if (!success) {
+        reader.close();
+      }
+    }
+  }
+  
+  @Override
+  public int compareTo(String version) {
+    long other = Long.parseLong(version, RADIX);
+    return infosVersion < other ? -1 : (infosVersion > other ? 1 : 0);
+  }
+  
+  @Override
+  public int compareTo(Revision o) {
+    NRTRevision other = (NRTRevision) o;
+    return Long.compare(infosVersion, other.infosVersion);
+  }
+  
+  @Override
+  public String getVersion() {
+    return version;
+  }
+  
+  @Override
+  public Map<String,List<RevisionFile>> getSourceFiles() {
+    return sourceFiles;
+  }
+  
+  @Override
+  public InputStream open(String source, String fileName) throws IOException {
+    assert source.equals(SOURCE) : "invalid source; expected=" + SOURCE + " got=" + source;
+    if (fileName.equals(segmentsFile)) {
+      return new ByteArrayInputStream(segmentsBytes);
+    }
+    return new IndexInputInputStream(dir.openInput(fileName, IOContext.READONCE));
+  }
+  
+  @Override
+  public void release() throws IOException {
+    reader.close();
+  }
+  
+  @Override
+  public String toString() {
+    return "NRTRevision version=" + version + " files=" + sourceFiles;
+  }
+  
+}
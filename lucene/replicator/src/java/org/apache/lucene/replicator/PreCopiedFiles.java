@@ -0,0 +1,134 @@
+package org.apache.lucene.replicator;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.IOContext;
+
+/**
+ * Tracks the files that {@link PreCopyMergedSegmentWarmer} copied to a replica
+ * ahead of the revision that references them, for {@link IndexReplicationHandler}
+ * and {@link NRTReplicationHandler}.
+ * <p>
+ * A merged segment is normally referenced by the next revision, but the merge
+ * may be aborted, or the segment merged away again before it is ever published.
+ * Pre-copied files that two revisions in a row did not reference are therefore
+ * expired: the handler deletes them along with the other unused index files.
+ * The grace of one extra revision covers revisions that were already being
+ * published while the merge finished.
+ */
+final class PreCopiedFiles {
+
+  // marks files that are still being copied
+  private static final long COPYING = -1;
+
+  private static final class PreCopiedFile {
+    final long size;
+    final long revision; // number of revisions published when the copy completed
+
+    PreCopiedFile(long size, long revision) {
+      this.size = size;
+      this.revision = revision;
+    }
+  }
+
+  private static final PreCopiedFile IN_PROGRESS = new PreCopiedFile(COPYING, COPYING);
+
+  private final Map<String,PreCopiedFile> files = new ConcurrentHashMap<>();
+  // guarded by this
+  private long revisions;
+
+  /**
+   * Copies the given files from the source directory to the target one, unless
+   * they were already pre-copied, and records them. Files are recorded before
+   * they are copied, so that a concurrent cleanup does not delete them half-way,
+   * but only with their size once copied.
+   */
+  void copy(Directory source, Directory target, List<RevisionFile> revisionFiles, boolean sync) throws IOException {
+    List<String> copied = new ArrayList<>();
+    boolean success = false;
+    try {
+      for (RevisionFile file : revisionFiles) {
+        if (files.putIfAbsent(file.fileName, IN_PROGRESS) == null) {
+          copied.add(file.fileName);
+          target.copyFrom(source, file.fileName, file.fileName, IOContext.READONCE);
+        }
+      }
+      if (sync) {
+        target.sync(copied);
+      }
+      synchronized (this) {
+        for (RevisionFile file : revisionFiles) {
+          if (copied.contains(file.fileName)) {
+            files.put(file.fileName, new PreCopiedFile(file.size, revisions));
+          }
+        }
+      }
+      success = true;
+    } finally {
+      if (!success) {
+        IndexReplicationHandler.cleanupFilesOnFailure(target, copied);
+        for (String file : copied) {
+          files.remove(file);
+        }
+      }
+    }
+  }
+
+  /** Returns true if the given file was pre-copied with the same size. */
+  boolean contains(RevisionFile file) {
+    PreCopiedFile preCopied = files.get(file.fileName);
+    return preCopied != null && preCopied.size == file.size;
+  }
+
+  /** Returns the names of the pre-copied files, which must not be deleted. */
+  Set<String> names() {
+    return files.keySet();
+  }
+
+  /**
+   * Records that a revision was published: the given files are no longer
+   * tracked since the revision references them, and files that the previous
+   * revision did not reference either are expired. Returns the expired files,
+   * which the caller should delete.
+   */
+  synchronized List<String> revisionPublished(Collection<List<RevisionFile>> revisionFiles) {
+    for (List<RevisionFile> sourceFiles : revisionFiles) {
+      for (RevisionFile file : sourceFiles) {
+        files.remove(file.fileName);
+      }
+    }
+    final long revision = ++revisions;
+    final List<String> expired = new ArrayList<>();
+    for (Map.Entry<String,PreCopiedFile> entry : files.entrySet()) {
+      final PreCopiedFile file = entry.getValue();
+      if (file != IN_PROGRESS && file.revision < revision - 1 && files.remove(entry.getKey(), file)) {
+        expired.add(entry.getKey());
+      }
+    }
+    return expired;
+  }
+}
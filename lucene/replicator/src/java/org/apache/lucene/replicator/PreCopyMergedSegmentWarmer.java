@@ -0,0 +1,141 @@
+package org.apache.lucene.replicator;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.apache.lucene.index.IndexWriter.IndexReaderWarmer;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.SegmentReader;
+import org.apache.lucene.replicator.ReplicationClient.ReplicationHandler;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.InfoStream;
+
+/**
+ * A merged segment warmer which copies the files of each newly merged segment
+ * to a set of {@link Replica replicas}, before {@link
+ * org.apache.lucene.index.IndexWriter} commits the merge. When the replicas
+ * later pull a revision which references the merged segment, its files are
+ * already present and need not be copied, so that the time it takes a replica
+ * to catch up does not depend on the size of the merge.
+ * <p>
+ * Merged segment warmers are only invoked when the writer pools readers, i.e.
+ * if {@link IndexWriterConfig#setReaderPooling(boolean)} is set or once a
+ * near-real-time reader was opened (e.g. by {@link NRTRevision}).
+ * <p>
+ * Failing to pre-copy to a replica never fails the merge: the replica will
+ * simply copy the files when it pulls the next revision.
+ * 
+ * @lucene.experimental
+ */
+public class PreCopyMergedSegmentWarmer extends IndexReaderWarmer {
+  
+  /**
+   * The component used to log messages to the {@link InfoStream#getDefault()
+   * default} {@link InfoStream}.
+   */
+  public static final String INFO_STREAM_COMPONENT = "PreCopyMergedSegmentWarmer";
+  
+  /**
+   * A replica which can receive the files of a merged segment ahead of the
+   * revision that references them. Implementations are expected to report
+   * these files from {@link ReplicationHandler#hasFile(String, RevisionFile)},
+   * and to not delete them before they are referenced by a revision.
+   */
+  public static interface Replica {
+    
+    /** Copies the given files from the source {@link Directory}. */
+    public void preCopy(Directory source, List<RevisionFile> files) throws IOException;
+  }
+  
+  private final Directory dir;
+  private final IndexReaderWarmer delegate;
+  private final List<Replica> replicas = new CopyOnWriteArrayList<>();
+  private volatile InfoStream infoStream = InfoStream.getDefault();
+  
+  /**
+   * Creates a new warmer which pre-copies files from the given
+   * {@link Directory}, which must be the writer's directory. If not null, the
+   * given warmer is invoked first.
+   */
+  public PreCopyMergedSegmentWarmer(Directory dir, IndexReaderWarmer delegate) {
+    this.dir = dir;
+    this.delegate = delegate;
+  }
+  
+  /** Registers a replica to which merged segments are pre-copied. */
+  public void addReplica(Replica replica) {
+    replicas.add(replica);
+  }
+  
+  /** Unregisters a replica. */
+  public void removeReplica(Replica replica) {
+    replicas.remove(replica);
+  }
+  
+  @Override
+  public void warm(LeafReader reader) throws IOException {
+    if (delegate != null) {
+      delegate.warm(reader);
+    }
+    if (replicas.isEmpty()) {
+      return;
+    }
+    
+    Collection<String> files = ((SegmentReader) reader).getSegmentInfo().files();
+    List<RevisionFile> revisionFiles = new ArrayList<>(files.size());
+    long totalBytes = 0;
+    for (String file : files) {
+      RevisionFile revFile = new RevisionFile(file);
+      revFile.size = dir.fileLength(file);
+      totalBytes += revFile.size;
+      revisionFiles.add(revFile);
+    }
+    
+    for (Replica replica : replicas) {
+      long startNS = System.nanoTime();
+      try {
+        replica.preCopy(dir, revisionFiles);
+        if (infoStream.isEnabled(INFO_STREAM_COMPONENT)) {
+          infoStream.message(INFO_STREAM_COMPONENT, String.format(Locale.ROOT, "pre-copied %.3f MB to replica %s in %.1f msec: %s",
+              totalBytes/1024./1024., replica, (System.nanoTime()-startNS)/1000000.0, files));
+        }
+      } catch (IOException e) {
+        // the replica will copy the files when it pulls the revision
+        if (infoStream.isEnabled(INFO_STREAM_COMPONENT)) {
+          infoStream.message(INFO_STREAM_COMPONENT, "failed to pre-copy to replica " + replica + ": " + e);
+        }
+      }
+    }
+  }
+  
+  /** Sets the {@link InfoStream} to use for logging messages. */
+  public void setInfoStream(InfoStream infoStream) {
+    if (infoStream == null) {
+      infoStream = InfoStream.NO_OUTPUT;
+    }
+    this.infoStream = infoStream;
+  }
+  
+}
@@ -23,6 +23,7 @@ import java.io.InputStream;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -128,6 +129,16 @@ public class ReplicationClient implements Closeable {
      */
     public void revisionReady(String version, Map<String,List<RevisionFile>> revisionFiles, 
         Map<String,List<String>> copiedFiles, Map<String, Directory> sourceDirectory) throws IOException;
+    
+    /**
+     * Returns true if the handler already holds the given file of the given
+     * source although it is not part of its current revision, e.g. because it
+     * was pre-copied by {@link PreCopyMergedSegmentWarmer}, in which case the
+     * file is not copied again. The default returns false.
+     */
+    default boolean hasFile(String source, RevisionFile file) {
+      return false;
+    }
   }
   
   /**
@@ -290,12 +301,16 @@ public class ReplicationClient implements Closeable {
   
   /**
    * Returns the files required for replication. By default, this method returns
-   * all files that exist in the new revision, but not in the handler.
+   * all files that exist in the new revision, but not in the handler, and that
+   * the handler does not {@link ReplicationHandler#hasFile already hold}.
    */
   protected Map<String,List<RevisionFile>> requiredFiles(Map<String,List<RevisionFile>> newRevisionFiles) {
     Map<String,List<RevisionFile>> handlerRevisionFiles = handler.currentRevisionFiles();
     if (handlerRevisionFiles == null) {
-      return newRevisionFiles;
+      handlerRevisionFiles = new HashMap<>();
+      for (String source : newRevisionFiles.keySet()) {
+        handlerRevisionFiles.put(source, Collections.<RevisionFile>emptyList());
+      }
     }
     
     Map<String,List<RevisionFile>> requiredFiles = new HashMap<>();
@@ -311,7 +326,7 @@ public class ReplicationClient implements Closeable {
       String source = e.getKey();
       assert newRevisionFiles.containsKey(source) : "source not found in newRevisionFiles: " + newRevisionFiles;
       for (RevisionFile file : newRevisionFiles.get(source)) {
-        if (!handlerFiles.contains(file.fileName)) {
+        if (!handlerFiles.contains(file.fileName) && !handler.hasFile(source, file)) {
           res.add(file);
         }
       }
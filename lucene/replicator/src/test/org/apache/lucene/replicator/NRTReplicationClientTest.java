@@ -0,0 +1,190 @@
+package org.apache.lucene.replicator;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.lucene.analysis.MockAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.MultiDocValues;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.replicator.ReplicationClient.SourceDirectoryFactory;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.MockDirectoryWrapper;
+import org.apache.lucene.util.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class NRTReplicationClientTest extends ReplicatorTestCase {
+  
+  private MockDirectoryWrapper publishDir, handlerDir;
+  private Replicator replicator;
+  private SourceDirectoryFactory sourceDirFactory;
+  private ReplicationClient client;
+  private NRTReplicationHandler handler;
+  private IndexWriter publishWriter;
+  private final AtomicInteger callbackCount = new AtomicInteger();
+  private final List<Revision> revisions = new ArrayList<>();
+  
+  private void addDoc(int id) throws IOException {
+    Document doc = new Document();
+    doc.add(new StringField("id", Integer.toString(id), Field.Store.YES));
+    doc.add(new NumericDocValuesField("ndv", id));
+    publishWriter.addDocument(doc);
+  }
+  
+  private void replicate() throws IOException {
+    Revision revision = new NRTRevision(publishWriter);
+    revisions.add(revision);
+    replicator.publish(revision);
+    client.updateNow();
+  }
+  
+  private int hitCount(IndexSearcher searcher, int id) throws IOException {
+    return searcher.count(new TermQuery(new Term("id", Integer.toString(id))));
+  }
+  
+  @Override
+  @Before
+  public void setUp() throws Exception {
+    super.setUp();
+    publishDir = newMockDirectory();
+    handlerDir = newMockDirectory();
+    // the handler's directory never holds a commit
+    handlerDir.setCheckIndexOnClose(false);
+    sourceDirFactory = new PerSessionDirectoryFactory(createTempDir("nrtReplicationClientTest"));
+    replicator = new LocalReplicator();
+    handler = new NRTReplicationHandler(handlerDir, new Callable<Boolean>() {
+      @Override
+      public Boolean call() {
+        callbackCount.incrementAndGet();
+        return true;
+      }
+    });
+    client = new ReplicationClient(replicator, handler, sourceDirFactory);
+    
+    IndexWriterConfig conf = newIndexWriterConfig(new MockAnalyzer(random()));
+    publishWriter = new IndexWriter(publishDir, conf);
+  }
+  
+  @After
+  @Override
+  public void tearDown() throws Exception {
+    handler.close();
+    IOUtils.close(client, replicator);
+    // LocalReplicator does not release its current revision on close;
+    // releasing an NRTRevision more than once is harmless
+    for (Revision revision : revisions) {
+      revision.release();
+    }
+    IOUtils.close(publishWriter, publishDir, handlerDir);
+    super.tearDown();
+  }
+  
+  @Test
+  public void testReplicateWithoutCommit() throws Exception {
+    assertNull("no version expected at start", handler.currentVersion());
+    assertNull(handler.acquire());
+    
+    for (int i = 0; i < 10; i++) {
+      addDoc(i);
+    }
+    replicate();
+    assertEquals(1, callbackCount.get());
+    
+    DirectoryReader reader = handler.acquire();
+    try {
+      assertEquals(10, reader.numDocs());
+      IndexSearcher searcher = newSearcher(reader);
+      assertEquals(1, hitCount(searcher, 7));
+    } finally {
+      handler.release(reader);
+    }
+    
+    // deletes and updates must reach the replica as well
+    publishWriter.deleteDocuments(new Term("id", "7"));
+    publishWriter.updateNumericDocValue(new Term("id", "3"), "ndv", 42L);
+    addDoc(10);
+    replicate();
+    assertEquals(2, callbackCount.get());
+    
+    reader = handler.acquire();
+    try {
+      assertEquals(10, reader.numDocs());
+      IndexSearcher searcher = newSearcher(reader);
+      assertEquals(0, hitCount(searcher, 7));
+      assertEquals(1, hitCount(searcher, 10));
+      int doc = searcher.search(new TermQuery(new Term("id", "3")), 1).scoreDocs[0].doc;
+      assertEquals(42L, MultiDocValues.getNumericValues(reader, "ndv").get(doc));
+    } finally {
+      handler.release(reader);
+    }
+  }
+  
+  @Test
+  public void testReplicateMerges() throws Exception {
+    for (int i = 0; i < 30; i++) {
+      addDoc(i);
+      if (i % 10 == 9) {
+        replicate();
+      }
+    }
+    DirectoryReader before = handler.acquire();
+    assertEquals(30, before.numDocs());
+    
+    publishWriter.forceMerge(1);
+    replicate();
+    
+    DirectoryReader after = handler.acquire();
+    try {
+      assertEquals(1, after.leaves().size());
+      assertEquals(30, after.numDocs());
+      // the old reader is still usable until it is released
+      assertEquals(30, before.numDocs());
+      assertEquals(1, hitCount(newSearcher(before), 25));
+    } finally {
+      handler.release(before);
+      handler.release(after);
+    }
+  }
+  
+  @Test
+  public void testNoChanges() throws Exception {
+    addDoc(0);
+    replicate();
+    String version = handler.currentVersion();
+    assertEquals(1, callbackCount.get());
+    
+    // an unchanged writer yields the same revision, which is not replicated again
+    replicate();
+    assertEquals(version, handler.currentVersion());
+    assertEquals(1, callbackCount.get());
+  }
+}
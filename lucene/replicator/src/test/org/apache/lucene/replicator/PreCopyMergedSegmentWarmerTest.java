@@ -0,0 +1,172 @@
+package org.apache.lucene.replicator;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.lucene.analysis.MockAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexFileNames;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.SegmentInfos;
+import org.apache.lucene.index.SerialMergeScheduler;
+import org.apache.lucene.index.SnapshotDeletionPolicy;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexOutput;
+import org.apache.lucene.util.IOUtils;
+import org.apache.lucene.util.TestUtil;
+import org.junit.Test;
+
+public class PreCopyMergedSegmentWarmerTest extends ReplicatorTestCase {
+  
+  /** Records the files which were actually copied by the client. */
+  private static class RecordingHandler extends IndexReplicationHandler {
+    final List<String> copied = new ArrayList<>();
+    
+    RecordingHandler(Directory indexDir) throws IOException {
+      super(indexDir, null);
+    }
+    
+    @Override
+    public void revisionReady(String version, Map<String,List<RevisionFile>> revisionFiles,
+        Map<String,List<String>> copiedFiles, Map<String,Directory> sourceDirectory) throws IOException {
+      copied.clear();
+      copied.addAll(copiedFiles.values().iterator().next());
+      super.revisionReady(version, revisionFiles, copiedFiles, sourceDirectory);
+    }
+  }
+  
+  @Test
+  public void testMergedSegmentIsPreCopied() throws Exception {
+    Directory publishDir = newDirectory();
+    Directory handlerDir = newDirectory();
+    LocalReplicator replicator = new LocalReplicator();
+    RecordingHandler handler = new RecordingHandler(handlerDir);
+    ReplicationClient client = new ReplicationClient(replicator, handler,
+        new PerSessionDirectoryFactory(createTempDir("preCopyMergedSegmentWarmerTest")));
+    
+    PreCopyMergedSegmentWarmer warmer = new PreCopyMergedSegmentWarmer(publishDir, null);
+    warmer.addReplica(handler);
+    IndexWriterConfig conf = newIndexWriterConfig(new MockAnalyzer(random()));
+    conf.setIndexDeletionPolicy(new SnapshotDeletionPolicy(conf.getIndexDeletionPolicy()));
+    conf.setMergeScheduler(new SerialMergeScheduler());
+    conf.setMergePolicy(newLogMergePolicy(10));
+    conf.setReaderPooling(true);
+    conf.setMergedSegmentWarmer(warmer);
+    IndexWriter writer = new IndexWriter(publishDir, conf);
+    
+    for (int i = 0; i < 3; i++) {
+      Document doc = new Document();
+      doc.add(new StringField("id", Integer.toString(i), Field.Store.NO));
+      writer.addDocument(doc);
+      writer.commit();
+    }
+    replicator.publish(new IndexRevision(writer));
+    client.updateNow();
+    assertEquals(3, SegmentInfos.readLatestCommit(handlerDir).size());
+    
+    writer.forceMerge(1);
+    // pre-copying must not affect the replica's current commit
+    assertEquals(3, SegmentInfos.readLatestCommit(handlerDir).size());
+    
+    writer.commit();
+    SegmentInfos publishInfos = SegmentInfos.readLatestCommit(publishDir);
+    assertEquals(1, publishInfos.size());
+    for (String file : publishInfos.info(0).files()) {
+      assertTrue("file " + file + " was not pre-copied", slowFileExists(handlerDir, file));
+      RevisionFile revFile = new RevisionFile(file);
+      revFile.size = publishDir.fileLength(file);
+      assertTrue(handler.hasFile("index", revFile));
+    }
+    
+    replicator.publish(new IndexRevision(writer));
+    client.updateNow();
+    
+    // only the segments file had to be copied
+    assertEquals(1, handler.copied.size());
+    assertTrue(handler.copied.get(0).startsWith(IndexFileNames.SEGMENTS));
+    
+    DirectoryReader reader = DirectoryReader.open(handlerDir);
+    assertEquals(1, reader.leaves().size());
+    assertEquals(3, reader.numDocs());
+    reader.close();
+    TestUtil.checkIndex(handlerDir);
+    
+    // no longer pending, so a later commit may delete them
+    for (String file : publishInfos.info(0).files()) {
+      RevisionFile revFile = new RevisionFile(file);
+      revFile.size = publishDir.fileLength(file);
+      assertFalse(handler.hasFile("index", revFile));
+    }
+    
+    IOUtils.close(client, writer, replicator, publishDir, handlerDir);
+  }
+  
+  @Test
+  public void testUnpublishedPreCopiedFilesExpire() throws Exception {
+    Directory publishDir = newDirectory();
+    Directory handlerDir = newDirectory();
+    Directory mergeDir = newDirectory();
+    LocalReplicator replicator = new LocalReplicator();
+    IndexReplicationHandler handler = new IndexReplicationHandler(handlerDir, null);
+    ReplicationClient client = new ReplicationClient(replicator, handler,
+        new PerSessionDirectoryFactory(createTempDir("preCopyMergedSegmentWarmerTest")));
+    IndexWriterConfig conf = newIndexWriterConfig(new MockAnalyzer(random()));
+    conf.setIndexDeletionPolicy(new SnapshotDeletionPolicy(conf.getIndexDeletionPolicy()));
+    IndexWriter writer = new IndexWriter(publishDir, conf);
+    
+    // a merged segment that is never published, e.g. because the merge was aborted:
+    try (IndexOutput out = mergeDir.createOutput("_zz.cfs", IOContext.DEFAULT)) {
+      out.writeInt(42);
+    }
+    RevisionFile mergedFile = new RevisionFile("_zz.cfs");
+    mergedFile.size = mergeDir.fileLength("_zz.cfs");
+    handler.preCopy(mergeDir, Collections.singletonList(mergedFile));
+    assertTrue(handler.hasFile("index", mergedFile));
+    
+    // the next revision may have been published concurrently with the merge:
+    publishNewRevision(writer, replicator, client);
+    assertTrue(handler.hasFile("index", mergedFile));
+    assertTrue(slowFileExists(handlerDir, "_zz.cfs"));
+    
+    publishNewRevision(writer, replicator, client);
+    assertFalse(handler.hasFile("index", mergedFile));
+    assertFalse(slowFileExists(handlerDir, "_zz.cfs"));
+    
+    IOUtils.close(client, writer, replicator, publishDir, handlerDir, mergeDir);
+  }
+  
+  private static void publishNewRevision(IndexWriter writer, LocalReplicator replicator, ReplicationClient client) throws IOException {
+    Document doc = new Document();
+    doc.add(new StringField("id", "doc", Field.Store.NO));
+    writer.addDocument(doc);
+    writer.commit();
+    replicator.publish(new IndexRevision(writer));
+    client.updateNow();
+  }
+  
+}
@@ -0,0 +1,305 @@
+package org.apache.lucene.search;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.lucene.document.DimensionalLatLonField;
+import org.apache.lucene.index.DimensionalValues;
+import org.apache.lucene.index.DimensionalValues.IntersectVisitor;
+import org.apache.lucene.index.DimensionalValues.Relation;
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.FixedBitSet;
+import org.apache.lucene.util.GeoUtils;
+import org.apache.lucene.util.NumericUtils;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.apache.lucene.util.bkd.BKDReader;
+import org.apache.lucene.util.bkd.BKDReader.IntersectState;
+
+/** A grid of point counts over a latitude/longitude rectangle, often visualized as a so-called
+ *  "heatmap", computed from points indexed with {@link DimensionalLatLonField}.
+ *
+ *  <p>The BKD tree of each segment is traversed against the grid: cells that fall entirely within
+ *  one grid cell are counted as a whole, from the leaf block headers alone when there are no deleted
+ *  documents and no filter, and only the leaf blocks that straddle grid cell boundaries have their
+ *  values read.  Unlike a prefix tree heatmap this needs no additional indexing.
+ *
+ *  <p>Each indexed point is counted, so a document with several points in one grid cell counts
+ *  more than once.  The rectangle must not cross the dateline.
+ *
+ * @lucene.experimental */
+public final class DimensionalHeatmap {
+
+  /** Number of columns, splitting longitude */
+  public final int columns;
+  /** Number of rows, splitting latitude */
+  public final int rows;
+  /** Counts in order of the 1st column (all rows), then the 2nd column (all rows), etc. */
+  public final int[] counts;
+  /** Minimum latitude of the grid */
+  public final double minLat;
+  /** Maximum latitude of the grid */
+  public final double maxLat;
+  /** Minimum longitude of the grid */
+  public final double minLon;
+  /** Maximum longitude of the grid */
+  public final double maxLon;
+
+  private DimensionalHeatmap(int columns, int rows, double minLat, double maxLat, double minLon, double maxLon) {
+    this.columns = columns;
+    this.rows = rows;
+    this.counts = new int[Math.multiplyExact(columns, rows)];
+    this.minLat = minLat;
+    this.maxLat = maxLat;
+    this.minLon = minLon;
+    this.maxLon = maxLon;
+  }
+
+  /** Returns the count in this column (longitude) and row (latitude). */
+  public int getCount(int column, int row) {
+    return counts[column * rows + row];
+  }
+
+  /** Returns the column holding this longitude, which must be within the grid. */
+  int column(double lon) {
+    if (maxLon == minLon) {
+      return 0;
+    }
+    return Math.min(columns - 1, (int) ((lon - minLon) * columns / (maxLon - minLon)));
+  }
+
+  /** Returns the row holding this latitude, which must be within the grid. */
+  int row(double lat) {
+    if (maxLat == minLat) {
+      return 0;
+    }
+    return Math.min(rows - 1, (int) ((lat - minLat) * rows / (maxLat - minLat)));
+  }
+
+  @Override
+  public String toString() {
+    return "DimensionalHeatmap{" + columns + "x" + rows + " lat=" + minLat + " TO " + maxLat + " lon=" + minLon + " TO " + maxLon + "}";
+  }
+
+  /** Counts the points of all live documents in each cell of a {@code columns} by {@code rows} grid over
+   *  the provided rectangle.  Points on the boundary between two grid cells are counted in the cell
+   *  with the larger latitude or longitude. */
+  public static DimensionalHeatmap compute(IndexSearcher searcher, String field,
+                                           double minLat, double maxLat, double minLon, double maxLon,
+                                           int columns, int rows) throws IOException {
+    return compute(searcher, field, minLat, maxLat, minLon, maxLon, columns, rows, null);
+  }
+
+  /** Like {@link #compute(IndexSearcher,String,double,double,double,double,int,int)}, but only counts
+   *  documents that also match {@code filter}, if it is not null. */
+  public static DimensionalHeatmap compute(IndexSearcher searcher, String field,
+                                           double minLat, double maxLat, double minLon, double maxLon,
+                                           int columns, int rows, Query filter) throws IOException {
+    if (field == null) {
+      throw new IllegalArgumentException("field must not be null");
+    }
+    if (GeoUtils.isValidLat(minLat) == false) {
+      throw new IllegalArgumentException("invalid minLat (" + minLat + "): must be -90 to 90");
+    }
+    if (GeoUtils.isValidLat(maxLat) == false) {
+      throw new IllegalArgumentException("invalid maxLat (" + maxLat + "): must be -90 to 90");
+    }
+    if (GeoUtils.isValidLon(minLon) == false) {
+      throw new IllegalArgumentException("invalid minLon (" + minLon + "): must be -180 to 180");
+    }
+    if (GeoUtils.isValidLon(maxLon) == false) {
+      throw new IllegalArgumentException("invalid maxLon (" + maxLon + "): must be -180 to 180");
+    }
+    if (minLat > maxLat) {
+      throw new IllegalArgumentException("minLat must be <= maxLat (got minLat=" + minLat + " maxLat=" + maxLat + ")");
+    }
+    if (minLon > maxLon) {
+      throw new IllegalArgumentException("minLon must be <= maxLon (got minLon=" + minLon + " maxLon=" + maxLon + ")");
+    }
+    if (columns < 1) {
+      throw new IllegalArgumentException("columns must be at least 1 (got " + columns + ")");
+    }
+    if (rows < 1) {
+      throw new IllegalArgumentException("rows must be at least 1 (got " + rows + ")");
+    }
+    if ((long) columns * rows > ArrayUtil.MAX_ARRAY_LENGTH) {
+      throw new IllegalArgumentException("columns * rows must be <= " + ArrayUtil.MAX_ARRAY_LENGTH + " (got columns=" + columns + " rows=" + rows + ")");
+    }
+
+    DimensionalHeatmap heatmap = new DimensionalHeatmap(columns, rows, minLat, maxLat, minLon, maxLon);
+    Weight filterWeight = filter == null ? null : searcher.createNormalizedWeight(filter, false);
+
+    for (LeafReaderContext context : searcher.getIndexReader().leaves()) {
+      LeafReader reader = context.reader();
+      FieldInfo fieldInfo = reader.getFieldInfos().fieldInfo(field);
+      if (fieldInfo == null || fieldInfo.getDimensionCount() == 0) {
+        continue;
+      }
+      if (fieldInfo.getDimensionCount() != 2 || fieldInfo.getDimensionNumBytes() != RamUsageEstimator.NUM_BYTES_INT) {
+        throw new IllegalArgumentException("field=\"" + field + "\" was not indexed with DimensionalLatLonField");
+      }
+
+      Bits acceptDocs = reader.getLiveDocs();
+      if (filterWeight != null) {
+        Scorer scorer = filterWeight.scorer(context);
+        if (scorer == null) {
+          continue;
+        }
+        // BKD leaf blocks are not in docID order, so we need random access to the filter:
+        FixedBitSet filterBits = new FixedBitSet(reader.maxDoc());
+        DocIdSetIterator iterator = scorer.iterator();
+        for(int docID=iterator.nextDoc();docID!=DocIdSetIterator.NO_MORE_DOCS;docID=iterator.nextDoc()) {
+          if (acceptDocs == null || acceptDocs.get(docID)) {
+            filterBits.set(docID);
+          }
+        }
+        acceptDocs = filterBits;
+      }
+
+      HeatmapVisitor visitor = new HeatmapVisitor(heatmap, acceptDocs);
+      BKDReader bkdReader = DimensionalNearestNeighbor.getBKDReader(reader, field);
+      if (bkdReader == null) {
+        // Not our default format, or a wrapped reader: fall back to intersect, binning every point
+        DimensionalValues values = reader.getDimensionalValues();
+        if (values != null) {
+          values.intersect(field, visitor);
+        }
+      } else {
+        IntersectState state = bkdReader.getIntersectState(visitor);
+        byte[] minPacked = new byte[2*RamUsageEstimator.NUM_BYTES_INT];
+        byte[] maxPacked = new byte[2*RamUsageEstimator.NUM_BYTES_INT];
+        Arrays.fill(maxPacked, (byte) 0xff);
+        visitor.count(bkdReader, state, 1, minPacked, maxPacked);
+      }
+    }
+
+    return heatmap;
+  }
+
+  private static final class HeatmapVisitor implements IntersectVisitor {
+    final DimensionalHeatmap heatmap;
+    final Bits acceptDocs;
+    // Accepted docIDs seen by visit(int) since the last reset, when counting a whole BKD cell
+    int acceptedCount;
+
+    HeatmapVisitor(DimensionalHeatmap heatmap, Bits acceptDocs) {
+      this.heatmap = heatmap;
+      this.acceptDocs = acceptDocs;
+    }
+
+    /** Adds the points under this node to the heatmap. */
+    void count(BKDReader reader, IntersectState state, int nodeID, byte[] minPacked, byte[] maxPacked) throws IOException {
+      double cellMinLat = DimensionalLatLonField.decodeLat(NumericUtils.bytesToInt(minPacked, 0));
+      double cellMinLon = DimensionalLatLonField.decodeLon(NumericUtils.bytesToInt(minPacked, 1));
+      double cellMaxLat = DimensionalLatLonField.decodeLat(NumericUtils.bytesToInt(maxPacked, 0));
+      double cellMaxLon = DimensionalLatLonField.decodeLon(NumericUtils.bytesToInt(maxPacked, 1));
+
+      if (cellMaxLat < heatmap.minLat || cellMinLat > heatmap.maxLat || cellMaxLon < heatmap.minLon || cellMinLon > heatmap.maxLon) {
+        // Cell is outside of the grid
+        return;
+      }
+
+      if (cellMinLat >= heatmap.minLat && cellMaxLat <= heatmap.maxLat && cellMinLon >= heatmap.minLon && cellMaxLon <= heatmap.maxLon) {
+        int column = heatmap.column(cellMinLon);
+        int row = heatmap.row(cellMinLat);
+        if (column == heatmap.column(cellMaxLon) && row == heatmap.row(cellMaxLat)) {
+          // All points of this cell fall in the same grid cell:
+          heatmap.counts[column * heatmap.rows + row] += countAll(reader, state, nodeID);
+          return;
+        }
+      }
+
+      if (reader.isLeafNode(nodeID)) {
+        reader.visitLeafBlockValues(nodeID, state);
+      } else {
+        byte[] splitPackedValue = maxPacked.clone();
+        reader.copySplitValue(nodeID, splitPackedValue);
+        count(reader, state, 2*nodeID, minPacked, splitPackedValue);
+
+        splitPackedValue = minPacked.clone();
+        reader.copySplitValue(nodeID, splitPackedValue);
+        count(reader, state, 2*nodeID+1, splitPackedValue, maxPacked);
+      }
+    }
+
+    /** Returns the number of accepted points under this node. */
+    int countAll(BKDReader reader, IntersectState state, int nodeID) throws IOException {
+      if (reader.isLeafNode(nodeID)) {
+        if (acceptDocs == null) {
+          // No need to look at the docIDs:
+          return reader.getLeafPointCount(nodeID, state);
+        }
+        acceptedCount = 0;
+        reader.visitLeafBlockDocIDs(nodeID, state);
+        return acceptedCount;
+      } else {
+        return countAll(reader, state, 2*nodeID) + countAll(reader, state, 2*nodeID+1);
+      }
+    }
+
+    @Override
+    public void visit(int docID) {
+      if (acceptDocs == null || acceptDocs.get(docID)) {
+        acceptedCount++;
+      }
+    }
+
+    @Override
+    public void visit(int[] docIDs, int offset, int count) {
+      if (acceptDocs == null) {
+        acceptedCount += count;
+      } else {
+        for(int i=offset;i<offset+count;i++) {
+          if (acceptDocs.get(docIDs[i])) {
+            acceptedCount++;
+          }
+        }
+      }
+    }
+
+    @Override
+    public void visit(int docID, byte[] packedValue) {
+      if (acceptDocs != null && acceptDocs.get(docID) == false) {
+        return;
+      }
+      double lat = DimensionalLatLonField.decodeLat(NumericUtils.bytesToInt(packedValue, 0));
+      double lon = DimensionalLatLonField.decodeLon(NumericUtils.bytesToInt(packedValue, 1));
+      if (lat >= heatmap.minLat && lat <= heatmap.maxLat && lon >= heatmap.minLon && lon <= heatmap.maxLon) {
+        heatmap.counts[heatmap.column(lon) * heatmap.rows + heatmap.row(lat)]++;
+      }
+    }
+
+    @Override
+    public Relation compare(byte[] minPackedValue, byte[] maxPackedValue) {
+      // Only used when falling back to DimensionalValues.intersect:
+      double cellMinLat = DimensionalLatLonField.decodeLat(NumericUtils.bytesToInt(minPackedValue, 0));
+      double cellMinLon = DimensionalLatLonField.decodeLon(NumericUtils.bytesToInt(minPackedValue, 1));
+      double cellMaxLat = DimensionalLatLonField.decodeLat(NumericUtils.bytesToInt(maxPackedValue, 0));
+      double cellMaxLon = DimensionalLatLonField.decodeLon(NumericUtils.bytesToInt(maxPackedValue, 1));
+      if (cellMaxLat < heatmap.minLat || cellMinLat > heatmap.maxLat || cellMaxLon < heatmap.minLon || cellMinLon > heatmap.maxLon) {
+        return Relation.CELL_OUTSIDE_QUERY;
+      }
+      return Relation.CELL_CROSSES_QUERY;
+    }
+  }
+}
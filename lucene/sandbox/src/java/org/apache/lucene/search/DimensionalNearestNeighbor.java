@@ -0,0 +1,316 @@
+package org.apache.lucene.search;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import org.apache.lucene.codecs.DimensionalReader;
+import org.apache.lucene.codecs.lucene60.Lucene60DimensionalReader;
+import org.apache.lucene.document.DimensionalLatLonField;
+import org.apache.lucene.index.CodecReader;
+import org.apache.lucene.index.DimensionalValues;
+import org.apache.lucene.index.DimensionalValues.IntersectVisitor;
+import org.apache.lucene.index.DimensionalValues.Relation;
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.FixedBitSet;
+import org.apache.lucene.util.GeoDistanceUtils;
+import org.apache.lucene.util.GeoUtils;
+import org.apache.lucene.util.NumericUtils;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.apache.lucene.util.bkd.BKDReader;
+import org.apache.lucene.util.bkd.BKDReader.IntersectState;
+
+/** Finds the nearest points, by haversine distance, to a query location, among points indexed
+ *  with {@link DimensionalLatLonField}.
+ *
+ *  <p>Cells of the BKD trees of all segments are visited best-first, in order of their minimum
+ *  possible distance to the query location, and the search stops as soon as the next cell can
+ *  not hold a point that is closer than the current n'th closest hit.  Deleted documents are
+ *  never returned, and hits can optionally be restricted to the documents matching a filter.
+ *
+ *  <p>Segments that were not written with the default dimensional format are visited with {@link
+ *  DimensionalValues#intersect}, pruning cells that are further away than the current n'th
+ *  closest hit.
+ *
+ * @lucene.experimental */
+public final class DimensionalNearestNeighbor {
+
+  private DimensionalNearestNeighbor() {
+  }
+
+  /** Returns the {@code n} nearest documents to the provided location, closest first.  Each hit
+   *  is a {@link FieldDoc} whose single sort value is the {@link Double} haversine distance in
+   *  meters, see {@link GeoDistanceUtils#haversin}.  Ties are broken by docID. */
+  public static TopDocs nearest(IndexSearcher searcher, String field, double lat, double lon, int n) throws IOException {
+    return nearest(searcher, field, lat, lon, n, null);
+  }
+
+  /** Like {@link #nearest(IndexSearcher,String,double,double,int)}, but only considers documents
+   *  that also match {@code filter}, if it is not null. */
+  public static TopDocs nearest(IndexSearcher searcher, String field, double lat, double lon, int n, Query filter) throws IOException {
+    if (field == null) {
+      throw new IllegalArgumentException("field must not be null");
+    }
+    if (GeoUtils.isValidLat(lat) == false) {
+      throw new IllegalArgumentException("invalid lat (" + lat + "): must be -90 to 90");
+    }
+    if (GeoUtils.isValidLon(lon) == false) {
+      throw new IllegalArgumentException("invalid lon (" + lon + "): must be -180 to 180");
+    }
+    if (n < 1) {
+      throw new IllegalArgumentException("n must be at least 1 (got " + n + ")");
+    }
+
+    Weight filterWeight = filter == null ? null : searcher.createNormalizedWeight(filter, false);
+
+    List<LeafReaderContext> leaves = searcher.getIndexReader().leaves();
+    NearestHitQueue hitQueue = new NearestHitQueue(n);
+    PriorityQueue<Cell> cellQueue = new PriorityQueue<>();
+    NearestVisitor[] visitors = new NearestVisitor[leaves.size()];
+
+    for(int i=0;i<leaves.size();i++) {
+      LeafReaderContext context = leaves.get(i);
+      LeafReader reader = context.reader();
+      FieldInfo fieldInfo = reader.getFieldInfos().fieldInfo(field);
+      if (fieldInfo == null || fieldInfo.getDimensionCount() == 0) {
+        continue;
+      }
+      if (fieldInfo.getDimensionCount() != 2 || fieldInfo.getDimensionNumBytes() != RamUsageEstimator.NUM_BYTES_INT) {
+        throw new IllegalArgumentException("field=\"" + field + "\" was not indexed with DimensionalLatLonField");
+      }
+
+      Bits acceptDocs = reader.getLiveDocs();
+      if (filterWeight != null) {
+        Scorer scorer = filterWeight.scorer(context);
+        if (scorer == null) {
+          continue;
+        }
+        // BKD leaf blocks are not in docID order, so we need random access to the filter:
+        FixedBitSet filterBits = new FixedBitSet(reader.maxDoc());
+        DocIdSetIterator iterator = scorer.iterator();
+        for(int docID=iterator.nextDoc();docID!=DocIdSetIterator.NO_MORE_DOCS;docID=iterator.nextDoc()) {
+          if (acceptDocs == null || acceptDocs.get(docID)) {
+            filterBits.set(docID);
+          }
+        }
+        acceptDocs = filterBits;
+      }
+
+      NearestVisitor visitor = new NearestVisitor(hitQueue, context.docBase, acceptDocs, lat, lon);
+      BKDReader bkdReader = getBKDReader(reader, field);
+      if (bkdReader == null) {
+        // Not our default format, or a wrapped reader: fall back to pruned depth-first intersect
+        DimensionalValues values = reader.getDimensionalValues();
+        if (values != null) {
+          values.intersect(field, visitor);
+        }
+      } else {
+        visitor.bkdReader = bkdReader;
+        visitor.state = bkdReader.getIntersectState(visitor);
+        visitors[i] = visitor;
+        byte[] minPacked = new byte[2*RamUsageEstimator.NUM_BYTES_INT];
+        byte[] maxPacked = new byte[2*RamUsageEstimator.NUM_BYTES_INT];
+        Arrays.fill(maxPacked, (byte) 0xff);
+        cellQueue.offer(new Cell(i, 1, minPacked, maxPacked, cellMinDistance(minPacked, maxPacked, lat, lon)));
+      }
+    }
+
+    // Best-first: always expand the cell that may hold the closest point:
+    while (cellQueue.size() > 0) {
+      Cell cell = cellQueue.poll();
+      if (hitQueue.size() == n && cell.distance > hitQueue.top().distance) {
+        // No remaining cell can hold a competitive point
+        break;
+      }
+
+      NearestVisitor visitor = visitors[cell.readerIndex];
+      BKDReader reader = visitor.bkdReader;
+      if (reader.isLeafNode(cell.nodeID)) {
+        reader.visitLeafBlockValues(cell.nodeID, visitor.state);
+      } else {
+        byte[] splitPackedValue = cell.maxPacked.clone();
+        reader.copySplitValue(cell.nodeID, splitPackedValue);
+        cellQueue.offer(new Cell(cell.readerIndex, 2*cell.nodeID, cell.minPacked, splitPackedValue,
+                                 cellMinDistance(cell.minPacked, splitPackedValue, lat, lon)));
+
+        splitPackedValue = cell.minPacked.clone();
+        reader.copySplitValue(cell.nodeID, splitPackedValue);
+        cellQueue.offer(new Cell(cell.readerIndex, 2*cell.nodeID+1, splitPackedValue, cell.maxPacked,
+                                 cellMinDistance(splitPackedValue, cell.maxPacked, lat, lon)));
+      }
+    }
+
+    FieldDoc[] hits = new FieldDoc[hitQueue.size()];
+    for(int i=hits.length-1;i>=0;i--) {
+      NearestHit hit = hitQueue.pop();
+      hits[i] = new FieldDoc(hit.docID, Float.NaN, new Object[] {Double.valueOf(hit.distance)});
+    }
+    return new TopDocs(hits.length, hits, Float.NaN);
+  }
+
+  /** Returns the BKD tree of this field, or null if the reader is not a {@link CodecReader} using
+   *  the default dimensional format. */
+  static BKDReader getBKDReader(LeafReader reader, String field) {
+    if (reader instanceof CodecReader) {
+      DimensionalReader dimensionalReader = ((CodecReader) reader).getDimensionalReader();
+      if (dimensionalReader instanceof Lucene60DimensionalReader) {
+        return ((Lucene60DimensionalReader) dimensionalReader).getBKDReader(field);
+      }
+    }
+    return null;
+  }
+
+  /** Returns the minimum haversine distance from the location to any point in the cell.  Since
+   *  the cells are latitude/longitude rectangles, the closest point is either straight north or
+   *  south, or on one of the two meridian edges of the cell. */
+  static double cellMinDistance(byte[] minPacked, byte[] maxPacked, double lat, double lon) {
+    double minLat = DimensionalLatLonField.decodeLat(NumericUtils.bytesToInt(minPacked, 0));
+    double minLon = DimensionalLatLonField.decodeLon(NumericUtils.bytesToInt(minPacked, 1));
+    double maxLat = DimensionalLatLonField.decodeLat(NumericUtils.bytesToInt(maxPacked, 0));
+    double maxLon = DimensionalLatLonField.decodeLon(NumericUtils.bytesToInt(maxPacked, 1));
+
+    if (lon >= minLon && lon <= maxLon) {
+      return GeoDistanceUtils.haversin(lat, lon, Math.max(minLat, Math.min(lat, maxLat)), lon);
+    }
+
+    return Math.min(distanceToMeridian(lat, lon, minLat, maxLat, minLon),
+                    distanceToMeridian(lat, lon, minLat, maxLat, maxLon));
+  }
+
+  /** Minimum distance from the location to the meridian at {@code edgeLon}, between {@code minLat}
+   *  and {@code maxLat}. */
+  private static double distanceToMeridian(double lat, double lon, double minLat, double maxLat, double edgeLon) {
+    // Latitude of the point on the meridian's great circle closest to the location; beyond +/- 90
+    // means it is on the opposite meridian, so the closest point is the pole:
+    double latRadians = Math.toRadians(lat);
+    double closestLat = Math.toDegrees(Math.atan2(Math.sin(latRadians), Math.cos(latRadians) * Math.cos(Math.toRadians(lon - edgeLon))));
+    closestLat = Math.max(minLat, Math.min(closestLat, maxLat));
+    return GeoDistanceUtils.haversin(lat, lon, closestLat, edgeLon);
+  }
+
+  /** A BKD cell waiting to be visited, ordered by its minimum distance to the query location. */
+  private static final class Cell implements Comparable<Cell> {
+    final int readerIndex;
+    final int nodeID;
+    final byte[] minPacked;
+    final byte[] maxPacked;
+    final double distance;
+
+    Cell(int readerIndex, int nodeID, byte[] minPacked, byte[] maxPacked, double distance) {
+      this.readerIndex = readerIndex;
+      this.nodeID = nodeID;
+      this.minPacked = minPacked;
+      this.maxPacked = maxPacked;
+      this.distance = distance;
+    }
+
+    @Override
+    public int compareTo(Cell other) {
+      return Double.compare(distance, other.distance);
+    }
+  }
+
+  private static final class NearestHit {
+    int docID;
+    double distance;
+  }
+
+  /** Holds the n closest hits so far; the top is the furthest one. */
+  private static final class NearestHitQueue extends org.apache.lucene.util.PriorityQueue<NearestHit> {
+    final int maxSize;
+
+    NearestHitQueue(int maxSize) {
+      super(maxSize, false);
+      this.maxSize = maxSize;
+    }
+
+    @Override
+    protected boolean lessThan(NearestHit a, NearestHit b) {
+      if (a.distance == b.distance) {
+        return a.docID > b.docID;
+      }
+      return a.distance > b.distance;
+    }
+  }
+
+  /** Collects competitive points from one segment into the shared hit queue. */
+  private static final class NearestVisitor implements IntersectVisitor {
+    final NearestHitQueue hitQueue;
+    final int docBase;
+    final Bits acceptDocs;
+    final double lat;
+    final double lon;
+    BKDReader bkdReader;
+    IntersectState state;
+
+    NearestVisitor(NearestHitQueue hitQueue, int docBase, Bits acceptDocs, double lat, double lon) {
+      this.hitQueue = hitQueue;
+      this.docBase = docBase;
+      this.acceptDocs = acceptDocs;
+      this.lat = lat;
+      this.lon = lon;
+    }
+
+    @Override
+    public void visit(int docID) {
+      throw new AssertionError();
+    }
+
+    @Override
+    public void visit(int docID, byte[] packedValue) {
+      if (acceptDocs != null && acceptDocs.get(docID) == false) {
+        return;
+      }
+      double docLat = DimensionalLatLonField.decodeLat(NumericUtils.bytesToInt(packedValue, 0));
+      double docLon = DimensionalLatLonField.decodeLon(NumericUtils.bytesToInt(packedValue, 1));
+      double distance = GeoDistanceUtils.haversin(lat, lon, docLat, docLon);
+      int fullDocID = docBase + docID;
+
+      if (hitQueue.size() == hitQueue.maxSize) {
+        NearestHit bottom = hitQueue.top();
+        if (distance > bottom.distance || (distance == bottom.distance && fullDocID > bottom.docID)) {
+          return;
+        }
+        bottom.docID = fullDocID;
+        bottom.distance = distance;
+        hitQueue.updateTop();
+      } else {
+        NearestHit hit = new NearestHit();
+        hit.docID = fullDocID;
+        hit.distance = distance;
+        hitQueue.add(hit);
+      }
+    }
+
+    @Override
+    public Relation compare(byte[] minPackedValue, byte[] maxPackedValue) {
+      // Only used when falling back to DimensionalValues.intersect:
+      if (hitQueue.size() == hitQueue.maxSize &&
+          cellMinDistance(minPackedValue, maxPackedValue, lat, lon) > hitQueue.top().distance) {
+        return Relation.CELL_OUTSIDE_QUERY;
+      }
+      return Relation.CELL_CROSSES_QUERY;
+    }
+  }
+}
@@ -27,7 +27,7 @@ import org.apache.lucene.index.DimensionalValues;
 import org.apache.lucene.index.LeafReader;
 import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.util.DocIdSetBuilder;
-import org.apache.lucene.util.GeoRelationUtils;
+import org.apache.lucene.util.GeoEdgeTree;
 import org.apache.lucene.util.GeoUtils;
 import org.apache.lucene.util.NumericUtils;
 
@@ -45,6 +45,7 @@ public class DimensionalPointInPolygonQuery extends Query {
   final double maxLon;
   final double[] polyLats;
   final double[] polyLons;
+  final GeoEdgeTree edgeTree;
 
   /** The lats/lons must be clockwise or counter-clockwise. */
   public DimensionalPointInPolygonQuery(String field, double[] polyLats, double[] polyLons) {
@@ -89,6 +90,7 @@ public class DimensionalPointInPolygonQuery extends Query {
     this.maxLon = maxLon;
     this.minLat = minLat;
     this.maxLat = maxLat;
+    this.edgeTree = new GeoEdgeTree(polyLons, polyLats);
   }
 
   @Override
@@ -121,12 +123,18 @@ public class DimensionalPointInPolygonQuery extends Query {
                              result.add(docID);
                            }
 
+                           @Override
+                           public void visit(int[] docIDs, int offset, int count) {
+                             hitCount[0] += count;
+                             result.add(docIDs, offset, count);
+                           }
+
                            @Override
                            public void visit(int docID, byte[] packedValue) {
                              assert packedValue.length == 8;
                              double lat = DimensionalLatLonField.decodeLat(NumericUtils.bytesToInt(packedValue, 0));
                              double lon = DimensionalLatLonField.decodeLon(NumericUtils.bytesToInt(packedValue, 1));
-                             if (GeoRelationUtils.pointInPolygon(polyLons, polyLats, lat, lon)) {
+                             if (edgeTree.pointInPolygon(lat, lon)) {
                                hitCount[0]++;
                                result.add(docID);
                              }
@@ -142,13 +150,9 @@ public class DimensionalPointInPolygonQuery extends Query {
                              if (cellMinLat <= minLat && cellMaxLat >= maxLat && cellMinLon <= minLon && cellMaxLon >= maxLon) {
                                // Cell fully encloses the query
                                return Relation.CELL_CROSSES_QUERY;
-                             } else  if (GeoRelationUtils.rectWithinPoly(cellMinLon, cellMinLat, cellMaxLon, cellMaxLat,
-                                                                 polyLons, polyLats,
-                                                                 minLon, minLat, maxLon, maxLat)) {
+                             } else  if (edgeTree.rectWithinPoly(cellMinLon, cellMinLat, cellMaxLon, cellMaxLat)) {
                                return Relation.CELL_INSIDE_QUERY;
-                             } else if (GeoRelationUtils.rectCrossesPoly(cellMinLon, cellMinLat, cellMaxLon, cellMaxLat,
-                                                                 polyLons, polyLats,
-                                                                 minLon, minLat, maxLon, maxLat)) {
+                             } else if (edgeTree.rectCrossesPoly(cellMinLon, cellMinLat, cellMaxLon, cellMaxLat)) {
                                return Relation.CELL_CROSSES_QUERY;
                              } else {
                                return Relation.CELL_OUTSIDE_QUERY;
@@ -95,6 +95,12 @@ public class DimensionalPointInRectQuery extends Query {
                              result.add(docID);
                            }
 
+                           @Override
+                           public void visit(int[] docIDs, int offset, int count) {
+                             hitCount[0] += count;
+                             result.add(docIDs, offset, count);
+                           }
+
                            @Override
                            public void visit(int docID, byte[] packedValue) {
                              assert packedValue.length == 8;
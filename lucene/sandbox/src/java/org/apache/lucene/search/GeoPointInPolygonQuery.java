@@ -24,7 +24,7 @@ import org.apache.lucene.index.Terms;
 import org.apache.lucene.index.TermsEnum;
 import org.apache.lucene.util.AttributeSource;
 import org.apache.lucene.util.GeoRect;
-import org.apache.lucene.util.GeoRelationUtils;
+import org.apache.lucene.util.GeoEdgeTree;
 import org.apache.lucene.util.GeoUtils;
 
 /** Implements a simple point in polygon query on a GeoPoint field. This is based on
@@ -51,6 +51,8 @@ public final class GeoPointInPolygonQuery extends GeoPointInBBoxQueryImpl {
   // or geo library dependencies
   private final double[] x;
   private final double[] y;
+  // edge index over the polygon, so relations don't need to scan all edges:
+  private final GeoEdgeTree edgeTree;
 
   /**
    * Constructs a new GeoPolygonQuery that will match encoded {@link org.apache.lucene.document.GeoPointField} terms
@@ -78,6 +80,7 @@ public final class GeoPointInPolygonQuery extends GeoPointInBBoxQueryImpl {
 
     this.x = polyLons;
     this.y = polyLats;
+    this.edgeTree = new GeoEdgeTree(polyLons, polyLats);
   }
 
   @Override @SuppressWarnings("unchecked")
@@ -148,14 +151,12 @@ public final class GeoPointInPolygonQuery extends GeoPointInBBoxQueryImpl {
 
     @Override
     protected boolean cellCrosses(final double minLon, final double minLat, final double maxLon, final double maxLat) {
-      return GeoRelationUtils.rectCrossesPoly(minLon, minLat, maxLon, maxLat, x, y, GeoPointInPolygonQuery.this.minLon,
-          GeoPointInPolygonQuery.this.minLat, GeoPointInPolygonQuery.this.maxLon, GeoPointInPolygonQuery.this.maxLat);
+      return edgeTree.rectCrossesPoly(minLon, minLat, maxLon, maxLat);
     }
 
     @Override
     protected boolean cellWithin(final double minLon, final double minLat, final double maxLon, final double maxLat) {
-      return GeoRelationUtils.rectWithinPoly(minLon, minLat, maxLon, maxLat, x, y, GeoPointInPolygonQuery.this.minLon,
-          GeoPointInPolygonQuery.this.minLat, GeoPointInPolygonQuery.this.maxLon, GeoPointInPolygonQuery.this.maxLat);
+      return edgeTree.rectWithinPoly(minLon, minLat, maxLon, maxLat);
     }
 
     @Override
@@ -169,11 +170,11 @@ public final class GeoPointInPolygonQuery extends GeoPointInBBoxQueryImpl {
      * {@link org.apache.lucene.search.GeoPointTermsEnum#accept} method is called to match
      * encoded terms that fall within the bounding box of the polygon. Those documents that pass the initial
      * bounding box filter are then compared to the provided polygon using the
-     * {@link org.apache.lucene.util.GeoRelationUtils#pointInPolygon} method.
+     * {@link org.apache.lucene.util.GeoEdgeTree#pointInPolygon} method.
      */
     @Override
     protected boolean postFilter(final double lon, final double lat) {
-      return GeoRelationUtils.pointInPolygon(x, y, lat, lon);
+      return edgeTree.pointInPolygon(lat, lon);
     }
   }
 
@@ -17,13 +17,10 @@ package org.apache.lucene.search;
  * limitations under the License.
  */
 
-import java.util.Collections;
-import java.util.LinkedList;
-import java.util.List;
-
 import org.apache.lucene.document.GeoPointField;
 import org.apache.lucene.index.FilteredTermsEnum;
 import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.util.ArrayUtil;
 import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.BytesRefBuilder;
 import org.apache.lucene.util.GeoRelationUtils;
@@ -42,11 +39,16 @@ abstract class GeoPointTermsEnum extends FilteredTermsEnum {
   protected final double maxLon;
   protected final double maxLat;
 
-  protected Range currentRange;
-  private final BytesRefBuilder currentCell = new BytesRefBuilder();
-  private final BytesRefBuilder nextSubRange = new BytesRefBuilder();
+  // Ranges along the space filling curve, bucketed by shift, which is also the order of their terms.  Cells are
+  // visited in curve order so each bucket is already sorted by start.  The low bit of a start is always 0 (the
+  // shift is never 0), so we use it to flag boundary ranges.
+  private final long[][] ranges = new long[64][];
+  private final int[] rangeCounts = new int[64];
 
-  private final List<Range> rangeBounds = new LinkedList<>();
+  // The current range is ranges[currentShift][currentIndex]; currentShift == 64 once all ranges are consumed
+  private int currentShift = -1;
+  private int currentIndex;
+  private final BytesRefBuilder currentCell = new BytesRefBuilder();
 
   // detail level should be a factor of PRECISION_STEP limiting the depth of recursion (and number of ranges)
   protected final short DETAIL_LEVEL;
@@ -63,8 +65,6 @@ abstract class GeoPointTermsEnum extends FilteredTermsEnum {
     DETAIL_LEVEL = (short)(((GeoUtils.BITS<<1)-computeMaxShift())/2);
 
     computeRange(0L, (short) (((GeoUtils.BITS) << 1) - 1));
-    assert rangeBounds.isEmpty() == false;
-    Collections.sort(rangeBounds);
   }
 
   /**
@@ -106,16 +106,31 @@ abstract class GeoPointTermsEnum extends FilteredTermsEnum {
     if (within || (level == DETAIL_LEVEL && cellIntersectsShape(minLon, minLat, maxLon, maxLat))) {
       final short nextRes = (short)(res-1);
       if (nextRes % GeoPointField.PRECISION_STEP == 0) {
-        rangeBounds.add(new Range(start, nextRes, !within));
-        rangeBounds.add(new Range(start|(1L<<nextRes), nextRes, !within));
+        addRange(start, nextRes, !within);
+        addRange(start|(1L<<nextRes), nextRes, !within);
       } else {
-        rangeBounds.add(new Range(start, res, !within));
+        addRange(start, res, !within);
       }
     } else if (level < DETAIL_LEVEL && cellIntersectsMBR(minLon, minLat, maxLon, maxLat)) {
       computeRange(start, (short) (res - 1));
     }
   }
 
+  private void addRange(final long start, final short shift, final boolean boundary) {
+    assert shift > 0 && shift < 64;
+    assert (start & ((1L << shift) - 1)) == 0;
+    final int count = rangeCounts[shift];
+    long[] bucket = ranges[shift];
+    if (bucket == null) {
+      bucket = ranges[shift] = new long[16];
+    } else if (count == bucket.length) {
+      bucket = ranges[shift] = ArrayUtil.grow(bucket, count + 1);
+    }
+    assert count == 0 || (bucket[count-1] & ~1L) < start;
+    bucket[count] = boundary ? start | 1L : start;
+    rangeCounts[shift] = count + 1;
+  }
+
   protected short computeMaxShift() {
     // in this case a factor of 4 brings the detail level to ~0.002/0.001 degrees lon/lat respectively (or ~222m/111m)
     return GeoPointField.PRECISION_STEP * 4;
@@ -151,39 +166,67 @@ abstract class GeoPointTermsEnum extends FilteredTermsEnum {
   }
 
   public boolean boundaryTerm() {
-    if (currentRange == null) {
+    if (currentShift == -1 || currentShift == 64) {
       throw new IllegalStateException("GeoPointTermsEnum empty or not initialized");
     }
-    return currentRange.boundary;
+    return (ranges[currentShift][currentIndex] & 1L) != 0;
   }
 
-  private void nextRange() {
-    currentRange = rangeBounds.remove(0);
-    currentRange.fillBytesRef(currentCell);
+  /**
+   * Moves to the first range whose term is at or after the term with the given shift and value, skipping whole
+   * buckets and binary searching within a bucket, and returns false if there is no such range.
+   */
+  private boolean advance(final int shift, final long value) {
+    if (currentShift < shift) {
+      currentShift = shift;
+      currentIndex = 0;
+    }
+    while (currentShift < 64) {
+      final int count = rangeCounts[currentShift];
+      if (currentShift == shift && currentIndex < count) {
+        // first range in this bucket whose start is >= value:
+        final long[] bucket = ranges[currentShift];
+        int lo = currentIndex;
+        int hi = count;
+        while (lo < hi) {
+          final int mid = (lo + hi) >>> 1;
+          if ((bucket[mid] & ~1L) < value) {
+            lo = mid + 1;
+          } else {
+            hi = mid;
+          }
+        }
+        currentIndex = lo;
+      }
+      if (currentIndex < count) {
+        LegacyNumericUtils.longToPrefixCoded(ranges[currentShift][currentIndex] & ~1L, currentShift, currentCell);
+        return true;
+      }
+      currentShift++;
+      currentIndex = 0;
+    }
+    return false;
+  }
+
+  /** Compares the current range with the term with the given shift and value. */
+  private int compareCurrent(final int shift, final long value) {
+    final int cmp = Integer.compare(currentShift, shift);
+    if (cmp != 0) {
+      return cmp;
+    }
+    return Long.compare(ranges[currentShift][currentIndex] & ~1L, value);
   }
 
   @Override
   protected final BytesRef nextSeekTerm(BytesRef term) {
-    while (!rangeBounds.isEmpty()) {
-      if (currentRange == null) {
-        nextRange();
-      }
-
-      // if the new upper bound is before the term parameter, the sub-range is never a hit
-      if (term != null && term.compareTo(currentCell.get()) > 0) {
-        nextRange();
-        if (!rangeBounds.isEmpty()) {
-          continue;
-        }
-      }
-      // never seek backwards, so use current term if lower bound is smaller
-      return (term != null && term.compareTo(currentCell.get()) > 0) ?
-          term : currentCell.get();
+    final boolean found;
+    if (term == null) {
+      found = currentShift == -1 ? advance(0, Long.MIN_VALUE) : currentShift < 64;
+    } else {
+      found = advance(LegacyNumericUtils.getPrefixCodedLongShift(term), LegacyNumericUtils.prefixCodedToLong(term));
     }
-
-    // no more sub-range enums available
-    assert rangeBounds.isEmpty();
-    return null;
+    // never seeks backwards, since the current range is at or after the term parameter
+    return found ? currentCell.get() : null;
   }
 
   /**
@@ -196,55 +239,24 @@ abstract class GeoPointTermsEnum extends FilteredTermsEnum {
    */
   @Override
   protected AcceptStatus accept(BytesRef term) {
-    // validate value is in range
-    while (currentCell == null || term.compareTo(currentCell.get()) > 0) {
-      if (rangeBounds.isEmpty()) {
-        return AcceptStatus.END;
-      }
-      // peek next sub-range, only seek if the current term is smaller than next lower bound
-      rangeBounds.get(0).fillBytesRef(this.nextSubRange);
-      if (term.compareTo(this.nextSubRange.get()) < 0) {
-        return AcceptStatus.NO_AND_SEEK;
-      }
-      // step forward to next range without seeking, as next range is less or equal current term
-      nextRange();
-    }
-
-    return AcceptStatus.YES;
-  }
-
-  protected abstract boolean postFilter(final double lon, final double lat);
-
-  /**
-   * Internal class to represent a range along the space filling curve
-   */
-  protected final class Range implements Comparable<Range> {
-    final short shift;
-    final long start;
-    final boolean boundary;
-
-    Range(final long lower, final short shift, boolean boundary) {
-      this.boundary = boundary;
-      this.start = lower;
-      this.shift = shift;
+    if (currentShift == 64) {
+      return AcceptStatus.END;
     }
-
-    /**
-     * Encode as a BytesRef using a reusable object. This allows us to lazily create the BytesRef (which is
-     * quite expensive), only when we need it.
-     */
-    private void fillBytesRef(BytesRefBuilder result) {
-      assert result != null;
-      LegacyNumericUtils.longToPrefixCoded(start, shift, result);
+    final int shift = LegacyNumericUtils.getPrefixCodedLongShift(term);
+    final long value = LegacyNumericUtils.prefixCodedToLong(term);
+    final int cmp = compareCurrent(shift, value);
+    if (cmp == 0) {
+      return AcceptStatus.YES;
+    } else if (cmp > 0) {
+      // the term is before the current range
+      return AcceptStatus.NO_AND_SEEK;
     }
-
-    @Override
-    public int compareTo(Range other) {
-      final int result = Short.compare(this.shift, other.shift);
-      if (result == 0) {
-        return Long.compare(this.start, other.start);
-      }
-      return result;
+    // step forward to the first range at or after the current term, and seek if it is not the term itself
+    if (advance(shift, value) == false) {
+      return AcceptStatus.END;
     }
+    return compareCurrent(shift, value) == 0 ? AcceptStatus.YES : AcceptStatus.NO_AND_SEEK;
   }
+
+  protected abstract boolean postFilter(final double lon, final double lat);
 }
@@ -0,0 +1,224 @@
+package org.apache.lucene.util;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Interval tree over the edges of a polygon, keyed by the longitude range of each edge, so that
+ * {@link #pointInPolygon} and the rectangle relations only need to look at the edges that can
+ * possibly matter instead of scanning all of them.  Results are identical to the corresponding
+ * methods of {@link GeoRelationUtils}, given the exact bounding box of the polygon.
+ *
+ * <p>Building the tree is O(n log(n)) in the number of edges, so it should be created once, e.g.
+ * per query instance, and re-used for all relations.  Instances are immutable and thread-safe.
+ *
+ * @lucene.experimental
+ */
+public final class GeoEdgeTree {
+
+  // a bit more than the 2*TOLERANCE that rectCrossesSegment allows between the two segments
+  private static final double RECT_SLACK = 3 * GeoUtils.TOLERANCE;
+
+  private final double[] polyLons;
+  private final double[] polyLats;
+
+  /** Polygon bounding box */
+  private final double minLon;
+  private final double minLat;
+  private final double maxLon;
+  private final double maxLat;
+
+  // Edges, sorted by minimum longitude; edge i goes from vertex edgeEnd[i]-1 to vertex edgeEnd[i]:
+  private final int[] edgeEnd;
+  private final double[] edgeMinLon;
+  private final double[] edgeMaxLon;
+  private final double[] edgeMinLat;
+  private final double[] edgeMaxLat;
+  // Maximum edgeMaxLon of the sub-tree rooted at each edge, in the implicit balanced binary tree
+  // whose root is the middle of the sorted edges:
+  private final double[] subtreeMaxLon;
+
+  /** Builds the tree for a closed polygon, whose first and last points must be the same. */
+  public GeoEdgeTree(double[] polyLons, double[] polyLats) {
+    if (polyLats.length != polyLons.length) {
+      throw new IllegalArgumentException("polyLats and polyLons must be equal length");
+    }
+    this.polyLons = polyLons;
+    this.polyLats = polyLats;
+
+    final int numEdges = Math.max(0, polyLons.length - 1);
+    edgeEnd = new int[numEdges];
+    edgeMinLon = new double[numEdges];
+    edgeMaxLon = new double[numEdges];
+    edgeMinLat = new double[numEdges];
+    edgeMaxLat = new double[numEdges];
+    subtreeMaxLon = new double[numEdges];
+
+    double minLon = Double.POSITIVE_INFINITY;
+    double minLat = Double.POSITIVE_INFINITY;
+    double maxLon = Double.NEGATIVE_INFINITY;
+    double maxLat = Double.NEGATIVE_INFINITY;
+    for (int i = 0; i < polyLons.length; ++i) {
+      minLon = Math.min(minLon, polyLons[i]);
+      maxLon = Math.max(maxLon, polyLons[i]);
+      minLat = Math.min(minLat, polyLats[i]);
+      maxLat = Math.max(maxLat, polyLats[i]);
+    }
+    this.minLon = minLon;
+    this.minLat = minLat;
+    this.maxLon = maxLon;
+    this.maxLat = maxLat;
+
+    for (int i = 0; i < numEdges; ++i) {
+      edgeEnd[i] = i + 1;
+      edgeMinLon[i] = Math.min(polyLons[i], polyLons[i+1]);
+      edgeMaxLon[i] = Math.max(polyLons[i], polyLons[i+1]);
+      edgeMinLat[i] = Math.min(polyLats[i], polyLats[i+1]);
+      edgeMaxLat[i] = Math.max(polyLats[i], polyLats[i+1]);
+    }
+
+    new InPlaceMergeSorter() {
+      @Override
+      protected int compare(int i, int j) {
+        return Double.compare(edgeMinLon[i], edgeMinLon[j]);
+      }
+
+      @Override
+      protected void swap(int i, int j) {
+        swapInts(edgeEnd, i, j);
+        swapDoubles(edgeMinLon, i, j);
+        swapDoubles(edgeMaxLon, i, j);
+        swapDoubles(edgeMinLat, i, j);
+        swapDoubles(edgeMaxLat, i, j);
+      }
+    }.sort(0, numEdges);
+
+    computeSubtreeMaxLon(0, numEdges);
+  }
+
+  private static void swapInts(int[] values, int i, int j) {
+    int tmp = values[i];
+    values[i] = values[j];
+    values[j] = tmp;
+  }
+
+  private static void swapDoubles(double[] values, int i, int j) {
+    double tmp = values[i];
+    values[i] = values[j];
+    values[j] = tmp;
+  }
+
+  private double computeSubtreeMaxLon(int lo, int hi) {
+    if (lo >= hi) {
+      return Double.NEGATIVE_INFINITY;
+    }
+    final int mid = (lo + hi) >>> 1;
+    double max = edgeMaxLon[mid];
+    max = Math.max(max, computeSubtreeMaxLon(lo, mid));
+    max = Math.max(max, computeSubtreeMaxLon(mid + 1, hi));
+    subtreeMaxLon[mid] = max;
+    return max;
+  }
+
+  /**
+   * Even-odd point in polygon computation, see {@link GeoRelationUtils#pointInPolygon}; only the
+   * edges whose longitude range holds the point are visited.
+   */
+  public boolean pointInPolygon(double lat, double lon) {
+    return pointInPolygon(lat, lon, 0, edgeEnd.length);
+  }
+
+  /** Returns the crossing parity of the edges in [lo, hi) of the sorted edges. */
+  private boolean pointInPolygon(double lat, double lon, int lo, int hi) {
+    boolean inPoly = false;
+    while (lo < hi) {
+      final int mid = (lo + hi) >>> 1;
+      if (subtreeMaxLon[mid] < lon) {
+        // no edge in this sub-tree reaches the point
+        break;
+      }
+      if (pointInPolygon(lat, lon, lo, mid)) {
+        inPoly = !inPoly;
+      }
+      if (edgeMinLon[mid] >= lon) {
+        // this edge, and all edges to its right, start at or after the point
+        break;
+      }
+      final int i = edgeEnd[mid];
+      final double[] x = polyLons;
+      final double[] y = polyLats;
+      if (x[i] < lon && x[i-1] >= lon || x[i-1] < lon && x[i] >= lon) {
+        if (y[i] + (lon - x[i]) / (x[i-1] - x[i]) * (y[i-1] - y[i]) < lat) {
+          inPoly = !inPoly;
+        }
+      }
+      // tail-recurse into the right sub-tree:
+      lo = mid + 1;
+    }
+    return inPoly;
+  }
+
+  /**
+   * Computes whether a rectangle crosses the polygon (touching not allowed), see {@link
+   * GeoRelationUtils#rectCrossesPoly}; only the edges whose bounding box is near the rectangle are
+   * visited.
+   */
+  public boolean rectCrossesPoly(double rMinX, double rMinY, double rMaxX, double rMaxY) {
+    // short-circuit: if the bounding boxes are disjoint then the shape does not cross
+    if (GeoRelationUtils.rectDisjoint(rMinX, rMinY, rMaxX, rMaxY, minLon, minLat, maxLon, maxLat)) {
+      return false;
+    }
+    final double[] bboxX = GeoRelationUtils.rectCornersX(rMinX, rMaxX);
+    final double[] bboxY = GeoRelationUtils.rectCornersY(rMinY, rMaxY);
+    return rectCrossesPoly(bboxX, bboxY, rMinX - RECT_SLACK, rMinY - RECT_SLACK, rMaxX + RECT_SLACK, rMaxY + RECT_SLACK, 0, edgeEnd.length);
+  }
+
+  private boolean rectCrossesPoly(double[] bboxX, double[] bboxY, double qMinX, double qMinY, double qMaxX, double qMaxY, int lo, int hi) {
+    while (lo < hi) {
+      final int mid = (lo + hi) >>> 1;
+      if (subtreeMaxLon[mid] < qMinX) {
+        return false;
+      }
+      if (rectCrossesPoly(bboxX, bboxY, qMinX, qMinY, qMaxX, qMaxY, lo, mid)) {
+        return true;
+      }
+      if (edgeMinLon[mid] > qMaxX) {
+        return false;
+      }
+      if (edgeMaxLon[mid] >= qMinX && edgeMaxLat[mid] >= qMinY && edgeMinLat[mid] <= qMaxY) {
+        final int i = edgeEnd[mid];
+        if (GeoRelationUtils.rectCrossesSegment(bboxX, bboxY, polyLons[i-1], polyLats[i-1], polyLons[i], polyLats[i])) {
+          return true;
+        }
+      }
+      lo = mid + 1;
+    }
+    return false;
+  }
+
+  /**
+   * Computes whether a rectangle is within the polygon (shared boundaries allowed), see {@link
+   * GeoRelationUtils#rectWithinPoly}.
+   */
+  public boolean rectWithinPoly(double rMinX, double rMinY, double rMaxX, double rMaxY) {
+    // check if rectangle crosses poly (to handle concave/pacman polys), then check that all 4 corners
+    // are contained
+    return !(rectCrossesPoly(rMinX, rMinY, rMaxX, rMaxY) ||
+        !pointInPolygon(rMinY, rMinX) || !pointInPolygon(rMinY, rMaxX) ||
+        !pointInPolygon(rMaxY, rMaxX) || !pointInPolygon(rMaxY, rMinX));
+  }
+}
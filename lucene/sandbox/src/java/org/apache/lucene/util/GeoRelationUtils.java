@@ -107,43 +107,66 @@ public class GeoRelationUtils {
       return false;
     }
 
-    final double[][] bbox = new double[][] { {rMinX, rMinY}, {rMaxX, rMinY}, {rMaxX, rMaxY}, {rMinX, rMaxY}, {rMinX, rMinY} };
+    final double[] bboxX = rectCornersX(rMinX, rMaxX);
+    final double[] bboxY = rectCornersY(rMinY, rMaxY);
     final int polyLength = shapeX.length-1;
+    for (int p=0; p<polyLength; ++p) {
+      if (rectCrossesSegment(bboxX, bboxY, shapeX[p], shapeY[p], shapeX[p+1], shapeY[p+1])) {
+        return true;
+      }
+    } // for each poly edge
+    return false;
+  }
+
+  /** Longitudes of the corners of a rectangle, in the order that {@link #rectCrossesSegment} expects */
+  static double[] rectCornersX(final double rMinX, final double rMaxX) {
+    return new double[] {rMinX, rMaxX, rMaxX, rMinX, rMinX};
+  }
+
+  /** Latitudes of the corners of a rectangle, in the order that {@link #rectCrossesSegment} expects */
+  static double[] rectCornersY(final double rMinY, final double rMaxY) {
+    return new double[] {rMinY, rMinY, rMaxY, rMaxY, rMinY};
+  }
+
+  /**
+   * Computes whether any edge of a rectangle (given by its closed list of corners) crosses the
+   * segment from (x0, y0) to (x1, y1) (touching not allowed)
+   */
+  static boolean rectCrossesSegment(final double[] bboxX, final double[] bboxY,
+                                    final double x0, final double y0, final double x1, final double y1) {
     double d, s, t, a1, b1, c1, a2, b2, c2;
     double x00, y00, x01, y01, x10, y10, x11, y11;
 
     // computes the intersection point between each bbox edge and the polygon edge
     for (short b=0; b<4; ++b) {
-      a1 = bbox[b+1][1]-bbox[b][1];
-      b1 = bbox[b][0]-bbox[b+1][0];
-      c1 = a1*bbox[b+1][0] + b1*bbox[b+1][1];
-      for (int p=0; p<polyLength; ++p) {
-        a2 = shapeY[p+1]-shapeY[p];
-        b2 = shapeX[p]-shapeX[p+1];
-        // compute determinant
-        d = a1*b2 - a2*b1;
-        if (d != 0) {
-          // lines are not parallel, check intersecting points
-          c2 = a2*shapeX[p+1] + b2*shapeY[p+1];
-          s = (1/d)*(b2*c1 - b1*c2);
-          t = (1/d)*(a1*c2 - a2*c1);
-          x00 = StrictMath.min(bbox[b][0], bbox[b+1][0]) - GeoUtils.TOLERANCE;
-          x01 = StrictMath.max(bbox[b][0], bbox[b+1][0]) + GeoUtils.TOLERANCE;
-          y00 = StrictMath.min(bbox[b][1], bbox[b+1][1]) - GeoUtils.TOLERANCE;
-          y01 = StrictMath.max(bbox[b][1], bbox[b+1][1]) + GeoUtils.TOLERANCE;
-          x10 = StrictMath.min(shapeX[p], shapeX[p+1]) - GeoUtils.TOLERANCE;
-          x11 = StrictMath.max(shapeX[p], shapeX[p+1]) + GeoUtils.TOLERANCE;
-          y10 = StrictMath.min(shapeY[p], shapeY[p+1]) - GeoUtils.TOLERANCE;
-          y11 = StrictMath.max(shapeY[p], shapeY[p+1]) + GeoUtils.TOLERANCE;
-          // check whether the intersection point is touching one of the line segments
-          boolean touching = ((x00 == s && y00 == t) || (x01 == s && y01 == t))
-              || ((x10 == s && y10 == t) || (x11 == s && y11 == t));
-          // if line segments are not touching and the intersection point is within the range of either segment
-          if (!(touching || x00 > s || x01 < s || y00 > t || y01 < t || x10 > s || x11 < s || y10 > t || y11 < t)) {
-            return true;
-          }
+      a1 = bboxY[b+1]-bboxY[b];
+      b1 = bboxX[b]-bboxX[b+1];
+      c1 = a1*bboxX[b+1] + b1*bboxY[b+1];
+      a2 = y1-y0;
+      b2 = x0-x1;
+      // compute determinant
+      d = a1*b2 - a2*b1;
+      if (d != 0) {
+        // lines are not parallel, check intersecting points
+        c2 = a2*x1 + b2*y1;
+        s = (1/d)*(b2*c1 - b1*c2);
+        t = (1/d)*(a1*c2 - a2*c1);
+        x00 = StrictMath.min(bboxX[b], bboxX[b+1]) - GeoUtils.TOLERANCE;
+        x01 = StrictMath.max(bboxX[b], bboxX[b+1]) + GeoUtils.TOLERANCE;
+        y00 = StrictMath.min(bboxY[b], bboxY[b+1]) - GeoUtils.TOLERANCE;
+        y01 = StrictMath.max(bboxY[b], bboxY[b+1]) + GeoUtils.TOLERANCE;
+        x10 = StrictMath.min(x0, x1) - GeoUtils.TOLERANCE;
+        x11 = StrictMath.max(x0, x1) + GeoUtils.TOLERANCE;
+        y10 = StrictMath.min(y0, y1) - GeoUtils.TOLERANCE;
+        y11 = StrictMath.max(y0, y1) + GeoUtils.TOLERANCE;
+        // check whether the intersection point is touching one of the line segments
+        boolean touching = ((x00 == s && y00 == t) || (x01 == s && y01 == t))
+            || ((x10 == s && y10 == t) || (x11 == s && y11 == t));
+        // if line segments are not touching and the intersection point is within the range of either segment
+        if (!(touching || x00 > s || x01 < s || y00 > t || y01 < t || x10 > s || x11 < s || y10 > t || y11 < t)) {
+          return true;
         }
-      } // for each poly edge
+      }
     } // for each bbox edge
     return false;
   }
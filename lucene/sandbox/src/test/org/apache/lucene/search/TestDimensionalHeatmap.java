@@ -0,0 +1,171 @@
+package org.apache.lucene.search;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.apache.lucene.document.DimensionalLatLonField;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.RandomIndexWriter;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.LuceneTestCase;
+import org.apache.lucene.util.TestUtil;
+
+public class TestDimensionalHeatmap extends LuceneTestCase {
+
+  public void testBasic() throws Exception {
+    Directory dir = newDirectory();
+    RandomIndexWriter w = new RandomIndexWriter(random(), dir);
+    Document doc = new Document();
+    doc.add(new DimensionalLatLonField("point", 10.0, 10.0));
+    w.addDocument(doc);
+    doc = new Document();
+    doc.add(new DimensionalLatLonField("point", -10.0, 10.0));
+    w.addDocument(doc);
+    doc = new Document();
+    doc.add(new DimensionalLatLonField("point", -10.0, -10.0));
+    doc.add(new DimensionalLatLonField("point", -11.0, -11.0));
+    w.addDocument(doc);
+    doc = new Document();
+    // outside of the grid:
+    doc.add(new DimensionalLatLonField("point", 50.0, 50.0));
+    w.addDocument(doc);
+    w.addDocument(new Document());
+
+    DirectoryReader r = w.getReader();
+    IndexSearcher s = newSearcher(r, false);
+    DimensionalHeatmap heatmap = DimensionalHeatmap.compute(s, "point", -20, 20, -20, 20, 2, 2);
+    assertEquals(2, heatmap.columns);
+    assertEquals(2, heatmap.rows);
+    assertEquals(2, heatmap.getCount(0, 0));
+    assertEquals(0, heatmap.getCount(0, 1));
+    assertEquals(1, heatmap.getCount(1, 0));
+    assertEquals(1, heatmap.getCount(1, 1));
+    r.close();
+    w.close();
+    dir.close();
+  }
+
+  public void testIllegalArgs() throws Exception {
+    Directory dir = newDirectory();
+    RandomIndexWriter w = new RandomIndexWriter(random(), dir);
+    w.addDocument(new Document());
+    DirectoryReader r = w.getReader();
+    IndexSearcher s = newSearcher(r, false);
+    try {
+      DimensionalHeatmap.compute(s, "point", -10, 10, -10, 10, 0, 1);
+      fail("did not hit exception");
+    } catch (IllegalArgumentException iae) {
+      assertTrue(iae.getMessage().contains("columns must be at least 1"));
+    }
+    try {
+      DimensionalHeatmap.compute(s, "point", 10, -10, -10, 10, 1, 1);
+      fail("did not hit exception");
+    } catch (IllegalArgumentException iae) {
+      assertTrue(iae.getMessage().contains("minLat must be <= maxLat"));
+    }
+    r.close();
+    w.close();
+    dir.close();
+  }
+
+  public void testRandom() throws Exception {
+    Directory dir = newDirectory();
+    IndexWriterConfig iwc = newIndexWriterConfig();
+    if (random().nextBoolean()) {
+      // Make sure we exercise the BKD traversal:
+      iwc.setCodec(TestUtil.getDefaultCodec());
+    }
+    RandomIndexWriter w = new RandomIndexWriter(random(), dir, iwc);
+    int numPoints = atLeast(1000);
+    double[] lats = new double[numPoints];
+    double[] lons = new double[numPoints];
+    for(int id=0;id<numPoints;id++) {
+      Document doc = new Document();
+      // cluster the points, so some BKD cells fall in a single grid cell:
+      lats[id] = -90 + 180.0 * random().nextDouble() * random().nextDouble();
+      lons[id] = -180 + 360.0 * random().nextDouble() * random().nextDouble();
+      // round trip through the encoding, since that is what the index stores:
+      lats[id] = DimensionalLatLonField.decodeLat(DimensionalLatLonField.encodeLat(lats[id]));
+      lons[id] = DimensionalLatLonField.decodeLon(DimensionalLatLonField.encodeLon(lons[id]));
+      doc.add(new DimensionalLatLonField("point", lats[id], lons[id]));
+      doc.add(new StringField("id", Integer.toString(id), Field.Store.NO));
+      doc.add(new StringField("even", (id % 2) == 0 ? "yes" : "no", Field.Store.NO));
+      w.addDocument(doc);
+    }
+
+    boolean[] deleted = new boolean[numPoints];
+    int numDeletes = random().nextInt(numPoints/10);
+    for(int i=0;i<numDeletes;i++) {
+      int id = random().nextInt(numPoints);
+      deleted[id] = true;
+      w.deleteDocuments(new Term("id", Integer.toString(id)));
+    }
+    if (random().nextBoolean()) {
+      w.forceMerge(1);
+    }
+
+    DirectoryReader r = w.getReader();
+    IndexSearcher s = newSearcher(r, false);
+
+    int iters = atLeast(20);
+    for(int iter=0;iter<iters;iter++) {
+      double lat1 = -90 + 180.0 * random().nextDouble();
+      double lat2 = -90 + 180.0 * random().nextDouble();
+      double lon1 = -180 + 360.0 * random().nextDouble();
+      double lon2 = -180 + 360.0 * random().nextDouble();
+      double minLat = Math.min(lat1, lat2);
+      double maxLat = Math.max(lat1, lat2);
+      double minLon = Math.min(lon1, lon2);
+      double maxLon = Math.max(lon1, lon2);
+      int columns = TestUtil.nextInt(random(), 1, 50);
+      int rows = TestUtil.nextInt(random(), 1, 50);
+      boolean useFilter = random().nextBoolean();
+      if (VERBOSE) {
+        System.out.println("\nTEST: iter=" + iter + " lat=" + minLat + " TO " + maxLat + " lon=" + minLon + " TO " + maxLon +
+                           " columns=" + columns + " rows=" + rows + " useFilter=" + useFilter);
+      }
+
+      DimensionalHeatmap heatmap = DimensionalHeatmap.compute(s, "point", minLat, maxLat, minLon, maxLon, columns, rows,
+                                                              useFilter ? new TermQuery(new Term("even", "yes")) : null);
+
+      // Brute force:
+      int[] expected = new int[columns * rows];
+      for(int id=0;id<numPoints;id++) {
+        if (deleted[id] || (useFilter && id % 2 != 0)) {
+          continue;
+        }
+        if (lats[id] >= minLat && lats[id] <= maxLat && lons[id] >= minLon && lons[id] <= maxLon) {
+          expected[heatmap.column(lons[id]) * rows + heatmap.row(lats[id])]++;
+        }
+      }
+      for(int column=0;column<columns;column++) {
+        for(int row=0;row<rows;row++) {
+          assertEquals("column=" + column + " row=" + row, expected[column * rows + row], heatmap.getCount(column, row));
+        }
+      }
+    }
+
+    r.close();
+    w.close();
+    dir.close();
+  }
+}
@@ -0,0 +1,203 @@
+package org.apache.lucene.search;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.lucene.document.DimensionalLatLonField;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.RandomIndexWriter;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.GeoDistanceUtils;
+import org.apache.lucene.util.LuceneTestCase;
+import org.apache.lucene.util.TestUtil;
+
+public class TestDimensionalNearestNeighbor extends LuceneTestCase {
+
+  private static double randomLat() {
+    return -90 + 180.0 * random().nextDouble();
+  }
+
+  private static double randomLon() {
+    return -180 + 360.0 * random().nextDouble();
+  }
+
+  public void testBasic() throws Exception {
+    Directory dir = newDirectory();
+    RandomIndexWriter w = new RandomIndexWriter(random(), dir);
+    Document doc = new Document();
+    doc.add(new DimensionalLatLonField("point", 40.0, 50.0));
+    doc.add(new StringField("id", "0", Field.Store.YES));
+    w.addDocument(doc);
+    doc = new Document();
+    doc.add(new DimensionalLatLonField("point", 45.0, 55.0));
+    doc.add(new StringField("id", "1", Field.Store.YES));
+    w.addDocument(doc);
+    doc = new Document();
+    // no point:
+    doc.add(new StringField("id", "2", Field.Store.YES));
+    w.addDocument(doc);
+
+    DirectoryReader r = w.getReader();
+    // can't wrap because we require Lucene60DimensionalReader for the fast path:
+    IndexSearcher s = newSearcher(r, false);
+    TopDocs hits = DimensionalNearestNeighbor.nearest(s, "point", 40.0, 50.0, 3);
+    assertEquals(2, hits.scoreDocs.length);
+    assertEquals("0", r.document(hits.scoreDocs[0].doc).get("id"));
+    assertEquals(0.0, (Double) ((FieldDoc) hits.scoreDocs[0]).fields[0], 1.0);
+    assertEquals("1", r.document(hits.scoreDocs[1].doc).get("id"));
+
+    hits = DimensionalNearestNeighbor.nearest(s, "point", 46.0, 56.0, 1);
+    assertEquals(1, hits.scoreDocs.length);
+    assertEquals("1", r.document(hits.scoreDocs[0].doc).get("id"));
+
+    w.deleteDocuments(new Term("id", "1"));
+    r.close();
+    r = w.getReader();
+    s = newSearcher(r, false);
+    hits = DimensionalNearestNeighbor.nearest(s, "point", 46.0, 56.0, 1);
+    assertEquals(1, hits.scoreDocs.length);
+    assertEquals("0", r.document(hits.scoreDocs[0].doc).get("id"));
+
+    r.close();
+    w.close();
+    dir.close();
+  }
+
+  public void testIllegalArgs() throws Exception {
+    Directory dir = newDirectory();
+    RandomIndexWriter w = new RandomIndexWriter(random(), dir);
+    w.addDocument(new Document());
+    DirectoryReader r = w.getReader();
+    IndexSearcher s = newSearcher(r, false);
+    try {
+      DimensionalNearestNeighbor.nearest(s, "point", 40.0, 50.0, 0);
+      fail("did not hit exception");
+    } catch (IllegalArgumentException iae) {
+      assertTrue(iae.getMessage().contains("n must be at least 1"));
+    }
+    try {
+      DimensionalNearestNeighbor.nearest(s, "point", 91.0, 50.0, 1);
+      fail("did not hit exception");
+    } catch (IllegalArgumentException iae) {
+      assertTrue(iae.getMessage().contains("invalid lat"));
+    }
+    r.close();
+    w.close();
+    dir.close();
+  }
+
+  public void testRandom() throws Exception {
+    Directory dir = newDirectory();
+    IndexWriterConfig iwc = newIndexWriterConfig();
+    if (random().nextBoolean()) {
+      // Make sure we exercise the best-first path over BKD trees:
+      iwc.setCodec(TestUtil.getDefaultCodec());
+    }
+    RandomIndexWriter w = new RandomIndexWriter(random(), dir, iwc);
+    int numPoints = atLeast(1000);
+    double[] lats = new double[numPoints];
+    double[] lons = new double[numPoints];
+    for(int id=0;id<numPoints;id++) {
+      Document doc = new Document();
+      if (id > 0 && random().nextInt(10) == 7) {
+        // duplicate point:
+        lats[id] = lats[random().nextInt(id)];
+        lons[id] = lons[random().nextInt(id)];
+      } else {
+        lats[id] = randomLat();
+        lons[id] = randomLon();
+      }
+      // round trip through the encoding, since that is what the index stores:
+      lats[id] = DimensionalLatLonField.decodeLat(DimensionalLatLonField.encodeLat(lats[id]));
+      lons[id] = DimensionalLatLonField.decodeLon(DimensionalLatLonField.encodeLon(lons[id]));
+      doc.add(new DimensionalLatLonField("point", lats[id], lons[id]));
+      doc.add(new StringField("id", Integer.toString(id), Field.Store.YES));
+      doc.add(new StringField("even", (id % 2) == 0 ? "yes" : "no", Field.Store.NO));
+      w.addDocument(doc);
+    }
+
+    boolean[] deleted = new boolean[numPoints];
+    int numDeletes = random().nextInt(numPoints/10);
+    for(int i=0;i<numDeletes;i++) {
+      int id = random().nextInt(numPoints);
+      deleted[id] = true;
+      w.deleteDocuments(new Term("id", Integer.toString(id)));
+    }
+    if (random().nextBoolean()) {
+      w.forceMerge(1);
+    }
+
+    DirectoryReader r = w.getReader();
+    IndexSearcher s = newSearcher(r, false);
+    int[] idToDocID = new int[numPoints];
+    for(int docID=0;docID<r.maxDoc();docID++) {
+      String id = r.document(docID).get("id");
+      idToDocID[Integer.parseInt(id)] = docID;
+    }
+
+    int iters = atLeast(20);
+    for(int iter=0;iter<iters;iter++) {
+      double pointLat = randomLat();
+      double pointLon = randomLon();
+      int n = TestUtil.nextInt(random(), 1, 100);
+      boolean useFilter = random().nextBoolean();
+      if (VERBOSE) {
+        System.out.println("\nTEST: iter=" + iter + " lat=" + pointLat + " lon=" + pointLon + " n=" + n + " useFilter=" + useFilter);
+      }
+
+      TopDocs hits = DimensionalNearestNeighbor.nearest(s, "point", pointLat, pointLon, n,
+                                                        useFilter ? new TermQuery(new Term("even", "yes")) : null);
+
+      // Brute force:
+      List<double[]> expected = new ArrayList<>();
+      for(int id=0;id<numPoints;id++) {
+        if (deleted[id] || (useFilter && id % 2 != 0)) {
+          continue;
+        }
+        expected.add(new double[] {GeoDistanceUtils.haversin(pointLat, pointLon, lats[id], lons[id]), idToDocID[id]});
+      }
+      Collections.sort(expected, (a, b) -> {
+          int cmp = Double.compare(a[0], b[0]);
+          if (cmp != 0) {
+            return cmp;
+          }
+          return Double.compare(a[1], b[1]);
+        });
+
+      assertEquals(Math.min(n, expected.size()), hits.scoreDocs.length);
+      for(int i=0;i<hits.scoreDocs.length;i++) {
+        FieldDoc hit = (FieldDoc) hits.scoreDocs[i];
+        double[] expectedHit = expected.get(i);
+        assertEquals("hit " + i, expectedHit[0], (Double) hit.fields[0], 0.0);
+        assertEquals("hit " + i, (int) expectedHit[1], hit.doc);
+      }
+    }
+
+    r.close();
+    w.close();
+    dir.close();
+  }
+}
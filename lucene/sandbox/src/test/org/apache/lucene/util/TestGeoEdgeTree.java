@@ -0,0 +1,101 @@
+package org.apache.lucene.util;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+public class TestGeoEdgeTree extends LuceneTestCase {
+
+  /** Random star-shaped (so not self-crossing, but often concave) closed polygon */
+  private static double[][] randomPolygon() {
+    double centerLat = -45 + 90 * random().nextDouble();
+    double centerLon = -90 + 180 * random().nextDouble();
+    double maxRadius = 0.1 + 40 * random().nextDouble();
+    int numVertices = TestUtil.nextInt(random(), 3, random().nextBoolean() ? 20 : 2000);
+    double[] lats = new double[numVertices+1];
+    double[] lons = new double[numVertices+1];
+    for (int i = 0; i < numVertices; ++i) {
+      double angle = 2 * Math.PI * i / numVertices;
+      double radius = maxRadius * (0.2 + 0.8 * random().nextDouble());
+      lats[i] = centerLat + radius * Math.sin(angle);
+      lons[i] = centerLon + radius * Math.cos(angle);
+    }
+    lats[numVertices] = lats[0];
+    lons[numVertices] = lons[0];
+    return new double[][] {lons, lats};
+  }
+
+  public void testMatchesGeoRelationUtils() {
+    int iters = atLeast(20);
+    for (int iter = 0; iter < iters; ++iter) {
+      double[][] poly = randomPolygon();
+      double[] lons = poly[0];
+      double[] lats = poly[1];
+      double minLon = Double.POSITIVE_INFINITY;
+      double minLat = Double.POSITIVE_INFINITY;
+      double maxLon = Double.NEGATIVE_INFINITY;
+      double maxLat = Double.NEGATIVE_INFINITY;
+      for (int i = 0; i < lons.length; ++i) {
+        minLon = Math.min(minLon, lons[i]);
+        maxLon = Math.max(maxLon, lons[i]);
+        minLat = Math.min(minLat, lats[i]);
+        maxLat = Math.max(maxLat, lats[i]);
+      }
+
+      GeoEdgeTree tree = new GeoEdgeTree(lons, lats);
+      double spanLon = maxLon - minLon;
+      double spanLat = maxLat - minLat;
+
+      for (int i = 0; i < 200; ++i) {
+        double lon;
+        double lat;
+        if (random().nextInt(5) == 0) {
+          // exactly on a vertex:
+          int vertex = random().nextInt(lons.length);
+          lon = lons[vertex];
+          lat = lats[vertex];
+        } else {
+          lon = minLon - spanLon/10 + spanLon * 1.2 * random().nextDouble();
+          lat = minLat - spanLat/10 + spanLat * 1.2 * random().nextDouble();
+        }
+        assertEquals(GeoRelationUtils.pointInPolygon(lons, lats, lat, lon), tree.pointInPolygon(lat, lon));
+
+        double rMinLon = lon;
+        double rMinLat = lat;
+        double rMaxLon = lon + spanLon * random().nextDouble() / (1 << random().nextInt(8));
+        double rMaxLat = lat + spanLat * random().nextDouble() / (1 << random().nextInt(8));
+        assertEquals(GeoRelationUtils.rectCrossesPoly(rMinLon, rMinLat, rMaxLon, rMaxLat, lons, lats, minLon, minLat, maxLon, maxLat),
+                     tree.rectCrossesPoly(rMinLon, rMinLat, rMaxLon, rMaxLat));
+        assertEquals(GeoRelationUtils.rectWithinPoly(rMinLon, rMinLat, rMaxLon, rMaxLat, lons, lats, minLon, minLat, maxLon, maxLat),
+                     tree.rectWithinPoly(rMinLon, rMinLat, rMaxLon, rMaxLat));
+      }
+    }
+  }
+
+  public void testSquare() {
+    double[] lons = new double[] {-10, 10, 10, -10, -10};
+    double[] lats = new double[] {-10, -10, 10, 10, -10};
+    GeoEdgeTree tree = new GeoEdgeTree(lons, lats);
+    assertTrue(tree.pointInPolygon(0, 0));
+    assertFalse(tree.pointInPolygon(20, 0));
+    assertFalse(tree.pointInPolygon(0, 20));
+    assertTrue(tree.rectWithinPoly(-5, -5, 5, 5));
+    assertFalse(tree.rectCrossesPoly(-5, -5, 5, 5));
+    assertTrue(tree.rectCrossesPoly(5, 5, 15, 15));
+    assertFalse(tree.rectWithinPoly(5, 5, 15, 15));
+    assertFalse(tree.rectCrossesPoly(20, 20, 30, 30));
+  }
+}
@@ -0,0 +1,288 @@
+package org.apache.lucene.spatial.prefix;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.spatial4j.core.shape.Point;
+import com.spatial4j.core.shape.Shape;
+import com.spatial4j.core.shape.SpatialRelation;
+import org.apache.lucene.spatial.prefix.tree.Cell;
+import org.apache.lucene.spatial.prefix.tree.CellIterator;
+import org.apache.lucene.spatial.prefix.tree.LegacyCell;
+import org.apache.lucene.spatial.prefix.tree.SpatialPrefixTree;
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefBuilder;
+
+/**
+ * Caches the decomposition of query shapes into grid cells, so that the shape relations computed
+ * by {@link Cell#getNextLevelCells(Shape)} are done once and then re-used by all segments, and by
+ * later queries on the same shape.  The sub-cells of each visited cell are stored packed into a
+ * single byte[] (per sub-cell: relation and leaf flags, token length, and the token bytes), keyed
+ * by the parent's token.
+ * <p>
+ * Decompositions are kept for at most {@code maxShapes} shapes, and in at most
+ * {@code maxRamBytesUsed} bytes overall; the least recently used shapes are evicted first.  This
+ * cache is disabled by default: create one and pass it to
+ * {@link RecursivePrefixTreeStrategy#setCellDecompositionCache} to enable it, for instance when
+ * users pan and zoom over the same regions repeatedly.  Only grids of {@link LegacyCell}s, which
+ * don't share state, are supported; queries on other grids, and on points, don't use the cache.
+ * <p>
+ * This class is thread-safe.
+ *
+ * @lucene.experimental
+ */
+public final class CellDecompositionCache implements Accountable {
+
+  private static final SpatialRelation[] RELATIONS = SpatialRelation.values();
+
+  private final int maxShapes;
+  private final long maxRamBytesUsed;
+  // access-ordered, guarded by this:
+  private final Map<Key, Decomposition> decompositions = new LinkedHashMap<>(16, 0.75f, true);
+  private final AtomicLong ramBytesUsed = new AtomicLong();
+
+  /**
+   * Create a new cache.
+   *
+   * @param maxShapes how many shapes to keep decompositions of
+   * @param maxRamBytesUsed how many bytes the decompositions of all shapes may take
+   */
+  public CellDecompositionCache(int maxShapes, long maxRamBytesUsed) {
+    if (maxShapes < 1) {
+      throw new IllegalArgumentException("maxShapes must be >= 1 (got " + maxShapes + ")");
+    }
+    if (maxRamBytesUsed < 0) {
+      throw new IllegalArgumentException("maxRamBytesUsed must be >= 0 (got " + maxRamBytesUsed + ")");
+    }
+    this.maxShapes = maxShapes;
+    this.maxRamBytesUsed = maxRamBytesUsed;
+  }
+
+  /**
+   * Returns the decomposition of this query shape on this grid, or null if it should not be
+   * cached: points are cheap to decompose, and other grids may share state between cells.
+   */
+  synchronized Decomposition forShape(SpatialPrefixTree grid, Shape shape) {
+    if (shape instanceof Point || !(grid.getWorldCell() instanceof LegacyCell)) {
+      return null;
+    }
+    final Key key = new Key(grid, shape);
+    Decomposition decomposition = decompositions.get(key);
+    if (decomposition == null) {
+      decomposition = new Decomposition(grid, shape);
+      decompositions.put(key, decomposition);
+      final Iterator<Decomposition> it = decompositions.values().iterator();
+      while (decompositions.size() > maxShapes) {
+        evict(it.next());
+        it.remove();
+      }
+    }
+    return decomposition;
+  }
+
+  /** Clears the decompositions of all shapes. */
+  public synchronized void clear() {
+    for (Decomposition decomposition : decompositions.values()) {
+      evict(decomposition);
+    }
+    decompositions.clear();
+  }
+
+  /** Evicts least recently used decompositions other than {@code keep}, until {@code bytes} more bytes fit. */
+  private synchronized void evictFor(Decomposition keep, long bytes) {
+    final Iterator<Decomposition> it = decompositions.values().iterator();
+    while (ramBytesUsed.get() + bytes > maxRamBytesUsed && it.hasNext()) {
+      final Decomposition decomposition = it.next();
+      if (decomposition != keep) {
+        evict(decomposition);
+        it.remove();
+      }
+    }
+  }
+
+  private void evict(Decomposition decomposition) {
+    synchronized (decomposition) {
+      decomposition.evicted = true;
+      ramBytesUsed.addAndGet(-decomposition.bytesUsed);
+    }
+  }
+
+  /** Reserves {@code bytes} bytes, or returns false if they don't fit. */
+  private boolean tryReserve(long bytes) {
+    while (true) {
+      final long current = ramBytesUsed.get();
+      if (current + bytes > maxRamBytesUsed) {
+        return false;
+      }
+      if (ramBytesUsed.compareAndSet(current, current + bytes)) {
+        return true;
+      }
+    }
+  }
+
+  /** Number of shapes whose decompositions are currently cached. */
+  synchronized int size() {
+    return decompositions.size();
+  }
+
+  /** Returns the number of packed bytes, including the keys, held for all shapes. */
+  @Override
+  public long ramBytesUsed() {
+    return ramBytesUsed.get();
+  }
+
+  /** The cached decomposition of one query shape. */
+  final class Decomposition {
+
+    private final SpatialPrefixTree grid;
+    private final Shape shape;
+    private final Map<BytesRef, byte[]> subCells = new ConcurrentHashMap<>();
+    // guarded by this:
+    private long bytesUsed;
+    private boolean evicted;
+
+    Decomposition(SpatialPrefixTree grid, Shape shape) {
+      this.grid = grid;
+      this.shape = shape;
+    }
+
+    /** Number of packed bytes, including the keys, held for this shape. */
+    synchronized long ramBytesUsed() {
+      return bytesUsed;
+    }
+
+    /**
+     * Same as {@code cell.getNextLevelCells(shape)}: the sub-cells that intersect the shape, with
+     * their {@link Cell#getShapeRel()} set.
+     */
+    CellIterator getNextLevelCells(Cell cell) {
+      final byte[] packed = subCells.get(cell.getTokenBytesNoLeaf(null));
+      if (packed != null) {
+        return new ListCellIterator(unpack(packed));
+      }
+
+      final List<Cell> cells = new ArrayList<>();
+      final BytesRefBuilder builder = new BytesRefBuilder();
+      final BytesRef scratch = new BytesRef();
+      final CellIterator iterator = cell.getNextLevelCells(shape);
+      while (iterator.hasNext()) {
+        final Cell subCell = iterator.next();
+        cells.add(subCell);
+        final BytesRef token = subCell.getTokenBytesNoLeaf(scratch);
+        assert token.length <= 0xff;
+        builder.append((byte) (subCell.getShapeRel().ordinal() << 1 | (subCell.isLeaf() ? 1 : 0)));
+        builder.append((byte) token.length);
+        builder.append(token);
+      }
+
+      final BytesRef key = BytesRef.deepCopyOf(cell.getTokenBytesNoLeaf(null));
+      final long bytes = key.length + builder.length();
+      if (tryReserve(bytes) == false) {
+        evictFor(this, bytes);
+        if (tryReserve(bytes) == false) {
+          // does not fit in the cache, even on its own
+          return new ListCellIterator(cells);
+        }
+      }
+      synchronized (this) {
+        // another thread may have cached the same cell in the meantime, or this shape was evicted:
+        if (evicted || subCells.putIfAbsent(key, builder.toBytesRef().bytes) != null) {
+          ramBytesUsed.addAndGet(-bytes);
+        } else {
+          bytesUsed += bytes;
+        }
+      }
+      return new ListCellIterator(cells);
+    }
+
+    private List<Cell> unpack(byte[] packed) {
+      final List<Cell> cells = new ArrayList<>();
+      int upto = 0;
+      while (upto < packed.length) {
+        final int flags = packed[upto++] & 0xff;
+        final int length = packed[upto++] & 0xff;
+        // one spare byte, for the leaf marker some cells add in place:
+        final byte[] token = new byte[length + 1];
+        System.arraycopy(packed, upto, token, 0, length);
+        upto += length;
+        final Cell subCell = grid.readCell(new BytesRef(token, 0, length), null);
+        if ((flags & 1) != 0) {
+          subCell.setLeaf();
+        }
+        subCell.setShapeRel(RELATIONS[flags >>> 1]);
+        cells.add(subCell);
+      }
+      return cells;
+    }
+  }
+
+  /** Iterates over already computed cells. */
+  private static final class ListCellIterator extends CellIterator {
+    private final List<Cell> cells;
+    private int upto;
+
+    ListCellIterator(List<Cell> cells) {
+      this.cells = cells;
+    }
+
+    @Override
+    public boolean hasNext() {
+      thisCell = null;
+      if (nextCell != null) {
+        return true;
+      }
+      if (upto < cells.size()) {
+        nextCell = cells.get(upto++);
+        return true;
+      }
+      return false;
+    }
+  }
+
+  private static final class Key {
+    final SpatialPrefixTree grid;
+    final Shape shape;
+
+    Key(SpatialPrefixTree grid, Shape shape) {
+      this.grid = grid;
+      this.shape = shape;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) obj;
+      return grid == other.grid && shape.equals(other.shape);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * System.identityHashCode(grid) + shape.hashCode();
+    }
+  }
+}
@@ -24,6 +24,7 @@ import com.spatial4j.core.shape.SpatialRelation;
 import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.search.DocIdSet;
 import org.apache.lucene.spatial.prefix.tree.Cell;
+import org.apache.lucene.spatial.prefix.tree.CellIterator;
 import org.apache.lucene.spatial.prefix.tree.SpatialPrefixTree;
 import org.apache.lucene.util.BitDocIdSet;
 import org.apache.lucene.util.FixedBitSet;
@@ -36,10 +37,23 @@ import org.apache.lucene.util.FixedBitSet;
  */
 public class IntersectsPrefixTreeQuery extends AbstractVisitingPrefixTreeQuery {
 
+  private final CellDecompositionCache cellCache;
+
   public IntersectsPrefixTreeQuery(Shape queryShape, String fieldName,
                                    SpatialPrefixTree grid, int detailLevel,
                                    int prefixGridScanLevel) {
+    this(queryShape, fieldName, grid, detailLevel, prefixGridScanLevel, null);
+  }
+
+  /**
+   * @param cellCache if not null, caches the decomposition of the query shape into cells across
+   *                  segments and queries
+   */
+  public IntersectsPrefixTreeQuery(Shape queryShape, String fieldName,
+                                   SpatialPrefixTree grid, int detailLevel,
+                                   int prefixGridScanLevel, CellDecompositionCache cellCache) {
     super(queryShape, fieldName, grid, detailLevel, prefixGridScanLevel);
+    this.cellCache = cellCache;
   }
 
   @Override
@@ -53,6 +67,8 @@ public class IntersectsPrefixTreeQuery extends AbstractVisitingPrefixTreeQuery {
     * Point query shape optimization when the only indexed data is a point (no leaves).  Result is a term query.
 
      */
+    // Shared by all segments (and recent queries on the same shape), so the shape relations are only computed once:
+    final CellDecompositionCache.Decomposition decomposition = cellCache == null ? null : cellCache.forShape(grid, queryShape);
     return new VisitorTemplate(context) {
       private FixedBitSet results;
 
@@ -66,6 +82,14 @@ public class IntersectsPrefixTreeQuery extends AbstractVisitingPrefixTreeQuery {
         return new BitDocIdSet(results);
       }
 
+      @Override
+      protected CellIterator findSubCellsToVisit(Cell cell) {
+        if (decomposition == null) {
+          return super.findSubCellsToVisit(cell);
+        }
+        return decomposition.getNextLevelCells(cell);
+      }
+
       @Override
       protected boolean visitPrefix(Cell cell) throws IOException {
         if (cell.getShapeRel() == SpatialRelation.WITHIN || cell.getLevel() == detailLevel) {
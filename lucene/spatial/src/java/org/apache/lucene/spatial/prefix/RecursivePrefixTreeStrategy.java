@@ -58,6 +58,8 @@ public class RecursivePrefixTreeStrategy extends PrefixTreeStrategy {
 
   protected boolean multiOverlappingIndexedShapes = true;
 
+  protected CellDecompositionCache cellDecompositionCache;
+
   public RecursivePrefixTreeStrategy(SpatialPrefixTree grid, String fieldName) {
     super(grid, fieldName);
     prefixGridScanLevel = grid.getMaxLevels() - 4;//TODO this default constant is dependent on the prefix grid size
@@ -105,6 +107,20 @@ public class RecursivePrefixTreeStrategy extends PrefixTreeStrategy {
     this.pruneLeafyBranches = pruneLeafyBranches;
   }
 
+  /** See {@link #setCellDecompositionCache(CellDecompositionCache)}. */
+  public CellDecompositionCache getCellDecompositionCache() {
+    return cellDecompositionCache;
+  }
+
+  /**
+   * Sets the cache for the decompositions of query shapes into cells, which intersects queries
+   * share across segments and queries; null, the default, disables caching.  The cache may be
+   * shared by several strategies.
+   */
+  public void setCellDecompositionCache(CellDecompositionCache cellDecompositionCache) {
+    this.cellDecompositionCache = cellDecompositionCache;
+  }
+
   @Override
   public String toString() {
     StringBuilder str = new StringBuilder(getClass().getSimpleName()).append('(');
@@ -179,7 +195,7 @@ public class RecursivePrefixTreeStrategy extends PrefixTreeStrategy {
 
     if (op == SpatialOperation.Intersects) {
       return new IntersectsPrefixTreeQuery(
-          shape, getFieldName(), grid, detailLevel, prefixGridScanLevel);
+          shape, getFieldName(), grid, detailLevel, prefixGridScanLevel, cellDecompositionCache);
     } else if (op == SpatialOperation.IsWithin) {
       return new WithinPrefixTreeQuery(
           shape, getFieldName(), grid, detailLevel, prefixGridScanLevel,
@@ -0,0 +1,138 @@
+package org.apache.lucene.spatial.prefix;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.spatial4j.core.context.SpatialContext;
+import com.spatial4j.core.shape.Shape;
+import org.apache.lucene.spatial.prefix.tree.Cell;
+import org.apache.lucene.spatial.prefix.tree.CellIterator;
+import org.apache.lucene.spatial.prefix.tree.GeohashPrefixTree;
+import org.apache.lucene.spatial.prefix.tree.PackedQuadPrefixTree;
+import org.apache.lucene.spatial.prefix.tree.QuadPrefixTree;
+import org.apache.lucene.spatial.prefix.tree.SpatialPrefixTree;
+import org.apache.lucene.util.LuceneTestCase;
+import org.apache.lucene.util.TestUtil;
+
+public class CellDecompositionCacheTest extends LuceneTestCase {
+
+  private final SpatialContext ctx = SpatialContext.GEO;
+
+  private SpatialPrefixTree randomGrid() {
+    switch (random().nextInt(3)) {
+      case 0:
+        return new GeohashPrefixTree(ctx, TestUtil.nextInt(random(), 2, 4));
+      case 1:
+        return new QuadPrefixTree(ctx, TestUtil.nextInt(random(), 3, 8));
+      default:
+        return new PackedQuadPrefixTree(ctx, TestUtil.nextInt(random(), 3, 8));
+    }
+  }
+
+  private Shape randomShape() {
+    double x = -180 + 360 * random().nextDouble();
+    double y = -90 + 180 * random().nextDouble();
+    if (random().nextBoolean()) {
+      return ctx.makeCircle(x, y, 30 * random().nextDouble());
+    }
+    double width = (180 - x) * random().nextDouble();
+    double height = (90 - y) * random().nextDouble();
+    return ctx.makeRectangle(x, x + width, y, y + height);
+  }
+
+  /** Lists the decomposition of all intersecting cells down to the grid's max levels, as strings. */
+  private static void decompose(Cell cell, Shape shape, CellDecompositionCache.Decomposition cache, List<String> result) {
+    CellIterator subCells = cache == null ? cell.getNextLevelCells(shape) : cache.getNextLevelCells(cell);
+    List<Cell> toVisit = new ArrayList<>();
+    while (subCells.hasNext()) {
+      Cell subCell = subCells.next();
+      result.add(subCell.getTokenBytesNoLeaf(null).toString() + " level=" + subCell.getLevel() +
+                 " leaf=" + subCell.isLeaf() + " rel=" + subCell.getShapeRel());
+      if (subCell.isLeaf() == false && subCell.getLevel() < cell.getLevel() + 3) {
+        toVisit.add(subCell);
+      }
+    }
+    for (Cell subCell : toVisit) {
+      decompose(subCell, shape, cache, result);
+    }
+  }
+
+  public void testSameAsUncached() {
+    CellDecompositionCache cellCache = new CellDecompositionCache(TestUtil.nextInt(random(), 1, 5), 1 << 20);
+    int iters = atLeast(20);
+    for (int iter = 0; iter < iters; iter++) {
+      SpatialPrefixTree grid = randomGrid();
+      Shape shape = randomShape();
+      CellDecompositionCache.Decomposition cache = cellCache.forShape(grid, shape);
+      assertNotNull(cache);
+      assertSame(cache, cellCache.forShape(grid, shape));
+
+      List<String> expected = new ArrayList<>();
+      decompose(grid.getWorldCell(), shape, null, expected);
+
+      // first pass fills the cache, the second one reads it back:
+      for (int pass = 0; pass < 2; pass++) {
+        List<String> actual = new ArrayList<>();
+        decompose(grid.getWorldCell(), shape, cache, actual);
+        assertEquals("grid=" + grid + " shape=" + shape + " pass=" + pass, expected, actual);
+      }
+      assertTrue(cache.ramBytesUsed() > 0);
+      assertTrue(cellCache.ramBytesUsed() >= cache.ramBytesUsed());
+    }
+    cellCache.clear();
+    assertEquals(0, cellCache.size());
+    assertEquals(0, cellCache.ramBytesUsed());
+  }
+
+  public void testLimits() {
+    SpatialPrefixTree grid = new QuadPrefixTree(ctx, 8);
+    int maxShapes = TestUtil.nextInt(random(), 1, 3);
+    long maxRamBytesUsed = TestUtil.nextInt(random(), 0, 2000);
+    CellDecompositionCache cellCache = new CellDecompositionCache(maxShapes, maxRamBytesUsed);
+    int iters = atLeast(10);
+    for (int iter = 0; iter < iters; iter++) {
+      Shape shape = randomShape();
+      List<String> expected = new ArrayList<>();
+      decompose(grid.getWorldCell(), shape, null, expected);
+      List<String> actual = new ArrayList<>();
+      decompose(grid.getWorldCell(), shape, cellCache.forShape(grid, shape), actual);
+      assertEquals(expected, actual);
+      assertTrue(cellCache.size() <= maxShapes);
+      assertTrue(cellCache.ramBytesUsed() <= maxRamBytesUsed);
+    }
+    // evicted shapes don't count anymore:
+    cellCache.clear();
+    assertEquals(0, cellCache.ramBytesUsed());
+  }
+
+  public void testIllegalArgs() {
+    try {
+      new CellDecompositionCache(0, 1024);
+      fail("did not hit exception");
+    } catch (IllegalArgumentException iae) {
+      assertTrue(iae.getMessage().contains("maxShapes must be >= 1"));
+    }
+  }
+
+  public void testPointsNotCached() {
+    SpatialPrefixTree grid = randomGrid();
+    assertNull(new CellDecompositionCache(1, 1024).forShape(grid, ctx.makePoint(10, 20)));
+  }
+}
@@ -84,6 +84,10 @@ public class RandomSpatialOpFuzzyPrefixTreeTest extends StrategyTestCase {
       ((PackedQuadPrefixTree) this.grid).setPruneLeafyBranches(randomBoolean());
     }
 
+    if (randomBoolean()) {
+      ((RecursivePrefixTreeStrategy) strategy).setCellDecompositionCache(new CellDecompositionCache(4, 1 << 16));
+    }
+
     if (maxLevels == -1 && rarely()) {
       ((PrefixTreeStrategy) strategy).setPointsOnly(true);
     }
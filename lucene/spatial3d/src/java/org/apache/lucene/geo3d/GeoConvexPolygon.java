@@ -37,6 +37,8 @@ public class GeoConvexPolygon extends GeoBasePolygon {
 
   /** A list of edges */
   protected SidedPlane[] edges = null;
+  /** The edge planes, flattened as (x, y, z, D, sigNum) per edge, for allocation-free membership checks */
+  protected double[] edgeCoefficients = null;
   /** The set of notable points for each edge */
   protected GeoPoint[][] notableEdgePoints = null;
   /** A point which is on the boundary of the polygon */
@@ -139,24 +141,32 @@ public class GeoConvexPolygon extends GeoBasePolygon {
       edges[i] = sp;
       notableEdgePoints[i] = new GeoPoint[]{start, end};
     }
+    edgeCoefficients = new double[5 * edges.length];
+    for (int i = 0; i < edges.length; i++) {
+      final SidedPlane edge = edges[i];
+      edgeCoefficients[5 * i] = edge.x;
+      edgeCoefficients[5 * i + 1] = edge.y;
+      edgeCoefficients[5 * i + 2] = edge.z;
+      edgeCoefficients[5 * i + 3] = edge.D;
+      edgeCoefficients[5 * i + 4] = edge.sigNum;
+    }
     createCenterPoint();
   }
 
   /** Compute a reasonable center point.
    */
   protected void createCenterPoint() {
-    // In order to naively confirm that the polygon is convex, I would need to
-    // check every edge, and verify that every point (other than the edge endpoints)
-    // is within the edge's sided plane.  This is an order n^2 operation.  That's still
-    // not wrong, though, because everything else about polygons has a similar cost.
+    // Confirm that the polygon turns the same way at every point, by checking the points on
+    // either side of each edge against the edge's sided plane.  The point after the edge was
+    // used to construct the plane, so only the point before it needs checking.  This is linear,
+    // but unlike checking every point against every edge it does not catch a polygon that winds
+    // around more than once; GeoPolygonFactory never builds such a polygon, because it only adds
+    // points that are within all the edges built so far.
     for (int edgeIndex = 0; edgeIndex < edges.length; edgeIndex++) {
       final SidedPlane edge = edges[edgeIndex];
-      for (int pointIndex = 0; pointIndex < points.size(); pointIndex++) {
-        if (pointIndex != edgeIndex && pointIndex != legalIndex(edgeIndex + 1)) {
-          if (!edge.isWithin(points.get(pointIndex)))
-            throw new IllegalArgumentException("Polygon is not convex: Point " + points.get(pointIndex) + " Edge " + edge);
-        }
-      }
+      final GeoPoint previous = points.get(legalIndex(edgeIndex + points.size() - 1));
+      if (!edge.isWithin(previous))
+        throw new IllegalArgumentException("Polygon is not convex: Point " + previous + " Edge " + edge);
     }
     edgePoints = new GeoPoint[]{points.get(0)};
   }
@@ -173,8 +183,11 @@ public class GeoConvexPolygon extends GeoBasePolygon {
 
   @Override
   public boolean isWithin(final double x, final double y, final double z) {
-    for (final SidedPlane edge : edges) {
-      if (!edge.isWithin(x, y, z))
+    // Same as SidedPlane.isWithin for every edge, but reading the flattened coefficients
+    final double[] coefficients = edgeCoefficients;
+    for (int i = 0; i < coefficients.length; i += 5) {
+      final double evalResult = coefficients[i] * x + coefficients[i + 1] * y + coefficients[i + 2] * z + coefficients[i + 3];
+      if (Math.abs(evalResult) >= Vector.MINIMUM_RESOLUTION && Math.signum(evalResult) != coefficients[i + 4])
         return false;
     }
     return true;
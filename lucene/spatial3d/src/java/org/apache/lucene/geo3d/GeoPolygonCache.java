@@ -0,0 +1,127 @@
+package org.apache.lucene.geo3d;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A least-recently-used cache of polygons built by {@link GeoPolygonFactory}, keyed by
+ * the planet model, the list of points and the convex point index.  Decomposing a large
+ * concave polygon into convex parts is costly, so applications that run the same polygon
+ * queries repeatedly can share one instance of this class to only build each polygon once.
+ * <p>
+ * The returned polygons are shared, so they must not be modified.  This class is thread-safe.
+ *
+ * @lucene.experimental
+ */
+public class GeoPolygonCache {
+
+  /** The cached polygons, in access order */
+  protected final Map<Key, GeoPolygon> polygons;
+
+  /** Create a cache.
+   *@param maxSize is the maximum number of polygons to keep.
+   */
+  public GeoPolygonCache(final int maxSize) {
+    if (maxSize < 1) {
+      throw new IllegalArgumentException("maxSize must be at least 1 (got " + maxSize + ")");
+    }
+    this.polygons = new LinkedHashMap<Key, GeoPolygon>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(final Map.Entry<Key, GeoPolygon> eldest) {
+        return size() > maxSize;
+      }
+    };
+  }
+
+  /**
+   * Return the cached polygon for these arguments, or build it with
+   * {@link GeoPolygonFactory#makeGeoPolygon} and cache it.
+   *@param planetModel is the planet model.
+   *@param pointList is the list of points of the polygon; it is copied, so it may be reused by the caller.
+   *@param convexPointIndex is the index of a single convex point, see {@link GeoPolygonFactory#makeGeoPolygon}.
+   *@return the polygon.
+   */
+  public GeoPolygon makeGeoPolygon(final PlanetModel planetModel, final List<GeoPoint> pointList, final int convexPointIndex) {
+    final Key key = new Key(planetModel, new ArrayList<>(pointList), convexPointIndex);
+    synchronized (polygons) {
+      final GeoPolygon polygon = polygons.get(key);
+      if (polygon != null) {
+        return polygon;
+      }
+    }
+    // Build outside of the lock; if two threads race on the same polygon, both build it and one wins
+    final GeoPolygon polygon = GeoPolygonFactory.makeGeoPolygon(planetModel, key.points, convexPointIndex);
+    synchronized (polygons) {
+      final GeoPolygon existing = polygons.putIfAbsent(key, polygon);
+      return existing == null ? polygon : existing;
+    }
+  }
+
+  /** Return the number of cached polygons.
+   *@return the number of polygons.
+   */
+  public int size() {
+    synchronized (polygons) {
+      return polygons.size();
+    }
+  }
+
+  /** Remove all cached polygons.
+   */
+  public void clear() {
+    synchronized (polygons) {
+      polygons.clear();
+    }
+  }
+
+  /** Cache key */
+  protected static final class Key {
+    /** The planet model */
+    final PlanetModel planetModel;
+    /** The points, copied from the caller's list */
+    final List<GeoPoint> points;
+    /** The convex point index */
+    final int convexPointIndex;
+
+    Key(final PlanetModel planetModel, final List<GeoPoint> points, final int convexPointIndex) {
+      this.planetModel = planetModel;
+      this.points = points;
+      this.convexPointIndex = convexPointIndex;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+      if (!(o instanceof Key))
+        return false;
+      final Key other = (Key) o;
+      return convexPointIndex == other.convexPointIndex && planetModel.equals(other.planetModel) && points.equals(other.points);
+    }
+
+    @Override
+    public int hashCode() {
+      int result = planetModel.hashCode();
+      result = 31 * result + points.hashCode();
+      result = 31 * result + convexPointIndex;
+      return result;
+    }
+  }
+}
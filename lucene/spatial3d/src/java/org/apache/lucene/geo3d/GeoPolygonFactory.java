@@ -18,7 +18,9 @@ package org.apache.lucene.geo3d;
  */
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.BitSet;
+import java.util.Comparator;
 import java.util.List;
 
 /**
@@ -75,38 +77,56 @@ public class GeoPolygonFactory {
     internalEdgeList.set(currentPlanes.size(), isInternalEdge);
     currentPlanes.add(startingEdge);
 
+    // Planes are only ever added to currentPlanes, so for each remaining point we remember how many of them
+    // it was already checked against, or whether it is already known to be outside of one of them.  That way
+    // each point is checked against each plane at most once.
+    final int[] planesChecked = new int[Math.max(0, pointsList.size() - 2)];
+    final boolean[] outsidePlanes = new boolean[planesChecked.length];
+
+    // The remaining points, by angle around the start point, so that adding a point to the current polygon only
+    // needs to check the remaining points that lie in the wedge that this adds to the polygon.
+    final PointsAroundAxis remainingPoints = new PointsAroundAxis(currentList.get(0), pointsList, endPointIndex, planesChecked.length);
+    final List<Integer> outsideNewBoundary = new ArrayList<Integer>();
+    // The plane through the start point and the last point, with the rest of the current polygon on its inside
+    SidedPlane lastReturnBoundary = null;
+
     // Now, scan all remaining points, in order.  We'll use an index and just add to it.
     for (int i = 0; i < pointsList.size() - 2; i++) {
+      remainingPoints.remove(i);
       GeoPoint newPoint = pointsList.get(getLegalIndex(i + endPointIndex + 1, pointsList.size()));
-      if (isWithin(newPoint, currentPlanes)) {
+      if (isWithin(i, newPoint, currentPlanes, lastReturnBoundary, planesChecked, outsidePlanes)) {
         // Construct a sided plane based on the last two points, and the previous point
         SidedPlane newBoundary = new SidedPlane(currentList.get(currentList.size() - 2), newPoint, currentList.get(currentList.size() - 1));
         // Construct a sided plane based on the return trip
         SidedPlane returnBoundary = new SidedPlane(currentList.get(currentList.size() - 1), currentList.get(0), newPoint);
         // Verify that none of the points beyond the new point in the list are inside the polygon we'd
-        // be creating if we stopped making the current polygon right now.
+        // be creating if we stopped making the current polygon right now.  None of them is inside the
+        // current polygon (or the new point would not have been added), so only those in the wedge between
+        // the planes through the start point and the last and new points can be.
         boolean pointInside = false;
-        for (int j = i + 1; j < pointsList.size() - 2; j++) {
+        outsideNewBoundary.clear();
+        final int[] candidates = remainingPoints.candidates(currentList.size() > 2 ? currentList.get(currentList.size() - 2) : null,
+                                                            currentList.get(currentList.size() - 1), newPoint);
+        for (int candidate = remainingPoints.next(candidates, -1); candidate != -1; candidate = remainingPoints.next(candidates, candidate)) {
+          final int j = remainingPoints.pointAt(candidate);
           GeoPoint checkPoint = pointsList.get(getLegalIndex(j + endPointIndex + 1, pointsList.size()));
-          boolean isInside = true;
-          if (isInside && !newBoundary.isWithin(checkPoint))
-            isInside = false;
-          if (isInside && !returnBoundary.isWithin(checkPoint))
-            isInside = false;
-          if (isInside) {
-            for (SidedPlane plane : currentPlanes) {
-              if (!plane.isWithin(checkPoint)) {
-                isInside = false;
-                break;
-              }
-            }
-          }
-          if (isInside) {
+          if (!isWithin(j, checkPoint, currentPlanes, planesChecked, outsidePlanes)) {
+            // outside of the polygon for good
+            remainingPoints.remove(j);
+          } else if (!newBoundary.isWithin(checkPoint)) {
+            outsideNewBoundary.add(j);
+          } else if (returnBoundary.isWithin(checkPoint)) {
             pointInside = true;
             break;
           }
         }
+        assert pointInside == isAnyWithin(pointsList, endPointIndex, i + 1, newBoundary, returnBoundary, currentPlanes);
         if (!pointInside) {
+          // the remaining points outside the new boundary are outside of the polygon for good
+          for (int j : outsideNewBoundary) {
+            outsidePlanes[j] = true;
+            remainingPoints.remove(j);
+          }
           // Any excluded points?
           boolean isInternalBoundary = recursionList.size() > 0;
           if (isInternalBoundary) {
@@ -126,6 +146,7 @@ public class GeoPolygonFactory {
           currentList.add(newPoint);
           internalEdgeList.set(currentPlanes.size(), isInternalBoundary);
           currentPlanes.add(newBoundary);
+          lastReturnBoundary = returnBoundary;
         } else {
           recursionList.add(newPoint);
         }
@@ -170,6 +191,65 @@ public class GeoPolygonFactory {
     return true;
   }
 
+  /** Check, the slow way, if any of the remaining points is within the polygon that adding a new point would create;
+   * only used to verify the result of only checking the points in a wedge.
+   */
+  private static boolean isAnyWithin(final List<GeoPoint> pointsList, final int endPointIndex, final int firstRemaining,
+                                     final SidedPlane newBoundary, final SidedPlane returnBoundary, final List<SidedPlane> currentPlanes) {
+    for (int j = firstRemaining; j < pointsList.size() - 2; j++) {
+      GeoPoint checkPoint = pointsList.get(getLegalIndex(j + endPointIndex + 1, pointsList.size()));
+      if (newBoundary.isWithin(checkPoint) && returnBoundary.isWithin(checkPoint) && isWithin(checkPoint, currentPlanes))
+        return true;
+    }
+    return false;
+  }
+
+  /** Check if a point is within the planes of the current polygon.  A point outside of the plane through the
+   * start point and the last point only needs checking against the first and the last planes: if it is within both,
+   * adding it makes a polygon that turns the same way at every point and goes around the start point less than once,
+   * which is convex, so the point is within all the other planes too.  That makes adding the points of a convex
+   * polygon linear instead of quadratic.
+   *@param pointIndex is the index of the point in planesChecked and outsidePlanes.
+   *@param newPoint is the point.
+   *@param currentPlanes is the list of planes, which may only have grown since the last check.
+   *@param lastReturnBoundary is the plane through the start point and the last point, or null if there is only one plane.
+   *@param planesChecked is, per point, the number of planes the point is known to be within.
+   *@param outsidePlanes is, per point, whether the point is known to be outside one of the planes.
+   *@return true if within.
+   */
+  private static boolean isWithin(final int pointIndex, final GeoPoint newPoint, final List<SidedPlane> currentPlanes,
+                                  final SidedPlane lastReturnBoundary, final int[] planesChecked, final boolean[] outsidePlanes) {
+    if (lastReturnBoundary != null && !outsidePlanes[pointIndex] && !lastReturnBoundary.isWithin(newPoint)) {
+      final boolean within = currentPlanes.get(0).isWithin(newPoint) && currentPlanes.get(currentPlanes.size() - 1).isWithin(newPoint);
+      assert within == isWithin(newPoint, currentPlanes);
+      return within;
+    }
+    return isWithin(pointIndex, newPoint, currentPlanes, planesChecked, outsidePlanes);
+  }
+
+  /** Check if a point is within a described list of planes, only checking the planes that were added
+   * since the last check of the same point.
+   *@param pointIndex is the index of the point in planesChecked and outsidePlanes.
+   *@param newPoint is the point.
+   *@param currentPlanes is the list of planes, which may only have grown since the last check.
+   *@param planesChecked is, per point, the number of planes the point is known to be within.
+   *@param outsidePlanes is, per point, whether the point is known to be outside one of the planes.
+   *@return true if within.
+   */
+  private static boolean isWithin(final int pointIndex, final GeoPoint newPoint, final List<SidedPlane> currentPlanes,
+                                  final int[] planesChecked, final boolean[] outsidePlanes) {
+    if (outsidePlanes[pointIndex])
+      return false;
+    for (int planeIndex = planesChecked[pointIndex]; planeIndex < currentPlanes.size(); planeIndex++) {
+      if (!currentPlanes.get(planeIndex).isWithin(newPoint)) {
+        outsidePlanes[pointIndex] = true;
+        return false;
+      }
+    }
+    planesChecked[pointIndex] = currentPlanes.size();
+    return true;
+  }
+
   /** Convert raw point index into valid array position.
    *@param index is the array index.
    *@param size is the array size.
@@ -185,4 +265,213 @@ public class GeoPolygonFactory {
     return index;
   }
 
+  /** The points that remain to be added to a polygon, ordered by the angle around the axis through the polygon's
+   * start point of the plane that contains that axis and the point.  A polygon that only ever grows by adding the
+   * triangle between its start point, its last point and a new point can only come to hold a remaining point that lies
+   * between the planes through the axis and the last and new points, so only those need checking.
+   */
+  private static final class PointsAroundAxis {
+    /** Points this close to the axis, relative to their magnitude, have no reliable angle; they are always checked */
+    private static final double NEAR_AXIS = 1e-6;
+    /** Angles are compared with this much slop, which covers the tolerance of {@link SidedPlane#isWithin} away from the axis */
+    private static final double ANGLE_SLOP = 1e-5;
+
+    private final double ux, uy, uz;
+    private final double vx, vy, vz;
+
+    /** Angles of the points that are not near the axis, in ascending order */
+    private final double[] sortedAngles;
+    /** Point indexes, in the order of sortedAngles, followed by the points near the axis */
+    private final int[] sortedPoints;
+    /** Position of each point in sortedPoints */
+    private final int[] positions;
+    /** Next position, at or after each position, that was not removed; path-compressed as removed positions are skipped */
+    private final int[] nextLive;
+
+    PointsAroundAxis(final GeoPoint axisPoint, final List<GeoPoint> pointsList, final int endPointIndex, final int count) {
+      final double axisMagnitude = axisPoint.magnitude();
+      final double ax = axisPoint.x / axisMagnitude;
+      final double ay = axisPoint.y / axisMagnitude;
+      final double az = axisPoint.z / axisMagnitude;
+      // u is perpendicular to the axis, and to the coordinate axis that the axis is least aligned with:
+      final Vector u;
+      if (Math.abs(ax) <= Math.abs(ay) && Math.abs(ax) <= Math.abs(az)) {
+        u = new Vector(new Vector(ax, ay, az), new Vector(1.0, 0.0, 0.0));
+      } else if (Math.abs(ay) <= Math.abs(az)) {
+        u = new Vector(new Vector(ax, ay, az), new Vector(0.0, 1.0, 0.0));
+      } else {
+        u = new Vector(new Vector(ax, ay, az), new Vector(0.0, 0.0, 1.0));
+      }
+      ux = u.x;
+      uy = u.y;
+      uz = u.z;
+      vx = ay * uz - az * uy;
+      vy = az * ux - ax * uz;
+      vz = ax * uy - ay * ux;
+
+      final double[] angles = new double[count];
+      final Integer[] order = new Integer[count];
+      int sortedCount = 0;
+      for (int j = 0; j < count; j++) {
+        angles[j] = angle(pointsList.get(getLegalIndex(j + endPointIndex + 1, pointsList.size())));
+        order[j] = j;
+        if (!Double.isNaN(angles[j])) {
+          sortedCount++;
+        }
+      }
+      // NaN sorts last, so the points near the axis end up after all others
+      Arrays.sort(order, new Comparator<Integer>() {
+        @Override
+        public int compare(Integer a, Integer b) {
+          return Double.compare(angles[a], angles[b]);
+        }
+      });
+      sortedAngles = new double[sortedCount];
+      sortedPoints = new int[count];
+      positions = new int[count];
+      for (int position = 0; position < count; position++) {
+        sortedPoints[position] = order[position];
+        positions[order[position]] = position;
+        if (position < sortedCount) {
+          sortedAngles[position] = angles[order[position]];
+        }
+      }
+      nextLive = new int[count + 1];
+      for (int position = 0; position <= count; position++) {
+        nextLive[position] = position;
+      }
+    }
+
+    /** Angle of the point around the axis, in [-PI, PI), or NaN if it is too close to the axis */
+    private double angle(final Vector point) {
+      final double u = point.dotProduct(ux, uy, uz);
+      final double v = point.dotProduct(vx, vy, vz);
+      if (u * u + v * v < NEAR_AXIS * NEAR_AXIS * (point.x * point.x + point.y * point.y + point.z * point.z)) {
+        return Double.NaN;
+      }
+      return normalize(Math.atan2(v, u));
+    }
+
+    /** Remove a point, which then is never returned as a candidate again */
+    void remove(final int pointIndex) {
+      final int position = positions[pointIndex];
+      nextLive[position] = position + 1;
+    }
+
+    /** First position at or after the given one that was not removed */
+    private int live(int position) {
+      int root = position;
+      while (nextLive[root] != root) {
+        root = nextLive[root];
+      }
+      while (nextLive[position] != root) {
+        final int next = nextLive[position];
+        nextLive[position] = root;
+        position = next;
+      }
+      return root;
+    }
+
+    /** Point at a position returned by {@link #next} */
+    int pointAt(final int position) {
+      return sortedPoints[position];
+    }
+
+    /** Next position after {@code position} (or the first one, if -1) in the given ranges that was not removed, or -1 if none */
+    int next(final int[] ranges, final int position) {
+      for (int range = 0; range < ranges.length; range += 2) {
+        if (position >= ranges[range + 1]) {
+          continue;
+        }
+        final int next = live(Math.max(position + 1, ranges[range]));
+        if (next < ranges[range + 1]) {
+          return next;
+        }
+      }
+      return -1;
+    }
+
+    /** Ranges of positions, as pairs of start (inclusive) and end (exclusive), holding all the remaining points that
+     * are on the side of the plane through the axis and {@code newPoint} that has {@code lastPoint}, and, unless
+     * {@code previousPoint} is null, on the side of the plane through the axis and {@code lastPoint} that doesn't have
+     * {@code previousPoint}.
+     */
+    int[] candidates(final GeoPoint previousPoint, final GeoPoint lastPoint, final GeoPoint newPoint) {
+      final int sortedCount = sortedAngles.length;
+      final int[] all = new int[] {0, sortedPoints.length};
+      final double newAngle = angle(newPoint);
+      final double lastAngle = angle(lastPoint);
+      // Each side is half a turn of angles, starting at the given angle:
+      double start = halfTurnStart(newAngle, lastAngle, true);
+      if (Double.isNaN(start)) {
+        return all;
+      }
+      double length = Math.PI;
+      if (previousPoint != null) {
+        final double otherStart = halfTurnStart(lastAngle, angle(previousPoint), false);
+        if (Double.isNaN(otherStart)) {
+          return all;
+        }
+        // Intersect the two half turns
+        final double delta = normalize(otherStart - start);
+        if (delta < 0.0) {
+          length = Math.PI + delta;
+        } else {
+          start = otherStart;
+          length = Math.PI - delta;
+        }
+      }
+      start -= ANGLE_SLOP;
+      length += 2.0 * ANGLE_SLOP;
+      if (length >= 2.0 * Math.PI) {
+        return all;
+      }
+      start = normalize(start);
+      final double end = start + length;
+      if (end < Math.PI) {
+        return new int[] {position(start), position(end), sortedCount, sortedPoints.length};
+      }
+      return new int[] {0, position(end - 2.0 * Math.PI), position(start), sortedCount, sortedCount, sortedPoints.length};
+    }
+
+    /** Start of the half turn of angles on the side of the plane at {@code planeAngle} that does (or doesn't) have
+     * the point at {@code pointAngle}, or NaN if that can't be told */
+    private static double halfTurnStart(final double planeAngle, final double pointAngle, final boolean sameSide) {
+      if (Double.isNaN(planeAngle) || Double.isNaN(pointAngle)) {
+        return Double.NaN;
+      }
+      final double sin = Math.sin(pointAngle - planeAngle);
+      if (Math.abs(sin) < ANGLE_SLOP) {
+        return Double.NaN;
+      }
+      return (sin > 0.0) == sameSide ? planeAngle : normalize(planeAngle + Math.PI);
+    }
+
+    /** Angle in [-PI, PI) */
+    private static double normalize(double angle) {
+      while (angle < -Math.PI) {
+        angle += 2.0 * Math.PI;
+      }
+      while (angle >= Math.PI) {
+        angle -= 2.0 * Math.PI;
+      }
+      return angle;
+    }
+
+    /** First position, among the points not near the axis, with an angle that is not below the given one */
+    private int position(final double angle) {
+      int low = 0;
+      int high = sortedAngles.length;
+      while (low < high) {
+        final int mid = (low + high) >>> 1;
+        if (sortedAngles[mid] < angle) {
+          low = mid + 1;
+        } else {
+          high = mid;
+        }
+      }
+      return low;
+    }
+  }
+
 }
@@ -57,6 +57,9 @@ public class PointInGeo3DShapeQuery extends Query {
     // I don't use RandomAccessWeight here: it's no good to approximate with "match all docs"; this is an inverted structure and should be
     // used in the first pass:
 
+    // Relationships of the shape to coarse cells, shared by all segments:
+    final XYZRelationCache relationCache = new XYZRelationCache(planetModel, shape);
+
     return new ConstantScoreWeight(this) {
 
       @Override
@@ -103,13 +106,19 @@ public class PointInGeo3DShapeQuery extends Query {
                              hitCount[0]++;
                            }
 
+                           @Override
+                           public void visit(int[] docIDs, int offset, int count) {
+                             result.add(docIDs, offset, count);
+                             hitCount[0] += count;
+                           }
+
                            @Override
                            public void visit(int docID, byte[] packedValue) {
                              assert packedValue.length == 12;
                              double x = Geo3DUtil.decodeValueCenter(planetMax, NumericUtils.bytesToInt(packedValue, 0));
                              double y = Geo3DUtil.decodeValueCenter(planetMax, NumericUtils.bytesToInt(packedValue, 1));
                              double z = Geo3DUtil.decodeValueCenter(planetMax, NumericUtils.bytesToInt(packedValue, 2));
-                             if (shape.isWithin(x, y, z)) {
+                             if (relationCache.isWithin(x, y, z)) {
                                result.add(docID);
                                hitCount[0]++;
                              }
@@ -133,9 +142,13 @@ public class PointInGeo3DShapeQuery extends Query {
                              assert yMin <= yMax;
                              assert zMin <= zMax;
 
-                             GeoArea xyzSolid = GeoAreaFactory.makeGeoArea(planetModel, xMin, xMax, yMin, yMax, zMin, zMax);
+                             int relationship = relationCache.getRelationship(xMin, xMax, yMin, yMax, zMin, zMax);
+                             if (relationship == -1) {
+                               GeoArea xyzSolid = GeoAreaFactory.makeGeoArea(planetModel, xMin, xMax, yMin, yMax, zMin, zMax);
+                               relationship = xyzSolid.getRelationship(shape);
+                             }
 
-                             switch(xyzSolid.getRelationship(shape)) {
+                             switch(relationship) {
                              case GeoArea.CONTAINS:
                                // Shape fully contains the cell
                                //System.out.println("    inside");
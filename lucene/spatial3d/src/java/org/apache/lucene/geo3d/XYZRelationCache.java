@@ -0,0 +1,263 @@
+package org.apache.lucene.geo3d;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Per-query cache of the relationship between a {@link GeoShape} and the cells of a
+ * coarse, regular XYZ grid laid over the shape's bounds.  Each grid cell's relationship
+ * is computed once, lazily, and is then used to answer relationships for any smaller
+ * box that falls entirely within that grid cell, and membership of points that fall in a
+ * grid cell that is fully inside or fully outside the shape, without redoing the plane math.
+ *
+ * <p>Grid cells that cross the shape's boundary are split in halves along each dimension,
+ * up to {@link #MAX_SPLITS} times, when a box falls entirely within one of their sub-cells.
+ * Sub-cells are computed and cached the same way, so the boxes along the boundary of any
+ * shape mostly resolve from the cache instead of building a new {@link XYZSolid} each.
+ * Points only consult sub-cells that boxes already caused to be computed.
+ *
+ * <p>Instances may be shared across threads: the cached values are computed
+ * deterministically, so a racing thread at worst recomputes a cell.
+ *
+ * @lucene.internal
+ */
+final class XYZRelationCache {
+
+  /** Number of grid cells along each dimension */
+  static final int CELLS_PER_DIM = 16;
+
+  /** Maximum number of times a grid cell that crosses the shape's boundary is split */
+  static final int MAX_SPLITS = 2;
+
+  // Marker for a cell whose relationship is not computed yet; cached
+  // relationships are stored as the GeoArea constant plus one:
+  private static final byte UNKNOWN = 0;
+
+  /** The eight sub-cells of a cell that crosses the shape's boundary. */
+  private static final class SubCells {
+    final byte[] relations = new byte[8];
+    final SubCells[] children = new SubCells[8];
+  }
+
+  private final PlanetModel planetModel;
+  private final GeoShape shape;
+
+  private final double minX;
+  private final double maxX;
+  private final double minY;
+  private final double maxY;
+  private final double minZ;
+  private final double maxZ;
+
+  private final double cellWidthX;
+  private final double cellWidthY;
+  private final double cellWidthZ;
+
+  private final byte[] relations = new byte[CELLS_PER_DIM * CELLS_PER_DIM * CELLS_PER_DIM];
+  private final SubCells[] children = new SubCells[CELLS_PER_DIM * CELLS_PER_DIM * CELLS_PER_DIM];
+
+  /** Creates the cache for the provided shape; no relationship is computed until it is needed. */
+  XYZRelationCache(final PlanetModel planetModel, final GeoShape shape) {
+    this.planetModel = planetModel;
+    this.shape = shape;
+    final XYZBounds bounds = new XYZBounds();
+    shape.getBounds(bounds);
+    // Indexed points are quantized, which can move them slightly off the planet's surface and
+    // outside of the shape's bounds, so grow the grid by one quantization step:
+    final double slop = planetModel.getMaximumMagnitude() / Integer.MAX_VALUE;
+    minX = bounds.getMinimumX() - slop;
+    maxX = bounds.getMaximumX() + slop;
+    minY = bounds.getMinimumY() - slop;
+    maxY = bounds.getMaximumY() + slop;
+    minZ = bounds.getMinimumZ() - slop;
+    maxZ = bounds.getMaximumZ() + slop;
+    cellWidthX = (maxX - minX) / CELLS_PER_DIM;
+    cellWidthY = (maxY - minY) / CELLS_PER_DIM;
+    cellWidthZ = (maxZ - minZ) / CELLS_PER_DIM;
+  }
+
+  /** Returns the grid cell holding the value along one dimension. */
+  private static int cell(final double value, final double min, final double cellWidth) {
+    if (cellWidth <= 0.0) {
+      return 0;
+    }
+    final int cell = (int) ((value - min) / cellWidth);
+    return Math.max(0, Math.min(CELLS_PER_DIM - 1, cell));
+  }
+
+  /**
+   * Returns the cached (or newly computed) relationship of the cell at {@code index} in {@code cache} to the
+   * shape, as a {@link GeoArea} constant; the remaining arguments are the bounds of that cell.
+   */
+  private int relationship(final byte[] cache, final int index,
+                           final double lowX, final double highX, final double lowY, final double highY, final double lowZ, final double highZ) {
+    final byte cached = cache[index];
+    if (cached != UNKNOWN) {
+      return cached - 1;
+    }
+    // Slightly grow the cell, so that rounding when mapping a value to its cell can't
+    // place it just outside the cell whose relationship we computed:
+    final double slop = Vector.MINIMUM_RESOLUTION;
+    final GeoArea area = GeoAreaFactory.makeGeoArea(planetModel,
+                                                    lowX - slop, highX + slop,
+                                                    lowY - slop, highY + slop,
+                                                    lowZ - slop, highZ + slop);
+    final int relationship = area.getRelationship(shape);
+    cache[index] = (byte) (relationship + 1);
+    return relationship;
+  }
+
+  /**
+   * Returns {@link GeoArea#CONTAINS} or {@link GeoArea#DISJOINT} if the relationship of the box to the
+   * shape is known from the cache, or -1 if the caller must compute it.
+   */
+  int getRelationship(final double xMin, final double xMax, final double yMin, final double yMax, final double zMin, final double zMax) {
+    if (xMin > maxX || xMax < minX || yMin > maxY || yMax < minY || zMin > maxZ || zMax < minZ) {
+      // Outside the shape's bounds entirely
+      return GeoArea.DISJOINT;
+    }
+    final int cellX = cell(xMin, minX, cellWidthX);
+    final int cellY = cell(yMin, minY, cellWidthY);
+    final int cellZ = cell(zMin, minZ, cellWidthZ);
+    if (cellX != cell(xMax, minX, cellWidthX) || cellY != cell(yMax, minY, cellWidthY) || cellZ != cell(zMax, minZ, cellWidthZ)) {
+      // Spans more than one grid cell
+      return -1;
+    }
+    if (xMin < minX || xMax > maxX || yMin < minY || yMax > maxY || zMin < minZ || zMax > maxZ) {
+      // Sticks out of the grid, past the clamped edge cells
+      return -1;
+    }
+
+    double lowX = minX + cellX * cellWidthX;
+    double lowY = minY + cellY * cellWidthY;
+    double lowZ = minZ + cellZ * cellWidthZ;
+    double widthX = cellWidthX;
+    double widthY = cellWidthY;
+    double widthZ = cellWidthZ;
+    byte[] cache = relations;
+    SubCells[] subCells = children;
+    int index = (cellX * CELLS_PER_DIM + cellY) * CELLS_PER_DIM + cellZ;
+    for (int split = 0;; split++) {
+      final int relationship = relationship(cache, index, lowX, lowX + widthX, lowY, lowY + widthY, lowZ, lowZ + widthZ);
+      if (relationship == GeoArea.CONTAINS || relationship == GeoArea.DISJOINT) {
+        return relationship;
+      }
+      if (split == MAX_SPLITS) {
+        return -1;
+      }
+
+      // The cell crosses the shape's boundary: try the sub-cell holding the box, if there is one
+      widthX /= 2;
+      widthY /= 2;
+      widthZ /= 2;
+      int subIndex = 0;
+      final double midX = lowX + widthX;
+      if (xMin >= midX) {
+        lowX = midX;
+        subIndex |= 4;
+      } else if (xMax >= midX) {
+        return -1;
+      }
+      final double midY = lowY + widthY;
+      if (yMin >= midY) {
+        lowY = midY;
+        subIndex |= 2;
+      } else if (yMax >= midY) {
+        return -1;
+      }
+      final double midZ = lowZ + widthZ;
+      if (zMin >= midZ) {
+        lowZ = midZ;
+        subIndex |= 1;
+      } else if (zMax >= midZ) {
+        return -1;
+      }
+
+      SubCells next = subCells[index];
+      if (next == null) {
+        next = new SubCells();
+        subCells[index] = next;
+      }
+      cache = next.relations;
+      subCells = next.children;
+      index = subIndex;
+    }
+  }
+
+  /** Returns true if the point is within the shape, consulting the shape only when the point's cell crosses the shape's boundary. */
+  boolean isWithin(final double x, final double y, final double z) {
+    if (x < minX || x > maxX || y < minY || y > maxY || z < minZ || z > maxZ) {
+      return false;
+    }
+    final int cellX = cell(x, minX, cellWidthX);
+    final int cellY = cell(y, minY, cellWidthY);
+    final int cellZ = cell(z, minZ, cellWidthZ);
+    final int index = (cellX * CELLS_PER_DIM + cellY) * CELLS_PER_DIM + cellZ;
+    int relationship = relationship(relations, index,
+                                    minX + cellX * cellWidthX, minX + (cellX + 1) * cellWidthX,
+                                    minY + cellY * cellWidthY, minY + (cellY + 1) * cellWidthY,
+                                    minZ + cellZ * cellWidthZ, minZ + (cellZ + 1) * cellWidthZ);
+
+    // Descend into the sub-cells that are already computed:
+    double midX = minX + (cellX + 0.5) * cellWidthX;
+    double midY = minY + (cellY + 0.5) * cellWidthY;
+    double midZ = minZ + (cellZ + 0.5) * cellWidthZ;
+    double halfWidthX = cellWidthX / 2;
+    double halfWidthY = cellWidthY / 2;
+    double halfWidthZ = cellWidthZ / 2;
+    SubCells subCells = children[index];
+    while (relationship != GeoArea.CONTAINS && relationship != GeoArea.DISJOINT && subCells != null) {
+      halfWidthX /= 2;
+      halfWidthY /= 2;
+      halfWidthZ /= 2;
+      int subIndex = 0;
+      if (x >= midX) {
+        subIndex |= 4;
+        midX += halfWidthX;
+      } else {
+        midX -= halfWidthX;
+      }
+      if (y >= midY) {
+        subIndex |= 2;
+        midY += halfWidthY;
+      } else {
+        midY -= halfWidthY;
+      }
+      if (z >= midZ) {
+        subIndex |= 1;
+        midZ += halfWidthZ;
+      } else {
+        midZ -= halfWidthZ;
+      }
+      final byte cached = subCells.relations[subIndex];
+      if (cached == UNKNOWN) {
+        break;
+      }
+      relationship = cached - 1;
+      subCells = subCells.children[subIndex];
+    }
+
+    switch (relationship) {
+      case GeoArea.CONTAINS:
+        return true;
+      case GeoArea.DISJOINT:
+        return false;
+      default:
+        return shape.isWithin(x, y, z);
+    }
+  }
+}
@@ -19,12 +19,16 @@ package org.apache.lucene.geo3d;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
 
 import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class GeoPolygonTest {
 
@@ -163,4 +167,83 @@ public class GeoPolygonTest {
     assertEquals(0.1, b.getMaxLatitude(), 0.000001);
   }
 
+  @Test
+  public void testPolygonCache() {
+    final GeoPolygonCache cache = new GeoPolygonCache(2);
+    final List<GeoPoint> points = new ArrayList<GeoPoint>();
+    points.add(new GeoPoint(PlanetModel.SPHERE, -0.1, -0.5));
+    points.add(new GeoPoint(PlanetModel.SPHERE, 0.0, -0.6));
+    points.add(new GeoPoint(PlanetModel.SPHERE, 0.1, -0.5));
+    points.add(new GeoPoint(PlanetModel.SPHERE, 0.0, -0.4));
+
+    final GeoPolygon c = cache.makeGeoPolygon(PlanetModel.SPHERE, points, 0);
+    assertEquals(GeoPolygonFactory.makeGeoPolygon(PlanetModel.SPHERE, points, 0).toString(), c.toString());
+    // Same points in a different list instance hit the cache:
+    assertSame(c, cache.makeGeoPolygon(PlanetModel.SPHERE, new ArrayList<GeoPoint>(points), 0));
+    assertEquals(1, cache.size());
+
+    // The key is a copy, so changing the caller's list doesn't affect the cached entry:
+    points.set(3, new GeoPoint(PlanetModel.SPHERE, 0.0, -0.3));
+    final GeoPolygon c2 = cache.makeGeoPolygon(PlanetModel.SPHERE, points, 0);
+    assertNotSame(c, c2);
+    assertTrue(c2.isWithin(new GeoPoint(PlanetModel.SPHERE, 0.0, -0.35)));
+    assertFalse(c.isWithin(new GeoPoint(PlanetModel.SPHERE, 0.0, -0.35)));
+    assertEquals(2, cache.size());
+
+    // Evicts the least recently used polygon:
+    cache.makeGeoPolygon(PlanetModel.WGS84, points, 0);
+    assertEquals(2, cache.size());
+    points.set(3, new GeoPoint(PlanetModel.SPHERE, 0.0, -0.4));
+    assertNotSame(c, cache.makeGeoPolygon(PlanetModel.SPHERE, points, 0));
+
+    cache.clear();
+    assertEquals(0, cache.size());
+  }
+
+  @Test
+  public void testConvexPolygonRejectsConcavePoint() {
+    final List<GeoPoint> points = new ArrayList<GeoPoint>();
+    points.add(new GeoPoint(PlanetModel.SPHERE, -0.1, -0.5));
+    points.add(new GeoPoint(PlanetModel.SPHERE, 0.0, -0.6));
+    points.add(new GeoPoint(PlanetModel.SPHERE, 0.1, -0.5));
+    points.add(new GeoPoint(PlanetModel.SPHERE, 0.0, -0.4));
+    new GeoConvexPolygon(PlanetModel.SPHERE, points);
+
+    // Pull the last point in past the line between its neighbors:
+    points.set(3, new GeoPoint(PlanetModel.SPHERE, 0.0, -0.52));
+    try {
+      new GeoConvexPolygon(PlanetModel.SPHERE, points);
+      fail("concave polygon should have been rejected");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testManyVertices() {
+    // GeoPolygonFactory only checks the points that may lie inside each new triangle; with assertions enabled, it
+    // also verifies that against all remaining points.
+    final Random random = new Random(42);
+    for (int iter = 0; iter < 20; iter++) {
+      final int numVertices = 2 * (2 + random.nextInt(250));
+      final boolean convex = random.nextBoolean();
+      final double centerLat = random.nextDouble() - 0.5;
+      final double centerLon = 2.0 * random.nextDouble() - 1.0;
+      final List<GeoPoint> points = new ArrayList<GeoPoint>();
+      for (int i = 0; i < numVertices; i++) {
+        // Even vertices are on the outer circle, so vertex 0 is convex; odd ones are pulled in for a star shape:
+        final double radius = (convex || (i & 1) == 0) ? 0.1 : 0.03 + 0.04 * random.nextDouble();
+        final double angle = 2.0 * Math.PI * i / numVertices;
+        points.add(new GeoPoint(PlanetModel.SPHERE, centerLat + radius * Math.sin(angle), centerLon + radius * Math.cos(angle)));
+      }
+      final GeoPolygon c = GeoPolygonFactory.makeGeoPolygon(PlanetModel.SPHERE, points, 0);
+      assertTrue(c.isWithin(new GeoPoint(PlanetModel.SPHERE, centerLat, centerLon)));
+      assertFalse(c.isWithin(new GeoPoint(PlanetModel.SPHERE, centerLat + 0.2, centerLon)));
+      assertFalse(c.isWithin(new GeoPoint(PlanetModel.SPHERE, centerLat, centerLon - 0.2)));
+      for (GeoPoint point : points) {
+        assertTrue(c.isWithin(point));
+      }
+    }
+  }
+
 }
@@ -452,6 +452,49 @@ public class TestGeo3DPointField extends LuceneTestCase {
     }
   }
 
+  /** Tests that the cached grid cell relationships agree with GeoShape.isWithin */
+  public void testRelationCache() throws Exception {
+    PlanetModel planetModel = getPlanetModel();
+    double planetMax = planetModel.getMaximumMagnitude();
+
+    int iters = atLeast(20);
+    for(int iter=0;iter<iters;iter++) {
+      GeoShape shape = randomShape(planetModel);
+      XYZRelationCache cache = new XYZRelationCache(planetModel, shape);
+      if (VERBOSE) {
+        System.out.println("TEST: iter=" + iter + " shape=" + shape);
+      }
+      int numPoints = atLeast(1000);
+      for(int i=0;i<numPoints;i++) {
+        GeoPoint point = new GeoPoint(planetModel, toRadians(randomLat()), toRadians(randomLon()));
+        boolean expected = shape.isWithin(point);
+        assertEquals("point=" + point + " shape=" + shape, expected, cache.isWithin(point.x, point.y, point.z));
+
+        // Quantized points are slightly off the surface; only compare where quantization doesn't change the answer:
+        GeoPoint quantized = quantize(planetMax, point);
+        if (shape.isWithin(quantized) == expected) {
+          assertEquals("point=" + quantized + " shape=" + shape, expected, cache.isWithin(quantized.x, quantized.y, quantized.z));
+        }
+
+        // A box around the point must agree with the point, when the cache knows its relationship; vary the
+        // size of the box so that it sometimes falls within the sub-cells of a grid cell:
+        double delta = planetMax / Integer.MAX_VALUE * (1 << random().nextInt(24));
+        int relationship = cache.getRelationship(point.x - delta, point.x + delta,
+                                                 point.y - delta, point.y + delta,
+                                                 point.z - delta, point.z + delta);
+        if (relationship == GeoArea.CONTAINS) {
+          assertTrue("point=" + point + " shape=" + shape, expected);
+        } else if (relationship == GeoArea.DISJOINT) {
+          assertFalse("point=" + point + " shape=" + shape, expected);
+        } else {
+          assertEquals(-1, relationship);
+        }
+        // ... and so must the cached membership of the point, now that sub-cells may be known:
+        assertEquals("point=" + point + " shape=" + shape, expected, cache.isWithin(point.x, point.y, point.z));
+      }
+    }
+  }
+
   public void testRandomTiny() throws Exception {
     // Make sure single-leaf-node case is OK:
     doTestRandom(10);